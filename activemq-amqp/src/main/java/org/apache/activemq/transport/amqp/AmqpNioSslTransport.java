@@ -43,7 +43,7 @@ public class AmqpNioSslTransport extends NIOSSLTransport {
     @Override
     protected void initializeStreams() throws IOException {
         super.initializeStreams();
-        if (inputBuffer.position() != 0 && inputBuffer.hasRemaining()) {
+        if (inputBuffer != null && inputBuffer.position() != 0 && inputBuffer.hasRemaining()) {
             serviceRead();
         }
     }
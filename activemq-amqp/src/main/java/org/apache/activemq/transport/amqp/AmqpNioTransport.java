@@ -29,6 +29,7 @@ import java.nio.channels.SocketChannel;
 
 import javax.net.SocketFactory;
 
+import org.apache.activemq.transport.nio.NIOBufferPool;
 import org.apache.activemq.transport.nio.NIOInputStream;
 import org.apache.activemq.transport.nio.NIOOutputStream;
 import org.apache.activemq.transport.nio.SelectorManager;
@@ -77,7 +78,6 @@ public class AmqpNioTransport extends TcpTransport {
             }
         });
 
-        inputBuffer = ByteBuffer.allocate(8 * 1024);
         NIOOutputStream outPutStream = new NIOOutputStream(channel, 8 * 1024);
         this.dataOut = new DataOutputStream(outPutStream);
         this.buffOut = outPutStream;
@@ -87,6 +87,9 @@ public class AmqpNioTransport extends TcpTransport {
 
     private void serviceRead() {
         try {
+            if (inputBuffer == null) {
+                inputBuffer = NIOBufferPool.getInstance().acquire(8 * 1024);
+            }
 
             while (isStarted()) {
                 // read channel
@@ -115,7 +118,9 @@ public class AmqpNioTransport extends TcpTransport {
                         }
                         doConsume(new AmqpHeader(magic));
                     } else {
-                        inputBuffer.flip();
+                        // keep the partial header and read the rest of it
+                        inputBuffer.position(inputBuffer.limit());
+                        inputBuffer.limit(inputBuffer.capacity());
                         continue;
                     }
                 }
@@ -129,6 +134,13 @@ public class AmqpNioTransport extends TcpTransport {
             onException(e);
         } catch (Throwable e) {
             onException(IOExceptionSupport.create(e));
+        } finally {
+            // the buffer is only kept between reads while it holds part of
+            // the protocol header
+            if (inputBuffer != null && inputBuffer.position() == 0) {
+                NIOBufferPool.getInstance().release(inputBuffer);
+                inputBuffer = null;
+            }
         }
     }
 
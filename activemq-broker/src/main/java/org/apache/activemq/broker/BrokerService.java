@@ -142,6 +142,7 @@ public class BrokerService implements Service {
     private ObjectName brokerObjectName;
     private TaskRunnerFactory taskRunnerFactory;
     private TaskRunnerFactory persistenceTaskRunnerFactory;
+    private TaskRunnerFactory destinationTaskRunnerFactory;
     private SystemUsage systemUsage;
     private SystemUsage producerSystemUsage;
     private SystemUsage consumerSystemUsaage;
@@ -188,6 +189,7 @@ public class BrokerService implements Service {
     private boolean monitorConnectionSplits = false;
     private int taskRunnerPriority = Thread.NORM_PRIORITY;
     private boolean dedicatedTaskRunner;
+    private int destinationEventLoopThreads = 0;
     private boolean cacheTempDestinations = false;// useful for failover
     private int timeBeforePurgeTempDestinations = 5000;
     private final List<Runnable> shutdownHooks = new ArrayList<Runnable>();
@@ -221,6 +223,7 @@ public class BrokerService implements Service {
     private boolean restartRequested = false;
 
     private int storeOpenWireVersion = OpenWireFormat.DEFAULT_VERSION;
+    private boolean compileSelectors;
     private String configurationUrl;
 
     static {
@@ -763,6 +766,10 @@ public class BrokerService implements Service {
             this.taskRunnerFactory.shutdown();
             this.taskRunnerFactory = null;
         }
+        if (this.destinationTaskRunnerFactory != null) {
+            this.destinationTaskRunnerFactory.shutdown();
+            this.destinationTaskRunnerFactory = null;
+        }
         if (this.executor != null) {
             ThreadPoolUtils.shutdownNow(executor);
             this.executor = null;
@@ -1162,6 +1169,27 @@ public class BrokerService implements Service {
         this.taskRunnerFactory = taskRunnerFactory;
     }
 
+    /**
+     * @return the factory for the task runners of destinations, which is the
+     *         broker task runner factory unless destinationEventLoopThreads is
+     *         set
+     */
+    public TaskRunnerFactory getDestinationTaskRunnerFactory() {
+        if (this.destinationTaskRunnerFactory == null) {
+            if (destinationEventLoopThreads <= 0 || isDedicatedTaskRunner()) {
+                return getTaskRunnerFactory();
+            }
+            this.destinationTaskRunnerFactory = new TaskRunnerFactory("ActiveMQ BrokerService["+getBrokerName()+"] Destination Task", getTaskRunnerPriority(), true, 1000,
+                    false);
+            this.destinationTaskRunnerFactory.setEventLoopThreads(destinationEventLoopThreads);
+        }
+        return this.destinationTaskRunnerFactory;
+    }
+
+    public void setDestinationTaskRunnerFactory(TaskRunnerFactory destinationTaskRunnerFactory) {
+        this.destinationTaskRunnerFactory = destinationTaskRunnerFactory;
+    }
+
     public TaskRunnerFactory getPersistenceTaskRunnerFactory() {
         if (taskRunnerFactory == null) {
             persistenceTaskRunnerFactory = new TaskRunnerFactory("Persistence Adaptor Task", persistenceThreadPriority,
@@ -1780,6 +1808,22 @@ public class BrokerService implements Service {
         this.dedicatedTaskRunner = dedicatedTaskRunner;
     }
 
+    public int getDestinationEventLoopThreads() {
+        return destinationEventLoopThreads;
+    }
+
+    /**
+     * Pins the dispatch of each destination to one of the given number of
+     * threads, rather than waking destinations up on whichever thread of the
+     * shared pool is free. A value around the number of cores keeps hot
+     * destinations on a warm cache. Defaults to 0, using the shared pool.
+     *
+     * @param destinationEventLoopThreads
+     */
+    public void setDestinationEventLoopThreads(int destinationEventLoopThreads) {
+        this.destinationEventLoopThreads = destinationEventLoopThreads;
+    }
+
     public boolean isCacheTempDestinations() {
         return cacheTempDestinations;
     }
@@ -2166,7 +2210,7 @@ public class BrokerService implements Service {
         configureServices(destinationInterceptors);
         DestinationInterceptor destinationInterceptor = new CompositeDestinationInterceptor(destinationInterceptors);
         if (destinationFactory == null) {
-            destinationFactory = new DestinationFactoryImpl(this, getTaskRunnerFactory(), getPersistenceAdapter());
+            destinationFactory = new DestinationFactoryImpl(this, getDestinationTaskRunnerFactory(), getPersistenceAdapter());
         }
         return createRegionBroker(destinationInterceptor);
     }
@@ -2941,4 +2985,19 @@ public class BrokerService implements Service {
     public void setStoreOpenWireVersion(int storeOpenWireVersion) {
         this.storeOpenWireVersion = storeOpenWireVersion;
     }
+
+    public boolean isCompileSelectors() {
+        return compileSelectors;
+    }
+
+    /**
+     * Sets whether the selectors of consumers are compiled into specialized
+     * expressions, which are cheaper to evaluate against each message than
+     * the parsed selector.
+     *
+     * @see org.apache.activemq.filter.ExpressionCompiler
+     */
+    public void setCompileSelectors(boolean compileSelectors) {
+        this.compileSelectors = compileSelectors;
+    }
 }
@@ -231,6 +231,21 @@ public class BrokerView implements BrokerViewMBean {
         brokerService.getSystemUsage().getJobSchedulerUsage().setLimit(limit);
     }
 
+    @Override
+    public int getDestinationEventLoopThreads() {
+        return brokerService.getDestinationEventLoopThreads();
+    }
+
+    @Override
+    public int[] getDestinationEventLoopQueueDepths() {
+        return brokerService.getDestinationTaskRunnerFactory().getEventLoopQueueDepths();
+    }
+
+    @Override
+    public long getDestinationEventLoopCompletedTaskCount() {
+        return brokerService.getDestinationTaskRunnerFactory().getEventLoopCompletedTaskCount();
+    }
+
     @Override
     public void resetStatistics() {
         safeGetBroker().getDestinationStatistics().reset();
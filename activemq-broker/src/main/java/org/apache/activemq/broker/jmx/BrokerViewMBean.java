@@ -130,6 +130,15 @@ public interface BrokerViewMBean extends Service {
 
     void setJobSchedulerStoreLimit(@MBeanInfo("bytes") long limit);
 
+    @MBeanInfo("Number of threads destination dispatch is pinned to, 0 when it runs on the shared thread pool.")
+    int getDestinationEventLoopThreads();
+
+    @MBeanInfo("Number of destination dispatch runs waiting on each destination event loop thread.")
+    int[] getDestinationEventLoopQueueDepths();
+
+    @MBeanInfo("Number of destination dispatch runs completed by the destination event loop threads.")
+    long getDestinationEventLoopCompletedTaskCount();
+
     @MBeanInfo("Messages are synchronized to disk.")
     boolean isPersistent();
 
@@ -22,6 +22,8 @@ import java.util.Set;
 import javax.management.ObjectName;
 
 import org.apache.activemq.broker.Connection;
+import org.apache.activemq.broker.TransportConnection;
+import org.apache.activemq.transport.tcp.TcpTransport;
 import org.apache.activemq.util.IOExceptionSupport;
 
 public class ConnectionView implements ConnectionViewMBean {
@@ -92,6 +94,10 @@ public class ConnectionView implements ConnectionViewMBean {
     @Override
     public void resetStatistics() {
         connection.getStatistics().reset();
+        TcpTransport transport = getTcpTransport();
+        if (transport != null) {
+            transport.resetFlushStatistics();
+        }
     }
 
     @Override
@@ -166,4 +172,23 @@ public class ConnectionView implements ConnectionViewMBean {
             throw IOExceptionSupport.create(e);
         }
     }
+
+    @Override
+    public long getFlushCount() {
+        TcpTransport transport = getTcpTransport();
+        return transport != null ? transport.getFlushCount() : 0;
+    }
+
+    @Override
+    public double getAverageFlushBatchSize() {
+        TcpTransport transport = getTcpTransport();
+        return transport != null ? transport.getAverageFlushBatchSize() : 0;
+    }
+
+    private TcpTransport getTcpTransport() {
+        if (connection instanceof TransportConnection) {
+            return ((TransportConnection) connection).getTransport().narrow(TcpTransport.class);
+        }
+        return null;
+    }
 }
@@ -99,4 +99,21 @@ public interface ConnectionViewMBean extends Service {
     @MBeanInfo("The ObjectNames of all Producers created by this Connection")
     ObjectName[] getProducers();
 
+    /**
+     * Returns the number of writes flushed to the socket of this Connection.
+     *
+     * @return the number of writes, or 0 if the transport is not tcp based
+     */
+    @MBeanInfo("The number of writes flushed to the socket of this connection")
+    long getFlushCount();
+
+    /**
+     * Returns the mean number of commands written per socket write, which is
+     * above 1 when writeCoalescing is enabled on the transport.
+     *
+     * @return the mean number of commands per write
+     */
+    @MBeanInfo("The mean number of commands per socket write of this connection")
+    double getAverageFlushBatchSize();
+
 }
@@ -68,6 +68,18 @@ public class NetworkBridgeView implements NetworkBridgeViewMBean {
         return bridge.getDequeueCounter();
     }
 
+    public int getForwardsInFlight() {
+        return bridge.getForwardsInFlight();
+    }
+
+    public double getAverageForwardRoundTripTime() {
+        return bridge.getAverageForwardRoundTripTime();
+    }
+
+    public double getForwardRate() {
+        return bridge.getForwardRate();
+    }
+
     public boolean isCreatedByDuplex() {
         return createByDuplex;
     }
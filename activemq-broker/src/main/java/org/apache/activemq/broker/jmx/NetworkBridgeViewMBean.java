@@ -34,6 +34,12 @@ public interface NetworkBridgeViewMBean extends Service {
 
     long getDequeueCounter();
 
+    int getForwardsInFlight();
+
+    double getAverageForwardRoundTripTime();
+
+    double getForwardRate();
+
     boolean isCreatedByDuplex();
 
     void resetStats();
@@ -26,6 +26,7 @@ public class PersistenceAdapterView implements PersistenceAdapterViewMBean {
 
     private Callable<String> inflightTransactionViewCallable;
     private Callable<String> dataViewCallable;
+    private Callable<String> statisticsViewCallable;
 
     public PersistenceAdapterView(PersistenceAdapter adapter) {
         this.name = adapter.toString();
@@ -47,6 +48,11 @@ public class PersistenceAdapterView implements PersistenceAdapterViewMBean {
         return invoke(dataViewCallable);
     }
 
+    @Override
+    public String getStatistics() {
+        return invoke(statisticsViewCallable);
+    }
+
     @Override
     public long getSize() {
         return persistenceAdapter.size();
@@ -68,6 +74,10 @@ public class PersistenceAdapterView implements PersistenceAdapterViewMBean {
         this.dataViewCallable = dataViewCallable;
     }
 
+    public void setStatisticsViewCallable(Callable<String> statisticsViewCallable) {
+        this.statisticsViewCallable = statisticsViewCallable;
+    }
+
     public void setInflightTransactionViewCallable(Callable<String> inflightTransactionViewCallable) {
         this.inflightTransactionViewCallable = inflightTransactionViewCallable;
     }
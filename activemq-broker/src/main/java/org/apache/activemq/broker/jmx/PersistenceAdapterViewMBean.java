@@ -27,6 +27,9 @@ public interface PersistenceAdapterViewMBean {
     @MBeanInfo("Current data.")
     String getData();
 
+    @MBeanInfo("Current statistics.")
+    String getStatistics();
+
     @MBeanInfo("Current size.")
     long getSize();
 }
@@ -24,7 +24,9 @@ import javax.management.ObjectName;
 
 import org.apache.activemq.broker.BrokerService;
 import org.apache.activemq.broker.ConnectionContext;
+import org.apache.activemq.broker.region.PrefetchSubscription;
 import org.apache.activemq.broker.region.Subscription;
+import org.apache.activemq.broker.region.policy.AdaptivePrefetchController;
 import org.apache.activemq.command.ActiveMQDestination;
 import org.apache.activemq.command.ActiveMQQueue;
 import org.apache.activemq.command.ActiveMQTopic;
@@ -380,6 +382,51 @@ public class SubscriptionView implements SubscriptionViewMBean {
         return subscription != null ? subscription.getPrefetchSize() : 0;
     }
 
+    @Override
+    public boolean isAdaptivePrefetch() {
+        return getPrefetchController() != null;
+    }
+
+    @Override
+    public int getMaximumPrefetchSize() {
+        AdaptivePrefetchController controller = getPrefetchController();
+        return controller != null ? controller.getMaximumPrefetch() : getPrefetchSize();
+    }
+
+    @Override
+    public double getAcknowledgeRate() {
+        AdaptivePrefetchController controller = getPrefetchController();
+        return controller != null ? controller.getAcknowledgeRate() : 0;
+    }
+
+    @Override
+    public double getAcknowledgeRoundTrip() {
+        AdaptivePrefetchController controller = getPrefetchController();
+        if (controller == null || controller.getRoundTrip() < 0) {
+            return -1;
+        }
+        return controller.getRoundTrip() / 1000000d;
+    }
+
+    @Override
+    public long getPrefetchAdjustments() {
+        AdaptivePrefetchController controller = getPrefetchController();
+        return controller != null ? controller.getAdjustments() : 0;
+    }
+
+    @Override
+    public String getLastPrefetchAdjustment() {
+        AdaptivePrefetchController controller = getPrefetchController();
+        return controller != null ? controller.getLastDecision() : "none";
+    }
+
+    private AdaptivePrefetchController getPrefetchController() {
+        if (subscription instanceof PrefetchSubscription) {
+            return ((PrefetchSubscription) subscription).getPrefetchController();
+        }
+        return null;
+    }
+
     @Override
     public boolean isMatchingQueue(String queueName) {
         if (isDestinationQueue()) {
@@ -144,6 +144,47 @@ public interface SubscriptionViewMBean {
     @MBeanInfo("Number of messages to pre-fetch and dispatch to the client.")
     int getPrefetchSize();
 
+    /**
+     * @return true if the prefetch is adapted to the acknowledgement rate of
+     *         the consumer
+     */
+    @MBeanInfo("The prefetch is adapted to the acknowledgement rate of the consumer.")
+    boolean isAdaptivePrefetch();
+
+    /**
+     * @return the prefetch the consumer asked for, the upper bound of an
+     *         adapted prefetch
+     */
+    @MBeanInfo("Number of messages to pre-fetch the consumer asked for, the upper bound of an adapted prefetch.")
+    int getMaximumPrefetchSize();
+
+    /**
+     * @return the messages acknowledged per second in the last adjustment
+     *         period of an adapted prefetch
+     */
+    @MBeanInfo("Messages acknowledged per second in the last adjustment period of an adapted prefetch.")
+    double getAcknowledgeRate();
+
+    /**
+     * @return the smallest time in milliseconds from the dispatch of a
+     *         message to its acknowledgement measured for an adapted prefetch,
+     *         -1 if unknown
+     */
+    @MBeanInfo("Smallest time in milliseconds from the dispatch of a message to its acknowledgement, -1 if unknown.")
+    double getAcknowledgeRoundTrip();
+
+    /**
+     * @return the number of times the prefetch was adapted
+     */
+    @MBeanInfo("Number of times the prefetch was adapted.")
+    long getPrefetchAdjustments();
+
+    /**
+     * @return a description of the last adjustment of an adapted prefetch
+     */
+    @MBeanInfo("Description of the last adjustment of an adapted prefetch.")
+    String getLastPrefetchAdjustment();
+
     /**
      * @return whether or not the subscriber is retroactive or not
      */
@@ -26,6 +26,7 @@ import javax.jms.InvalidSelectorException;
 import javax.jms.JMSException;
 import javax.management.ObjectName;
 import org.apache.activemq.broker.Broker;
+import org.apache.activemq.broker.BrokerService;
 import org.apache.activemq.broker.ConnectionContext;
 import org.apache.activemq.command.ActiveMQDestination;
 import org.apache.activemq.command.ConsumerId;
@@ -33,6 +34,7 @@ import org.apache.activemq.command.ConsumerInfo;
 import org.apache.activemq.command.MessageAck;
 import org.apache.activemq.filter.BooleanExpression;
 import org.apache.activemq.filter.DestinationFilter;
+import org.apache.activemq.filter.ExpressionCompiler;
 import org.apache.activemq.filter.LogicExpression;
 import org.apache.activemq.filter.MessageEvaluationContext;
 import org.apache.activemq.filter.NoLocalExpression;
@@ -64,7 +66,7 @@ public abstract class AbstractSubscription implements Subscription {
         this.lastAckTime = System.currentTimeMillis();
     }
 
-    private static BooleanExpression parseSelector(ConsumerInfo info) throws InvalidSelectorException {
+    private BooleanExpression parseSelector(ConsumerInfo info) throws InvalidSelectorException {
         BooleanExpression rc = null;
         if (info.getSelector() != null) {
             rc = SelectorParser.parse(info.getSelector());
@@ -83,6 +85,13 @@ public abstract class AbstractSubscription implements Subscription {
                 rc = LogicExpression.createAND(info.getAdditionalPredicate(), rc);
             }
         }
+        // subscriptions created outside a running broker, such as on the
+        // mock brokers of tests, have no broker service to ask; the
+        // interpreted selector they keep matches the same messages
+        BrokerService brokerService = broker != null ? broker.getBrokerService() : null;
+        if (rc != null && brokerService != null && brokerService.isCompileSelectors()) {
+            rc = ExpressionCompiler.compile(rc);
+        }
         return rc;
     }
 
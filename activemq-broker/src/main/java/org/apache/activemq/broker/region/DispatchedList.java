@@ -0,0 +1,338 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region;
+
+import java.util.AbstractSequentialList;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.apache.activemq.command.MessageId;
+
+/**
+ * The messages dispatched to a subscription and not yet acknowledged, in
+ * dispatch order. A linked list indexed by message id, so that a message is
+ * found and removed in constant time and a range of acknowledged messages is
+ * walked from its first message rather than from the head of the list.
+ *
+ * Not thread safe, a subscription guards it with its dispatch lock.
+ */
+public class DispatchedList extends AbstractSequentialList<MessageReference> {
+
+    private final Node header = new Node(null);
+    private final Map<MessageId, Node> index = new HashMap<MessageId, Node>();
+    private int size;
+
+    public DispatchedList() {
+        header.next = header;
+        header.previous = header;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean add(MessageReference reference) {
+        link(reference, header);
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return find(o) != null;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        Node node = find(o);
+        if (node == null) {
+            return false;
+        }
+        unlink(node);
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        header.next = header;
+        header.previous = header;
+        index.clear();
+        size = 0;
+        modCount++;
+    }
+
+    /**
+     * @return the dispatched message with the given id or null
+     */
+    public MessageReference get(MessageId messageId) {
+        Node node = lookup(messageId);
+        return node != null ? node.reference : null;
+    }
+
+    @Override
+    public ListIterator<MessageReference> listIterator(int position) {
+        if (position < 0 || position > size) {
+            throw new IndexOutOfBoundsException("Index: " + position + ", Size: " + size);
+        }
+        Node node = header.next;
+        for (int i = 0; i < position; i++) {
+            node = node.next;
+        }
+        return new Itr(node, position);
+    }
+
+    /**
+     * Returns an iterator that starts at the message with the given id, or
+     * at the head of the list when the id is null.
+     *
+     * @return the iterator or null if no message with the id was dispatched
+     */
+    public Iterator<MessageReference> iterator(MessageId from) {
+        if (from == null) {
+            return iterator();
+        }
+        Node node = lookup(from);
+        return node != null ? new FromItr(node) : null;
+    }
+
+    private Node find(Object o) {
+        if (!(o instanceof MessageReference)) {
+            return null;
+        }
+        MessageReference reference = (MessageReference) o;
+        Node node = index.get(reference.getMessageId());
+        if (node != null && node.reference.equals(reference)) {
+            return node;
+        }
+        if (index.size() < size) {
+            // a message id was dispatched more than once, the index only
+            // holds one of them
+            for (node = header.next; node != header; node = node.next) {
+                if (node.reference.equals(reference)) {
+                    return node;
+                }
+            }
+        }
+        return null;
+    }
+
+    private Node lookup(MessageId messageId) {
+        Node node = index.get(messageId);
+        if (node == null && index.size() < size) {
+            for (node = header.next; node != header; node = node.next) {
+                if (messageId.equals(node.reference.getMessageId())) {
+                    return node;
+                }
+            }
+        }
+        return node;
+    }
+
+    private Node link(MessageReference reference, Node successor) {
+        Node node = new Node(reference);
+        node.next = successor;
+        node.previous = successor.previous;
+        successor.previous.next = node;
+        successor.previous = node;
+        addToIndex(node);
+        size++;
+        modCount++;
+        return node;
+    }
+
+    private void unlink(Node node) {
+        node.previous.next = node.next;
+        node.next.previous = node.previous;
+        removeFromIndex(node);
+        size--;
+        modCount++;
+    }
+
+    private void addToIndex(Node node) {
+        MessageId id = node.reference.getMessageId();
+        if (!index.containsKey(id)) {
+            index.put(id, node);
+        }
+    }
+
+    private void removeFromIndex(Node node) {
+        MessageId id = node.reference.getMessageId();
+        if (index.get(id) == node) {
+            index.remove(id);
+        }
+    }
+
+    private static final class Node {
+        private MessageReference reference;
+        private Node next;
+        private Node previous;
+
+        Node(MessageReference reference) {
+            this.reference = reference;
+        }
+    }
+
+    private final class Itr implements ListIterator<MessageReference> {
+        private Node next;
+        private Node lastReturned;
+        private int nextIndex;
+        private int expectedModCount = modCount;
+
+        Itr(Node next, int nextIndex) {
+            this.next = next;
+            this.nextIndex = nextIndex;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != header;
+        }
+
+        @Override
+        public MessageReference next() {
+            checkForComodification();
+            if (next == header) {
+                throw new NoSuchElementException();
+            }
+            lastReturned = next;
+            next = next.next;
+            nextIndex++;
+            return lastReturned.reference;
+        }
+
+        @Override
+        public boolean hasPrevious() {
+            return next.previous != header;
+        }
+
+        @Override
+        public MessageReference previous() {
+            checkForComodification();
+            if (next.previous == header) {
+                throw new NoSuchElementException();
+            }
+            next = next.previous;
+            lastReturned = next;
+            nextIndex--;
+            return lastReturned.reference;
+        }
+
+        @Override
+        public int nextIndex() {
+            return nextIndex;
+        }
+
+        @Override
+        public int previousIndex() {
+            return nextIndex - 1;
+        }
+
+        @Override
+        public void remove() {
+            checkForComodification();
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            if (next == lastReturned) {
+                next = lastReturned.next;
+            } else {
+                nextIndex--;
+            }
+            unlink(lastReturned);
+            lastReturned = null;
+            expectedModCount = modCount;
+        }
+
+        @Override
+        public void set(MessageReference reference) {
+            checkForComodification();
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            removeFromIndex(lastReturned);
+            lastReturned.reference = reference;
+            index.put(reference.getMessageId(), lastReturned);
+        }
+
+        @Override
+        public void add(MessageReference reference) {
+            checkForComodification();
+            link(reference, next);
+            lastReturned = null;
+            nextIndex++;
+            expectedModCount = modCount;
+        }
+
+        private void checkForComodification() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+
+    /**
+     * Walks forward from a message found through the index, whose position in
+     * the list is not known without walking it from the head.
+     */
+    private final class FromItr implements Iterator<MessageReference> {
+        private Node next;
+        private Node lastReturned;
+        private int expectedModCount = modCount;
+
+        FromItr(Node next) {
+            this.next = next;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != header;
+        }
+
+        @Override
+        public MessageReference next() {
+            checkForComodification();
+            if (next == header) {
+                throw new NoSuchElementException();
+            }
+            lastReturned = next;
+            next = next.next;
+            return lastReturned.reference;
+        }
+
+        @Override
+        public void remove() {
+            checkForComodification();
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            unlink(lastReturned);
+            lastReturned = null;
+            expectedModCount = modCount;
+        }
+
+        private void checkForComodification() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+    }
+}
@@ -18,6 +18,7 @@ package org.apache.activemq.broker.region;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
@@ -30,6 +31,7 @@ import org.apache.activemq.broker.Broker;
 import org.apache.activemq.broker.ConnectionContext;
 import org.apache.activemq.broker.region.cursors.PendingMessageCursor;
 import org.apache.activemq.broker.region.cursors.VMPendingMessageCursor;
+import org.apache.activemq.broker.region.policy.AdaptivePrefetchController;
 import org.apache.activemq.command.ConsumerControl;
 import org.apache.activemq.command.ConsumerInfo;
 import org.apache.activemq.command.Message;
@@ -55,7 +57,7 @@ public abstract class PrefetchSubscription extends AbstractSubscription {
     protected final Scheduler scheduler;
 
     protected PendingMessageCursor pending;
-    protected final List<MessageReference> dispatched = new ArrayList<MessageReference>();
+    protected final DispatchedList dispatched = new DispatchedList();
     protected final AtomicInteger prefetchExtension = new AtomicInteger();
     protected boolean usePrefetchExtension = true;
     protected long enqueueCounter;
@@ -67,6 +69,9 @@ public abstract class PrefetchSubscription extends AbstractSubscription {
     protected final Object pendingLock = new Object();
     protected final Object dispatchLock = new Object();
     private final CountDownLatch okForAckAsDispatchDone = new CountDownLatch(1);
+    private AdaptivePrefetchController prefetchController;
+    // the window set by the prefetch controller, 0 for the prefetch in the consumer info
+    private volatile int adaptedPrefetchSize;
 
     public PrefetchSubscription(Broker broker, SystemUsage usageManager, ConnectionContext context, ConsumerInfo info, PendingMessageCursor cursor) throws JMSException {
         super(broker,context, info);
@@ -145,11 +150,23 @@ public abstract class PrefetchSubscription extends AbstractSubscription {
 
     @Override
     public void add(MessageReference node) throws Exception {
+        if (addPending(node)) {
+            dispatchPending();
+        }
+    }
+
+    /**
+     * Appends the node to the pending list without pushing it to the consumer, the
+     * caller is responsible for a follow up call to {@link #dispatchPending()}.
+     *
+     * @return false if the node's destination is no longer served by this subscription.
+     */
+    boolean addPending(MessageReference node) throws Exception {
         synchronized (pendingLock) {
             // The destination may have just been removed...
             if( !destinations.contains(node.getRegionDestination()) && node!=QueueMessageReference.NULL_MESSAGE) {
                 // perhaps we should inform the caller that we are no longer valid to dispatch to?
-                return;
+                return false;
             }
 
             // Don't increment for the pullTimeout control message.
@@ -158,7 +175,7 @@ public abstract class PrefetchSubscription extends AbstractSubscription {
             }
             pending.addMessageLast(node);
         }
-        dispatchPending();
+        return true;
     }
 
     @Override
@@ -195,7 +212,10 @@ public abstract class PrefetchSubscription extends AbstractSubscription {
     public final void acknowledge(final ConnectionContext context,final MessageAck ack) throws Exception {
         // Handle the standard acknowledgment case.
         boolean callDispatchMatched = false;
+        // only acks of consumed messages are fed to the prefetch controller
+        boolean consumed = false;
         Destination destination = null;
+        int adaptedPrefetch = 0;
 
         if (!okForAckAsDispatchDone.await(0l, TimeUnit.MILLISECONDS)) {
             // suppress unexpected ack exception in this expected case
@@ -214,50 +234,45 @@ public abstract class PrefetchSubscription extends AbstractSubscription {
                 // Acknowledge all dispatched messages up till the message id of
                 // the acknowledgment.
                 int index = 0;
-                boolean inAckRange = false;
                 List<MessageReference> removeList = new ArrayList<MessageReference>();
-                for (final MessageReference node : dispatched) {
+                for (Iterator<MessageReference> iter = ackRange(ack); iter.hasNext();) {
+                    final MessageReference node = iter.next();
                     MessageId messageId = node.getMessageId();
-                    if (ack.getFirstMessageId() == null
-                            || ack.getFirstMessageId().equals(messageId)) {
-                        inAckRange = true;
+                    // Don't remove the nodes until we are committed.
+                    if (!context.isInTransaction()) {
+                        dequeueCounter++;
+                        ((Destination)node.getRegionDestination()).getDestinationStatistics().getInflight().decrement();
+                        removeList.add(node);
+                    } else {
+                        registerRemoveSync(context, node);
                     }
-                    if (inAckRange) {
-                        // Don't remove the nodes until we are committed.
-                        if (!context.isInTransaction()) {
-                            dequeueCounter++;
-                            ((Destination)node.getRegionDestination()).getDestinationStatistics().getInflight().decrement();
-                            removeList.add(node);
-                        } else {
-                            registerRemoveSync(context, node);
-                        }
-                        index++;
-                        acknowledge(context, ack, node);
-                        if (ack.getLastMessageId().equals(messageId)) {
-                            // contract prefetch if dispatch required a pull
-                            if (getPrefetchSize() == 0) {
-                                // Protect extension update against parallel updates.
-                                while (true) {
-                                    int currentExtension = prefetchExtension.get();
-                                    int newExtension = Math.max(0, currentExtension - index);
-                                    if (prefetchExtension.compareAndSet(currentExtension, newExtension)) {
-                                        break;
-                                    }
+                    index++;
+                    acknowledge(context, ack, node);
+                    if (ack.getLastMessageId().equals(messageId)) {
+                        // contract prefetch if dispatch required a pull
+                        if (getPrefetchSize() == 0) {
+                            // Protect extension update against parallel updates.
+                            while (true) {
+                                int currentExtension = prefetchExtension.get();
+                                int newExtension = Math.max(0, currentExtension - index);
+                                if (prefetchExtension.compareAndSet(currentExtension, newExtension)) {
+                                    break;
                                 }
-                            } else if (usePrefetchExtension && context.isInTransaction()) {
-                                // extend prefetch window only if not a pulling consumer
-                                while (true) {
-                                    int currentExtension = prefetchExtension.get();
-                                    int newExtension = Math.max(currentExtension, index);
-                                    if (prefetchExtension.compareAndSet(currentExtension, newExtension)) {
-                                        break;
-                                    }
+                            }
+                        } else if (usePrefetchExtension && context.isInTransaction()) {
+                            // extend prefetch window only if not a pulling consumer
+                            while (true) {
+                                int currentExtension = prefetchExtension.get();
+                                int newExtension = Math.max(currentExtension, index);
+                                if (prefetchExtension.compareAndSet(currentExtension, newExtension)) {
+                                    break;
                                 }
                             }
-                            destination = (Destination) node.getRegionDestination();
-                            callDispatchMatched = true;
-                            break;
                         }
+                        destination = (Destination) node.getRegionDestination();
+                        callDispatchMatched = true;
+                        consumed = true;
+                        break;
                     }
                 }
                 for (final MessageReference node : removeList) {
@@ -271,31 +286,29 @@ public abstract class PrefetchSubscription extends AbstractSubscription {
             } else if (ack.isIndividualAck()) {
                 // Message was delivered and acknowledge - but only delete the
                 // individual message
-                for (final MessageReference node : dispatched) {
-                    MessageId messageId = node.getMessageId();
-                    if (ack.getLastMessageId().equals(messageId)) {
-                        // Don't remove the nodes until we are committed - immediateAck option
-                        if (!context.isInTransaction()) {
-                            dequeueCounter++;
-                            ((Destination)node.getRegionDestination()).getDestinationStatistics().getInflight().decrement();
-                            dispatched.remove(node);
-                        } else {
-                            registerRemoveSync(context, node);
-                        }
+                final MessageReference node = dispatched.get(ack.getLastMessageId());
+                if (node != null) {
+                    // Don't remove the nodes until we are committed - immediateAck option
+                    if (!context.isInTransaction()) {
+                        dequeueCounter++;
+                        ((Destination)node.getRegionDestination()).getDestinationStatistics().getInflight().decrement();
+                        dispatched.remove(node);
+                    } else {
+                        registerRemoveSync(context, node);
+                    }
 
-                        // Protect extension update against parallel updates.
-                        while (true) {
-                            int currentExtension = prefetchExtension.get();
-                            int newExtension = Math.max(0, currentExtension - 1);
-                            if (prefetchExtension.compareAndSet(currentExtension, newExtension)) {
-                                break;
-                            }
+                    // Protect extension update against parallel updates.
+                    while (true) {
+                        int currentExtension = prefetchExtension.get();
+                        int newExtension = Math.max(0, currentExtension - 1);
+                        if (prefetchExtension.compareAndSet(currentExtension, newExtension)) {
+                            break;
                         }
-                        acknowledge(context, ack, node);
-                        destination = (Destination) node.getRegionDestination();
-                        callDispatchMatched = true;
-                        break;
                     }
+                    acknowledge(context, ack, node);
+                    destination = (Destination) node.getRegionDestination();
+                    callDispatchMatched = true;
+                    consumed = true;
                 }
             }else if (ack.isDeliveredAck()) {
                 // Message was delivered but not acknowledged: update pre-fetch
@@ -335,19 +348,12 @@ public abstract class PrefetchSubscription extends AbstractSubscription {
             } else if (ack.isRedeliveredAck()) {
                 // Message was re-delivered but it was not yet considered to be
                 // a DLQ message.
-                boolean inAckRange = false;
-                for (final MessageReference node : dispatched) {
-                    MessageId messageId = node.getMessageId();
-                    if (ack.getFirstMessageId() == null
-                            || ack.getFirstMessageId().equals(messageId)) {
-                        inAckRange = true;
-                    }
-                    if (inAckRange) {
-                        if (ack.getLastMessageId().equals(messageId)) {
-                            destination = (Destination) node.getRegionDestination();
-                            callDispatchMatched = true;
-                            break;
-                        }
+                for (Iterator<MessageReference> iter = ackRange(ack); iter.hasNext();) {
+                    final MessageReference node = iter.next();
+                    if (ack.getLastMessageId().equals(node.getMessageId())) {
+                        destination = (Destination) node.getRegionDestination();
+                        callDispatchMatched = true;
+                        break;
                     }
                 }
                 if (!callDispatchMatched) {
@@ -364,35 +370,30 @@ public abstract class PrefetchSubscription extends AbstractSubscription {
                             + ack);
                 }
                 int index = 0;
-                boolean inAckRange = false;
                 List<MessageReference> removeList = new ArrayList<MessageReference>();
-                for (final MessageReference node : dispatched) {
+                for (Iterator<MessageReference> iter = ackRange(ack); iter.hasNext();) {
+                    final MessageReference node = iter.next();
                     MessageId messageId = node.getMessageId();
-                    if (ack.getFirstMessageId() == null
-                            || ack.getFirstMessageId().equals(messageId)) {
-                        inAckRange = true;
-                    }
-                    if (inAckRange) {
-                        sendToDLQ(context, node, ack.getPoisonCause());
-                        Destination nodeDest = (Destination) node.getRegionDestination();
-                        nodeDest.getDestinationStatistics()
-                                .getInflight().decrement();
-                        removeList.add(node);
-                        dequeueCounter++;
-                        index++;
-                        acknowledge(context, ack, node);
-                        if (ack.getLastMessageId().equals(messageId)) {
-                            while (true) {
-                                int currentExtension = prefetchExtension.get();
-                                int newExtension = Math.max(0, currentExtension - (index + 1));
-                                if (prefetchExtension.compareAndSet(currentExtension, newExtension)) {
-                                    break;
-                                }
+                    sendToDLQ(context, node, ack.getPoisonCause());
+                    Destination nodeDest = (Destination) node.getRegionDestination();
+                    nodeDest.getDestinationStatistics()
+                            .getInflight().decrement();
+                    removeList.add(node);
+                    dequeueCounter++;
+                    index++;
+                    acknowledge(context, ack, node);
+                    if (ack.getLastMessageId().equals(messageId)) {
+                        while (true) {
+                            int currentExtension = prefetchExtension.get();
+                            int newExtension = Math.max(0, currentExtension - (index + 1));
+                            if (prefetchExtension.compareAndSet(currentExtension, newExtension)) {
+                                break;
                             }
-                            destination = nodeDest;
-                            callDispatchMatched = true;
-                            break;
                         }
+                        destination = nodeDest;
+                        callDispatchMatched = true;
+                        consumed = true;
+                        break;
                     }
                 }
                 for (final MessageReference node : removeList) {
@@ -404,6 +405,17 @@ public abstract class PrefetchSubscription extends AbstractSubscription {
                                     + ack);
                 }
             }
+            if (consumed && prefetchController != null) {
+                adaptedPrefetch = prefetchController.onAcknowledge(ack.getMessageCount(), info.getPrefetchSize(), dispatched.size(), System.nanoTime());
+                if (adaptedPrefetch > 0) {
+                    // the consumer info keeps the prefetch the client asked for, copies of it go to advisories and bridges
+                    adaptedPrefetchSize = adaptedPrefetch;
+                }
+            }
+        }
+        if (adaptedPrefetch > 0) {
+            LOG.debug("{} prefetch adapted: {}", info.getConsumerId(), prefetchController.getLastDecision());
+            updateConsumerPrefetch(adaptedPrefetch);
         }
         if (callDispatchMatched && destination != null) {
             destination.wakeup();
@@ -419,6 +431,15 @@ public abstract class PrefetchSubscription extends AbstractSubscription {
         }
     }
 
+    /**
+     * @return the dispatched messages from the first message of the ack on,
+     *         none if it is not in the dispatched list
+     */
+    private Iterator<MessageReference> ackRange(MessageAck ack) {
+        Iterator<MessageReference> iter = dispatched.iterator(ack.getFirstMessageId());
+        return iter != null ? iter : Collections.<MessageReference>emptyList().iterator();
+    }
+
     private void registerRemoveSync(ConnectionContext context, final MessageReference node) {
         // setup a Synchronization to remove nodes from the
         // dispatched list.
@@ -459,21 +480,17 @@ public abstract class PrefetchSubscription extends AbstractSubscription {
         int checkCount = 0;
         boolean checkFoundStart = false;
         boolean checkFoundEnd = false;
-        for (MessageReference node : dispatched) {
-
-            if (firstAckedMsg == null) {
-                checkFoundStart = true;
-            } else if (!checkFoundStart && firstAckedMsg.equals(node.getMessageId())) {
-                checkFoundStart = true;
-            }
-
-            if (checkFoundStart) {
+        Iterator<MessageReference> iter = dispatched.iterator(firstAckedMsg);
+        if (iter != null) {
+            checkFoundStart = true;
+            while (iter.hasNext()) {
+                MessageReference node = iter.next();
                 checkCount++;
-            }
 
-            if (lastAckedMsg != null && lastAckedMsg.equals(node.getMessageId())) {
-                checkFoundEnd = true;
-                break;
+                if (lastAckedMsg != null && lastAckedMsg.equals(node.getMessageId())) {
+                    checkFoundEnd = true;
+                    break;
+                }
             }
         }
         if (!checkFoundStart && firstAckedMsg != null)
@@ -516,7 +533,7 @@ public abstract class PrefetchSubscription extends AbstractSubscription {
      */
     @Override
     public boolean isFull() {
-        return dispatched.size() - prefetchExtension.get() >= info.getPrefetchSize();
+        return dispatched.size() - prefetchExtension.get() >= getPrefetchSize();
     }
 
     /**
@@ -524,7 +541,7 @@ public abstract class PrefetchSubscription extends AbstractSubscription {
      */
     @Override
     public boolean isLowWaterMark() {
-        return (dispatched.size() - prefetchExtension.get()) <= (info.getPrefetchSize() * .4);
+        return (dispatched.size() - prefetchExtension.get()) <= (getPrefetchSize() * .4);
     }
 
     /**
@@ -532,12 +549,12 @@ public abstract class PrefetchSubscription extends AbstractSubscription {
      */
     @Override
     public boolean isHighWaterMark() {
-        return (dispatched.size() - prefetchExtension.get()) >= (info.getPrefetchSize() * .9);
+        return (dispatched.size() - prefetchExtension.get()) >= (getPrefetchSize() * .9);
     }
 
     @Override
     public int countBeforeFull() {
-        return info.getPrefetchSize() + prefetchExtension.get() - dispatched.size();
+        return getPrefetchSize() + prefetchExtension.get() - dispatched.size();
     }
 
     @Override
@@ -701,6 +718,9 @@ public abstract class PrefetchSubscription extends AbstractSubscription {
         if (node != QueueMessageReference.NULL_MESSAGE) {
             dispatchCounter++;
             dispatched.add(node);
+            if (prefetchController != null) {
+                prefetchController.onDispatch(dispatched.size() - 1, System.nanoTime());
+            }
         } else {
             while (true) {
                 int currentExtension = prefetchExtension.get();
@@ -850,8 +870,33 @@ public abstract class PrefetchSubscription extends AbstractSubscription {
         return this.prefetchExtension.get();
     }
 
+    public AdaptivePrefetchController getPrefetchController() {
+        return prefetchController;
+    }
+
+    /**
+     * Sets the controller that adapts the prefetch of this subscription to
+     * the acknowledgement rate of its consumer, null to keep the prefetch the
+     * consumer asked for.
+     */
+    public void setPrefetchController(AdaptivePrefetchController prefetchController) {
+        this.prefetchController = prefetchController;
+    }
+
+    /**
+     * @return the window adapted by the prefetch controller, if any, otherwise
+     *         the prefetch of the consumer
+     */
+    @Override
+    public int getPrefetchSize() {
+        int adapted = adaptedPrefetchSize;
+        return adapted > 0 ? adapted : info.getPrefetchSize();
+    }
+
     @Override
     public void setPrefetchSize(int prefetchSize) {
+        // a prefetch set for the consumer replaces the adapted window
+        this.adaptedPrefetchSize = 0;
         this.info.setPrefetchSize(prefetchSize);
         try {
             this.dispatchPending();
@@ -26,6 +26,9 @@ import java.util.concurrent.DelayQueue;
 import java.util.concurrent.Delayed;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
@@ -42,7 +45,9 @@ import org.apache.activemq.broker.ProducerBrokerExchange;
 import org.apache.activemq.broker.region.cursors.OrderedPendingList;
 import org.apache.activemq.broker.region.cursors.PendingList;
 import org.apache.activemq.broker.region.cursors.PendingMessageCursor;
+import org.apache.activemq.broker.region.cursors.PendingNode;
 import org.apache.activemq.broker.region.cursors.PrioritizedPendingList;
+import org.apache.activemq.broker.region.cursors.SequencePendingList;
 import org.apache.activemq.broker.region.cursors.StoreQueueCursor;
 import org.apache.activemq.broker.region.cursors.VMPendingMessageCursor;
 import org.apache.activemq.broker.region.group.CachedMessageGroupMapFactory;
@@ -86,7 +91,7 @@ public class Queue extends BaseDestination implements Task, UsageListener {
     private final ReentrantReadWriteLock messagesLock = new ReentrantReadWriteLock();
     protected PendingMessageCursor messages;
     private final ReentrantReadWriteLock pagedInMessagesLock = new ReentrantReadWriteLock();
-    private final LinkedHashMap<MessageId, QueueMessageReference> pagedInMessages = new LinkedHashMap<MessageId, QueueMessageReference>();
+    private PendingList pagedInMessages = new PagedInMessageMap();
     // Messages that are paged in but have not yet been targeted at a subscription
     private final ReentrantReadWriteLock pagedInPendingDispatchLock = new ReentrantReadWriteLock();
     protected PendingList pagedInPendingDispatch = new OrderedPendingList();
@@ -96,6 +101,7 @@ public class Queue extends BaseDestination implements Task, UsageListener {
     private MessageGroupMapFactory messageGroupMapFactory = new CachedMessageGroupMapFactory();
     final Lock sendLock = new ReentrantLock();
     private ExecutorService executor;
+    private ThreadPoolExecutor dispatchLaneExecutor;
     private final Map<MessageId, Runnable> messagesWaitingForSpace = new LinkedHashMap<MessageId, Runnable>();
     private boolean useConsumerPriority = true;
     private boolean strictOrderDispatch = false;
@@ -108,6 +114,9 @@ public class Queue extends BaseDestination implements Task, UsageListener {
     private CountDownLatch consumersBeforeStartsLatch;
     private final AtomicLong pendingWakeups = new AtomicLong();
     private boolean allConsumersExclusiveByDefault = false;
+    private volatile int dispatchLanes = 0;
+    private boolean pagedInIndexBySequenceId = false;
+    private boolean pagedInIndexOffHeap = false;
 
     private boolean resetNeeded;
 
@@ -318,15 +327,79 @@ public class Queue extends BaseDestination implements Task, UsageListener {
     public void setPrioritizedMessages(boolean prioritizedMessages) {
         super.setPrioritizedMessages(prioritizedMessages);
 
-        if (prioritizedMessages && this.pagedInPendingDispatch instanceof OrderedPendingList) {
+        if (prioritizedMessages && !(this.pagedInPendingDispatch instanceof PrioritizedPendingList)) {
             pagedInPendingDispatch = new PrioritizedPendingList();
             redeliveredWaitingDispatch = new PrioritizedPendingList();
-        } else if(pagedInPendingDispatch instanceof PrioritizedPendingList) {
-            pagedInPendingDispatch = new OrderedPendingList();
-            redeliveredWaitingDispatch = new OrderedPendingList();
+        } else if(!prioritizedMessages && pagedInPendingDispatch instanceof PrioritizedPendingList) {
+            pagedInPendingDispatch = createOrderedPendingList();
+            redeliveredWaitingDispatch = createOrderedPendingList();
         }
     }
 
+    public boolean isPagedInIndexBySequenceId() {
+        return pagedInIndexBySequenceId;
+    }
+
+    /**
+     * Keep the paged in messages, and the pending dispatch lists of a queue without
+     * prioritized messages, in a {@link SequencePendingList} indexed by the broker
+     * sequence id of each message rather than in MessageId keyed maps.
+     */
+    public void setPagedInIndexBySequenceId(boolean pagedInIndexBySequenceId) {
+        this.pagedInIndexBySequenceId = pagedInIndexBySequenceId;
+        resetPagedInIndex();
+    }
+
+    public boolean isPagedInIndexOffHeap() {
+        return pagedInIndexOffHeap;
+    }
+
+    /**
+     * When indexing paged in messages by sequence id, hold the index in direct
+     * buffers outside of the java heap.
+     */
+    public void setPagedInIndexOffHeap(boolean pagedInIndexOffHeap) {
+        this.pagedInIndexOffHeap = pagedInIndexOffHeap;
+        resetPagedInIndex();
+    }
+
+    private PendingList createOrderedPendingList() {
+        if (pagedInIndexBySequenceId) {
+            return new SequencePendingList(pagedInIndexOffHeap);
+        }
+        return new OrderedPendingList();
+    }
+
+    // the lists can only be swapped before any messages are paged in
+    private void resetPagedInIndex() {
+        pagedInMessagesLock.writeLock().lock();
+        try {
+            if (pagedInMessages.isEmpty()) {
+                pagedInMessages = pagedInIndexBySequenceId ? new SequencePendingList(pagedInIndexOffHeap) : new PagedInMessageMap();
+            }
+        } finally {
+            pagedInMessagesLock.writeLock().unlock();
+        }
+        pagedInPendingDispatchLock.writeLock().lock();
+        try {
+            if (!isPrioritizedMessages() && pagedInPendingDispatch.isEmpty() && redeliveredWaitingDispatch.isEmpty()) {
+                pagedInPendingDispatch = createOrderedPendingList();
+                redeliveredWaitingDispatch = createOrderedPendingList();
+            }
+        } finally {
+            pagedInPendingDispatchLock.writeLock().unlock();
+        }
+    }
+
+    // called with the pagedInMessagesLock held
+    private List<QueueMessageReference> getPagedInMessageReferences() {
+        List<QueueMessageReference> result = new ArrayList<QueueMessageReference>(pagedInMessages.size());
+        for (MessageReference ref : pagedInMessages) {
+            result.add((QueueMessageReference) ref);
+        }
+        return result;
+    }
+
     @Override
     public void initialize() throws Exception {
 
@@ -1018,6 +1091,12 @@ public class Queue extends BaseDestination implements Task, UsageListener {
             ThreadPoolUtils.shutdownNow(executor);
             executor = null;
         }
+        synchronized (this) {
+            if (dispatchLaneExecutor != null) {
+                ThreadPoolUtils.shutdownNow(dispatchLaneExecutor);
+                dispatchLaneExecutor = null;
+            }
+        }
 
         scheduler.cancel(expireMessagesTask);
 
@@ -1129,6 +1208,48 @@ public class Queue extends BaseDestination implements Task, UsageListener {
         return allConsumersExclusiveByDefault;
     }
 
+    public int getDispatchLanes() {
+        return dispatchLanes;
+    }
+
+    /**
+     * When greater than one, messages paged in for dispatch are pushed to the
+     * consumers by up to this many concurrent lanes rather than by the thread
+     * that is iterating the queue. Can be changed while the queue is running,
+     * the lane executor is resized to match.
+     *
+     * @see QueueDispatchLanes
+     */
+    public void setDispatchLanes(int dispatchLanes) {
+        synchronized (this) {
+            this.dispatchLanes = dispatchLanes;
+            if (dispatchLaneExecutor != null) {
+                dispatchLaneExecutor.setMaximumPoolSize(Math.max(1, dispatchLanes - 1));
+            }
+        }
+    }
+
+    // the lanes must not run on the taskFactory, whose threads may all be
+    // iterating queues that are waiting for their own lanes
+    private synchronized ThreadPoolExecutor getDispatchLaneExecutor() {
+        if (dispatchLaneExecutor == null) {
+            final String name = "Queue:" + destination.getPhysicalName() + " dispatch lane ";
+            dispatchLaneExecutor = new ThreadPoolExecutor(0, Math.max(1, dispatchLanes - 1), 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+
+                private long i = 0;
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    this.i++;
+                    Thread thread = new Thread(runnable, name + this.i);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return dispatchLaneExecutor;
+    }
+
     public boolean isResetNeeded() {
         return resetNeeded;
     }
@@ -1183,7 +1304,7 @@ public class Queue extends BaseDestination implements Task, UsageListener {
                 } else {
                     pagedInMessagesLock.writeLock().lock();
                     try {
-                        pagedInMessages.remove(ref.getMessageId());
+                        pagedInMessages.remove(ref);
                     } finally {
                         pagedInMessagesLock.writeLock().unlock();
                     }
@@ -1214,7 +1335,7 @@ public class Queue extends BaseDestination implements Task, UsageListener {
         MessageId msgId = new MessageId(id);
         pagedInMessagesLock.readLock().lock();
         try {
-            QueueMessageReference ref = this.pagedInMessages.get(msgId);
+            QueueMessageReference ref = (QueueMessageReference) this.pagedInMessages.get(msgId);
             if (ref != null) {
                 return ref;
             }
@@ -1488,7 +1609,7 @@ public class Queue extends BaseDestination implements Task, UsageListener {
             doPageIn(true);
             pagedInMessagesLock.readLock().lock();
             try {
-                set.addAll(pagedInMessages.values());
+                set.addAll(getPagedInMessageReferences());
             } finally {
                 pagedInMessagesLock.readLock().unlock();
             }
@@ -1517,7 +1638,7 @@ public class Queue extends BaseDestination implements Task, UsageListener {
             doPageIn(true);
             pagedInMessagesLock.readLock().lock();
             try {
-                set.addAll(pagedInMessages.values());
+                set.addAll(getPagedInMessageReferences());
             } finally {
                 pagedInMessagesLock.readLock().unlock();
             }
@@ -1623,7 +1744,7 @@ public class Queue extends BaseDestination implements Task, UsageListener {
                 ArrayList<QueueMessageReference> alreadyDispatchedMessages = null;
                 pagedInMessagesLock.readLock().lock();
                 try{
-                    alreadyDispatchedMessages = new ArrayList<QueueMessageReference>(pagedInMessages.values());
+                    alreadyDispatchedMessages = new ArrayList<QueueMessageReference>(getPagedInMessageReferences());
                 }finally {
                     pagedInMessagesLock.readLock().unlock();
                 }
@@ -1777,7 +1898,7 @@ public class Queue extends BaseDestination implements Task, UsageListener {
             destinationStatistics.getMessages().decrement();
             pagedInMessagesLock.writeLock().lock();
             try {
-                pagedInMessages.remove(reference.getMessageId());
+                pagedInMessages.remove(reference);
             } finally {
                 pagedInMessagesLock.writeLock().unlock();
             }
@@ -1943,8 +2064,8 @@ public class Queue extends BaseDestination implements Task, UsageListener {
                     resultList = new OrderedPendingList();
                 }
                 for (QueueMessageReference ref : result) {
-                    if (!pagedInMessages.containsKey(ref.getMessageId())) {
-                        pagedInMessages.put(ref.getMessageId(), ref);
+                    if (!pagedInMessages.contains(ref)) {
+                        pagedInMessages.addMessageLast(ref);
                         resultList.addMessageLast(ref);
                     } else {
                         ref.decrementReferenceCount();
@@ -1962,6 +2083,10 @@ public class Queue extends BaseDestination implements Task, UsageListener {
     }
 
     private void doDispatch(PendingList list) throws Exception {
+        doDispatch(list, null);
+    }
+
+    private void doDispatch(PendingList list, QueueDispatchLanes lanes) throws Exception {
         boolean doWakeUp = false;
 
         pagedInPendingDispatchLock.writeLock().lock();
@@ -1969,19 +2094,19 @@ public class Queue extends BaseDestination implements Task, UsageListener {
             if (!redeliveredWaitingDispatch.isEmpty()) {
                 // Try first to dispatch redelivered messages to keep an
                 // proper order
-                redeliveredWaitingDispatch = doActualDispatch(redeliveredWaitingDispatch);
+                redeliveredWaitingDispatch = doActualDispatch(redeliveredWaitingDispatch, lanes);
             }
             if (!pagedInPendingDispatch.isEmpty()) {
                 // Next dispatch anything that had not been
                 // dispatched before.
-                pagedInPendingDispatch = doActualDispatch(pagedInPendingDispatch);
+                pagedInPendingDispatch = doActualDispatch(pagedInPendingDispatch, lanes);
             }
             // and now see if we can dispatch the new stuff.. and append to
             // the pending
             // list anything that does not actually get dispatched.
             if (list != null && !list.isEmpty()) {
                 if (pagedInPendingDispatch.isEmpty()) {
-                    pagedInPendingDispatch.addAll(doActualDispatch(list));
+                    pagedInPendingDispatch.addAll(doActualDispatch(list, lanes));
                 } else {
                     for (MessageReference qmr : list) {
                         if (!pagedInPendingDispatch.contains(qmr)) {
@@ -1993,6 +2118,10 @@ public class Queue extends BaseDestination implements Task, UsageListener {
             }
         } finally {
             pagedInPendingDispatchLock.writeLock().unlock();
+            if (lanes != null) {
+                // does not throw, so an exception of the assignment is not masked
+                lanes.dispatch();
+            }
         }
 
         if (doWakeUp) {
@@ -2002,10 +2131,12 @@ public class Queue extends BaseDestination implements Task, UsageListener {
     }
 
     /**
+     * @param lanes when not null, the assigned messages are only queued on the
+     *        subscriptions and are dispatched once the dispatch locks are released.
      * @return list of messages that could get dispatched to consumers if they
      *         were not full.
      */
-    private PendingList doActualDispatch(PendingList list) throws Exception {
+    private PendingList doActualDispatch(PendingList list, QueueDispatchLanes lanes) throws Exception {
         List<Subscription> consumers;
         consumersLock.writeLock().lock();
 
@@ -2030,10 +2161,14 @@ public class Queue extends BaseDestination implements Task, UsageListener {
                     continue;
                 }
                 if (!fullConsumers.contains(s)) {
-                    if (!s.isFull()) {
+                    if (!(lanes != null ? lanes.isFull(s) : s.isFull())) {
                         if (dispatchSelector.canSelect(s, node) && assignMessageGroup(s, (QueueMessageReference)node) && !((QueueMessageReference) node).isAcked() ) {
                             // Dispatch it.
-                            s.add(node);
+                            if (lanes != null) {
+                                lanes.add(s, node);
+                            } else {
+                                s.add(node);
+                            }
                             iterator.remove();
                             target = s;
                             break;
@@ -2121,7 +2256,12 @@ public class Queue extends BaseDestination implements Task, UsageListener {
     }
 
     protected void pageInMessages(boolean force) throws Exception {
-        doDispatch(doPageInForDispatch(force, true));
+        QueueDispatchLanes lanes = null;
+        int laneCount = dispatchLanes;
+        if (laneCount > 1) {
+            lanes = new QueueDispatchLanes(this, laneCount, getDispatchLaneExecutor());
+        }
+        doDispatch(doPageInForDispatch(force, true), lanes);
     }
 
     private void addToConsumerList(Subscription sub) {
@@ -2197,7 +2337,7 @@ public class Queue extends BaseDestination implements Task, UsageListener {
         if (message == null) {
             pagedInMessagesLock.readLock().lock();
             try {
-                message = pagedInMessages.get(messageId);
+                message = (QueueMessageReference) pagedInMessages.get(messageId);
             } finally {
                 pagedInMessagesLock.readLock().unlock();
             }
@@ -2306,4 +2446,85 @@ public class Queue extends BaseDestination implements Task, UsageListener {
         }
         return result;
     }
+
+    /**
+     * The paged in messages of a queue not indexed by sequence id, held as
+     * they always were in a MessageId keyed LinkedHashMap.
+     */
+    private static final class PagedInMessageMap implements PendingList {
+
+        private LinkedHashMap<MessageId, MessageReference> map = new LinkedHashMap<MessageId, MessageReference>();
+
+        @Override
+        public boolean isEmpty() {
+            return map.isEmpty();
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+
+        @Override
+        public PendingNode addMessageFirst(MessageReference message) {
+            // a LinkedHashMap only appends, the others are added again after the new head
+            LinkedHashMap<MessageId, MessageReference> head = new LinkedHashMap<MessageId, MessageReference>();
+            head.put(message.getMessageId(), message);
+            map.remove(message.getMessageId());
+            head.putAll(map);
+            map = head;
+            return null;
+        }
+
+        @Override
+        public PendingNode addMessageLast(MessageReference message) {
+            map.put(message.getMessageId(), message);
+            return null;
+        }
+
+        @Override
+        public PendingNode remove(MessageReference message) {
+            if (message != null) {
+                MessageReference removed = map.remove(message.getMessageId());
+                if (removed != null) {
+                    return new PendingNode(null, removed);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public Iterator<MessageReference> iterator() {
+            return map.values().iterator();
+        }
+
+        @Override
+        public boolean contains(MessageReference message) {
+            return message != null && map.containsKey(message.getMessageId());
+        }
+
+        @Override
+        public MessageReference get(MessageId messageId) {
+            return map.get(messageId);
+        }
+
+        @Override
+        public Collection<MessageReference> values() {
+            return map.values();
+        }
+
+        @Override
+        public void addAll(PendingList pendingList) {
+            if (pendingList != null) {
+                for (MessageReference messageReference : pendingList) {
+                    addMessageLast(messageReference);
+                }
+            }
+        }
+    }
 }
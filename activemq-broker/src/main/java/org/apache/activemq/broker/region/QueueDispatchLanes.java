@@ -0,0 +1,160 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Splits a single {@link Queue} dispatch pass into two stages. Message to consumer
+ * assignment happens under the queue dispatch locks as before, but the assigned
+ * messages are only appended to each subscription's pending list. Once the queue
+ * locks are released, the subscriptions are partitioned into lanes which push their
+ * pending messages to the consumers concurrently.
+ *
+ * A subscription only ever belongs to one lane in a pass and the caller waits for
+ * every lane to complete, so the per consumer delivery order is the assignment order.
+ * The lanes run on an executor of the queue's own, never on the pool that runs the
+ * queue's iteration, and a lane that cannot be handed to it is run by the caller.
+ */
+class QueueDispatchLanes {
+
+    private static final Logger LOG = LoggerFactory.getLogger(QueueDispatchLanes.class);
+
+    private final Queue queue;
+    private final int lanes;
+    private final Executor executor;
+    private final Map<Subscription, Capacity> capacities = new IdentityHashMap<Subscription, Capacity>();
+    private final List<PrefetchSubscription> assigned = new ArrayList<PrefetchSubscription>();
+
+    QueueDispatchLanes(Queue queue, int lanes, Executor executor) {
+        this.queue = queue;
+        this.lanes = lanes;
+        this.executor = executor;
+    }
+
+    /**
+     * Equivalent of {@link Subscription#isFull()} that accounts for the messages
+     * assigned so far in this pass but not yet dispatched.
+     */
+    boolean isFull(Subscription sub) {
+        Capacity capacity = capacities.get(sub);
+        if (capacity == null) {
+            if (!isDeferrable(sub)) {
+                return sub.isFull();
+            }
+            capacity = new Capacity(sub.countBeforeFull() - sub.getPendingQueueSize());
+            capacities.put(sub, capacity);
+        }
+        return capacity.remaining <= 0;
+    }
+
+    void add(Subscription sub, MessageReference node) throws Exception {
+        Capacity capacity = capacities.get(sub);
+        if (capacity == null) {
+            sub.add(node);
+            return;
+        }
+        PrefetchSubscription prefetchSubscription = (PrefetchSubscription) sub;
+        if (prefetchSubscription.addPending(node)) {
+            capacity.remaining--;
+            if (!capacity.assigned) {
+                capacity.assigned = true;
+                assigned.add(prefetchSubscription);
+            }
+        }
+    }
+
+    /**
+     * Push the assigned messages out to the consumers, must be called without
+     * holding any of the queue dispatch locks. Failures are logged rather than
+     * thrown so that it can be called from a finally block, and the call always
+     * waits for every lane so that a later pass cannot overtake this one.
+     */
+    void dispatch() {
+        if (assigned.isEmpty()) {
+            return;
+        }
+        int laneCount = Math.min(lanes, assigned.size());
+        final CountDownLatch done = new CountDownLatch(laneCount - 1);
+        for (int lane = 1; lane < laneCount; lane++) {
+            final int laneIndex = lane;
+            final int count = laneCount;
+            Runnable task = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        dispatchLane(laneIndex, count);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            };
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                LOG.debug("Dispatching lane {} of {} inline", laneIndex, queue.getName());
+                task.run();
+            }
+        }
+        dispatchLane(0, laneCount);
+
+        boolean interrupted = false;
+        while (done.getCount() > 0) {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void dispatchLane(int lane, int laneCount) {
+        for (int i = lane; i < assigned.size(); i += laneCount) {
+            PrefetchSubscription sub = assigned.get(i);
+            try {
+                sub.dispatchPending();
+            } catch (Throwable e) {
+                LOG.warn("Failed to dispatch pending messages to {}", sub, e);
+            }
+        }
+    }
+
+    private boolean isDeferrable(Subscription sub) {
+        return sub instanceof PrefetchSubscription && !(sub instanceof QueueBrowserSubscription) && sub.getPrefetchSize() > 0;
+    }
+
+    private static final class Capacity {
+        int remaining;
+        boolean assigned;
+
+        Capacity(int remaining) {
+            this.remaining = remaining;
+        }
+    }
+}
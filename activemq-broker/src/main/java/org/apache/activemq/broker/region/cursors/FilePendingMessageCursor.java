@@ -17,8 +17,11 @@
 package org.apache.activemq.broker.region.cursors;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import org.apache.activemq.broker.Broker;
@@ -132,10 +135,15 @@ public class FilePendingMessageCursor extends AbstractPendingMessageCursor imple
     public synchronized void reset() {
         iterating = true;
         last = null;
+        if (memoryList.isEmpty() && !isDiskListEmpty() && hasSpace()) {
+            pageInFromDisk();
+        }
         if (isDiskListEmpty()) {
             this.iter = this.memoryList.iterator();
-        } else {
+        } else if (memoryList.isEmpty()) {
             this.iter = new DiskIterator();
+        } else {
+            this.iter = new MemoryThenDiskIterator();
         }
     }
 
@@ -144,7 +152,9 @@ public class FilePendingMessageCursor extends AbstractPendingMessageCursor imple
         iterating = false;
         if (iter instanceof DiskIterator) {
            ((DiskIterator)iter).release();
-        };
+        } else if (iter instanceof MemoryThenDiskIterator) {
+            ((MemoryThenDiskIterator)iter).release();
+        }
         if (flushRequired) {
             flushRequired = false;
             if (!hasSpace()) {
@@ -260,7 +270,8 @@ public class FilePendingMessageCursor extends AbstractPendingMessageCursor imple
         if (!node.isExpired()) {
             try {
                 regionDestination = (Destination) node.getMessage().getRegionDestination();
-                if (isDiskListEmpty()) {
+                // messages paged in from disk are ahead of those still on disk
+                if (isDiskListEmpty() || !memoryList.isEmpty()) {
                     if (hasSpace()) {
                         memoryList.addMessageFirst(node);
                         node.incrementReferenceCount();
@@ -280,6 +291,9 @@ public class FilePendingMessageCursor extends AbstractPendingMessageCursor imple
                         }
                     }
                 }
+                if (!memoryList.isEmpty()) {
+                    flushToDisk();
+                }
                 systemUsage.getTempUsage().waitForSpace();
                 node.decrementReferenceCount();
                 ByteSequence bs = getByteSequence(node.getMessage());
@@ -338,8 +352,7 @@ public class FilePendingMessageCursor extends AbstractPendingMessageCursor imple
     public synchronized void remove(MessageReference node) {
         if (memoryList.remove(node) != null) {
             node.decrementReferenceCount();
-        }
-        if (!isDiskListEmpty()) {
+        } else if (!isDiskListEmpty()) {
             try {
                 getDiskList().remove(node.getMessageId().getPlistLocator());
             } catch (IOException e) {
@@ -431,18 +444,22 @@ public class FilePendingMessageCursor extends AbstractPendingMessageCursor imple
                 start = System.currentTimeMillis();
                 LOG.trace("{}, flushToDisk() mem list size: {} {}", new Object[]{ name, memoryList.size(), (systemUsage != null ? systemUsage.getMemoryUsage() : "") });
              }
-            for (Iterator<MessageReference> iterator = memoryList.iterator(); iterator.hasNext();) {
-                MessageReference node = iterator.next();
-                node.decrementReferenceCount();
-                ByteSequence bs;
-                try {
-                    bs = getByteSequence(node.getMessage());
-                    getDiskList().addLast(node.getMessageId().toString(), bs);
-                } catch (IOException e) {
-                    LOG.error("Failed to write to disk list", e);
-                    throw new RuntimeException(e);
+            List<PListEntry> entries = new ArrayList<PListEntry>(memoryList.size());
+            try {
+                for (Iterator<MessageReference> iterator = memoryList.iterator(); iterator.hasNext();) {
+                    MessageReference node = iterator.next();
+                    node.decrementReferenceCount();
+                    entries.add(new PListEntry(node.getMessageId().toString(), getByteSequence(node.getMessage()), null));
                 }
-
+                if (isDiskListEmpty()) {
+                    getDiskList().addLast(entries);
+                } else {
+                    // messages paged in from disk go back ahead of the rest
+                    getDiskList().addFirst(entries);
+                }
+            } catch (IOException e) {
+                LOG.error("Failed to write to disk list", e);
+                throw new RuntimeException(e);
             }
             memoryList.clear();
             setCacheEnabled(false);
@@ -450,6 +467,25 @@ public class FilePendingMessageCursor extends AbstractPendingMessageCursor imple
         }
     }
 
+    /**
+     * Moves a batch of messages from the head of the disk list to the memory
+     * list, in one read of the store.
+     */
+    protected void pageInFromDisk() {
+        try {
+            for (PListEntry entry : getDiskList().removeFirst(getMaxBatchSize())) {
+                Message message = getMessage(entry.getByteSequence());
+                message.setRegionDestination(regionDestination);
+                message.setMemoryUsage(this.getSystemUsage().getMemoryUsage());
+                message.incrementReferenceCount();
+                memoryList.addMessageLast(message);
+            }
+        } catch (IOException e) {
+            LOG.error("Failed to read from disk list", e);
+            throw new RuntimeException(e);
+        }
+    }
+
     protected boolean isDiskListEmpty() {
         return diskList == null || diskList.isEmpty();
     }
@@ -521,4 +557,41 @@ public class FilePendingMessageCursor extends AbstractPendingMessageCursor imple
             iterator.release();
         }
     }
+
+    final class MemoryThenDiskIterator implements Iterator<MessageReference> {
+        private final Iterator<MessageReference> memoryIterator = memoryList.iterator();
+        private DiskIterator diskIterator;
+        private Iterator<MessageReference> current = memoryIterator;
+        private Iterator<MessageReference> lastReturnedBy;
+
+        public boolean hasNext() {
+            if (current == memoryIterator && !memoryIterator.hasNext()) {
+                diskIterator = new DiskIterator();
+                current = diskIterator;
+            }
+            return current.hasNext();
+        }
+
+        public MessageReference next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            lastReturnedBy = current;
+            return current.next();
+        }
+
+        public void remove() {
+            if (lastReturnedBy == null) {
+                throw new IllegalStateException();
+            }
+            lastReturnedBy.remove();
+            lastReturnedBy = null;
+        }
+
+        public void release() {
+            if (diskIterator != null) {
+                diskIterator.release();
+            }
+        }
+    }
 }
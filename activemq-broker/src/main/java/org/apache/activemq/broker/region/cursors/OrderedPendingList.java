@@ -146,6 +146,12 @@ public class OrderedPendingList implements PendingList {
         return false;
     }
 
+    @Override
+    public MessageReference get(MessageId messageId) {
+        PendingNode node = map.get(messageId);
+        return node != null ? node.getMessage() : null;
+    }
+
     @Override
     public Collection<MessageReference> values() {
         List<MessageReference> messageReferences = new ArrayList<MessageReference>();
@@ -20,6 +20,7 @@ import java.util.Collection;
 import java.util.Iterator;
 
 import org.apache.activemq.broker.region.MessageReference;
+import org.apache.activemq.command.MessageId;
 
 public interface PendingList extends Iterable<MessageReference> {
 
@@ -92,6 +93,16 @@ public interface PendingList extends Iterable<MessageReference> {
      */
     public boolean contains(MessageReference message);
 
+    /**
+     * Returns the MessageReference held in this list for the given MessageId.
+     *
+     * @param messageId
+     *      The MessageId of the MessageReference to look up.
+     *
+     * @return the matching MessageReference or null if it is not contained in this list.
+     */
+    public MessageReference get(MessageId messageId);
+
     /**
      * Returns a new Collection that contains all the MessageReferences currently
      * held in this PendingList.  The elements of the list are ordered using the
@@ -0,0 +1,518 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region.cursors;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.apache.activemq.broker.region.MessageReference;
+import org.apache.activemq.command.MessageId;
+
+/**
+ * An insertion ordered PendingList that indexes its messages by the broker
+ * sequence id of their MessageId rather than by the MessageId object itself.
+ *
+ * Entries live in slots of parallel primitive arrays holding the sequence id
+ * and the previous/next links, with an open addressing long to slot hash table
+ * on top, so no node or map entry objects are allocated per message. When
+ * created off heap, the slot links and the hash table are held in direct
+ * buffers and only the MessageReference array remains on the heap.
+ *
+ * Messages without a broker sequence id (non persistent messages) or whose
+ * sequence id is already taken by another MessageId fall back to a MessageId
+ * keyed map, so lookups are always exact. Getting a message by a MessageId
+ * without a sequence id, such as one parsed from a String, scans the list.
+ *
+ * The add methods do not allocate a PendingNode and return null. Like the
+ * other PendingList implementations this class is not thread safe.
+ */
+public class SequencePendingList implements PendingList {
+
+    private static final int NONE = -1;
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private final boolean offHeap;
+    private final Map<MessageId, Integer> unsequenced = new HashMap<MessageId, Integer>();
+
+    private MessageReference[] refs;
+    private Longs keys;
+    private Ints prev;
+    private Ints next;
+    private Ints table;
+    private int mask;
+    private int head;
+    private int tail;
+    private int free;
+    private int used;
+    private int size;
+
+    public SequencePendingList() {
+        this(false);
+    }
+
+    public SequencePendingList(boolean offHeap) {
+        this.offHeap = offHeap;
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public void clear() {
+        unsequenced.clear();
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    @Override
+    public PendingNode addMessageFirst(MessageReference message) {
+        int slot = insert(message);
+        next.set(slot, head);
+        prev.set(slot, NONE);
+        if (head != NONE) {
+            prev.set(head, slot);
+        } else {
+            tail = slot;
+        }
+        head = slot;
+        return null;
+    }
+
+    @Override
+    public PendingNode addMessageLast(MessageReference message) {
+        int slot = insert(message);
+        prev.set(slot, tail);
+        next.set(slot, NONE);
+        if (tail != NONE) {
+            next.set(tail, slot);
+        } else {
+            head = slot;
+        }
+        tail = slot;
+        return null;
+    }
+
+    /**
+     * @return a detached PendingNode for the removed message or null if the
+     *         message was not present in this list.
+     */
+    @Override
+    public PendingNode remove(MessageReference message) {
+        if (message != null) {
+            int slot = slotOf(message.getMessageId());
+            if (slot != NONE) {
+                MessageReference removed = refs[slot];
+                removeSlot(slot);
+                return new PendingNode(null, removed);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Iterator<MessageReference> iterator() {
+        return new Iterator<MessageReference>() {
+            private int current = NONE;
+            private int following = head;
+
+            @Override
+            public boolean hasNext() {
+                return following != NONE;
+            }
+
+            @Override
+            public MessageReference next() {
+                if (following == NONE) {
+                    throw new NoSuchElementException();
+                }
+                current = following;
+                following = SequencePendingList.this.next.get(current);
+                return refs[current];
+            }
+
+            @Override
+            public void remove() {
+                if (current == NONE) {
+                    throw new IllegalStateException();
+                }
+                removeSlot(current);
+                current = NONE;
+            }
+        };
+    }
+
+    @Override
+    public boolean contains(MessageReference message) {
+        return message != null && slotOf(message.getMessageId()) != NONE;
+    }
+
+    @Override
+    public MessageReference get(MessageId messageId) {
+        int slot = slotOf(messageId);
+        if (slot == NONE && messageId != null && messageId.getBrokerSequenceId() == 0 && unsequenced.size() < size) {
+            slot = scan(messageId);
+        }
+        return slot != NONE ? refs[slot] : null;
+    }
+
+    @Override
+    public Collection<MessageReference> values() {
+        List<MessageReference> messageReferences = new ArrayList<MessageReference>(size);
+        for (int slot = head; slot != NONE; slot = next.get(slot)) {
+            messageReferences.add(refs[slot]);
+        }
+        return messageReferences;
+    }
+
+    @Override
+    public void addAll(PendingList pendingList) {
+        if (pendingList != null) {
+            for (MessageReference messageReference : pendingList) {
+                addMessageLast(messageReference);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SequencePendingList(" + System.identityHashCode(this) + ")";
+    }
+
+    private int insert(MessageReference message) {
+        MessageId messageId = message.getMessageId();
+        int existing = slotOf(messageId);
+        if (existing != NONE) {
+            removeSlot(existing);
+        }
+        int slot = allocateSlot();
+        refs[slot] = message;
+        long sequence = messageId.getBrokerSequenceId();
+        if (sequence != 0 && find(sequence) == NONE) {
+            keys.set(slot, sequence);
+            index(sequence, slot);
+        } else {
+            keys.set(slot, 0);
+            unsequenced.put(messageId, Integer.valueOf(slot));
+        }
+        size++;
+        return slot;
+    }
+
+    private int slotOf(MessageId messageId) {
+        if (messageId == null) {
+            return NONE;
+        }
+        long sequence = messageId.getBrokerSequenceId();
+        if (sequence != 0) {
+            int slot = find(sequence);
+            if (slot != NONE && messageId.equals(refs[slot].getMessageId())) {
+                return slot;
+            }
+        }
+        if (!unsequenced.isEmpty()) {
+            Integer slot = unsequenced.get(messageId);
+            if (slot != null) {
+                return slot.intValue();
+            }
+        }
+        return NONE;
+    }
+
+    // an id parsed from its String form, such as one given to JMX, carries no
+    // broker sequence id so the index cannot find a sequenced message by it
+    private int scan(MessageId messageId) {
+        for (int slot = head; slot != NONE; slot = next.get(slot)) {
+            if (keys.get(slot) != 0 && messageId.equals(refs[slot].getMessageId())) {
+                return slot;
+            }
+        }
+        return NONE;
+    }
+
+    private void removeSlot(int slot) {
+        long sequence = keys.get(slot);
+        if (sequence != 0) {
+            unindex(sequence, slot);
+        } else {
+            unsequenced.remove(refs[slot].getMessageId());
+        }
+
+        int before = prev.get(slot);
+        int after = next.get(slot);
+        if (before != NONE) {
+            next.set(before, after);
+        } else {
+            head = after;
+        }
+        if (after != NONE) {
+            prev.set(after, before);
+        } else {
+            tail = before;
+        }
+
+        refs[slot] = null;
+        next.set(slot, free);
+        free = slot;
+        size--;
+    }
+
+    private int allocateSlot() {
+        if (free != NONE) {
+            int slot = free;
+            free = next.get(slot);
+            return slot;
+        }
+        if (used == refs.length) {
+            grow();
+        }
+        return used++;
+    }
+
+    private int find(long sequence) {
+        for (int i = bucket(sequence); ; i = (i + 1) & mask) {
+            int entry = table.get(i);
+            if (entry == 0) {
+                return NONE;
+            }
+            if (keys.get(entry - 1) == sequence) {
+                return entry - 1;
+            }
+        }
+    }
+
+    private void index(long sequence, int slot) {
+        int i = bucket(sequence);
+        while (table.get(i) != 0) {
+            i = (i + 1) & mask;
+        }
+        table.set(i, slot + 1);
+    }
+
+    private void unindex(long sequence, int slot) {
+        int i = bucket(sequence);
+        while (table.get(i) != slot + 1) {
+            i = (i + 1) & mask;
+        }
+        // backward shift deletion keeps the probe sequences intact without tombstones
+        table.set(i, 0);
+        int j = i;
+        while (true) {
+            j = (j + 1) & mask;
+            int entry = table.get(j);
+            if (entry == 0) {
+                return;
+            }
+            int k = bucket(keys.get(entry - 1));
+            boolean inPlace = i <= j ? (i < k && k <= j) : (i < k || k <= j);
+            if (!inPlace) {
+                table.set(i, entry);
+                table.set(j, 0);
+                i = j;
+            }
+        }
+    }
+
+    private int bucket(long sequence) {
+        long h = sequence * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private void allocate(int capacity) {
+        refs = new MessageReference[capacity];
+        keys = longs(capacity);
+        prev = ints(capacity);
+        next = ints(capacity);
+        table = ints(capacity * 2);
+        mask = capacity * 2 - 1;
+        head = NONE;
+        tail = NONE;
+        free = NONE;
+        used = 0;
+        size = 0;
+    }
+
+    private void grow() {
+        int capacity = refs.length * 2;
+        refs = Arrays.copyOf(refs, capacity);
+        keys = keys.copyOf(capacity);
+        prev = prev.copyOf(capacity);
+        next = next.copyOf(capacity);
+        table = ints(capacity * 2);
+        mask = capacity * 2 - 1;
+        for (int slot = head; slot != NONE; slot = next.get(slot)) {
+            long sequence = keys.get(slot);
+            if (sequence != 0) {
+                index(sequence, slot);
+            }
+        }
+    }
+
+    private Ints ints(int length) {
+        return offHeap ? new DirectInts(length) : new HeapInts(length);
+    }
+
+    private Longs longs(int length) {
+        return offHeap ? new DirectLongs(length) : new HeapLongs(length);
+    }
+
+    private abstract static class Ints {
+        abstract int get(int index);
+
+        abstract void set(int index, int value);
+
+        abstract Ints copyOf(int length);
+    }
+
+    private abstract static class Longs {
+        abstract long get(int index);
+
+        abstract void set(int index, long value);
+
+        abstract Longs copyOf(int length);
+    }
+
+    private static final class HeapInts extends Ints {
+        private final int[] values;
+
+        HeapInts(int length) {
+            this(new int[length]);
+        }
+
+        HeapInts(int[] values) {
+            this.values = values;
+        }
+
+        @Override
+        int get(int index) {
+            return values[index];
+        }
+
+        @Override
+        void set(int index, int value) {
+            values[index] = value;
+        }
+
+        @Override
+        Ints copyOf(int length) {
+            return new HeapInts(Arrays.copyOf(values, length));
+        }
+    }
+
+    private static final class HeapLongs extends Longs {
+        private final long[] values;
+
+        HeapLongs(int length) {
+            this(new long[length]);
+        }
+
+        HeapLongs(long[] values) {
+            this.values = values;
+        }
+
+        @Override
+        long get(int index) {
+            return values[index];
+        }
+
+        @Override
+        void set(int index, long value) {
+            values[index] = value;
+        }
+
+        @Override
+        Longs copyOf(int length) {
+            return new HeapLongs(Arrays.copyOf(values, length));
+        }
+    }
+
+    private static final class DirectInts extends Ints {
+        private final IntBuffer values;
+
+        DirectInts(int length) {
+            values = ByteBuffer.allocateDirect(length * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+        }
+
+        @Override
+        int get(int index) {
+            return values.get(index);
+        }
+
+        @Override
+        void set(int index, int value) {
+            values.put(index, value);
+        }
+
+        @Override
+        Ints copyOf(int length) {
+            DirectInts copy = new DirectInts(length);
+            IntBuffer source = values.duplicate();
+            source.position(0).limit(Math.min(length, source.capacity()));
+            copy.values.put(source);
+            copy.values.clear();
+            return copy;
+        }
+    }
+
+    private static final class DirectLongs extends Longs {
+        private final LongBuffer values;
+
+        DirectLongs(int length) {
+            values = ByteBuffer.allocateDirect(length * 8).order(ByteOrder.nativeOrder()).asLongBuffer();
+        }
+
+        @Override
+        long get(int index) {
+            return values.get(index);
+        }
+
+        @Override
+        void set(int index, long value) {
+            values.put(index, value);
+        }
+
+        @Override
+        Longs copyOf(int length) {
+            DirectLongs copy = new DirectLongs(length);
+            LongBuffer source = values.duplicate();
+            source.position(0).limit(Math.min(length, source.capacity()));
+            copy.values.put(source);
+            copy.values.clear();
+            return copy;
+        }
+    }
+}
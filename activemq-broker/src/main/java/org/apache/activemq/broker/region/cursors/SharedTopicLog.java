@@ -0,0 +1,365 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region.cursors;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.apache.activemq.broker.Broker;
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.broker.region.MessageReference;
+import org.apache.activemq.command.Message;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.openwire.OpenWireFormat;
+import org.apache.activemq.store.PList;
+import org.apache.activemq.store.PListEntry;
+import org.apache.activemq.store.PListStore;
+import org.apache.activemq.usage.SystemUsage;
+import org.apache.activemq.usage.Usage;
+import org.apache.activemq.usage.UsageListener;
+import org.apache.activemq.util.ByteSequence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The messages pending for the non durable subscriptions of a topic, shared by
+ * their {@link SharedTopicLogCursor}s.
+ *
+ * A message is held once however many subscriptions it is pending for, each
+ * cursor only keeps the sequence numbers of its entries and an entry is
+ * released once the last cursor removes it. Entries are kept in fixed size
+ * segments that are dropped once none of their entries is pending. When the
+ * memory usage reaches the high water mark the segments are written to the
+ * temporary store, once for all the subscriptions, and a segment is read back
+ * as a whole when a cursor gets to it. A segment that was read back stays in
+ * memory until the memory usage changes again, so that its entries are not
+ * dropped and read again for every message appended.
+ */
+public class SharedTopicLog implements UsageListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SharedTopicLog.class);
+    // how far back an append looks for the same message added by another cursor
+    private static final int TAIL_SCAN = 16;
+
+    private final String name;
+    private final PListStore store;
+    private final int segmentSize;
+    private final OpenWireFormat wireFormat = new OpenWireFormat();
+    private final ArrayList<Segment> segments = new ArrayList<Segment>();
+    // the sequence of the latest entry of each message
+    private final HashMap<MessageId, Long> sequences = new HashMap<MessageId, Long>();
+    private long nextSequence;
+    private int size;
+    private int cursors;
+    private SystemUsage systemUsage;
+    private int memoryUsageHighWaterMark = 70;
+    private Destination regionDestination;
+
+    public SharedTopicLog(Broker broker, String name, int segmentSize) {
+        this.name = name;
+        this.segmentSize = segmentSize;
+        // the store can be null if the BrokerService has persistence
+        // turned off
+        this.store = broker.getTempDataStore();
+        this.wireFormat.setVersion(broker.getBrokerService().getStoreOpenWireVersion());
+    }
+
+    public synchronized void addCursor() {
+        cursors++;
+    }
+
+    /**
+     * Called by a cursor that is destroyed, the log is closed when it was the
+     * last one.
+     *
+     * @return true if the log got closed
+     */
+    public synchronized boolean removeCursor() {
+        if (--cursors > 0) {
+            return false;
+        }
+        if (systemUsage != null) {
+            systemUsage.getMemoryUsage().removeUsageListener(this);
+            systemUsage = null;
+        }
+        for (Segment segment : segments) {
+            segment.destroy();
+        }
+        segments.clear();
+        sequences.clear();
+        size = 0;
+        return true;
+    }
+
+    synchronized void start(SystemUsage usage, int highWaterMark) {
+        if (systemUsage == null && usage != null) {
+            systemUsage = usage;
+            memoryUsageHighWaterMark = highWaterMark;
+            systemUsage.getMemoryUsage().addUsageListener(this);
+        }
+    }
+
+    /**
+     * Adds a reference to the message to the log, shared with the entry of
+     * another cursor if the message was added just before.
+     *
+     * @return the sequence of the entry
+     */
+    synchronized long append(MessageReference node) {
+        Message message = node.getMessage();
+        MessageId messageId = message.getMessageId();
+        if (!segments.isEmpty()) {
+            long first = segments.get(0).base;
+            for (long sequence = nextSequence - 1; sequence >= first && sequence >= nextSequence - TAIL_SCAN; sequence--) {
+                Segment segment = segmentFor(sequence);
+                int index = (int) (sequence - segment.base);
+                if (segment.refs[index] > 0 && messageId.equals(segment.ids[index])) {
+                    segment.refs[index]++;
+                    return sequence;
+                }
+            }
+        }
+        if (regionDestination == null) {
+            regionDestination = (Destination) message.getRegionDestination();
+        }
+        Segment tail = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (tail == null || tail.count == segmentSize) {
+            // the full segments are written out once per new segment rather
+            // than on every append while the memory usage is high
+            if (tail != null && systemUsage != null && systemUsage.getMemoryUsage().isFull(memoryUsageHighWaterMark)) {
+                flush(false);
+            }
+            tail = new Segment(nextSequence);
+            segments.add(tail);
+        }
+        int index = tail.count++;
+        tail.messages[index] = message;
+        tail.ids[index] = messageId;
+        tail.refs[index] = 1;
+        tail.live++;
+        message.incrementReferenceCount();
+        size++;
+        sequences.put(messageId, Long.valueOf(nextSequence));
+        return nextSequence++;
+    }
+
+    /**
+     * @return the message of the entry, read back from the temporary store if
+     *         it was written out
+     */
+    synchronized Message get(long sequence) {
+        Segment segment = segmentFor(sequence);
+        int index = (int) (sequence - segment.base);
+        if (segment.messages[index] == null && segment.refs[index] > 0) {
+            segment.load();
+        }
+        return segment.messages[index];
+    }
+
+    /**
+     * @return the sequence of the latest entry of the message, or -1 if it is
+     *         not pending
+     */
+    synchronized long getSequence(MessageId messageId) {
+        Long sequence = sequences.get(messageId);
+        return sequence != null ? sequence.longValue() : -1;
+    }
+
+    synchronized MessageId getMessageId(long sequence) {
+        Segment segment = segmentFor(sequence);
+        return segment.ids[(int) (sequence - segment.base)];
+    }
+
+    /**
+     * Releases the reference of a cursor to the entry.
+     */
+    synchronized void release(long sequence) {
+        Segment segment = segmentFor(sequence);
+        int index = (int) (sequence - segment.base);
+        if (--segment.refs[index] > 0) {
+            return;
+        }
+        if (segment.messages[index] != null) {
+            segment.messages[index].decrementReferenceCount();
+            segment.messages[index] = null;
+        }
+        Long latest = sequences.get(segment.ids[index]);
+        if (latest != null && latest.longValue() == sequence) {
+            sequences.remove(segment.ids[index]);
+        }
+        segment.ids[index] = null;
+        segment.live--;
+        size--;
+        while (!segments.isEmpty()) {
+            Segment head = segments.get(0);
+            if (head.live > 0) {
+                break;
+            }
+            head.destroy();
+            segments.remove(0);
+        }
+    }
+
+    /**
+     * @return the number of entries pending for at least one cursor
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of segments that have been written to the temporary store
+     */
+    public synchronized int getStoredSegmentCount() {
+        int count = 0;
+        for (Segment segment : segments) {
+            if (segment.diskList != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    synchronized boolean isStored() {
+        return getStoredSegmentCount() > 0;
+    }
+
+    @Override
+    public void onUsageChanged(Usage usage, int oldPercentUsage, int newPercentUsage) {
+        if (newPercentUsage >= memoryUsageHighWaterMark) {
+            flushToDisk();
+        }
+    }
+
+    /**
+     * Writes the entries held in memory to the temporary store and drops
+     * them, including those of segments that were read back.
+     */
+    protected synchronized void flushToDisk() {
+        flush(true);
+    }
+
+    private void flush(boolean evictLoaded) {
+        if (store == null || systemUsage == null || systemUsage.getTempUsage().isFull()) {
+            return;
+        }
+        try {
+            for (Segment segment : segments) {
+                if (evictLoaded || !segment.loaded) {
+                    segment.flush();
+                }
+            }
+        } catch (Exception e) {
+            LOG.error("Failed to write {} to the temporary store", name, e);
+        }
+    }
+
+    private Segment segmentFor(long sequence) {
+        return segments.get((int) ((sequence - segments.get(0).base) / segmentSize));
+    }
+
+    @Override
+    public String toString() {
+        return "SharedTopicLog:" + name + ", size=" + size;
+    }
+
+    private final class Segment {
+        final long base;
+        final Message[] messages = new Message[segmentSize];
+        final MessageId[] ids = new MessageId[segmentSize];
+        final int[] refs = new int[segmentSize];
+        int count;
+        int live;
+        // entries below this index have been written to the disk list
+        int flushed;
+        // read back from the disk list since it was last flushed
+        boolean loaded;
+        PList diskList;
+
+        Segment(long base) {
+            this.base = base;
+        }
+
+        void flush() throws Exception {
+            if (live == 0) {
+                return;
+            }
+            if (diskList == null) {
+                diskList = store.getPList(name + ":" + base);
+            }
+            for (int i = flushed; i < count; i++) {
+                if (refs[i] > 0) {
+                    ByteSequence packet = wireFormat.marshal(messages[i]);
+                    diskList.addLast(String.valueOf(i), packet);
+                }
+            }
+            flushed = count;
+            loaded = false;
+            for (int i = 0; i < flushed; i++) {
+                if (messages[i] != null) {
+                    messages[i].decrementReferenceCount();
+                    messages[i] = null;
+                }
+            }
+        }
+
+        void load() {
+            try {
+                PList.PListIterator iterator = diskList.iterator();
+                try {
+                    while (iterator.hasNext()) {
+                        PListEntry entry = iterator.next();
+                        int index = Integer.parseInt(entry.getId());
+                        if (refs[index] > 0 && messages[index] == null) {
+                            Message message = (Message) wireFormat.unmarshal(entry.getByteSequence());
+                            message.setRegionDestination(regionDestination);
+                            if (regionDestination != null) {
+                                message.setMemoryUsage(regionDestination.getMemoryUsage());
+                            }
+                            message.incrementReferenceCount();
+                            messages[index] = message;
+                        }
+                    }
+                } finally {
+                    iterator.release();
+                }
+                loaded = true;
+            } catch (IOException e) {
+                LOG.error("Failed to read {} from the temporary store", name, e);
+                throw new RuntimeException(e);
+            }
+        }
+
+        void destroy() {
+            for (int i = 0; i < count; i++) {
+                if (messages[i] != null) {
+                    messages[i].decrementReferenceCount();
+                    messages[i] = null;
+                }
+            }
+            if (diskList != null) {
+                try {
+                    store.removePList(diskList.getName());
+                } catch (Exception e) {
+                    LOG.warn("Failed to remove {} from the temporary store", diskList.getName(), e);
+                }
+                diskList = null;
+            }
+        }
+    }
+}
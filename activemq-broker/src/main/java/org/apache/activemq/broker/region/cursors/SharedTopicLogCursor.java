@@ -0,0 +1,300 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region.cursors;
+
+import java.util.LinkedList;
+
+import org.apache.activemq.broker.region.MessageReference;
+import org.apache.activemq.command.Message;
+import org.apache.activemq.command.MessageId;
+
+/**
+ * A pending message cursor for a topic subscription that keeps its messages in
+ * a {@link SharedTopicLog} shared with the other subscriptions of the topic,
+ * holding only the sequence numbers of its entries.
+ *
+ * The sequences are kept in a ring. A removed entry is marked in place, by
+ * storing its sequence as a negative value, and the ring is compacted once
+ * half of it is removed entries, so removing from the middle does not shift
+ * the entries after it.
+ */
+public class SharedTopicLogCursor extends AbstractPendingMessageCursor {
+
+    private static final int MIN_COMPACT = 16;
+
+    private final SharedTopicLog log;
+    private long[] sequences = new long[16];
+    private int head;
+    // the slots in use, including removed entries
+    private int slots;
+    private int count;
+    private int removed;
+    private int position;
+    // whether the sequences increase from head to tail, so they can be searched
+    private boolean ordered = true;
+
+    public SharedTopicLogCursor(SharedTopicLog log) {
+        super(false);
+        this.log = log;
+    }
+
+    @Override
+    public synchronized void start() throws Exception {
+        super.start();
+        log.start(systemUsage, getMemoryUsageHighWaterMark());
+    }
+
+    public SharedTopicLog getLog() {
+        return log;
+    }
+
+    @Override
+    public synchronized boolean isEmpty() {
+        return count == 0;
+    }
+
+    @Override
+    public synchronized void reset() {
+        position = 0;
+        last = null;
+    }
+
+    @Override
+    public synchronized void addMessageLast(MessageReference node) {
+        long sequence = log.append(node);
+        ensureCapacity();
+        if (slots > 0 && sequence <= sequenceOf(slots - 1)) {
+            ordered = false;
+        }
+        sequences[slotIndex(slots)] = sequence;
+        slots++;
+        count++;
+    }
+
+    @Override
+    public synchronized void addMessageFirst(MessageReference node) {
+        long sequence = log.append(node);
+        ensureCapacity();
+        if (slots > 0 && sequence >= sequenceOf(0)) {
+            ordered = false;
+        }
+        head = (head - 1 + sequences.length) % sequences.length;
+        sequences[head] = sequence;
+        slots++;
+        count++;
+        if (position > 0) {
+            position++;
+        }
+    }
+
+    @Override
+    public synchronized boolean hasNext() {
+        while (position < slots && isRemoved(position)) {
+            position++;
+        }
+        return position < slots;
+    }
+
+    @Override
+    public synchronized MessageReference next() {
+        while (hasNext()) {
+            int slot = position++;
+            Message message = log.get(sequences[slotIndex(slot)]);
+            if (message != null) {
+                last = message;
+                message.incrementReferenceCount();
+                return message;
+            }
+            // the log no longer holds the message of the entry
+            removeAt(slot);
+        }
+        last = null;
+        return null;
+    }
+
+    /**
+     * remove the message at the cursor position
+     */
+    @Override
+    public synchronized void remove() {
+        if (position > 0) {
+            removeAt(position - 1);
+        }
+    }
+
+    @Override
+    public synchronized void remove(MessageReference node) {
+        int slot = find(node.getMessageId());
+        if (slot >= 0) {
+            removeAt(slot);
+        }
+    }
+
+    @Override
+    public synchronized int size() {
+        return count;
+    }
+
+    @Override
+    public synchronized void clear() {
+        for (int i = 0; i < slots; i++) {
+            if (!isRemoved(i)) {
+                log.release(sequences[slotIndex(i)]);
+            }
+        }
+        head = 0;
+        slots = 0;
+        count = 0;
+        removed = 0;
+        position = 0;
+        ordered = true;
+        last = null;
+    }
+
+    @Override
+    public synchronized LinkedList<MessageReference> pageInList(int maxItems) {
+        LinkedList<MessageReference> result = new LinkedList<MessageReference>();
+        for (int i = 0; i < slots && result.size() < maxItems; i++) {
+            if (!isRemoved(i)) {
+                Message message = log.get(sequences[slotIndex(i)]);
+                if (message != null) {
+                    message.incrementReferenceCount();
+                    result.add(message);
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized boolean isFull() {
+        return super.isFull() || (systemUsage != null && log.isStored() && systemUsage.getTempUsage().isFull());
+    }
+
+    @Override
+    public boolean hasMessagesBufferedToDeliver() {
+        return !isEmpty();
+    }
+
+    @Override
+    public boolean isTransient() {
+        return true;
+    }
+
+    @Override
+    public synchronized void destroy() throws Exception {
+        super.destroy();
+        clear();
+        log.removeCursor();
+    }
+
+    private int slotIndex(int slot) {
+        return (head + slot) % sequences.length;
+    }
+
+    private boolean isRemoved(int slot) {
+        return sequences[slotIndex(slot)] < 0;
+    }
+
+    // the sequence of the slot, whether or not it has been removed
+    private long sequenceOf(int slot) {
+        long value = sequences[slotIndex(slot)];
+        return value < 0 ? -value - 1 : value;
+    }
+
+    private int find(MessageId messageId) {
+        long sequence = log.getSequence(messageId);
+        if (sequence >= 0 && ordered) {
+            int low = 0;
+            int high = slots - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                long value = sequenceOf(mid);
+                if (value < sequence) {
+                    low = mid + 1;
+                } else if (value > sequence) {
+                    high = mid - 1;
+                } else {
+                    return isRemoved(mid) ? -1 : mid;
+                }
+            }
+            // the cursor may hold an older entry of the same message
+        }
+        for (int i = 0; i < slots; i++) {
+            if (!isRemoved(i) && messageId.equals(log.getMessageId(sequences[slotIndex(i)]))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void removeAt(int slot) {
+        int index = slotIndex(slot);
+        long sequence = sequences[index];
+        sequences[index] = -sequence - 1;
+        count--;
+        removed++;
+        while (slots > 0 && isRemoved(0)) {
+            head = (head + 1) % sequences.length;
+            slots--;
+            removed--;
+            if (position > 0) {
+                position--;
+            }
+        }
+        while (slots > 0 && isRemoved(slots - 1)) {
+            slots--;
+            removed--;
+        }
+        if (position > slots) {
+            position = slots;
+        }
+        if (slots == 0) {
+            head = 0;
+            ordered = true;
+        } else if (removed >= MIN_COMPACT && removed * 2 >= slots) {
+            compact(sequences.length);
+        }
+        log.release(sequence);
+    }
+
+    private void ensureCapacity() {
+        if (slots == sequences.length) {
+            compact(removed * 2 >= slots ? sequences.length : sequences.length * 2);
+        }
+    }
+
+    // moves the entries that are not removed to the start of a ring of the given length
+    private void compact(int length) {
+        long[] compacted = new long[length];
+        int live = 0;
+        int newPosition = 0;
+        for (int i = 0; i < slots; i++) {
+            if (i == position) {
+                newPosition = live;
+            }
+            if (!isRemoved(i)) {
+                compacted[live++] = sequences[slotIndex(i)];
+            }
+        }
+        position = position >= slots ? live : newPosition;
+        sequences = compacted;
+        head = 0;
+        slots = live;
+        removed = 0;
+    }
+}
@@ -0,0 +1,227 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region.policy;
+
+/**
+ * Works out the prefetch window of a single subscription from the rate at
+ * which its consumer acknowledges messages and the round trip time of a
+ * message, the time from its dispatch to its acknowledgement.
+ *
+ * Once per adjustment period the window is set to the number of messages the
+ * consumer acknowledged per second times the smallest round trip time seen,
+ * times the headroom. A window that is too small limits the rate but not the
+ * round trip time, so such a window grows by the headroom each period until
+ * the consumer is busy; a window that is too big only adds to the time the
+ * messages wait in the consumer, so it shrinks to what the consumer can take.
+ * The window stays between the minimum prefetch and the prefetch the consumer
+ * asked for.
+ *
+ * Messages waiting in the consumer add to their round trip time, so only a
+ * message dispatched with none ahead of it in flight replaces a smaller round
+ * trip time. Optionally the smallest round trip time expires after ten
+ * adjustment periods and the window is then drained to a single message for
+ * one round trip to measure it again, which stalls a fast consumer for that
+ * round trip.
+ *
+ * The methods take the time in nanoseconds and are called with the dispatch
+ * lock of the subscription held.
+ */
+public class AdaptivePrefetchController {
+
+    private static final int ROUND_TRIP_EXPIRY = 10;
+
+    private final int minimumPrefetch;
+    private final long adjustmentPeriod;
+    private final int headroom;
+    private final boolean drainToMeasure;
+    private int maximumPrefetch;
+    private int prefetch;
+
+    private long dispatched;
+    private long acknowledged;
+    // the dispatch count, time and messages in flight ahead of the message
+    // whose round trip is timed
+    private long sampleSequence;
+    private long sampleTime;
+    private int sampleQueued;
+
+    private long periodStart;
+    private long periodAcks;
+    private long roundTrip = -1;
+    private long roundTripTime;
+    private int drainedPrefetch;
+
+    private double acknowledgeRate;
+    private long adjustments;
+    private String lastDecision = "none";
+
+    public AdaptivePrefetchController(int maximumPrefetch, int minimumPrefetch, long adjustmentPeriod, int headroom) {
+        this(maximumPrefetch, minimumPrefetch, adjustmentPeriod, headroom, false);
+    }
+
+    public AdaptivePrefetchController(int maximumPrefetch, int minimumPrefetch, long adjustmentPeriod, int headroom, boolean drainToMeasure) {
+        this.maximumPrefetch = maximumPrefetch;
+        this.prefetch = maximumPrefetch;
+        this.minimumPrefetch = Math.max(1, minimumPrefetch);
+        this.adjustmentPeriod = adjustmentPeriod * 1000000;
+        this.headroom = headroom;
+        this.drainToMeasure = drainToMeasure;
+    }
+
+    /**
+     * @param inFlight the number of messages dispatched ahead of this one and
+     *        not yet acknowledged
+     * @param now the time in nanoseconds
+     */
+    public synchronized void onDispatch(int inFlight, long now) {
+        dispatched++;
+        if (sampleSequence == 0 || (isDraining() && inFlight == 0)) {
+            sampleSequence = dispatched;
+            sampleTime = now;
+            sampleQueued = inFlight;
+        }
+        if (periodStart == 0) {
+            periodStart = now;
+        }
+    }
+
+    /**
+     * Called for acknowledgements of consumed messages only.
+     *
+     * @param count the number of messages acknowledged
+     * @param requestedPrefetch the prefetch the consumer asked for
+     * @param inFlight the number of messages dispatched and not yet acknowledged
+     * @param now the time in nanoseconds
+     * @return the new prefetch of the subscription or 0 if it does not change
+     */
+    public synchronized int onAcknowledge(int count, int requestedPrefetch, int inFlight, long now) {
+        if (requestedPrefetch != maximumPrefetch) {
+            // changed by the consumer, the new value is the upper bound
+            maximumPrefetch = requestedPrefetch;
+            prefetch = requestedPrefetch;
+            drainedPrefetch = 0;
+        }
+        if (maximumPrefetch <= 0) {
+            // pull consumers have no window to adapt
+            return 0;
+        }
+        acknowledged += count;
+        periodAcks += count;
+        if (inFlight == 0) {
+            acknowledged = dispatched;
+        }
+        if (sampleSequence != 0 && acknowledged >= sampleSequence) {
+            long sample = now - sampleTime;
+            sampleSequence = 0;
+            if (isDraining() && sampleQueued == 0) {
+                roundTrip = sample;
+                roundTripTime = now;
+                return restore("drained", now);
+            }
+            // nothing was queued ahead of an uncontended sample, it is the round trip as it is now
+            if (roundTrip < 0 || sample <= roundTrip || sampleQueued == 0) {
+                roundTrip = sample;
+                roundTripTime = now;
+            }
+        }
+        long elapsed = now - periodStart;
+        if (periodStart == 0 || elapsed < adjustmentPeriod) {
+            return 0;
+        }
+        if (isDraining()) {
+            // no message made it through an empty consumer
+            return restore("drain failed", now);
+        }
+        return adjust(elapsed, now);
+    }
+
+    private boolean isDraining() {
+        return drainedPrefetch > 0;
+    }
+
+    private int adjust(long elapsed, long now) {
+        double rate = periodAcks * 1000000000d / elapsed;
+        acknowledgeRate = rate;
+        periodStart = now;
+        periodAcks = 0;
+        if (roundTrip < 0) {
+            return decide("hold, no round trip measured", prefetch);
+        }
+        if (drainToMeasure && now - roundTripTime > ROUND_TRIP_EXPIRY * adjustmentPeriod) {
+            drainedPrefetch = prefetch;
+            return decide("drain to measure the round trip", 1);
+        }
+        double window = rate * roundTrip / 1000000000d * headroom / 100;
+        return decide("fit", (int) Math.max(minimumPrefetch, Math.min(maximumPrefetch, Math.ceil(window))));
+    }
+
+    private int restore(String decision, long now) {
+        int target = Math.min(drainedPrefetch, maximumPrefetch);
+        drainedPrefetch = 0;
+        roundTripTime = now;
+        periodStart = now;
+        periodAcks = 0;
+        return decide(decision, target);
+    }
+
+    private int decide(String decision, int target) {
+        lastDecision = decision + ": " + prefetch + " -> " + target + " at " + Math.round(acknowledgeRate) + " acks/s, round trip "
+                       + (roundTrip < 0 ? "unknown" : (roundTrip / 1000) + " us");
+        if (target == prefetch) {
+            return 0;
+        }
+        prefetch = target;
+        adjustments++;
+        return target;
+    }
+
+    /**
+     * @return the prefetch the consumer asked for
+     */
+    public synchronized int getMaximumPrefetch() {
+        return maximumPrefetch;
+    }
+
+    /**
+     * @return the acknowledgements per second over the last adjustment period
+     */
+    public synchronized double getAcknowledgeRate() {
+        return acknowledgeRate;
+    }
+
+    /**
+     * @return the smallest round trip time in nanoseconds or -1 if none was
+     *         measured
+     */
+    public synchronized long getRoundTrip() {
+        return roundTrip;
+    }
+
+    /**
+     * @return the number of times the window was changed
+     */
+    public synchronized long getAdjustments() {
+        return adjustments;
+    }
+
+    /**
+     * @return a description of the last adjustment
+     */
+    public synchronized String getLastDecision() {
+        return lastDecision;
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region.policy;
+
+/**
+ * Adapts the prefetch of queue and durable topic subscriptions to the rate at
+ * which their consumers acknowledge messages, so that slow consumers do not
+ * hold on to messages that faster consumers could take. The prefetch the
+ * consumer asked for is the upper bound of the adapted window.
+ *
+ * @see AdaptivePrefetchController
+ * @org.apache.xbean.XBean
+ */
+public class AdaptivePrefetchPolicy {
+
+    private int minimumPrefetch = 1;
+    private long adjustmentPeriod = 1000;
+    private int headroom = 200;
+    private boolean drainToMeasureRoundTrip;
+
+    public AdaptivePrefetchController createController(int maximumPrefetch) {
+        return new AdaptivePrefetchController(maximumPrefetch, minimumPrefetch, adjustmentPeriod, headroom, drainToMeasureRoundTrip);
+    }
+
+    public int getMinimumPrefetch() {
+        return minimumPrefetch;
+    }
+
+    /**
+     * Sets the smallest window a subscription is adjusted to, default 1.
+     */
+    public void setMinimumPrefetch(int minimumPrefetch) {
+        this.minimumPrefetch = minimumPrefetch;
+    }
+
+    public long getAdjustmentPeriod() {
+        return adjustmentPeriod;
+    }
+
+    /**
+     * Sets the time in milliseconds over which the acknowledgement rate is
+     * measured before the window is adjusted, default 1000.
+     */
+    public void setAdjustmentPeriod(long adjustmentPeriod) {
+        this.adjustmentPeriod = adjustmentPeriod;
+    }
+
+    public int getHeadroom() {
+        return headroom;
+    }
+
+    /**
+     * Sets the window as a percentage of the messages a consumer acknowledges
+     * within its round trip time, default 200.
+     */
+    public void setHeadroom(int headroom) {
+        this.headroom = headroom;
+    }
+
+    public boolean isDrainToMeasureRoundTrip() {
+        return drainToMeasureRoundTrip;
+    }
+
+    /**
+     * Sets whether the window is drained to one message every ten adjustment
+     * periods to measure the round trip time again, default false. This lets
+     * the window follow a consumer that speeds up, at the cost of stalling it
+     * for a round trip each time.
+     */
+    public void setDrainToMeasureRoundTrip(boolean drainToMeasureRoundTrip) {
+        this.drainToMeasureRoundTrip = drainToMeasureRoundTrip;
+    }
+}
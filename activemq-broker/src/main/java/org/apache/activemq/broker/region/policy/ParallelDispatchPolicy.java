@@ -0,0 +1,194 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region.policy;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.activemq.broker.region.MessageReference;
+import org.apache.activemq.broker.region.Subscription;
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.filter.MessageEvaluationContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Dispatch policy that splits the subscriptions of a topic into partitions
+ * and dispatches a message to the partitions concurrently, the calling thread
+ * taking one partition and a bounded pool of threads the others. When no pool
+ * thread is free the calling thread dispatches the partition itself.
+ *
+ * A dispatch returns once the message has been added to every matching
+ * subscription, so each subscription sees the messages of a producer in the
+ * order they were sent, as with the {@link SimpleDispatchPolicy}. Topics with
+ * fewer subscriptions than the minimum are dispatched serially.
+ *
+ * @org.apache.xbean.XBean
+ */
+public class ParallelDispatchPolicy implements DispatchPolicy {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelDispatchPolicy.class);
+    private static final AtomicInteger POLICY_COUNT = new AtomicInteger();
+
+    private int partitions = Runtime.getRuntime().availableProcessors();
+    private int minimumSubscriptions = 32;
+    private ThreadPoolExecutor executor;
+
+    public boolean dispatch(MessageReference node, MessageEvaluationContext msgContext, List<Subscription> consumers) throws Exception {
+        Subscription[] subscriptions = consumers.toArray(new Subscription[consumers.size()]);
+        int count = Math.min(partitions, subscriptions.length / Math.max(1, minimumSubscriptions / 2));
+        if (count < 2 || subscriptions.length < minimumSubscriptions) {
+            return dispatch(node, msgContext, subscriptions, 0, subscriptions.length) > 0;
+        }
+
+        // unmarshal the properties once here rather than in every partition
+        // that evaluates a selector
+        if (node.getMessage() != null) {
+            node.getMessage().getProperties();
+        }
+
+        ThreadPoolExecutor pool = getExecutor();
+        PartitionDispatch[] others = new PartitionDispatch[count - 1];
+        CountDownLatch done = new CountDownLatch(others.length);
+        int size = subscriptions.length / count;
+        for (int i = 0; i < others.length; i++) {
+            int start = size * (i + 1);
+            int end = i == others.length - 1 ? subscriptions.length : start + size;
+            others[i] = new PartitionDispatch(node, msgContext.getDestination(), subscriptions, start, end, done);
+            pool.execute(others[i]);
+        }
+
+        int dispatched;
+        try {
+            dispatched = dispatch(node, msgContext, subscriptions, 0, size);
+        } finally {
+            done.await();
+        }
+        for (PartitionDispatch partition : others) {
+            if (partition.error != null) {
+                throw partition.error;
+            }
+            dispatched += partition.dispatched;
+        }
+        return dispatched > 0;
+    }
+
+    protected int dispatch(MessageReference node, MessageEvaluationContext msgContext, Subscription[] subscriptions, int start, int end) throws Exception {
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            Subscription sub = subscriptions[i];
+            // Don't deliver to browsers
+            if (sub.getConsumerInfo().isBrowser()) {
+                continue;
+            }
+            // Only dispatch to interested subscriptions
+            if (!sub.matches(node, msgContext)) {
+                sub.unmatched(node);
+                continue;
+            }
+
+            sub.add(node);
+            count++;
+        }
+        return count;
+    }
+
+    protected synchronized ThreadPoolExecutor getExecutor() {
+        if (executor == null) {
+            final String name = "ActiveMQ ParallelDispatchPolicy-" + POLICY_COUNT.incrementAndGet() + ".worker.";
+            executor = new ThreadPoolExecutor(0, Math.max(1, partitions - 1), 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), new ThreadFactory() {
+
+                private long i = 0;
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    this.i++;
+                    Thread thread = new Thread(runnable, name + this.i);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }, new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+        return executor;
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * Sets the number of partitions the subscriptions of a topic are split
+     * into, the calling thread dispatches one of them and a pool of at most
+     * partitions - 1 threads the others.
+     */
+    public void setPartitions(int partitions) {
+        this.partitions = partitions;
+    }
+
+    public int getMinimumSubscriptions() {
+        return minimumSubscriptions;
+    }
+
+    /**
+     * Sets the number of subscriptions below which a topic is dispatched
+     * serially, a partition holds at least half as many subscriptions.
+     */
+    public void setMinimumSubscriptions(int minimumSubscriptions) {
+        this.minimumSubscriptions = minimumSubscriptions;
+    }
+
+    private final class PartitionDispatch implements Runnable {
+        private final MessageReference node;
+        private final MessageEvaluationContext msgContext = new MessageEvaluationContext();
+        private final Subscription[] subscriptions;
+        private final int start;
+        private final int end;
+        private final CountDownLatch done;
+        private int dispatched;
+        private Exception error;
+
+        PartitionDispatch(MessageReference node, ActiveMQDestination destination, Subscription[] subscriptions, int start, int end, CountDownLatch done) {
+            this.node = node;
+            this.subscriptions = subscriptions;
+            this.start = start;
+            this.end = end;
+            this.done = done;
+            msgContext.setDestination(destination);
+            msgContext.setMessageReference(node);
+        }
+
+        @Override
+        public void run() {
+            try {
+                dispatched = dispatch(node, msgContext, subscriptions, start, end);
+            } catch (Exception e) {
+                LOG.debug("Failed to dispatch {} to a partition of subscriptions", node.getMessageId(), e);
+                error = e;
+            } catch (Throwable e) {
+                error = new RuntimeException(e);
+            } finally {
+                msgContext.clear();
+                done.countDown();
+            }
+        }
+    }
+}
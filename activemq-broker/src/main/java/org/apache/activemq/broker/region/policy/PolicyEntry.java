@@ -21,6 +21,7 @@ import org.apache.activemq.broker.Broker;
 import org.apache.activemq.broker.region.BaseDestination;
 import org.apache.activemq.broker.region.Destination;
 import org.apache.activemq.broker.region.DurableTopicSubscription;
+import org.apache.activemq.broker.region.PrefetchSubscription;
 import org.apache.activemq.broker.region.Queue;
 import org.apache.activemq.broker.region.QueueBrowserSubscription;
 import org.apache.activemq.broker.region.QueueSubscription;
@@ -58,6 +59,7 @@ public class PolicyEntry extends DestinationMapEntry {
     private PendingQueueMessageStoragePolicy pendingQueuePolicy;
     private PendingDurableSubscriberMessageStoragePolicy pendingDurableSubscriberPolicy;
     private PendingSubscriberMessageStoragePolicy pendingSubscriberPolicy;
+    private AdaptivePrefetchPolicy adaptivePrefetchPolicy;
     private int maxProducersToAudit=BaseDestination.MAX_PRODUCERS_TO_AUDIT;
     private int maxAuditDepth=BaseDestination.MAX_AUDIT_DEPTH;
     private int maxQueueAuditDepth=BaseDestination.MAX_AUDIT_DEPTH;
@@ -73,6 +75,9 @@ public class PolicyEntry extends DestinationMapEntry {
     private boolean useConsumerPriority=true;
     private boolean strictOrderDispatch=false;
     private boolean lazyDispatch=false;
+    private int dispatchLanes = 0;
+    private boolean pagedInIndexBySequenceId = false;
+    private boolean pagedInIndexOffHeap = false;
     private int timeBeforeDispatchStarts = 0;
     private int consumersBeforeDispatchStarts = 0;
     private boolean advisoryForSlowConsumers;
@@ -127,6 +132,9 @@ public class PolicyEntry extends DestinationMapEntry {
         queue.setTimeBeforeDispatchStarts(getTimeBeforeDispatchStarts());
         queue.setConsumersBeforeDispatchStarts(getConsumersBeforeDispatchStarts());
         queue.setAllConsumersExclusiveByDefault(isAllConsumersExclusiveByDefault());
+        queue.setDispatchLanes(getDispatchLanes());
+        queue.setPagedInIndexOffHeap(isPagedInIndexOffHeap());
+        queue.setPagedInIndexBySequenceId(isPagedInIndexBySequenceId());
     }
 
     public void update(Queue queue) {
@@ -141,6 +149,7 @@ public class PolicyEntry extends DestinationMapEntry {
         queue.setTimeBeforeDispatchStarts(getTimeBeforeDispatchStarts());
         queue.setConsumersBeforeDispatchStarts(getConsumersBeforeDispatchStarts());
         queue.setAllConsumersExclusiveByDefault(isAllConsumersExclusiveByDefault());
+        queue.setDispatchLanes(getDispatchLanes());
     }
 
     public void configure(Broker broker,Topic topic) {
@@ -262,6 +271,7 @@ public class PolicyEntry extends DestinationMapEntry {
         }
         sub.setMaxProducersToAudit(getMaxProducersToAudit());
         sub.setUsePrefetchExtension(isUsePrefetchExtension());
+        configureAdaptivePrefetch(sub);
     }
 
     public void configure(Broker broker, SystemUsage memoryManager, QueueBrowserSubscription sub) {
@@ -285,6 +295,14 @@ public class PolicyEntry extends DestinationMapEntry {
         sub.setCursorMemoryHighWaterMark(getCursorMemoryHighWaterMark());
         sub.setUsePrefetchExtension(isUsePrefetchExtension());
         sub.setMaxProducersToAudit(getMaxProducersToAudit());
+        configureAdaptivePrefetch(sub);
+    }
+
+    private void configureAdaptivePrefetch(PrefetchSubscription sub) {
+        // network bridges and pull consumers keep the prefetch they asked for
+        if (adaptivePrefetchPolicy != null && sub.getPrefetchSize() > 0 && !sub.getConsumerInfo().isNetworkSubscription()) {
+            sub.setPrefetchController(adaptivePrefetchPolicy.createController(sub.getPrefetchSize()));
+        }
     }
 
     public void configurePrefetch(Subscription subscription) {
@@ -470,6 +488,20 @@ public class PolicyEntry extends DestinationMapEntry {
         this.pendingSubscriberPolicy = pendingSubscriberPolicy;
     }
 
+    public AdaptivePrefetchPolicy getAdaptivePrefetchPolicy() {
+        return this.adaptivePrefetchPolicy;
+    }
+
+    /**
+     * Sets the policy that adapts the prefetch of queue and durable topic
+     * subscriptions to the acknowledgement rate of their consumers
+     *
+     * @param adaptivePrefetchPolicy
+     */
+    public void setAdaptivePrefetchPolicy(AdaptivePrefetchPolicy adaptivePrefetchPolicy) {
+        this.adaptivePrefetchPolicy = adaptivePrefetchPolicy;
+    }
+
     /**
      * @return true if producer flow control enabled
      */
@@ -864,6 +896,41 @@ public class PolicyEntry extends DestinationMapEntry {
         return allConsumersExclusiveByDefault;
     }
 
+    public int getDispatchLanes() {
+        return dispatchLanes;
+    }
+
+    /**
+     * Number of concurrent lanes used to push paged in queue messages to
+     * consumers, values less than two keep dispatch on the queue's own thread.
+     */
+    public void setDispatchLanes(int dispatchLanes) {
+        this.dispatchLanes = dispatchLanes;
+    }
+
+    public boolean isPagedInIndexBySequenceId() {
+        return pagedInIndexBySequenceId;
+    }
+
+    /**
+     * Index the paged in messages of a queue by their broker sequence id rather
+     * than by MessageId, which saves per message map entries for deep queues.
+     */
+    public void setPagedInIndexBySequenceId(boolean pagedInIndexBySequenceId) {
+        this.pagedInIndexBySequenceId = pagedInIndexBySequenceId;
+    }
+
+    public boolean isPagedInIndexOffHeap() {
+        return pagedInIndexOffHeap;
+    }
+
+    /**
+     * Hold the sequence id index of the paged in messages in direct buffers.
+     */
+    public void setPagedInIndexOffHeap(boolean pagedInIndexOffHeap) {
+        this.pagedInIndexOffHeap = pagedInIndexOffHeap;
+    }
+
     public boolean isGcInactiveDestinations() {
         return this.gcInactiveDestinations;
     }
@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region.policy;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.activemq.broker.Broker;
+import org.apache.activemq.broker.region.Subscription;
+import org.apache.activemq.broker.region.cursors.AbstractPendingMessageCursor;
+import org.apache.activemq.broker.region.cursors.FilePendingMessageCursor;
+import org.apache.activemq.broker.region.cursors.PendingMessageCursor;
+import org.apache.activemq.broker.region.cursors.SharedTopicLog;
+import org.apache.activemq.broker.region.cursors.SharedTopicLogCursor;
+import org.apache.activemq.broker.region.cursors.VMPendingMessageCursor;
+import org.apache.activemq.command.ActiveMQDestination;
+
+/**
+ * Creates PendingMessageCursors for non durable topic subscribers that share
+ * the pending messages of a topic, so that a message pending for many slow
+ * subscribers is held, and written to the temporary store, only once.
+ *
+ * Subscriptions to wildcard or composite destinations and subscriptions that
+ * need messages in priority order get a cursor of their own, as with the
+ * default policy.
+ *
+ * @org.apache.xbean.XBean element="sharedCursor" description="Pending messages
+ *                         for non durable subscribers held once per topic"
+ */
+public class SharedPendingSubscriberMessageStoragePolicy implements PendingSubscriberMessageStoragePolicy {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 1000;
+
+    private final Map<ActiveMQDestination, SharedTopicLog> logs = new HashMap<ActiveMQDestination, SharedTopicLog>();
+    private int segmentSize = DEFAULT_SEGMENT_SIZE;
+
+    @Override
+    public PendingMessageCursor getSubscriberPendingMessageCursor(Broker broker, String name, int maxBatchSize, Subscription subs) {
+        final ActiveMQDestination destination = subs.getConsumerInfo().getDestination();
+        boolean prioritized = AbstractPendingMessageCursor.isPrioritizedMessageSubscriber(broker, subs);
+        if (destination.isPattern() || destination.isComposite() || prioritized) {
+            if (destination.isTemporary() || broker.getTempDataStore() == null) {
+                return new VMPendingMessageCursor(prioritized);
+            }
+            return new FilePendingMessageCursor(broker, "PendingCursor:" + name, prioritized);
+        }
+        synchronized (logs) {
+            SharedTopicLog log = logs.get(destination);
+            if (log == null) {
+                log = new SharedTopicLog(broker, "SharedTopicLog:" + destination.getQualifiedName(), segmentSize) {
+                    @Override
+                    public boolean removeCursor() {
+                        synchronized (logs) {
+                            boolean closed = super.removeCursor();
+                            if (closed && logs.get(destination) == this) {
+                                logs.remove(destination);
+                            }
+                            return closed;
+                        }
+                    }
+                };
+                logs.put(destination, log);
+            }
+            log.addCursor();
+            return new SharedTopicLogCursor(log);
+        }
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * Sets the number of messages in a segment of a shared log, the unit in
+     * which messages are released and written to and read from the temporary
+     * store.
+     */
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+}
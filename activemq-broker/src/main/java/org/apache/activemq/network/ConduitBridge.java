@@ -23,7 +23,6 @@ import java.util.List;
 import org.apache.activemq.command.ConsumerId;
 import org.apache.activemq.command.ConsumerInfo;
 import org.apache.activemq.command.SubscriptionInfo;
-import org.apache.activemq.filter.DestinationFilter;
 import org.apache.activemq.transport.Transport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -62,15 +61,15 @@ public class ConduitBridge extends DemandForwardingBridge {
         }
         boolean matched = false;
 
-        for (DemandSubscription ds : subscriptionMapByLocalId.values()) {
-            DestinationFilter filter = DestinationFilter.parseFilter(ds.getLocalInfo().getDestination());
-            if (canConduit(ds) && filter.matches(info.getDestination())) {
+        for (DemandSubscription ds : subscriptionRegistry.getMatching(info.getDestination())) {
+            if (canConduit(ds)) {
                 LOG.debug("{} {} with ids {} matched (add interest) {}", new Object[]{
                         configuration.getBrokerName(), info, info.getNetworkConsumerIds(), ds
                 });
                 // add the interest in the subscription
                 if (!info.isDurable()) {
                     ds.add(info.getConsumerId());
+                    subscriptionRegistry.addInterest(info.getConsumerId(), ds);
                 } else {
                     ds.getDurableRemoteSubs().add(new SubscriptionInfo(info.getClientId(), info.getSubscriptionName()));
                 }
@@ -91,7 +90,7 @@ public class ConduitBridge extends DemandForwardingBridge {
     protected void removeDemandSubscription(ConsumerId id) throws IOException {
         List<DemandSubscription> tmpList = new ArrayList<DemandSubscription>();
 
-        for (DemandSubscription ds : subscriptionMapByLocalId.values()) {
+        for (DemandSubscription ds : subscriptionRegistry.removeInterest(id)) {
             if (ds.remove(id)) {
                 LOG.debug("{} on {} from {} removed interest for: {} from {}", new Object[]{
                         configuration.getBrokerName(), localBroker, remoteBrokerName, id, ds
@@ -22,17 +22,22 @@ import java.security.cert.X509Certificate;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Properties;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import javax.management.ObjectName;
@@ -99,6 +104,7 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
     protected ActiveMQDestination[] durableDestinations;
     protected final ConcurrentHashMap<ConsumerId, DemandSubscription> subscriptionMapByLocalId = new ConcurrentHashMap<ConsumerId, DemandSubscription>();
     protected final ConcurrentHashMap<ConsumerId, DemandSubscription> subscriptionMapByRemoteId = new ConcurrentHashMap<ConsumerId, DemandSubscription>();
+    protected final DemandSubscriptionRegistry subscriptionRegistry = new DemandSubscriptionRegistry();
     protected final BrokerId localBrokerPath[] = new BrokerId[]{null};
     protected final CountDownLatch startedLatch = new CountDownLatch(2);
     protected final CountDownLatch localStartedLatch = new CountDownLatch(1);
@@ -111,6 +117,15 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
 
     final AtomicLong enqueueCounter = new AtomicLong();
     final AtomicLong dequeueCounter = new AtomicLong();
+    final AtomicInteger forwardsInFlight = new AtomicInteger();
+    final AtomicLong forwardResponses = new AtomicLong();
+    final AtomicLong forwardRoundTripNanos = new AtomicLong();
+    private volatile long statsStartTime = System.currentTimeMillis();
+    // limits the forwards awaiting a remote response, null when there is no window
+    private final Semaphore forwardWindow;
+    // local dispatches waiting for room in the forward window, in dispatch order
+    private final ConcurrentLinkedQueue<MessageDispatch> deferredForwards = new ConcurrentLinkedQueue<MessageDispatch>();
+    private final AtomicBoolean deferredForwardsScheduled = new AtomicBoolean();
 
     private NetworkBridgeListener networkBridgeListener;
     private boolean createdByDuplex;
@@ -126,6 +141,12 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
     protected BrokerService brokerService = null;
     private ObjectName mbeanObjectName;
     private final ExecutorService serialExecutor = Executors.newSingleThreadExecutor();
+    // remote consumer advisories awaiting a flush when advisoryCoalescePeriod is set
+    private final LinkedHashMap<ConsumerId, DataStructure> coalescedAdvisories = new LinkedHashMap<ConsumerId, DataStructure>();
+    private boolean advisoryFlushScheduled;
+    // advisories taken from the buffer in order, applied by one thread at a time, guarded by coalescedAdvisories
+    private final LinkedList<DataStructure> advisoriesToApply = new LinkedList<DataStructure>();
+    private boolean applyingAdvisories;
     private Transport duplexInboundLocalBroker = null;
     private ProducerInfo duplexInboundLocalProducerInfo;
 
@@ -133,6 +154,7 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
         this.configuration = configuration;
         this.localBroker = localBroker;
         this.remoteBroker = remoteBroker;
+        this.forwardWindow = configuration.getForwardWindowSize() > 0 ? new Semaphore(configuration.getForwardWindowSize()) : null;
     }
 
     public void duplexStart(TransportConnection connection, BrokerInfo localBrokerInfo, BrokerInfo remoteBrokerInfo) throws Exception {
@@ -226,6 +248,7 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
         if (started.compareAndSet(true, false)) {
             if (disposed.compareAndSet(false, true)) {
                 LOG.debug(" stopping {} bridge to {}", configuration.getBrokerName(), remoteBrokerName);
+                deferredForwards.clear();
 
                 futureRemoteBrokerInfo.cancel(true);
                 futureLocalBrokerInfo.cancel(true);
@@ -694,6 +717,127 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
     }
 
     private void serviceRemoteConsumerAdvisory(DataStructure data) throws IOException {
+        if (configuration.getAdvisoryCoalescePeriod() > 0) {
+            synchronized (coalescedAdvisories) {
+                if (coalesceAdvisory(data)) {
+                    return;
+                }
+                // keep the advisories in the order they were sent
+                takeCoalescedAdvisories();
+                advisoriesToApply.add(data);
+            }
+            applyTakenAdvisories();
+        } else {
+            applyRemoteConsumerAdvisory(data);
+        }
+    }
+
+    /**
+     * Buffers a consumer add or remove advisory until the next flush. The add
+     * and remove of a consumer that are both still buffered cancel out.
+     *
+     * @return false if the advisory is of another kind and was not buffered
+     */
+    private boolean coalesceAdvisory(DataStructure data) {
+        if (data.getClass() == ConsumerInfo.class) {
+            coalescedAdvisories.put(((ConsumerInfo) data).getConsumerId(), data);
+        } else if (data.getClass() == RemoveInfo.class) {
+            ConsumerId id = (ConsumerId) ((RemoveInfo) data).getObjectId();
+            if (coalescedAdvisories.remove(id) == null) {
+                coalescedAdvisories.put(id, data);
+            } else {
+                LOG.trace("{} consumer {} from {} removed before its subscription was applied", new Object[]{
+                        configuration.getBrokerName(), id, remoteBrokerName
+                });
+            }
+        } else {
+            return false;
+        }
+        if (!advisoryFlushScheduled) {
+            advisoryFlushScheduled = true;
+            brokerService.getScheduler().executeAfterDelay(new Runnable() {
+                @Override
+                public void run() {
+                    // off the timer thread, adding subscriptions can wait on the local broker
+                    brokerService.getTaskRunnerFactory().execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            synchronized (coalescedAdvisories) {
+                                takeCoalescedAdvisories();
+                            }
+                            try {
+                                applyTakenAdvisories();
+                            } catch (Throwable e) {
+                                LOG.debug("Exception applying coalesced advisories", e);
+                                serviceRemoteException(e);
+                            }
+                        }
+                    });
+                }
+            }, configuration.getAdvisoryCoalescePeriod());
+        }
+        return true;
+    }
+
+    /**
+     * Moves the buffered advisories to the ones to apply, the caller holds the
+     * coalescedAdvisories lock.
+     */
+    private void takeCoalescedAdvisories() {
+        advisoryFlushScheduled = false;
+        if (coalescedAdvisories.isEmpty()) {
+            return;
+        }
+        LOG.debug("{} applying {} coalesced advisories from {}", new Object[]{
+                configuration.getBrokerName(), coalescedAdvisories.size(), remoteBrokerName
+        });
+        advisoriesToApply.addAll(coalescedAdvisories.values());
+        coalescedAdvisories.clear();
+    }
+
+    /**
+     * Applies the taken advisories outside of the coalescedAdvisories lock, as
+     * adding a subscription can wait on the local broker and the remote
+     * transport thread must be able to keep buffering meanwhile. When another
+     * thread is already applying, it is left to apply these too so that the
+     * order is kept.
+     */
+    private void applyTakenAdvisories() throws IOException {
+        synchronized (coalescedAdvisories) {
+            if (applyingAdvisories) {
+                return;
+            }
+            applyingAdvisories = true;
+        }
+        boolean drained = false;
+        try {
+            DataStructure data;
+            while ((data = nextTakenAdvisory()) != null) {
+                applyRemoteConsumerAdvisory(data);
+            }
+            drained = true;
+        } finally {
+            if (!drained) {
+                synchronized (coalescedAdvisories) {
+                    advisoriesToApply.clear();
+                    applyingAdvisories = false;
+                }
+            }
+        }
+    }
+
+    private DataStructure nextTakenAdvisory() {
+        synchronized (coalescedAdvisories) {
+            DataStructure data = disposed.get() ? null : advisoriesToApply.poll();
+            if (data == null) {
+                advisoriesToApply.clear();
+                applyingAdvisories = false;
+            }
+            return data;
+        }
+    }
+
+    private void applyRemoteConsumerAdvisory(DataStructure data) throws IOException {
         final int networkTTL = configuration.getConsumerTTL();
         if (data.getClass() == ConsumerInfo.class) {
             // Create a new local subscription
@@ -887,6 +1031,7 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
             // ensure not available for conduit subs pending removal
             subscriptionMapByLocalId.remove(sub.getLocalInfo().getConsumerId());
             subscriptionMapByRemoteId.remove(sub.getRemoteInfo().getConsumerId());
+            subscriptionRegistry.remove(sub);
 
             // continue removal in separate thread to free up this thread for outstanding responses
             // Serialize with removeDestination operations so that removeSubs are serialized with
@@ -929,77 +1074,10 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
                     safeWaitUntilStarted();
                     enqueueCounter.incrementAndGet();
                     final MessageDispatch md = (MessageDispatch) command;
-                    final DemandSubscription sub = subscriptionMapByLocalId.get(md.getConsumerId());
-                    if (sub != null && md.getMessage() != null && sub.incrementOutstandingResponses()) {
-
-                        if (suppressMessageDispatch(md, sub)) {
-                            LOG.debug("{} message not forwarded to {} because message came from there or fails TTL, brokerPath: {}, message: {}", new Object[]{
-                                    configuration.getBrokerName(), remoteBrokerName, Arrays.toString(md.getMessage().getBrokerPath()), md.getMessage()
-                            });
-                            // still ack as it may be durable
-                            try {
-                                localBroker.oneway(new MessageAck(md, MessageAck.INDIVIDUAL_ACK_TYPE, 1));
-                            } finally {
-                                sub.decrementOutstandingResponses();
-                            }
-                            return;
-                        }
-
-                        Message message = configureMessage(md);
-                        LOG.debug("bridging ({} -> {}), consumer: {}, destinaition: {}, brokerPath: {}, message: {}", new Object[]{
-                                configuration.getBrokerName(), remoteBrokerName, (LOG.isTraceEnabled() ? message : message.getMessageId()), md.getConsumerId(), message.getDestination(), Arrays.toString(message.getBrokerPath()), message
-                        });
-
-                        if (isDuplex() && AdvisorySupport.ADIVSORY_MESSAGE_TYPE.equals(message.getType())) {
-                            try {
-                                // never request b/c they are eventually acked async
-                                remoteBroker.oneway(message);
-                            } finally {
-                                sub.decrementOutstandingResponses();
-                            }
-                            return;
-                        }
-
-                        if (message.isPersistent() || configuration.isAlwaysSyncSend()) {
-
-                            // The message was not sent using async send, so we should only
-                            // ack the local broker when we get confirmation that the remote
-                            // broker has received the message.
-                            remoteBroker.asyncRequest(message, new ResponseCallback() {
-                                @Override
-                                public void onCompletion(FutureResponse future) {
-                                    try {
-                                        Response response = future.getResult();
-                                        if (response.isException()) {
-                                            ExceptionResponse er = (ExceptionResponse) response;
-                                            serviceLocalException(md, er.getException());
-                                        } else {
-                                            localBroker.oneway(new MessageAck(md, MessageAck.INDIVIDUAL_ACK_TYPE, 1));
-                                            dequeueCounter.incrementAndGet();
-                                        }
-                                    } catch (IOException e) {
-                                        serviceLocalException(md, e);
-                                    } finally {
-                                        sub.decrementOutstandingResponses();
-                                    }
-                                }
-                            });
-
-                        } else {
-                            // If the message was originally sent using async send, we will
-                            // preserve that QOS by bridging it using an async send (small chance
-                            // of message loss).
-                            try {
-                                remoteBroker.oneway(message);
-                                localBroker.oneway(new MessageAck(md, MessageAck.INDIVIDUAL_ACK_TYPE, 1));
-                                dequeueCounter.incrementAndGet();
-                            } finally {
-                                sub.decrementOutstandingResponses();
-                            }
-                        }
-                        serviceOutbound(message);
+                    if (forwardWindow == null) {
+                        forwardLocalDispatch(md);
                     } else {
-                        LOG.debug("No subscription registered with this network bridge for consumerId: {} for message: {}", md.getConsumerId(), md.getMessage());
+                        forwardOrDefer(md);
                     }
                 } else if (command.isBrokerInfo()) {
                     futureLocalBrokerInfo.set((BrokerInfo) command);
@@ -1024,6 +1102,225 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
         }
     }
 
+    private void forwardLocalDispatch(final MessageDispatch md) throws Exception {
+        final DemandSubscription sub = subscriptionMapByLocalId.get(md.getConsumerId());
+        if (sub != null && md.getMessage() != null && sub.incrementOutstandingResponses()) {
+
+            if (suppressMessageDispatch(md, sub)) {
+                LOG.debug("{} message not forwarded to {} because message came from there or fails TTL, brokerPath: {}, message: {}", new Object[]{
+                        configuration.getBrokerName(), remoteBrokerName, Arrays.toString(md.getMessage().getBrokerPath()), md.getMessage()
+                });
+                // still ack as it may be durable
+                try {
+                    localBroker.oneway(new MessageAck(md, MessageAck.INDIVIDUAL_ACK_TYPE, 1));
+                    addForwardAckBarrier(sub);
+                } finally {
+                    sub.decrementOutstandingResponses();
+                }
+                return;
+            }
+
+            Message message = configureMessage(md);
+            LOG.debug("bridging ({} -> {}), consumer: {}, destinaition: {}, brokerPath: {}, message: {}", new Object[]{
+                    configuration.getBrokerName(), remoteBrokerName, (LOG.isTraceEnabled() ? message : message.getMessageId()), md.getConsumerId(), message.getDestination(), Arrays.toString(message.getBrokerPath()), message
+            });
+
+            if (isDuplex() && AdvisorySupport.ADIVSORY_MESSAGE_TYPE.equals(message.getType())) {
+                try {
+                    // never request b/c they are eventually acked async
+                    remoteBroker.oneway(message);
+                    addForwardAckBarrier(sub);
+                } finally {
+                    sub.decrementOutstandingResponses();
+                }
+                return;
+            }
+
+            if ((message.isPersistent() || configuration.isAlwaysSyncSend()) && forwardWindow != null) {
+                if (!forwardPipelined(md, sub, message)) {
+                    return;
+                }
+            } else if (message.isPersistent() || configuration.isAlwaysSyncSend()) {
+
+                // The message was not sent using async send, so we should only
+                // ack the local broker when we get confirmation that the remote
+                // broker has received the message.
+                final long sent = System.nanoTime();
+                forwardsInFlight.incrementAndGet();
+                remoteBroker.asyncRequest(message, new ResponseCallback() {
+                    @Override
+                    public void onCompletion(FutureResponse future) {
+                        forwardResponded(sent);
+                        try {
+                            Response response = future.getResult();
+                            if (response.isException()) {
+                                ExceptionResponse er = (ExceptionResponse) response;
+                                serviceLocalException(md, er.getException());
+                            } else {
+                                localBroker.oneway(new MessageAck(md, MessageAck.INDIVIDUAL_ACK_TYPE, 1));
+                                dequeueCounter.incrementAndGet();
+                            }
+                        } catch (IOException e) {
+                            serviceLocalException(md, e);
+                        } finally {
+                            sub.decrementOutstandingResponses();
+                        }
+                    }
+                });
+
+            } else {
+                // If the message was originally sent using async send, we will
+                // preserve that QOS by bridging it using an async send (small chance
+                // of message loss).
+                try {
+                    remoteBroker.oneway(message);
+                    localBroker.oneway(new MessageAck(md, MessageAck.INDIVIDUAL_ACK_TYPE, 1));
+                    dequeueCounter.incrementAndGet();
+                    addForwardAckBarrier(sub);
+                } finally {
+                    sub.decrementOutstandingResponses();
+                }
+            }
+            serviceOutbound(message);
+        } else {
+            LOG.debug("No subscription registered with this network bridge for consumerId: {} for message: {}", md.getConsumerId(), md.getMessage());
+        }
+    }
+
+    /**
+     * Forwards the dispatch, unless the forward window is full or earlier
+     * dispatches are already waiting for it. It is then queued, so that the
+     * local transport thread is not blocked, and forwarded by a task run once
+     * the remote responses free the window. Forwards run under a lock, so the
+     * dispatches go out in the order they arrived in.
+     */
+    private void forwardOrDefer(MessageDispatch md) throws Exception {
+        synchronized (deferredForwards) {
+            if (deferredForwards.isEmpty() && forwardWindow.availablePermits() > 0) {
+                forwardLocalDispatch(md);
+                return;
+            }
+            deferredForwards.add(md);
+        }
+        // the window may have been freed before the dispatch was queued
+        if (forwardWindow.availablePermits() > 0) {
+            scheduleDeferredForwards();
+        }
+    }
+
+    private void scheduleDeferredForwards() {
+        if (!deferredForwards.isEmpty() && deferredForwardsScheduled.compareAndSet(false, true)) {
+            brokerService.getTaskRunnerFactory().execute(new Runnable() {
+                @Override
+                public void run() {
+                    runDeferredForwards();
+                }
+            }, "ActiveMQ ForwardingBridge DeferredForwards");
+        }
+    }
+
+    private void runDeferredForwards() {
+        deferredForwardsScheduled.set(false);
+        synchronized (deferredForwards) {
+            while (!deferredForwards.isEmpty() && forwardWindow.availablePermits() > 0) {
+                MessageDispatch md = deferredForwards.poll();
+                if (disposed.get()) {
+                    continue;
+                }
+                try {
+                    forwardLocalDispatch(md);
+                } catch (Throwable e) {
+                    LOG.warn("Caught an exception forwarding a deferred local dispatch", e);
+                    serviceLocalException(md, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forwards a message with the remote response awaited asynchronously, taking
+     * room in the forward window, and acks it locally with the other forwards of
+     * the subscription that completed around the same time.
+     *
+     * @return false if the message could not be written to the remote broker
+     */
+    private boolean forwardPipelined(final MessageDispatch md, final DemandSubscription sub, Message message) {
+        // never blocks, only forwards holding the deferredForwards lock take
+        // from the window and they check that it has room first
+        forwardWindow.acquireUninterruptibly();
+        ForwardAckBatcher batcher = sub.getForwardAckBatcher();
+        if (batcher == null) {
+            batcher = new ForwardAckBatcher(localBroker, configuration.getForwardAckBatchSize());
+            sub.setForwardAckBatcher(batcher);
+        }
+        final ForwardAckBatcher acks = batcher;
+        final ForwardAckBatcher.Forward forward = acks.add(md);
+        final long sent = System.nanoTime();
+        forwardsInFlight.incrementAndGet();
+        try {
+            remoteBroker.asyncRequest(message, new ResponseCallback() {
+                @Override
+                public void onCompletion(FutureResponse future) {
+                    forwardWindow.release();
+                    scheduleDeferredForwards();
+                    forwardResponded(sent);
+                    boolean forwarded = false;
+                    try {
+                        Response response = future.getResult();
+                        if (response.isException()) {
+                            ExceptionResponse er = (ExceptionResponse) response;
+                            serviceLocalException(md, er.getException());
+                        } else {
+                            forwarded = true;
+                            dequeueCounter.incrementAndGet();
+                        }
+                    } catch (IOException e) {
+                        serviceLocalException(md, e);
+                    } finally {
+                        try {
+                            acks.complete(forward, forwarded);
+                        } catch (IOException e) {
+                            serviceLocalException(e);
+                        } finally {
+                            sub.decrementOutstandingResponses();
+                        }
+                    }
+                }
+            });
+        } catch (IOException e) {
+            forwardWindow.release();
+            forwardsInFlight.decrementAndGet();
+            try {
+                // the later forwards of the subscription must not wait on this one
+                acks.complete(forward, false);
+            } catch (IOException ackError) {
+                LOG.debug("Failed to ack the forwards completed before {}", md.getMessage().getMessageId(), ackError);
+            } finally {
+                sub.decrementOutstandingResponses();
+            }
+            serviceLocalException(md, e);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Keeps a range ack of pipelined forwards from covering a dispatch that
+     * was acked, or left unacked, by other means.
+     */
+    private void addForwardAckBarrier(DemandSubscription sub) throws IOException {
+        ForwardAckBatcher batcher = sub.getForwardAckBatcher();
+        if (batcher != null) {
+            batcher.addBarrier();
+        }
+    }
+
+    private void forwardResponded(long sent) {
+        forwardsInFlight.decrementAndGet();
+        forwardResponses.incrementAndGet();
+        forwardRoundTripNanos.addAndGet(System.nanoTime() - sent);
+    }
+
     private boolean suppressMessageDispatch(MessageDispatch md, DemandSubscription sub) throws Exception {
         boolean suppress = false;
         // for durable subs, suppression via filter leaves dangling acks so we
@@ -1155,6 +1452,7 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
     private void undoMapRegistration(DemandSubscription sub) {
         subscriptionMapByLocalId.remove(sub.getLocalInfo().getConsumerId());
         subscriptionMapByRemoteId.remove(sub.getRemoteInfo().getConsumerId());
+        subscriptionRegistry.remove(sub);
     }
 
     /*
@@ -1322,6 +1620,7 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
         sub.getLocalInfo().setPrefetchSize(configuration.getPrefetchSize());
         subscriptionMapByLocalId.put(sub.getLocalInfo().getConsumerId(), sub);
         subscriptionMapByRemoteId.put(sub.getRemoteInfo().getConsumerId(), sub);
+        subscriptionRegistry.add(sub);
 
         sub.setNetworkBridgeFilter(createNetworkBridgeFilter(info));
         if (!info.isDurable()) {
@@ -1523,6 +1822,23 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
         return enqueueCounter.get();
     }
 
+    @Override
+    public int getForwardsInFlight() {
+        return forwardsInFlight.get();
+    }
+
+    @Override
+    public double getAverageForwardRoundTripTime() {
+        long responses = forwardResponses.get();
+        return responses == 0 ? 0 : forwardRoundTripNanos.get() / (responses * 1000000.0);
+    }
+
+    @Override
+    public double getForwardRate() {
+        long elapsed = System.currentTimeMillis() - statsStartTime;
+        return elapsed <= 0 ? 0 : dequeueCounter.get() * 1000.0 / elapsed;
+    }
+
     protected boolean isDuplex() {
         return configuration.isDuplex() || createdByDuplex;
     }
@@ -1551,6 +1867,9 @@ public abstract class DemandForwardingBridgeSupport implements NetworkBridge, Br
     public void resetStats() {
         enqueueCounter.set(0);
         dequeueCounter.set(0);
+        forwardResponses.set(0);
+        forwardRoundTripNanos.set(0);
+        statsStartTime = System.currentTimeMillis();
     }
 
     /*
@@ -45,8 +45,9 @@ public class DemandSubscription {
 
     private NetworkBridgeFilter networkBridgeFilter;
     private boolean staticallyIncluded;
+    private volatile ForwardAckBatcher forwardAckBatcher;
 
-    DemandSubscription(ConsumerInfo info) {
+    public DemandSubscription(ConsumerInfo info) {
         remoteInfo = info;
         localInfo = info.copy();
         localInfo.setNetworkSubscription(true);
@@ -92,6 +93,11 @@ public class DemandSubscription {
     public int size() {
         return remoteSubsIds.size();
     }
+
+    Set<ConsumerId> getRemoteSubsIds() {
+        return remoteSubsIds;
+    }
+
     /**
      * @return Returns the localInfo.
      */
@@ -141,6 +147,14 @@ public class DemandSubscription {
         return true;
     }
 
+    ForwardAckBatcher getForwardAckBatcher() {
+        return forwardAckBatcher;
+    }
+
+    void setForwardAckBatcher(ForwardAckBatcher forwardAckBatcher) {
+        this.forwardAckBatcher = forwardAckBatcher;
+    }
+
     public NetworkBridgeFilter getNetworkBridgeFilter() {
         return networkBridgeFilter;
     }
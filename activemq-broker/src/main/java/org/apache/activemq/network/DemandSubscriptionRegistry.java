@@ -0,0 +1,148 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.network;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ConsumerId;
+import org.apache.activemq.filter.DestinationFilter;
+import org.apache.activemq.filter.DestinationMap;
+
+/**
+ * Indexes the demand subscriptions of a bridge by their local destination, in
+ * a {@link DestinationMap}, and by the remote consumers that share them, so
+ * that the demand matching a destination or a consumer is found without
+ * scanning every subscription of the bridge.
+ *
+ * Lookups by wildcard destinations, which are rare, fall back to a scan.
+ */
+public class DemandSubscriptionRegistry {
+
+    private final Set<DemandSubscription> subscriptions = Collections.newSetFromMap(new ConcurrentHashMap<DemandSubscription, Boolean>());
+    private final DestinationMap byDestination = new DestinationMap();
+    private final ConcurrentHashMap<ActiveMQDestination, AtomicInteger> destinationCounts = new ConcurrentHashMap<ActiveMQDestination, AtomicInteger>();
+    private final ConcurrentHashMap<ConsumerId, Set<DemandSubscription>> byRemoteConsumer = new ConcurrentHashMap<ConsumerId, Set<DemandSubscription>>();
+
+    public synchronized void add(DemandSubscription sub) {
+        if (subscriptions.add(sub)) {
+            ActiveMQDestination destination = sub.getLocalInfo().getDestination();
+            byDestination.put(destination, sub);
+            AtomicInteger count = destinationCounts.get(destination);
+            if (count == null) {
+                count = new AtomicInteger();
+                destinationCounts.put(destination, count);
+            }
+            count.incrementAndGet();
+            addInterest(sub.getRemoteInfo().getConsumerId(), sub);
+        }
+    }
+
+    public synchronized void remove(DemandSubscription sub) {
+        if (subscriptions.remove(sub)) {
+            ActiveMQDestination destination = sub.getLocalInfo().getDestination();
+            byDestination.remove(destination, sub);
+            AtomicInteger count = destinationCounts.get(destination);
+            if (count != null && count.decrementAndGet() == 0) {
+                destinationCounts.remove(destination);
+            }
+            for (ConsumerId id : sub.getRemoteSubsIds()) {
+                Set<DemandSubscription> interested = byRemoteConsumer.get(id);
+                if (interested != null) {
+                    interested.remove(sub);
+                    if (interested.isEmpty()) {
+                        byRemoteConsumer.remove(id);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Records that a remote consumer is served by the subscription.
+     */
+    public synchronized void addInterest(ConsumerId id, DemandSubscription sub) {
+        Set<DemandSubscription> interested = byRemoteConsumer.get(id);
+        if (interested == null) {
+            interested = new CopyOnWriteArraySet<DemandSubscription>();
+            byRemoteConsumer.put(id, interested);
+        }
+        interested.add(sub);
+    }
+
+    /**
+     * Forgets a remote consumer.
+     *
+     * @return the subscriptions the consumer was served by
+     */
+    public synchronized Set<DemandSubscription> removeInterest(ConsumerId id) {
+        Set<DemandSubscription> interested = byRemoteConsumer.remove(id);
+        return interested != null ? interested : Collections.<DemandSubscription>emptySet();
+    }
+
+    /**
+     * @return the subscriptions whose destination, which may be a wildcard,
+     *         matches the given destination, or any of its members if it is
+     *         a composite destination
+     */
+    @SuppressWarnings("unchecked")
+    public Set<DemandSubscription> getMatching(ActiveMQDestination destination) {
+        if (destination.isPattern()) {
+            Set<DemandSubscription> rc = new HashSet<DemandSubscription>();
+            for (DemandSubscription sub : subscriptions) {
+                if (DestinationFilter.parseFilter(sub.getLocalInfo().getDestination()).matches(destination)) {
+                    rc.add(sub);
+                }
+            }
+            return rc;
+        }
+        return byDestination.get(destination);
+    }
+
+    /**
+     * @return true if any remote demand matches the destination
+     */
+    public boolean hasDemandFor(ActiveMQDestination destination) {
+        return !getMatching(destination).isEmpty();
+    }
+
+    /**
+     * @return true if a subscription exists on a destination matched by the
+     *         given destination, which may be a wildcard
+     */
+    public boolean hasSubscriptionOn(ActiveMQDestination destination) {
+        if (destination.isPattern() || destination.isComposite()) {
+            DestinationFilter filter = DestinationFilter.parseFilter(destination);
+            for (DemandSubscription sub : subscriptions) {
+                if (filter.matches(sub.getLocalInfo().getDestination())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return destinationCounts.containsKey(destination);
+    }
+
+    public int size() {
+        return subscriptions.size();
+    }
+}
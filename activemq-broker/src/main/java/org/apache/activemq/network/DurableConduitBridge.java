@@ -21,7 +21,6 @@ import java.io.IOException;
 import org.apache.activemq.command.ActiveMQDestination;
 import org.apache.activemq.command.ConsumerId;
 import org.apache.activemq.command.ConsumerInfo;
-import org.apache.activemq.filter.DestinationFilter;
 import org.apache.activemq.transport.Transport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -99,12 +98,6 @@ public class DurableConduitBridge extends ConduitBridge {
     }
 
     protected boolean doesConsumerExist(ActiveMQDestination dest) {
-        DestinationFilter filter = DestinationFilter.parseFilter(dest);
-        for (DemandSubscription ds : subscriptionMapByLocalId.values()) {
-            if (filter.matches(ds.getLocalInfo().getDestination())) {
-                return true;
-            }
-        }
-        return false;
+        return subscriptionRegistry.hasSubscriptionOn(dest);
     }
 }
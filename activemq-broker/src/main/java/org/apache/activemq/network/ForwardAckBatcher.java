@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.network;
+
+import java.io.IOException;
+import java.util.LinkedList;
+
+import org.apache.activemq.command.MessageAck;
+import org.apache.activemq.command.MessageDispatch;
+import org.apache.activemq.transport.Transport;
+
+/**
+ * Tracks the forwards of a demand subscription that await a response from the
+ * remote broker, in the order they were dispatched by the local broker, and
+ * acks each run of successful forwards with a single ranged standard ack.
+ *
+ * A range ack covers every message dispatched between its first and last
+ * message, so dispatches that are not forwarded through here, and forwards
+ * that failed, end the current run.
+ */
+class ForwardAckBatcher {
+
+    static final class Forward {
+        final MessageDispatch md;
+        boolean done;
+        boolean forwarded;
+
+        Forward(MessageDispatch md) {
+            this.md = md;
+        }
+    }
+
+    private final LinkedList<Forward> pending = new LinkedList<Forward>();
+    private final Transport localBroker;
+    private final int batchSize;
+    private MessageDispatch first;
+    private MessageDispatch last;
+    private int count;
+
+    ForwardAckBatcher(Transport localBroker, int batchSize) {
+        this.localBroker = localBroker;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Adds a forward that is about to be sent to the remote broker.
+     */
+    synchronized Forward add(MessageDispatch md) {
+        Forward forward = new Forward(md);
+        pending.add(forward);
+        return forward;
+    }
+
+    /**
+     * Marks the position of a dispatch of the subscription that is acked
+     * separately, so that no range ack spans it.
+     */
+    synchronized void addBarrier() throws IOException {
+        Forward barrier = new Forward(null);
+        barrier.done = true;
+        pending.add(barrier);
+        drain();
+    }
+
+    /**
+     * Records the remote response to a forward and sends the acks of the
+     * runs that are complete.
+     *
+     * @param forwarded
+     *            false if the forward failed, in which case the message is
+     *            not acked here
+     */
+    synchronized void complete(Forward forward, boolean forwarded) throws IOException {
+        forward.done = true;
+        forward.forwarded = forwarded;
+        drain();
+    }
+
+    synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    private void drain() throws IOException {
+        while (!pending.isEmpty() && pending.getFirst().done) {
+            Forward forward = pending.removeFirst();
+            if (forward.md == null || !forward.forwarded) {
+                flush();
+                continue;
+            }
+            if (last != null && !last.getDestination().equals(forward.md.getDestination())) {
+                flush();
+            }
+            if (first == null) {
+                first = forward.md;
+            }
+            last = forward.md;
+            if (++count >= batchSize) {
+                flush();
+            }
+        }
+        // nothing left in flight to extend the run with
+        if (pending.isEmpty()) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+        if (count > 0) {
+            MessageAck ack = new MessageAck(last, MessageAck.STANDARD_ACK_TYPE, count);
+            ack.setFirstMessageId(first.getMessage().getMessageId());
+            first = null;
+            last = null;
+            count = 0;
+            localBroker.oneway(ack);
+        }
+    }
+}
@@ -78,6 +78,21 @@ public interface NetworkBridge extends Service {
      */
     long getDequeueCounter();
 
+    /**
+     * @return the number of forwarded messages awaiting a response from the remote broker.
+     */
+    int getForwardsInFlight();
+
+    /**
+     * @return the mean time in milliseconds the remote broker took to respond to a forward.
+     */
+    double getAverageForwardRoundTripTime();
+
+    /**
+     * @return the number of dequeues per second since the bridge started or its stats were reset.
+     */
+    double getForwardRate();
+
     /**
      * @param objectName
      *      The ObjectName assigned to this bridge in the MBean server.
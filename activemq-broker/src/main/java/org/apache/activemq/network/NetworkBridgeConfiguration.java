@@ -62,6 +62,9 @@ public class NetworkBridgeConfiguration {
     private boolean gcDestinationViews = true;
     private long gcSweepTime = 60 * 1000;
     private boolean checkDuplicateMessagesOnDuplex = false;
+    private int forwardWindowSize = 0;
+    private int forwardAckBatchSize = 100;
+    private long advisoryCoalescePeriod = 0;
 
     /**
      * @return the conduitSubscriptions
@@ -449,4 +452,46 @@ public class NetworkBridgeConfiguration {
         this.checkDuplicateMessagesOnDuplex = checkDuplicateMessagesOnDuplex;
     }
 
+    public int getForwardWindowSize() {
+        return forwardWindowSize;
+    }
+
+    /**
+     * @param forwardWindowSize the number of forwards awaiting a response
+     * from the remote broker a bridge allows, beyond which it waits for
+     * responses before forwarding more. When set, local acks of forwarded
+     * messages are sent in batches as the responses arrive. Default 0 keeps
+     * no window and acks each message on its response.
+     */
+    public void setForwardWindowSize(int forwardWindowSize) {
+        this.forwardWindowSize = forwardWindowSize;
+    }
+
+    public int getForwardAckBatchSize() {
+        return forwardAckBatchSize;
+    }
+
+    /**
+     * @param forwardAckBatchSize the most forwarded messages of a subscription
+     * acked with one local ack when forwardWindowSize is set, default 100.
+     * Acks are sent earlier when no more responses are outstanding.
+     */
+    public void setForwardAckBatchSize(int forwardAckBatchSize) {
+        this.forwardAckBatchSize = forwardAckBatchSize;
+    }
+
+    public long getAdvisoryCoalescePeriod() {
+        return advisoryCoalescePeriod;
+    }
+
+    /**
+     * @param advisoryCoalescePeriod the time in milliseconds for which remote
+     * consumer add and remove advisories are buffered before they are applied
+     * together, default 0 which applies each on arrival. The advisories of a
+     * consumer that comes and goes within the period cancel out.
+     */
+    public void setAdvisoryCoalescePeriod(long advisoryCoalescePeriod) {
+        this.advisoryCoalescePeriod = advisoryCoalescePeriod;
+    }
+
 }
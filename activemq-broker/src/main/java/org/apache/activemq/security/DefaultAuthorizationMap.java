@@ -151,7 +151,7 @@ public class DefaultAuthorizationMap extends DestinationMap implements Authoriza
      */
     @Override
     @SuppressWarnings({ "rawtypes", "unchecked" })
-    public synchronized Set get(ActiveMQDestination key) {
+    public Set get(ActiveMQDestination key) {
         if (key.isComposite()) {
             ActiveMQDestination[] destinations = key.getCompositeDestinations();
             Set answer = null;
@@ -18,6 +18,7 @@ package org.apache.activemq.store;
 
 import java.io.IOException;
 import java.util.Iterator;
+import java.util.List;
 
 import org.apache.activemq.util.ByteSequence;
 
@@ -33,6 +34,31 @@ public interface PList {
 
     Object addLast(String id, ByteSequence bs) throws IOException;
 
+    /**
+     * Adds the entries to the end of the list, in order, as a single store
+     * operation. The locators of the given entries are ignored.
+     *
+     * @return the locators of the added entries, in order
+     */
+    List<Object> addLast(List<PListEntry> entries) throws IOException;
+
+    /**
+     * Adds the entries to the head of the list, in order, so that the first
+     * entry becomes the head, as a single store operation. The locators of the
+     * given entries are ignored.
+     *
+     * @return the locators of the added entries, in order
+     */
+    List<Object> addFirst(List<PListEntry> entries) throws IOException;
+
+    /**
+     * Removes up to max entries from the head of the list as a single store
+     * operation.
+     *
+     * @return the removed entries, in order
+     */
+    List<PListEntry> removeFirst(int max) throws IOException;
+
     boolean remove(Object position) throws IOException;
 
     boolean isEmpty();
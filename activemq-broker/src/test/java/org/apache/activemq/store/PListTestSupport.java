@@ -176,6 +176,79 @@ public abstract class PListTestSupport {
         }
     }
 
+    @Test
+    public void testAddLastBatch() throws Exception {
+        plist.addLast("First", new ByteSequence("A".getBytes()));
+        List<PListEntry> entries = new ArrayList<PListEntry>();
+        for (int i = 0; i < 100; i++) {
+            entries.add(new PListEntry("test" + i, new ByteSequence(("test" + i).getBytes()), null));
+        }
+        List<Object> locators = plist.addLast(entries);
+        assertEquals(100, locators.size());
+        assertEquals(101, plist.size());
+
+        PList.PListIterator actual = plist.iterator();
+        assertEquals("First", actual.next().getId());
+        for (int i = 0; i < 100; i++) {
+            PListEntry entry = actual.next();
+            assertEquals("test" + i, entry.getId());
+            assertEquals("test" + i, new String(entry.getByteSequence().getData(), entry.getByteSequence().getOffset(),
+                    entry.getByteSequence().getLength()));
+        }
+        assertFalse(actual.hasNext());
+        actual.release();
+
+        assertTrue(plist.remove(locators.get(50)));
+        assertEquals(100, plist.size());
+    }
+
+    @Test
+    public void testAddFirstBatch() throws Exception {
+        plist.addLast("Last", new ByteSequence("Z".getBytes()));
+        List<PListEntry> entries = new ArrayList<PListEntry>();
+        for (int i = 0; i < 100; i++) {
+            entries.add(new PListEntry("test" + i, new ByteSequence(("test" + i).getBytes()), null));
+        }
+        List<Object> locators = plist.addFirst(entries);
+        assertEquals(100, locators.size());
+        assertEquals(101, plist.size());
+
+        PList.PListIterator actual = plist.iterator();
+        for (int i = 0; i < 100; i++) {
+            PListEntry entry = actual.next();
+            assertEquals("test" + i, entry.getId());
+            assertEquals("test" + i, new String(entry.getByteSequence().getData(), entry.getByteSequence().getOffset(),
+                    entry.getByteSequence().getLength()));
+        }
+        assertEquals("Last", actual.next().getId());
+        assertFalse(actual.hasNext());
+        actual.release();
+
+        assertTrue(plist.remove(locators.get(50)));
+        assertEquals(100, plist.size());
+    }
+
+    @Test
+    public void testRemoveFirst() throws Exception {
+        for (int i = 0; i < 250; i++) {
+            plist.addLast("test" + i, new ByteSequence(("test" + i).getBytes()));
+        }
+        int next = 0;
+        List<PListEntry> removed = plist.removeFirst(100);
+        while (!removed.isEmpty()) {
+            for (PListEntry entry : removed) {
+                assertEquals("test" + next, entry.getId());
+                assertEquals("test" + next, new String(entry.getByteSequence().getData(), entry.getByteSequence().getOffset(),
+                        entry.getByteSequence().getLength()));
+                next++;
+            }
+            assertEquals(250 - next, plist.size());
+            removed = plist.removeFirst(100);
+        }
+        assertEquals(250, next);
+        assertTrue(plist.isEmpty());
+    }
+
     @Test
     public void testRemoveSecondPosition() throws Exception {
         Object first = plist.addLast("First", new ByteSequence("A".getBytes()));
@@ -113,6 +113,7 @@ public class ActiveMQConnection implements Connection, TopicConnection, QueueCon
     public static final String DEFAULT_PASSWORD = ActiveMQConnectionFactory.DEFAULT_PASSWORD;
     public static final String DEFAULT_BROKER_URL = ActiveMQConnectionFactory.DEFAULT_BROKER_URL;
     public static int DEFAULT_THREAD_POOL_SIZE = 1000;
+    public static final int DEFAULT_MAX_ASYNC_SENDS_IN_FLIGHT = 1000;
 
     private static final Logger LOG = LoggerFactory.getLogger(ActiveMQConnection.class);
 
@@ -204,6 +205,8 @@ public class ActiveMQConnection implements Connection, TopicConnection, QueueCon
     private boolean messagePrioritySupported = true;
     private boolean transactedIndividualAck = false;
     private boolean nonBlockingRedelivery = false;
+    private boolean useRingDispatchChannel = false;
+    private int maxAsyncSendsInFlight = DEFAULT_MAX_ASYNC_SENDS_IN_FLIGHT;
 
     private int maxThreadPoolSize = DEFAULT_THREAD_POOL_SIZE;
     private RejectedExecutionHandler rejectedTaskHandler = null;
@@ -2570,6 +2573,22 @@ public class ActiveMQConnection implements Connection, TopicConnection, QueueCon
         this.nonBlockingRedelivery = nonBlockingRedelivery;
     }
 
+    public boolean isUseRingDispatchChannel() {
+        return useRingDispatchChannel;
+    }
+
+    public void setUseRingDispatchChannel(boolean useRingDispatchChannel) {
+        this.useRingDispatchChannel = useRingDispatchChannel;
+    }
+
+    public int getMaxAsyncSendsInFlight() {
+        return maxAsyncSendsInFlight;
+    }
+
+    public void setMaxAsyncSendsInFlight(int maxAsyncSendsInFlight) {
+        this.maxAsyncSendsInFlight = maxAsyncSendsInFlight;
+    }
+
     /**
      * Removes any TempDestinations that this connection has cached, ignoring
      * any exceptions generated because the destination is in use as they should
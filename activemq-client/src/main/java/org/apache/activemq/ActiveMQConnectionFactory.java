@@ -175,6 +175,8 @@ public class ActiveMQConnectionFactory extends JNDIBaseStorable implements Conne
     private boolean messagePrioritySupported = true;
     private boolean transactedIndividualAck = false;
     private boolean nonBlockingRedelivery = false;
+    private boolean useRingDispatchChannel = false;
+    private int maxAsyncSendsInFlight = ActiveMQConnection.DEFAULT_MAX_ASYNC_SENDS_IN_FLIGHT;
     private int maxThreadPoolSize = ActiveMQConnection.DEFAULT_THREAD_POOL_SIZE;
     private TaskRunnerFactory sessionTaskRunner;
     private RejectedExecutionHandler rejectedTaskHandler = null;
@@ -397,6 +399,8 @@ public class ActiveMQConnectionFactory extends JNDIBaseStorable implements Conne
         connection.setMessagePrioritySupported(isMessagePrioritySupported());
         connection.setTransactedIndividualAck(isTransactedIndividualAck());
         connection.setNonBlockingRedelivery(isNonBlockingRedelivery());
+        connection.setUseRingDispatchChannel(isUseRingDispatchChannel());
+        connection.setMaxAsyncSendsInFlight(getMaxAsyncSendsInFlight());
         connection.setMaxThreadPoolSize(getMaxThreadPoolSize());
         connection.setSessionTaskRunner(getSessionTaskRunner());
         connection.setRejectedTaskHandler(getRejectedTaskHandler());
@@ -818,6 +822,8 @@ public class ActiveMQConnectionFactory extends JNDIBaseStorable implements Conne
         props.setProperty("messagePrioritySupported", Boolean.toString(isMessagePrioritySupported()));
         props.setProperty("transactedIndividualAck", Boolean.toString(isTransactedIndividualAck()));
         props.setProperty("nonBlockingRedelivery", Boolean.toString(isNonBlockingRedelivery()));
+        props.setProperty("useRingDispatchChannel", Boolean.toString(isUseRingDispatchChannel()));
+        props.setProperty("maxAsyncSendsInFlight", Integer.toString(getMaxAsyncSendsInFlight()));
         props.setProperty("maxThreadPoolSize", Integer.toString(getMaxThreadPoolSize()));
         props.setProperty("nestedMapAndListEnabled", Boolean.toString(isNestedMapAndListEnabled()));
         props.setProperty("consumerFailoverRedeliveryWaitPeriod", Long.toString(getConsumerFailoverRedeliveryWaitPeriod()));
@@ -1161,6 +1167,32 @@ public class ActiveMQConnectionFactory extends JNDIBaseStorable implements Conne
          this.nonBlockingRedelivery = nonBlockingRedelivery;
      }
 
+    public boolean isUseRingDispatchChannel() {
+        return useRingDispatchChannel;
+    }
+
+    /**
+     * When true consumers and session executors queue the messages dispatched
+     * to them in a {@link RingMessageDispatchChannel}, which the receiving
+     * thread reads without taking the lock the dispatching thread holds.
+     */
+    public void setUseRingDispatchChannel(boolean useRingDispatchChannel) {
+        this.useRingDispatchChannel = useRingDispatchChannel;
+    }
+
+    public int getMaxAsyncSendsInFlight() {
+        return maxAsyncSendsInFlight;
+    }
+
+    /**
+     * Sets how many sends made with ActiveMQMessageProducer.sendAsync, or with
+     * an AsyncCallback, a producer may have waiting for the broker before the
+     * next one waits. 0 means no limit.
+     */
+    public void setMaxAsyncSendsInFlight(int maxAsyncSendsInFlight) {
+        this.maxAsyncSendsInFlight = maxAsyncSendsInFlight;
+    }
+
     public int getMaxThreadPoolSize() {
         return maxThreadPoolSize;
     }
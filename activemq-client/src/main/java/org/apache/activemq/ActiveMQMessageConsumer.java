@@ -202,7 +202,11 @@ public class ActiveMQMessageConsumer implements MessageAvailableConsumer, StatsC
                 throw new JMSException("Cannot have a prefetch size less than zero");
             }
         }
-        if (session.connection.isMessagePrioritySupported()) {
+        if (session.connection.isUseRingDispatchChannel()) {
+            int capacity = Math.max(prefetch, 1);
+            this.unconsumedMessages = session.connection.isMessagePrioritySupported() ?
+                new PriorityRingMessageDispatchChannel(capacity) : new RingMessageDispatchChannel(capacity);
+        } else if (session.connection.isMessagePrioritySupported()) {
             this.unconsumedMessages = new SimplePriorityMessageDispatchChannel();
         }else {
             this.unconsumedMessages = new FifoMessageDispatchChannel();
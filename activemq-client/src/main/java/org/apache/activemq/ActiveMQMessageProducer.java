@@ -25,6 +25,7 @@ import javax.jms.IllegalStateException;
 import javax.jms.InvalidDestinationException;
 import javax.jms.JMSException;
 import javax.jms.Message;
+import javax.jms.TransactionRolledBackException;
 
 import org.apache.activemq.command.ActiveMQDestination;
 import org.apache.activemq.command.ProducerAck;
@@ -33,8 +34,10 @@ import org.apache.activemq.command.ProducerInfo;
 import org.apache.activemq.management.JMSProducerStatsImpl;
 import org.apache.activemq.management.StatsCapable;
 import org.apache.activemq.management.StatsImpl;
+import org.apache.activemq.transaction.Synchronization;
 import org.apache.activemq.usage.MemoryUsage;
 import org.apache.activemq.util.IntrospectionSupport;
+import org.apache.activemq.util.JMSExceptionSupport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -82,6 +85,8 @@ public class ActiveMQMessageProducer extends ActiveMQMessageProducerSupport impl
     private final long startTime;
     private MessageTransformer transformer;
     private MemoryUsage producerWindow;
+    private final AsyncSendSequencer asyncSends;
+    private boolean synchronizationRegistered;
 
     protected ActiveMQMessageProducer(ActiveMQSession session, ProducerId producerId, ActiveMQDestination destination, int sendTimeout) throws JMSException {
         super(session);
@@ -120,6 +125,7 @@ public class ActiveMQMessageProducer extends ActiveMQMessageProducerSupport impl
         this.startTime = System.currentTimeMillis();
         this.messageSequence = new AtomicLong(0);
         this.stats = new JMSProducerStatsImpl(session.getSessionStats(), destination);
+        this.asyncSends = new AsyncSendSequencer(session.connection.getMaxAsyncSendsInFlight());
         try {
             this.session.addProducer(this);
             this.session.syncSendPacket(info);
@@ -169,6 +175,11 @@ public class ActiveMQMessageProducer extends ActiveMQMessageProducerSupport impl
     @Override
     public void close() throws JMSException {
         if (!closed) {
+            try {
+                asyncSends.awaitCompletion();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
             dispose();
             this.session.asyncSendPacket(info.createRemoveCommand());
         }
@@ -251,6 +262,114 @@ public class ActiveMQMessageProducer extends ActiveMQMessageProducerSupport impl
     }
 
     public void send(Destination destination, Message message, int deliveryMode, int priority, long timeToLive, AsyncCallback onComplete) throws JMSException {
+        if (onComplete != null) {
+            sendAsync(destination, message, deliveryMode, priority, timeToLive, onComplete);
+        } else {
+            doSend(destination, message, deliveryMode, priority, timeToLive, null);
+        }
+    }
+
+    /**
+     * Sends a message without waiting for the broker, in every delivery mode
+     * and also in a transaction.
+     *
+     * @return a future that completes once the broker has accepted the message
+     * @see #sendAsync(Destination, Message, int, int, long, AsyncCallback)
+     */
+    public AsyncSendFuture sendAsync(Message message) throws JMSException {
+        return sendAsync(this.getDestination(), message, this.defaultDeliveryMode, this.defaultPriority, this.defaultTimeToLive, null);
+    }
+
+    public AsyncSendFuture sendAsync(Destination destination, Message message) throws JMSException {
+        return sendAsync(destination, message, this.defaultDeliveryMode, this.defaultPriority, this.defaultTimeToLive, null);
+    }
+
+    public AsyncSendFuture sendAsync(Message message, int deliveryMode, int priority, long timeToLive) throws JMSException {
+        return sendAsync(this.getDestination(), message, deliveryMode, priority, timeToLive, null);
+    }
+
+    /**
+     * Sends a message and returns once it is written, without waiting for the
+     * broker. The broker answers every async send, persistent or not, so many
+     * sends are pipelined on the connection. Their futures complete, and their
+     * callbacks are called, in the order of the sends. Callbacks run on the
+     * thread that reads the responses and should not block.
+     *
+     * Once maxAsyncSendsInFlight sends are waiting for the broker the next
+     * send waits. In a local transaction the commit waits for the async sends
+     * and fails, rolling back, if one of them failed.
+     *
+     * @param onComplete an optional callback for the outcome of the send
+     * @return a future that completes once the broker has accepted the message
+     */
+    public AsyncSendFuture sendAsync(Destination destination, Message message, int deliveryMode, int priority, long timeToLive, AsyncCallback onComplete) throws JMSException {
+        checkClosed();
+        final AsyncSendFuture future = asyncSends.begin(message, onComplete);
+        try {
+            doSend(destination, message, deliveryMode, priority, timeToLive, new AsyncCallback() {
+                @Override
+                public void onSuccess() {
+                    asyncSends.complete(future, null);
+                }
+
+                @Override
+                public void onException(JMSException exception) {
+                    asyncSends.complete(future, exception);
+                }
+            });
+        } catch (JMSException e) {
+            asyncSends.abort(future, e);
+            throw e;
+        } catch (RuntimeException e) {
+            asyncSends.abort(future, JMSExceptionSupport.create(e));
+            throw e;
+        }
+        if (session.getTransactionContext().isInLocalTransaction()) {
+            asyncSends.enlist(future);
+            registerSynchronization();
+        }
+        return future;
+    }
+
+    /**
+     * @return the number of async sends waiting for the broker
+     */
+    public int getAsyncSendsInFlight() {
+        return asyncSends.size();
+    }
+
+    private void registerSynchronization() {
+        if (synchronizationRegistered) {
+            return;
+        }
+        synchronizationRegistered = true;
+        session.getTransactionContext().addSynchronization(new Synchronization() {
+            @Override
+            public void beforeEnd() throws Exception {
+                asyncSends.awaitCompletion();
+                JMSException failure = asyncSends.takeTransactionFailure();
+                if (failure != null) {
+                    TransactionRolledBackException e = new TransactionRolledBackException("Async send in the transaction failed: " + failure.getMessage());
+                    e.setLinkedException(failure);
+                    e.initCause(failure);
+                    throw e;
+                }
+            }
+
+            @Override
+            public void afterCommit() throws Exception {
+                synchronizationRegistered = false;
+            }
+
+            @Override
+            public void afterRollback() throws Exception {
+                asyncSends.takeTransactionFailure();
+                synchronizationRegistered = false;
+            }
+        });
+    }
+
+    private void doSend(Destination destination, Message message, int deliveryMode, int priority, long timeToLive, AsyncCallback onComplete) throws JMSException {
         checkClosed();
         if (destination == null) {
             if (info.getDestination() == null) {
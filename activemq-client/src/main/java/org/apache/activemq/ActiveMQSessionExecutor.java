@@ -44,7 +44,10 @@ public class ActiveMQSessionExecutor implements Task {
 
     ActiveMQSessionExecutor(ActiveMQSession session) {
         this.session = session;
-        if (this.session.connection != null && this.session.connection.isMessagePrioritySupported()) {
+        if (this.session.connection != null && this.session.connection.isUseRingDispatchChannel()) {
+            this.messageQueue = this.session.connection.isMessagePrioritySupported() ?
+                new PriorityRingMessageDispatchChannel() : new RingMessageDispatchChannel();
+        } else if (this.session.connection != null && this.session.connection.isMessagePrioritySupported()) {
            this.messageQueue = new SimplePriorityMessageDispatchChannel();
         }else {
             this.messageQueue = new FifoMessageDispatchChannel();
@@ -0,0 +1,128 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The outcome of a send made with
+ * {@link ActiveMQMessageProducer#sendAsync(Message)}. It completes once the
+ * broker has accepted the message, after the sends made before it by the same
+ * producer, and gives back the message that was sent.
+ *
+ * A send in a transaction completes once the broker has added the message to
+ * the transaction; the message is only stored when the transaction commits.
+ */
+public class AsyncSendFuture implements Future<Message> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncSendFuture.class);
+
+    private final Message message;
+    private final AsyncCallback callback;
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    // guarded by the sequencer of the producer
+    boolean completed;
+    boolean notify = true;
+    boolean transacted;
+    JMSException error;
+
+    AsyncSendFuture(Message message, AsyncCallback callback) {
+        this.message = message;
+        this.callback = callback;
+    }
+
+    /**
+     * Runs the callback and releases the threads waiting on the future.
+     */
+    void deliver() {
+        try {
+            if (callback != null && notify) {
+                if (error == null) {
+                    callback.onSuccess();
+                } else {
+                    callback.onException(error);
+                }
+            }
+        } catch (Throwable e) {
+            LOG.warn("Async send callback failed", e);
+        } finally {
+            done.countDown();
+        }
+    }
+
+    public Message getMessage() {
+        return message;
+    }
+
+    /**
+     * @return the reason the send failed, or null if it succeeded or has not
+     *         completed yet
+     */
+    public JMSException getException() {
+        return isDone() ? error : null;
+    }
+
+    /**
+     * A send cannot be cancelled once it has been written.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    @Override
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    @Override
+    public Message get() throws InterruptedException, ExecutionException {
+        done.await();
+        return result();
+    }
+
+    @Override
+    public Message get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!done.await(timeout, unit)) {
+            throw new TimeoutException("Send of " + message + " not completed after " + unit.toMillis(timeout) + " ms");
+        }
+        return result();
+    }
+
+    private Message result() throws ExecutionException {
+        if (error != null) {
+            throw new ExecutionException(error);
+        }
+        return message;
+    }
+}
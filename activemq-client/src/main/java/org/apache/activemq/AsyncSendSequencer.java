@@ -0,0 +1,163 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq;
+
+import java.util.LinkedList;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+/**
+ * Tracks the async sends of a producer that wait for the broker, so that
+ * their completions are delivered in the order of the sends, whatever the
+ * order the responses arrive in, and so that no more than a window of them
+ * are in flight.
+ */
+final class AsyncSendSequencer {
+
+    private final LinkedList<AsyncSendFuture> inFlight = new LinkedList<AsyncSendFuture>();
+    private final int maxInFlight;
+    private boolean draining;
+    private volatile Thread drainingThread;
+    private JMSException transactionFailure;
+
+    /**
+     * @param maxInFlight
+     *            the most sends waiting for the broker, 0 for no limit
+     */
+    AsyncSendSequencer(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Starts tracking a send, waiting while the window is full.
+     */
+    synchronized AsyncSendFuture begin(Message message, AsyncCallback callback) throws JMSException {
+        // a callback that sends again must not wait for its own completion
+        while (maxInFlight > 0 && inFlight.size() >= maxInFlight && Thread.currentThread() != drainingThread) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new JMSException("Send aborted due to thread interrupt.");
+            }
+        }
+        AsyncSendFuture future = new AsyncSendFuture(message, callback);
+        inFlight.add(future);
+        return future;
+    }
+
+    /**
+     * Records the outcome of a send and delivers the completions that are no
+     * longer waiting on an earlier send.
+     */
+    void complete(AsyncSendFuture future, JMSException error) {
+        synchronized (this) {
+            if (future.completed) {
+                return;
+            }
+            future.completed = true;
+            future.error = error;
+            if (error != null && future.transacted && transactionFailure == null) {
+                transactionFailure = error;
+            }
+        }
+        drain();
+    }
+
+    /**
+     * Completes a send that failed before it was written. The sender gets the
+     * exception, so the callback is not called.
+     */
+    void abort(AsyncSendFuture future, JMSException error) {
+        synchronized (this) {
+            future.notify = false;
+        }
+        complete(future, error);
+    }
+
+    /**
+     * Marks a send as part of the current local transaction, whose commit
+     * then fails if the send does.
+     */
+    synchronized void enlist(AsyncSendFuture future) {
+        future.transacted = true;
+        if (future.completed && future.error != null && transactionFailure == null) {
+            transactionFailure = future.error;
+        }
+    }
+
+    /**
+     * @return the first failure of a send enlisted in the transaction since
+     *         the last call, or null
+     */
+    synchronized JMSException takeTransactionFailure() {
+        JMSException rc = transactionFailure;
+        transactionFailure = null;
+        return rc;
+    }
+
+    /**
+     * Waits until every send has completed, unless called from a callback.
+     */
+    synchronized void awaitCompletion() throws InterruptedException {
+        while (!inFlight.isEmpty() && Thread.currentThread() != drainingThread) {
+            wait();
+        }
+    }
+
+    synchronized int size() {
+        return inFlight.size();
+    }
+
+    private void drain() {
+        synchronized (this) {
+            if (draining) {
+                return;
+            }
+            draining = true;
+            drainingThread = Thread.currentThread();
+        }
+        boolean drained = false;
+        try {
+            while (true) {
+                AsyncSendFuture next;
+                synchronized (this) {
+                    next = inFlight.peek();
+                    if (next == null || !next.completed) {
+                        draining = false;
+                        drainingThread = null;
+                        drained = true;
+                        return;
+                    }
+                }
+                next.deliver();
+                synchronized (this) {
+                    inFlight.removeFirst();
+                    notifyAll();
+                }
+            }
+        } finally {
+            if (!drained) {
+                synchronized (this) {
+                    draining = false;
+                    drainingThread = null;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,443 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.activemq.command.MessageDispatch;
+
+/**
+ * A {@link MessageDispatchChannel} that keeps its messages in a bounded ring,
+ * so that the consuming thread takes messages without the mutex and is woken
+ * with park/unpark rather than wait/notify.
+ *
+ * The writers of the channel (enqueue, enqueueFirst, clear and removeAll)
+ * still hold the mutex, which makes them a single producer to the ring; the
+ * dispatch path of the consumer already holds it anyway. Messages that are
+ * put back in front, and messages that do not fit in the ring, are kept in
+ * lists guarded by the mutex and only then does the reader take it too.
+ */
+public class RingMessageDispatchChannel implements MessageDispatchChannel {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+    public static final int MAX_CAPACITY = 4096;
+    private static final int MIN_CAPACITY = 16;
+
+    private final Object mutex = new Object();
+    private final Lane[] lanes;
+    private final ConcurrentLinkedQueue<Thread> waiters = new ConcurrentLinkedQueue<Thread>();
+    private volatile boolean closed;
+    private volatile boolean running;
+
+    public RingMessageDispatchChannel() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity
+     *            the size of the ring, rounded up to a power of two, above
+     *            which messages spill into a linked list
+     */
+    public RingMessageDispatchChannel(int capacity) {
+        this(1, capacity);
+    }
+
+    protected RingMessageDispatchChannel(int laneCount, int capacity) {
+        int size = MIN_CAPACITY;
+        while (size < Math.min(capacity, MAX_CAPACITY)) {
+            size <<= 1;
+        }
+        this.lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane(size);
+        }
+    }
+
+    @Override
+    public void enqueue(MessageDispatch message) {
+        synchronized (mutex) {
+            getLane(message).offer(message);
+        }
+        signal();
+    }
+
+    @Override
+    public void enqueueFirst(MessageDispatch message) {
+        synchronized (mutex) {
+            getLane(message).offerFirst(message);
+        }
+        signal();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (Lane lane : lanes) {
+            if (!lane.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public MessageDispatch dequeue(long timeout) throws InterruptedException {
+        long deadline = timeout > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout) : 0;
+        Thread current = Thread.currentThread();
+        while (true) {
+            if (closed) {
+                return null;
+            }
+            if (running) {
+                MessageDispatch md = poll();
+                if (md != null) {
+                    return md;
+                }
+            }
+            if (timeout == 0) {
+                return null;
+            }
+            // register before checking again so that an enqueue cannot be missed
+            waiters.add(current);
+            try {
+                if (closed || (running && !isEmpty())) {
+                    continue;
+                }
+                if (timeout < 0) {
+                    LockSupport.park(this);
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return null;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            } finally {
+                waiters.remove(current);
+            }
+        }
+    }
+
+    @Override
+    public MessageDispatch dequeueNoWait() {
+        if (closed || !running) {
+            return null;
+        }
+        return poll();
+    }
+
+    @Override
+    public MessageDispatch peek() {
+        if (closed || !running) {
+            return null;
+        }
+        for (int i = lanes.length - 1; i >= 0; i--) {
+            Lane lane = lanes[i];
+            MessageDispatch md;
+            if (lane.slowCount == 0) {
+                md = lane.peekRing();
+            } else {
+                synchronized (mutex) {
+                    md = lane.peekAll();
+                }
+            }
+            if (md != null) {
+                return md;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void start() {
+        synchronized (mutex) {
+            running = true;
+            mutex.notifyAll();
+        }
+        signal();
+    }
+
+    @Override
+    public void stop() {
+        synchronized (mutex) {
+            running = false;
+            mutex.notifyAll();
+        }
+        signal();
+    }
+
+    @Override
+    public void close() {
+        synchronized (mutex) {
+            if (!closed) {
+                running = false;
+                closed = true;
+            }
+            mutex.notifyAll();
+        }
+        signal();
+    }
+
+    @Override
+    public void clear() {
+        synchronized (mutex) {
+            for (Lane lane : lanes) {
+                lane.drainTo(null);
+            }
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public int size() {
+        int size = 0;
+        for (Lane lane : lanes) {
+            size += lane.size();
+        }
+        return size;
+    }
+
+    @Override
+    public Object getMutex() {
+        return mutex;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public List<MessageDispatch> removeAll() {
+        ArrayList<MessageDispatch> result = new ArrayList<MessageDispatch>(size());
+        synchronized (mutex) {
+            for (int i = lanes.length - 1; i >= 0; i--) {
+                lanes[i].drainTo(result);
+            }
+        }
+        // let blocked readers recheck the state
+        signal();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        synchronized (mutex) {
+            StringBuilder result = new StringBuilder();
+            for (int i = lanes.length - 1; i >= 0; i--) {
+                if (lanes.length > 1) {
+                    result.append(i).append(":");
+                }
+                result.append(lanes[i]);
+            }
+            return result.toString();
+        }
+    }
+
+    protected int getLaneIndex(MessageDispatch message) {
+        return 0;
+    }
+
+    private Lane getLane(MessageDispatch message) {
+        return lanes[getLaneIndex(message)];
+    }
+
+    private MessageDispatch poll() {
+        for (int i = lanes.length - 1; i >= 0; i--) {
+            Lane lane = lanes[i];
+            MessageDispatch md = null;
+            if (lane.slowCount == 0) {
+                md = lane.pollRing();
+            }
+            if (md == null && lane.slowCount != 0) {
+                synchronized (mutex) {
+                    md = lane.pollAll();
+                }
+            }
+            if (md != null) {
+                return md;
+            }
+        }
+        return null;
+    }
+
+    private void signal() {
+        if (!waiters.isEmpty()) {
+            for (Thread waiter : waiters) {
+                LockSupport.unpark(waiter);
+            }
+        }
+    }
+
+    /**
+     * The messages of one priority: messages put back in front, the ring, and
+     * the messages that did not fit in the ring, in that order.
+     */
+    private static final class Lane {
+
+        private final int mask;
+        private final AtomicLong head = new AtomicLong();
+        // the ring is only allocated once the lane is used
+        private volatile AtomicReferenceArray<MessageDispatch> ring;
+        private volatile long tail;
+
+        // guarded by the mutex of the channel
+        private final LinkedList<MessageDispatch> front = new LinkedList<MessageDispatch>();
+        private final LinkedList<MessageDispatch> overflow = new LinkedList<MessageDispatch>();
+        private volatile int slowCount;
+
+        Lane(int capacity) {
+            this.mask = capacity - 1;
+        }
+
+        // called with the mutex held
+        void offer(MessageDispatch md) {
+            refill();
+            if (!overflow.isEmpty() || !offerRing(md)) {
+                overflow.addLast(md);
+                slowCount++;
+            }
+        }
+
+        // called with the mutex held
+        void offerFirst(MessageDispatch md) {
+            front.addFirst(md);
+            slowCount++;
+        }
+
+        private boolean offerRing(MessageDispatch md) {
+            AtomicReferenceArray<MessageDispatch> r = ring;
+            if (r == null) {
+                r = new AtomicReferenceArray<MessageDispatch>(mask + 1);
+                ring = r;
+            }
+            long t = tail;
+            int index = (int) t & mask;
+            // the slot is cleared once the reader of the previous lap took it
+            if (r.get(index) != null) {
+                return false;
+            }
+            r.set(index, md);
+            tail = t + 1;
+            return true;
+        }
+
+        MessageDispatch pollRing() {
+            while (true) {
+                long h = head.get();
+                if (h >= tail) {
+                    return null;
+                }
+                AtomicReferenceArray<MessageDispatch> r = ring;
+                int index = (int) h & mask;
+                MessageDispatch md = r.get(index);
+                if (head.compareAndSet(h, h + 1)) {
+                    r.set(index, null);
+                    return md;
+                }
+            }
+        }
+
+        MessageDispatch peekRing() {
+            long h = head.get();
+            if (h >= tail) {
+                return null;
+            }
+            return ring.get((int) h & mask);
+        }
+
+        // called with the mutex held
+        MessageDispatch pollAll() {
+            if (!front.isEmpty()) {
+                slowCount--;
+                return front.removeFirst();
+            }
+            MessageDispatch md = pollRing();
+            if (md == null) {
+                refill();
+                md = pollRing();
+            }
+            return md;
+        }
+
+        // called with the mutex held
+        MessageDispatch peekAll() {
+            if (!front.isEmpty()) {
+                return front.getFirst();
+            }
+            MessageDispatch md = peekRing();
+            if (md == null && !overflow.isEmpty()) {
+                md = overflow.getFirst();
+            }
+            return md;
+        }
+
+        // called with the mutex held, moves spilled messages back in the ring
+        private void refill() {
+            while (!overflow.isEmpty() && offerRing(overflow.getFirst())) {
+                overflow.removeFirst();
+                slowCount--;
+            }
+        }
+
+        // called with the mutex held
+        void drainTo(List<MessageDispatch> result) {
+            MessageDispatch md;
+            while ((md = pollAll()) != null) {
+                if (result != null) {
+                    result.add(md);
+                }
+            }
+        }
+
+        boolean isEmpty() {
+            return slowCount == 0 && head.get() >= tail;
+        }
+
+        int size() {
+            long h = head.get();
+            return (int) Math.max(0, tail - h) + slowCount;
+        }
+
+        @Override
+        public String toString() {
+            List<MessageDispatch> messages = new ArrayList<MessageDispatch>(front);
+            AtomicReferenceArray<MessageDispatch> r = ring;
+            for (long i = head.get(); r != null && i < tail; i++) {
+                MessageDispatch md = r.get((int) i & mask);
+                if (md != null) {
+                    messages.add(md);
+                }
+            }
+            messages.addAll(overflow);
+            return messages.toString();
+        }
+    }
+}
@@ -75,8 +75,9 @@ public class ActiveMQTextMessage extends ActiveMQMessage implements TextMessage
     public String getText() throws JMSException {
         if (text == null && getContent() != null) {
             text = decodeContent();
-            setContent(null);
-            setCompressed(false);
+            // the body is only decoded, a cached marshalled form stays valid
+            content = null;
+            compressed = false;
         }
         return text;
     }
@@ -137,7 +138,9 @@ public class ActiveMQTextMessage extends ActiveMQMessage implements TextMessage
                 DataOutputStream dataOut = new DataOutputStream(os);
                 MarshallingSupport.writeUTF8(dataOut, this.text);
                 dataOut.close();
-                setContent(bytesOut.toByteSequence());
+                // encodes the text the body was set or decoded to, a cached
+                // marshalled form was dropped when it was set
+                content = bytesOut.toByteSequence();
             }
         } catch (IOException e) {
             throw new RuntimeException(e);
@@ -93,6 +93,8 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     private transient ActiveMQConnection connection;
     transient MessageDestination regionDestination;
     transient MemoryUsage memoryUsage;
+    private transient WireFormat cachedMarshalledFormat;
+    private transient volatile ByteSequence cachedMarshalledForm;
 
     private BrokerId[] brokerPath;
     private BrokerId[] cluster;
@@ -191,16 +193,19 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void clearProperties() {
+        cachedMarshalledForm = null;
         marshalledProperties = null;
         properties = null;
     }
 
     public void setProperty(String name, Object value) throws IOException {
+        cachedMarshalledForm = null;
         lazyCreateProperties();
         properties.put(name, value);
     }
 
     public void removeProperty(String name) throws IOException {
+        cachedMarshalledForm = null;
         lazyCreateProperties();
         properties.remove(name);
     }
@@ -220,6 +225,30 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
         return MarshallingSupport.unmarshalPrimitiveMap(new DataInputStream(new ByteArrayInputStream(marshalledProperties)));
     }
 
+    /**
+     * Keeps the marshalled form the message was unmarshalled from, so that it can
+     * be written out again as is by a compatible wire format. The form is dropped
+     * as soon as a marshalled field of the message changes, except for the broker
+     * out time and the JMSXGroupFirstForConsumer flag that the broker sets on
+     * dispatch and that are marshalled last. Reading properties or the body, as
+     * selectors do, keeps it.
+     *
+     * @param wireFormat the wire format that marshalled the form
+     * @param marshalledForm the size prefixed marshalled form of this message
+     */
+    public void setCachedMarshalledForm(WireFormat wireFormat, ByteSequence marshalledForm) {
+        this.cachedMarshalledFormat = wireFormat;
+        this.cachedMarshalledForm = marshalledForm;
+    }
+
+    public ByteSequence getCachedMarshalledForm() {
+        return cachedMarshalledForm;
+    }
+
+    public WireFormat getCachedMarshalledFormat() {
+        return cachedMarshalledFormat;
+    }
+
     @Override
 	public void beforeMarshall(WireFormat wireFormat) throws IOException {
         // Need to marshal the properties.
@@ -258,6 +287,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setProducerId(ProducerId producerId) {
+        cachedMarshalledForm = null;
         this.producerId = producerId;
     }
 
@@ -269,6 +299,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setDestination(ActiveMQDestination destination) {
+        cachedMarshalledForm = null;
         this.destination = destination;
     }
 
@@ -280,6 +311,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setTransactionId(TransactionId transactionId) {
+        cachedMarshalledForm = null;
         this.transactionId = transactionId;
     }
 
@@ -295,6 +327,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setOriginalDestination(ActiveMQDestination destination) {
+        cachedMarshalledForm = null;
         this.originalDestination = destination;
     }
 
@@ -307,6 +340,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setMessageId(MessageId messageId) {
+        cachedMarshalledForm = null;
         this.messageId = messageId;
     }
 
@@ -318,6 +352,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setOriginalTransactionId(TransactionId transactionId) {
+        cachedMarshalledForm = null;
         this.originalTransactionId = transactionId;
     }
 
@@ -330,6 +365,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setGroupID(String groupID) {
+        cachedMarshalledForm = null;
         this.groupID = groupID;
     }
 
@@ -342,6 +378,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setGroupSequence(int groupSequence) {
+        cachedMarshalledForm = null;
         this.groupSequence = groupSequence;
     }
 
@@ -353,6 +390,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setCorrelationId(String correlationId) {
+        cachedMarshalledForm = null;
         this.correlationId = correlationId;
     }
 
@@ -365,6 +403,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setPersistent(boolean deliveryMode) {
+        cachedMarshalledForm = null;
         this.persistent = deliveryMode;
     }
 
@@ -377,6 +416,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setExpiration(long expiration) {
+        cachedMarshalledForm = null;
         this.expiration = expiration;
     }
 
@@ -388,6 +428,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setPriority(byte priority) {
+        cachedMarshalledForm = null;
         if (priority < 0) {
             this.priority = 0;
         } else if (priority > 9) {
@@ -405,6 +446,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setReplyTo(ActiveMQDestination replyTo) {
+        cachedMarshalledForm = null;
         this.replyTo = replyTo;
     }
 
@@ -416,6 +458,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setTimestamp(long timestamp) {
+        cachedMarshalledForm = null;
         this.timestamp = timestamp;
     }
 
@@ -427,6 +470,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setType(String type) {
+        cachedMarshalledForm = null;
         this.type = type;
     }
 
@@ -438,6 +482,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setContent(ByteSequence content) {
+        cachedMarshalledForm = null;
         this.content = content;
     }
 
@@ -449,6 +494,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setMarshalledProperties(ByteSequence marshalledProperties) {
+        cachedMarshalledForm = null;
         this.marshalledProperties = marshalledProperties;
     }
 
@@ -460,6 +506,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setDataStructure(DataStructure data) {
+        cachedMarshalledForm = null;
         this.dataStructure = data;
     }
 
@@ -478,6 +525,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setTargetConsumerId(ConsumerId targetConsumerId) {
+        cachedMarshalledForm = null;
         this.targetConsumerId = targetConsumerId;
     }
 
@@ -500,6 +548,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setCompressed(boolean compressed) {
+        cachedMarshalledForm = null;
         this.compressed = compressed;
     }
 
@@ -521,6 +570,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
 
     @Override
 	public void incrementRedeliveryCounter() {
+        cachedMarshalledForm = null;
         redeliveryCounter++;
     }
 
@@ -533,6 +583,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setRedeliveryCounter(int deliveryCounter) {
+        cachedMarshalledForm = null;
         this.redeliveryCounter = deliveryCounter;
     }
 
@@ -546,6 +597,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setBrokerPath(BrokerId[] brokerPath) {
+        cachedMarshalledForm = null;
         this.brokerPath = brokerPath;
     }
 
@@ -585,6 +637,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setArrival(long arrival) {
+        cachedMarshalledForm = null;
         this.arrival = arrival;
     }
 
@@ -600,6 +653,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setUserID(String jmsxUserID) {
+        cachedMarshalledForm = null;
         this.userID = jmsxUserID;
     }
 
@@ -719,6 +773,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
      * @param recievedByDFBridge The recievedByDFBridge to set.
      */
     public void setRecievedByDFBridge(boolean recievedByDFBridge) {
+        cachedMarshalledForm = null;
         this.recievedByDFBridge = recievedByDFBridge;
     }
 
@@ -734,6 +789,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setDroppable(boolean droppable) {
+        cachedMarshalledForm = null;
         this.droppable = droppable;
     }
 
@@ -748,6 +804,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setCluster(BrokerId[] cluster) {
+        cachedMarshalledForm = null;
         this.cluster = cluster;
     }
 
@@ -764,6 +821,7 @@ public abstract class Message extends BaseCommand implements MarshallAware, Mess
     }
 
     public void setBrokerInTime(long brokerInTime) {
+        cachedMarshalledForm = null;
         this.brokerInTime = brokerInTime;
     }
 
@@ -78,11 +78,15 @@ public abstract class ComparisonExpression extends BinaryExpression implements B
     static class LikeExpression extends UnaryExpression implements BooleanExpression {
 
         Pattern likePattern;
+        final String like;
+        final int escape;
 
         /**
          */
         public LikeExpression(Expression right, String like, int escape) {
             super(right);
+            this.like = like;
+            this.escape = escape;
 
             StringBuffer regexp = new StringBuffer(like.length() * 2);
             regexp.append("\\A"); // The beginning of the input
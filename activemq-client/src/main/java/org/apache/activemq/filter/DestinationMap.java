@@ -22,8 +22,10 @@ import java.util.List;
 import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.util.LRUCache;
 
 /**
  * A Map-like data structure allowing values to be indexed by
@@ -34,11 +36,21 @@ import org.apache.activemq.command.ActiveMQDestination;
  * destination steps. So looking up the values for "TEST.*" or "*.TEST" will be
  * pretty fast. <br>
  * Looking up of a value could return a single value or a List of matching
- * values if a wildcard or composite destination is used.
+ * values if a wildcard or composite destination is used. <br>
+ * Lookups share a read lock and their results are memoized in an LRU cache
+ * until the index next changes, so repeated lookups of the same destination,
+ * which have to walk the wildcard entries of the index, are served from the
+ * cache rather than the index.
  */
 public class DestinationMap {
     protected static final String ANY_DESCENDENT = DestinationFilter.ANY_DESCENDENT;
     protected static final String ANY_CHILD = DestinationFilter.ANY_CHILD;
+    public static final int DEFAULT_MATCH_CACHE_SIZE = 1000;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    @SuppressWarnings("rawtypes")
+    private final LRUCache<ActiveMQDestination, Set> matchCache = new LRUCache<ActiveMQDestination, Set>(DEFAULT_MATCH_CACHE_SIZE);
+    private volatile int matchCacheSize = DEFAULT_MATCH_CACHE_SIZE;
 
     private DestinationMapNode queueRootNode = new DestinationMapNode(null);
     private DestinationMapNode tempQueueRootNode = new DestinationMapNode(null);
@@ -56,7 +68,7 @@ public class DestinationMap {
      *         matching values.
      */
     @SuppressWarnings({"rawtypes", "unchecked"})
-    public synchronized Set get(ActiveMQDestination key) {
+    public Set get(ActiveMQDestination key) {
         if (key.isComposite()) {
             ActiveMQDestination[] destinations = key.getCompositeDestinations();
             Set answer = new HashSet(destinations.length);
@@ -74,7 +86,7 @@ public class DestinationMap {
         return findWildcardMatches(key);
     }
 
-    public synchronized void put(ActiveMQDestination key, Object value) {
+    public void put(ActiveMQDestination key, Object value) {
         if (key.isComposite()) {
             ActiveMQDestination[] destinations = key.getCompositeDestinations();
             for (int i = 0; i < destinations.length; i++) {
@@ -85,14 +97,20 @@ public class DestinationMap {
         }
         String[] paths = key.getDestinationPaths();
         paths = DestinationFilter.rationalizePaths(paths);
-        getRootNode(key).add(paths, 0, value);
+        lock.writeLock().lock();
+        try {
+            clearMatchCache();
+            getRootNode(key).add(paths, 0, value);
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
 
     /**
      * Removes the value from the associated destination
      */
-    public synchronized void remove(ActiveMQDestination key, Object value) {
+    public void remove(ActiveMQDestination key, Object value) {
         if (key.isComposite()) {
             ActiveMQDestination[] destinations = key.getCompositeDestinations();
             for (int i = 0; i < destinations.length; i++) {
@@ -102,8 +120,13 @@ public class DestinationMap {
             return;
         }
         String[] paths = key.getDestinationPaths();
-        getRootNode(key).remove(paths, 0, value);
-
+        lock.writeLock().lock();
+        try {
+            clearMatchCache();
+            getRootNode(key).remove(paths, 0, value);
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     public int getTopicRootChildCount() {
@@ -163,12 +186,55 @@ public class DestinationMap {
 
     @SuppressWarnings({"rawtypes", "unchecked"})
     protected Set findWildcardMatches(ActiveMQDestination key) {
+        if (matchCacheSize > 0) {
+            Set cached;
+            synchronized (matchCache) {
+                cached = matchCache.get(key);
+            }
+            if (cached != null) {
+                return new HashSet(cached);
+            }
+        }
         String[] paths = key.getDestinationPaths();
         Set answer = new HashSet();
-        getRootNode(key).appendMatchingValues(answer, paths, 0);
+        lock.readLock().lock();
+        try {
+            getRootNode(key).appendMatchingValues(answer, paths, 0);
+            // cached while holding the read lock so that a change of the index
+            // can not clear the cache before a stale result is added to it
+            if (matchCacheSize > 0) {
+                synchronized (matchCache) {
+                    matchCache.put(key, new HashSet(answer));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
         return answer;
     }
 
+    public int getMatchCacheSize() {
+        return matchCacheSize;
+    }
+
+    /**
+     * Sets the number of lookup results kept until the map next changes, the
+     * least recently used are evicted beyond it, 0 disables the cache.
+     */
+    public void setMatchCacheSize(int matchCacheSize) {
+        synchronized (matchCache) {
+            this.matchCacheSize = matchCacheSize;
+            matchCache.setMaxCacheSize(matchCacheSize);
+            matchCache.clear();
+        }
+    }
+
+    private void clearMatchCache() {
+        synchronized (matchCache) {
+            matchCache.clear();
+        }
+    }
+
     /**
      * @param key
      * @return
@@ -184,7 +250,13 @@ public class DestinationMap {
             return rc;
         }
         String[] paths = key.getDestinationPaths();
-        getRootNode(key).removeAll(rc, paths, 0);
+        lock.writeLock().lock();
+        try {
+            clearMatchCache();
+            getRootNode(key).removeAll(rc, paths, 0);
+        } finally {
+            lock.writeLock().unlock();
+        }
         return rc;
     }
 
@@ -226,10 +298,16 @@ public class DestinationMap {
     }
 
     public void reset() {
-        queueRootNode = new DestinationMapNode(null);
-        tempQueueRootNode = new DestinationMapNode(null);
-        topicRootNode = new DestinationMapNode(null);
-        tempTopicRootNode = new DestinationMapNode(null);
+        lock.writeLock().lock();
+        try {
+            clearMatchCache();
+            queueRootNode = new DestinationMapNode(null);
+            tempQueueRootNode = new DestinationMapNode(null);
+            topicRootNode = new DestinationMapNode(null);
+            tempTopicRootNode = new DestinationMapNode(null);
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     public boolean isEmpty() {
@@ -0,0 +1,362 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.filter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jms.JMSException;
+
+/**
+ * Compiles a parsed selector into a tree of specialized expressions that
+ * evaluate to the same results as the parsed tree with less work per message.
+ *
+ * Chains of AND and OR become a single node that walks its operands in a loop.
+ * A comparison of a value with a numeric literal compares primitives against
+ * the literal converted once, instead of boxing both sides into a common type
+ * on every evaluation. Equality with a string or boolean literal is a single
+ * equals() call and a LIKE pattern whose only wildcards are a leading and/or
+ * trailing % becomes a String startsWith(), endsWith() or contains() check.
+ * Expressions the compiler has no specialization for are used as they are.
+ */
+public final class ExpressionCompiler {
+
+    private static final int EQUAL = 0;
+    private static final int GREATER_THAN = 1;
+    private static final int GREATER_THAN_EQUAL = 2;
+    private static final int LESS_THAN = 3;
+    private static final int LESS_THAN_EQUAL = 4;
+
+    private ExpressionCompiler() {
+    }
+
+    /**
+     * @param expression a selector as returned by the SelectorParser
+     * @return an expression that matches the same messages as the given one
+     */
+    public static BooleanExpression compile(BooleanExpression expression) {
+        if (expression instanceof LogicExpression) {
+            String symbol = ((LogicExpression) expression).getExpressionSymbol();
+            List<BooleanExpression> operands = new ArrayList<BooleanExpression>();
+            flatten(expression, symbol, operands);
+            BooleanExpression[] compiled = new BooleanExpression[operands.size()];
+            for (int i = 0; i < compiled.length; i++) {
+                compiled[i] = compile(operands.get(i));
+            }
+            if ("AND".equals(symbol)) {
+                return new AndExpression(expression, compiled);
+            } else if ("OR".equals(symbol)) {
+                return new OrExpression(expression, compiled);
+            }
+        } else if (expression instanceof ComparisonExpression.LikeExpression) {
+            return compileLike((ComparisonExpression.LikeExpression) expression);
+        } else if (expression instanceof ComparisonExpression) {
+            return compileComparison((ComparisonExpression) expression);
+        } else if (expression instanceof UnaryExpression) {
+            UnaryExpression unary = (UnaryExpression) expression;
+            if ("NOT".equals(unary.getExpressionSymbol()) && unary.getRight() instanceof BooleanExpression) {
+                return new NotExpression(expression, compile((BooleanExpression) unary.getRight()));
+            }
+        }
+        return expression;
+    }
+
+    private static void flatten(Expression expression, String symbol, List<BooleanExpression> operands) {
+        if (expression instanceof LogicExpression && symbol.equals(((LogicExpression) expression).getExpressionSymbol())) {
+            LogicExpression logic = (LogicExpression) expression;
+            flatten(logic.getLeft(), symbol, operands);
+            flatten(logic.getRight(), symbol, operands);
+        } else {
+            operands.add((BooleanExpression) expression);
+        }
+    }
+
+    private static BooleanExpression compileComparison(ComparisonExpression comparison) {
+        if (comparison.convertStringExpressions || !(comparison.getRight() instanceof ConstantExpression)) {
+            return comparison;
+        }
+        int operator = operator(comparison.getExpressionSymbol());
+        if (operator < 0) {
+            return comparison;
+        }
+        Object value = ((ConstantExpression) comparison.getRight()).getValue();
+        if (value instanceof Integer || value instanceof Long || value instanceof Double) {
+            return new NumericComparison(comparison, operator, (Number) value);
+        } else if (operator == EQUAL && value == null) {
+            return new IsNull(comparison);
+        } else if (operator == EQUAL && (value instanceof String || value instanceof Boolean)) {
+            return new EqualsConstant(comparison, value);
+        }
+        return comparison;
+    }
+
+    private static int operator(String symbol) {
+        if ("=".equals(symbol)) {
+            return EQUAL;
+        } else if (">".equals(symbol)) {
+            return GREATER_THAN;
+        } else if (">=".equals(symbol)) {
+            return GREATER_THAN_EQUAL;
+        } else if ("<".equals(symbol)) {
+            return LESS_THAN;
+        } else if ("<=".equals(symbol)) {
+            return LESS_THAN_EQUAL;
+        }
+        return -1;
+    }
+
+    private static BooleanExpression compileLike(ComparisonExpression.LikeExpression like) {
+        String pattern = like.like;
+        if (like.escape != -1 || pattern.indexOf('_') >= 0) {
+            return like;
+        }
+        int start = 0;
+        while (start < pattern.length() && pattern.charAt(start) == '%') {
+            start++;
+        }
+        int end = pattern.length();
+        while (end > start && pattern.charAt(end - 1) == '%') {
+            end--;
+        }
+        String literal = pattern.substring(start, end);
+        if (literal.indexOf('%') >= 0) {
+            return like;
+        }
+        return new LiteralLike(like, literal, start > 0, end < pattern.length());
+    }
+
+    /**
+     * Base of the compiled expressions, which show as the expression they were
+     * compiled from.
+     */
+    abstract static class CompiledExpression implements BooleanExpression {
+        private final Expression source;
+
+        CompiledExpression(Expression source) {
+            this.source = source;
+        }
+
+        @Override
+        public boolean matches(MessageEvaluationContext message) throws JMSException {
+            return evaluate(message) == Boolean.TRUE;
+        }
+
+        @Override
+        public String toString() {
+            return source.toString();
+        }
+    }
+
+    static final class AndExpression extends CompiledExpression {
+        private final BooleanExpression[] operands;
+
+        AndExpression(Expression source, BooleanExpression[] operands) {
+            super(source);
+            this.operands = operands;
+        }
+
+        @Override
+        public Object evaluate(MessageEvaluationContext message) throws JMSException {
+            int last = operands.length - 1;
+            for (int i = 0; i < last; i++) {
+                Boolean value = (Boolean) operands[i].evaluate(message);
+                if (value == null) {
+                    return null;
+                }
+                if (!value.booleanValue()) {
+                    return Boolean.FALSE;
+                }
+            }
+            return operands[last].evaluate(message);
+        }
+    }
+
+    static final class OrExpression extends CompiledExpression {
+        private final BooleanExpression[] operands;
+
+        OrExpression(Expression source, BooleanExpression[] operands) {
+            super(source);
+            this.operands = operands;
+        }
+
+        @Override
+        public Object evaluate(MessageEvaluationContext message) throws JMSException {
+            int last = operands.length - 1;
+            for (int i = 0; i < last; i++) {
+                Boolean value = (Boolean) operands[i].evaluate(message);
+                if (value != null && value.booleanValue()) {
+                    return Boolean.TRUE;
+                }
+            }
+            return operands[last].evaluate(message);
+        }
+    }
+
+    static final class NotExpression extends CompiledExpression {
+        private final BooleanExpression operand;
+
+        NotExpression(Expression source, BooleanExpression operand) {
+            super(source);
+            this.operand = operand;
+        }
+
+        @Override
+        public Object evaluate(MessageEvaluationContext message) throws JMSException {
+            Boolean value = (Boolean) operand.evaluate(message);
+            if (value == null) {
+                return null;
+            }
+            return value.booleanValue() ? Boolean.FALSE : Boolean.TRUE;
+        }
+    }
+
+    /**
+     * A comparison with an Integer, Long or Double literal. Values are
+     * converted the way ComparisonExpression.compare() converts them, so
+     * integral values compare as longs and a float compares with an integral
+     * literal as a float.
+     */
+    static final class NumericComparison extends CompiledExpression {
+        private final Expression left;
+        private final int operator;
+        private final boolean integral;
+        private final long longValue;
+        private final double doubleValue;
+
+        NumericComparison(ComparisonExpression source, int operator, Number value) {
+            super(source);
+            this.left = source.getLeft();
+            this.operator = operator;
+            this.integral = !(value instanceof Double);
+            this.longValue = value.longValue();
+            this.doubleValue = value.doubleValue();
+        }
+
+        @Override
+        public Object evaluate(MessageEvaluationContext message) throws JMSException {
+            Object value = left.evaluate(message);
+            if (value == null) {
+                return operator == EQUAL ? Boolean.FALSE : null;
+            }
+            Class<?> type = value.getClass();
+            int answer;
+            if (type == Integer.class || type == Long.class || type == Short.class || type == Byte.class) {
+                long l = ((Number) value).longValue();
+                if (integral) {
+                    answer = l < longValue ? -1 : (l == longValue ? 0 : 1);
+                } else {
+                    answer = Double.compare(l, doubleValue);
+                }
+            } else if (type == Double.class) {
+                answer = Double.compare(((Double) value).doubleValue(), integral ? (double) longValue : doubleValue);
+            } else if (type == Float.class) {
+                float f = ((Float) value).floatValue();
+                if (integral) {
+                    answer = Float.compare(f, longValue);
+                } else {
+                    answer = Double.compare(f, doubleValue);
+                }
+            } else {
+                return Boolean.FALSE;
+            }
+            return matches(answer) ? Boolean.TRUE : Boolean.FALSE;
+        }
+
+        private boolean matches(int answer) {
+            switch (operator) {
+            case EQUAL:
+                return answer == 0;
+            case GREATER_THAN:
+                return answer > 0;
+            case GREATER_THAN_EQUAL:
+                return answer >= 0;
+            case LESS_THAN:
+                return answer < 0;
+            default:
+                return answer <= 0;
+            }
+        }
+    }
+
+    static final class EqualsConstant extends CompiledExpression {
+        private final Expression left;
+        private final Object value;
+
+        EqualsConstant(ComparisonExpression source, Object value) {
+            super(source);
+            this.left = source.getLeft();
+            this.value = value;
+        }
+
+        @Override
+        public Object evaluate(MessageEvaluationContext message) throws JMSException {
+            return value.equals(left.evaluate(message)) ? Boolean.TRUE : Boolean.FALSE;
+        }
+    }
+
+    static final class IsNull extends CompiledExpression {
+        private final Expression left;
+
+        IsNull(ComparisonExpression source) {
+            super(source);
+            this.left = source.getLeft();
+        }
+
+        @Override
+        public Object evaluate(MessageEvaluationContext message) throws JMSException {
+            return left.evaluate(message) == null ? Boolean.TRUE : Boolean.FALSE;
+        }
+    }
+
+    static final class LiteralLike extends CompiledExpression {
+        private final Expression operand;
+        private final String literal;
+        private final boolean anyPrefix;
+        private final boolean anySuffix;
+
+        LiteralLike(ComparisonExpression.LikeExpression source, String literal, boolean anyPrefix, boolean anySuffix) {
+            super(source);
+            this.operand = source.getRight();
+            this.literal = literal;
+            this.anyPrefix = anyPrefix;
+            this.anySuffix = anySuffix;
+        }
+
+        @Override
+        public Object evaluate(MessageEvaluationContext message) throws JMSException {
+            Object value = operand.evaluate(message);
+            if (value == null) {
+                return null;
+            }
+            if (!(value instanceof String)) {
+                return Boolean.FALSE;
+            }
+            String text = (String) value;
+            boolean matches;
+            if (anyPrefix && anySuffix) {
+                matches = text.contains(literal);
+            } else if (anyPrefix) {
+                matches = text.endsWith(literal);
+            } else if (anySuffix) {
+                matches = text.startsWith(literal);
+            } else {
+                matches = text.equals(literal);
+            }
+            return matches ? Boolean.TRUE : Boolean.FALSE;
+        }
+    }
+}
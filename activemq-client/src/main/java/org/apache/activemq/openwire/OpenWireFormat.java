@@ -25,6 +25,7 @@ import java.util.Map;
 
 import org.apache.activemq.command.CommandTypes;
 import org.apache.activemq.command.DataStructure;
+import org.apache.activemq.command.Message;
 import org.apache.activemq.command.WireFormatInfo;
 import org.apache.activemq.util.ByteSequence;
 import org.apache.activemq.util.ByteSequenceData;
@@ -45,6 +46,10 @@ public final class OpenWireFormat implements WireFormat {
     static final byte NULL_TYPE = CommandTypes.NULL;
     private static final int MARSHAL_CACHE_SIZE = Short.MAX_VALUE / 2;
     private static final int MARSHAL_CACHE_FREE_SPACE = 100;
+    // From this version a loose marshalled message ends with the broker out time and the
+    // JMSXGroupFirstForConsumer flag.
+    private static final int CACHED_MESSAGE_FORM_MIN_VERSION = 10;
+    private static final int CACHED_MESSAGE_FORM_TAIL_SIZE = 9;
 
     private DataStreamMarshaller dataMarshallers[];
     private int version;
@@ -488,6 +493,9 @@ public final class OpenWireFormat implements WireFormat {
     public void looseMarshalNestedObject(DataStructure o, DataOutput dataOut) throws IOException {
         dataOut.writeBoolean(o != null);
         if (o != null) {
+            if (o instanceof Message && looseMarshalCachedForm((Message)o, dataOut)) {
+                return;
+            }
             byte type = o.getDataStructureType();
             dataOut.writeByte(type);
             DataStreamMarshaller dsm = (DataStreamMarshaller)dataMarshallers[type & 0xFF];
@@ -498,6 +506,43 @@ public final class OpenWireFormat implements WireFormat {
         }
     }
 
+    /**
+     * Writes a message nested in another command, a dispatch, straight from the
+     * form it was unmarshalled from when that form was loose marshalled by the
+     * same version without value caching, as the message would marshal to the
+     * same bytes. The broker out time and JMSXGroupFirstForConsumer flag, which
+     * the broker sets on dispatch, are written from the message.
+     *
+     * @return true if the cached form was written
+     */
+    private boolean looseMarshalCachedForm(Message message, DataOutput dataOut) throws IOException {
+        if (tightEncodingEnabled || cacheEnabled || version < CACHED_MESSAGE_FORM_MIN_VERSION) {
+            return false;
+        }
+        ByteSequence sequence = message.getCachedMarshalledForm();
+        if (sequence == null || !isCachedFormCompatible(message.getCachedMarshalledFormat())) {
+            return false;
+        }
+        // skip the size prefix, the form starts with the data structure type
+        int offset = sequence.getOffset() + 4;
+        int length = sequence.getLength() - 4 - CACHED_MESSAGE_FORM_TAIL_SIZE;
+        if (length <= 0 || sequence.getData()[offset] != message.getDataStructureType()) {
+            return false;
+        }
+        dataOut.write(sequence.getData(), offset, length);
+        dataOut.writeLong(message.getBrokerOutTime());
+        dataOut.writeBoolean(message.isJMSXGroupFirstForConsumer());
+        return true;
+    }
+
+    private boolean isCachedFormCompatible(WireFormat format) {
+        if (!(format instanceof OpenWireFormat)) {
+            return false;
+        }
+        OpenWireFormat other = (OpenWireFormat)format;
+        return other.version == version && !other.tightEncodingEnabled && !other.cacheEnabled && !other.sizePrefixDisabled;
+    }
+
     public void runMarshallCacheEvictionSweep() {
         // Do we need to start evicting??
         while (marshallCacheMap.size() > marshallCache.length - MARSHAL_CACHE_FREE_SPACE) {
@@ -34,8 +34,12 @@ class DedicatedTaskRunner implements TaskRunner {
     private boolean shutdown;
 
     public DedicatedTaskRunner(final Task task, String name, int priority, boolean daemon) {
+        this(task, name, priority, daemon, false);
+    }
+
+    public DedicatedTaskRunner(final Task task, String name, int priority, boolean daemon, boolean useVirtualThread) {
         this.task = task;
-        thread = new Thread(name) {
+        Runnable runnable = new Runnable() {
             public void run() {
                 try {
                     runTask();
@@ -44,9 +48,14 @@ class DedicatedTaskRunner implements TaskRunner {
                 }
             }
         };
-        thread.setDaemon(daemon);
-        thread.setName(name);
-        thread.setPriority(priority);
+        Thread virtualThread = useVirtualThread ? VirtualThreads.newThread(name, runnable) : null;
+        if (virtualThread != null) {
+            thread = virtualThread;
+        } else {
+            thread = new Thread(runnable, name);
+            thread.setDaemon(daemon);
+            thread.setPriority(priority);
+        }
         thread.start();
     }
 
@@ -18,6 +18,7 @@ package org.apache.activemq.thread;
 
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
@@ -37,6 +38,10 @@ import org.slf4j.LoggerFactory;
  * processes but that no one task overtakes the system. This is kinda like
  * cooperative multitasking.
  *
+ * When eventLoopThreads is set, task runners are instead pinned to one of a
+ * fixed number of threads, picked by hashing the task runner name, so a task
+ * is always woken up on the same thread with no thread hand off.
+ *
  * @org.apache.xbean.XBean
  */
 public class TaskRunnerFactory implements Executor {
@@ -53,6 +58,9 @@ public class TaskRunnerFactory implements Executor {
     private final AtomicBoolean initDone = new AtomicBoolean(false);
     private int maxThreadPoolSize = Integer.MAX_VALUE;
     private RejectedExecutionHandler rejectedTaskHandler = null;
+    private int eventLoopThreads = 0;
+    private ThreadPoolExecutor[] eventLoops;
+    private boolean useVirtualThreads = VirtualThreads.isEnabledByDefault();
 
     public TaskRunnerFactory() {
         this("ActiveMQ Task");
@@ -85,8 +93,16 @@ public class TaskRunnerFactory implements Executor {
             // avoid using a thread pool to run tasks and use a DedicatedTaskRunner instead.
             if (dedicatedTaskRunner || "true".equalsIgnoreCase(System.getProperty("org.apache.activemq.UseDedicatedTaskRunner"))) {
                 executor = null;
-            } else if (executor == null) {
-                executor = createDefaultExecutor();
+            } else {
+                if (executor == null && useVirtualThreads) {
+                    executor = VirtualThreads.newThreadPerTaskExecutor(name + "-");
+                }
+                if (executor == null) {
+                    executor = createDefaultExecutor();
+                }
+                if (eventLoopThreads > 0) {
+                    eventLoops = createEventLoops();
+                }
             }
             LOG.debug("Initialized TaskRunnerFactory[{}] using ExecutorService: {}", name, executor);
         }
@@ -102,6 +118,12 @@ public class TaskRunnerFactory implements Executor {
             ThreadPoolUtils.shutdown(executor);
             executor = null;
         }
+        if (eventLoops != null) {
+            for (ExecutorService eventLoop : eventLoops) {
+                ThreadPoolUtils.shutdown(eventLoop);
+            }
+            eventLoops = null;
+        }
         initDone.set(false);
     }
 
@@ -115,6 +137,12 @@ public class TaskRunnerFactory implements Executor {
             ThreadPoolUtils.shutdownNow(executor);
             executor = null;
         }
+        if (eventLoops != null) {
+            for (ExecutorService eventLoop : eventLoops) {
+                ThreadPoolUtils.shutdownNow(eventLoop);
+            }
+            eventLoops = null;
+        }
         initDone.set(false);
     }
 
@@ -128,15 +156,23 @@ public class TaskRunnerFactory implements Executor {
             ThreadPoolUtils.shutdownGraceful(executor, shutdownAwaitTermination);
             executor = null;
         }
+        if (eventLoops != null) {
+            for (ExecutorService eventLoop : eventLoops) {
+                ThreadPoolUtils.shutdownGraceful(eventLoop, shutdownAwaitTermination);
+            }
+            eventLoops = null;
+        }
         initDone.set(false);
     }
 
     public TaskRunner createTaskRunner(Task task, String name) {
         init();
-        if (executor != null) {
+        if (eventLoops != null) {
+            return new PooledTaskRunner(eventLoops[(name.hashCode() & Integer.MAX_VALUE) % eventLoops.length], task, maxIterationsPerRun);
+        } else if (executor != null) {
             return new PooledTaskRunner(executor, task, maxIterationsPerRun);
         } else {
-            return new DedicatedTaskRunner(task, name, priority, daemon);
+            return new DedicatedTaskRunner(task, name, priority, daemon, useVirtualThreads);
         }
     }
 
@@ -157,8 +193,11 @@ public class TaskRunnerFactory implements Executor {
 
     private void doExecuteNewThread(Runnable runnable, String name) {
         String threadName = name + "-" + id.incrementAndGet();
-        Thread thread = new Thread(runnable, threadName);
-        thread.setDaemon(daemon);
+        Thread thread = useVirtualThreads ? VirtualThreads.newThread(threadName, runnable) : null;
+        if (thread == null) {
+            thread = new Thread(runnable, threadName);
+            thread.setDaemon(daemon);
+        }
 
         LOG.trace("Created and running thread[{}]: {}", threadName, thread);
         thread.start();
@@ -183,6 +222,30 @@ public class TaskRunnerFactory implements Executor {
         return rc;
     }
 
+    protected ThreadPoolExecutor[] createEventLoops() {
+        ThreadPoolExecutor[] rc = new ThreadPoolExecutor[eventLoopThreads];
+        for (int i = 0; i < rc.length; i++) {
+            final String threadName = name + " EventLoop-" + i;
+            // a task runner only queues itself once, so the queue is bounded
+            // by the number of task runners pinned to the thread
+            rc[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, threadName);
+                    thread.setDaemon(daemon);
+                    thread.setPriority(priority);
+
+                    LOG.trace("Created thread[{}]: {}", threadName, thread);
+                    return thread;
+                }
+            });
+            if (rejectedTaskHandler != null) {
+                rc[i].setRejectedExecutionHandler(rejectedTaskHandler);
+            }
+        }
+        return rc;
+    }
+
     public ExecutorService getExecutor() {
         return executor;
     }
@@ -247,6 +310,65 @@ public class TaskRunnerFactory implements Executor {
         this.rejectedTaskHandler = rejectedTaskHandler;
     }
 
+    public boolean isUseVirtualThreads() {
+        return useVirtualThreads;
+    }
+
+    /**
+     * @param useVirtualThreads
+     *            run tasks on virtual threads rather than a pool of platform
+     *            threads, ignored when the JVM does not support them. Event
+     *            loop threads stay platform threads. Defaults to the
+     *            org.apache.activemq.UseVirtualThreads system property.
+     */
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+    }
+
+    public int getEventLoopThreads() {
+        return eventLoopThreads;
+    }
+
+    /**
+     * @param eventLoopThreads
+     *            the number of threads task runners are pinned to, 0 (the
+     *            default) runs them on the shared thread pool instead. Only
+     *            takes effect on the next init.
+     */
+    public void setEventLoopThreads(int eventLoopThreads) {
+        this.eventLoopThreads = eventLoopThreads;
+    }
+
+    /**
+     * @return the number of task runs waiting on each event loop thread, or
+     *         an empty array when task runners are not pinned
+     */
+    public int[] getEventLoopQueueDepths() {
+        ThreadPoolExecutor[] loops = eventLoops;
+        if (loops == null) {
+            return new int[0];
+        }
+        int[] rc = new int[loops.length];
+        for (int i = 0; i < loops.length; i++) {
+            rc[i] = loops[i].getQueue().size();
+        }
+        return rc;
+    }
+
+    /**
+     * @return the number of task runs completed by the event loop threads
+     */
+    public long getEventLoopCompletedTaskCount() {
+        ThreadPoolExecutor[] loops = eventLoops;
+        long rc = 0;
+        if (loops != null) {
+            for (ThreadPoolExecutor loop : loops) {
+                rc += loop.getCompletedTaskCount();
+            }
+        }
+        return rc;
+    }
+
     public long getShutdownAwaitTermination() {
         return shutdownAwaitTermination;
     }
@@ -0,0 +1,252 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.thread;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A hashed timing wheel for large numbers of short lived timeouts that are
+ * mostly cancelled before they expire, such as request timeouts.
+ *
+ * Scheduling and cancelling do not lock: new timeouts are queued and moved
+ * into the bucket of their tick by the thread of the wheel, and cancelled
+ * ones are dropped when their bucket comes round. Timeouts fire on the
+ * thread of the wheel up to one tick late, so their tasks must be short.
+ * The thread parks while no timeout is scheduled and exits once it has been
+ * idle for the idle timeout, so that a wheel held in a static field does not
+ * keep a thread alive, and it is started again by the next schedule.
+ */
+public final class TimingWheel {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TimingWheel.class);
+    public static final long DEFAULT_IDLE_TIMEOUT = 60 * 1000;
+
+    private final String name;
+    private final long tickNanos;
+    private final List<Timeout>[] buckets;
+    private final int mask;
+    private final long startNanos = System.nanoTime();
+    private final ConcurrentLinkedQueue<Timeout> pending = new ConcurrentLinkedQueue<Timeout>();
+    private final AtomicInteger scheduled = new AtomicInteger();
+    private volatile boolean idle;
+    private volatile long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_IDLE_TIMEOUT);
+    private Thread thread;
+
+    /**
+     * @param ticksPerWheel
+     *            the number of buckets, rounded up to a power of two
+     */
+    @SuppressWarnings("unchecked")
+    public TimingWheel(String name, long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        this.name = name;
+        this.tickNanos = Math.max(1, unit.toNanos(tickDuration));
+        int size = 1;
+        while (size < ticksPerWheel) {
+            size <<= 1;
+        }
+        this.buckets = new List[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new ArrayList<Timeout>();
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Runs the task on the thread of the wheel once the delay has elapsed,
+     * unless the returned timeout is cancelled first.
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        Timeout timeout = new Timeout(task, System.nanoTime() - startNanos + unit.toNanos(delay));
+        pending.add(timeout);
+        if (scheduled.getAndIncrement() == 0 || idle) {
+            wakeup();
+        }
+        return timeout;
+    }
+
+    /**
+     * @return the number of timeouts that have neither fired nor been dropped
+     *         after being cancelled
+     */
+    public int getScheduledCount() {
+        return scheduled.get();
+    }
+
+    /**
+     * Sets how long the thread of the wheel stays parked without any timeout
+     * scheduled before it exits.
+     */
+    public void setIdleTimeout(long idleTimeout, TimeUnit unit) {
+        this.idleTimeoutNanos = Math.max(1, unit.toNanos(idleTimeout));
+    }
+
+    synchronized boolean isThreadRunning() {
+        return thread != null;
+    }
+
+    private synchronized void wakeup() {
+        if (thread == null) {
+            thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    runWheel();
+                }
+            }, name);
+            thread.setDaemon(true);
+            // do not pin the class loader of whoever scheduled first, such as a web application
+            thread.setContextClassLoader(null);
+            thread.start();
+        } else {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private void runWheel() {
+        long tick = (System.nanoTime() - startNanos) / tickNanos;
+        while (true) {
+            if (scheduled.get() == 0) {
+                // registering as idle before checking again so that a
+                // schedule cannot be missed
+                idle = true;
+                if (scheduled.get() == 0) {
+                    long idleSince = System.nanoTime();
+                    LockSupport.parkNanos(this, idleTimeoutNanos);
+                    if (System.nanoTime() - idleSince >= idleTimeoutNanos && exitIfIdle()) {
+                        return;
+                    }
+                }
+                idle = false;
+                // nothing was due while idle
+                tick = Math.max(tick, (System.nanoTime() - startNanos) / tickNanos);
+                continue;
+            }
+            long now = System.nanoTime() - startNanos;
+            long sleep = (tick + 1) * tickNanos - now;
+            if (sleep > 0) {
+                LockSupport.parkNanos(this, sleep);
+                continue;
+            }
+            transferPending(tick);
+            expire(buckets[(int) (tick & mask)], tick);
+            tick++;
+        }
+    }
+
+    /**
+     * Checked under the lock of wakeup, so that a schedule either sees the
+     * thread gone and starts another one or is seen here.
+     */
+    private synchronized boolean exitIfIdle() {
+        if (scheduled.get() != 0) {
+            return false;
+        }
+        thread = null;
+        idle = false;
+        return true;
+    }
+
+    private void transferPending(long tick) {
+        Timeout timeout;
+        while ((timeout = pending.poll()) != null) {
+            if (timeout.isCancelled()) {
+                scheduled.decrementAndGet();
+                continue;
+            }
+            // anything already due goes in the bucket of the current tick
+            timeout.tick = Math.max(tick, timeout.deadline / tickNanos);
+            buckets[(int) (timeout.tick & mask)].add(timeout);
+        }
+    }
+
+    private void expire(List<Timeout> bucket, long tick) {
+        for (Iterator<Timeout> iter = bucket.iterator(); iter.hasNext();) {
+            Timeout timeout = iter.next();
+            if (timeout.isCancelled()) {
+                iter.remove();
+                scheduled.decrementAndGet();
+            } else if (timeout.tick <= tick) {
+                iter.remove();
+                scheduled.decrementAndGet();
+                Runnable task = timeout.expire();
+                if (task != null) {
+                    try {
+                        task.run();
+                    } catch (Throwable e) {
+                        LOG.warn("Timeout task failed: " + task, e);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A scheduled task, which can be cancelled until it has fired.
+     */
+    public static final class Timeout {
+
+        private static final int SCHEDULED = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private final long deadline;
+        private volatile int state;
+        // released once cancelled, so that it is not held until its bucket comes round
+        private Runnable task;
+        // only used by the thread of the wheel
+        private long tick;
+
+        Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return true if the task will not run because of this call
+         */
+        public boolean cancel() {
+            if (STATE.compareAndSet(this, SCHEDULED, CANCELLED)) {
+                task = null;
+                return true;
+            }
+            return false;
+        }
+
+        public boolean isCancelled() {
+            return state == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state == EXPIRED;
+        }
+
+        private Runnable expire() {
+            return STATE.compareAndSet(this, SCHEDULED, EXPIRED) ? task : null;
+        }
+    }
+}
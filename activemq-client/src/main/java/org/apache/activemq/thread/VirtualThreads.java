@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.thread;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates virtual threads when the JVM supports them (JDK 21 and later).
+ * The API is looked up reflectively so this compiles and runs on older JVMs,
+ * where the methods return null and callers fall back to platform threads.
+ *
+ * Virtual threads are always daemon threads and ignore priorities and stack
+ * sizes, so callers must not set those on the threads created here.
+ */
+public final class VirtualThreads {
+
+    /**
+     * System property that makes virtual threads the default for task runner
+     * factories and transports that do not configure useVirtualThreads.
+     */
+    public static final String USE_VIRTUAL_THREADS = "org.apache.activemq.UseVirtualThreads";
+
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreads.class);
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_NAME_COUNTER;
+    private static final Method BUILDER_UNSTARTED;
+    private static final Method BUILDER_FACTORY;
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method nameCounter = null;
+        Method unstarted = null;
+        Method factory = null;
+        Method newThreadPerTaskExecutor = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            name = builder.getMethod("name", String.class);
+            nameCounter = builder.getMethod("name", String.class, long.class);
+            unstarted = builder.getMethod("unstarted", Runnable.class);
+            factory = builder.getMethod("factory");
+            newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        } catch (Exception e) {
+            LOG.debug("Virtual threads are not supported by this JVM: {}", e.toString());
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = name;
+        BUILDER_NAME_COUNTER = nameCounter;
+        BUILDER_UNSTARTED = unstarted;
+        BUILDER_FACTORY = factory;
+        NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+    }
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return true if this JVM can create virtual threads
+     */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * @return true if virtual threads are enabled by the system property and
+     *         supported by this JVM
+     */
+    public static boolean isEnabledByDefault() {
+        return "true".equalsIgnoreCase(System.getProperty(USE_VIRTUAL_THREADS)) && isSupported();
+    }
+
+    /**
+     * @return an unstarted virtual thread, or null if they are not supported
+     */
+    public static Thread newThread(String name, Runnable runnable) {
+        if (!isSupported()) {
+            return null;
+        }
+        try {
+            Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), name);
+            return (Thread) BUILDER_UNSTARTED.invoke(builder, runnable);
+        } catch (Exception e) {
+            LOG.warn("Could not create virtual thread {}, using a platform thread: {}", name, e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * @return a factory of virtual threads named with the prefix and a
+     *         counter, or null if they are not supported
+     */
+    public static ThreadFactory newThreadFactory(String prefix) {
+        if (!isSupported()) {
+            return null;
+        }
+        try {
+            Object builder = BUILDER_NAME_COUNTER.invoke(OF_VIRTUAL.invoke(null), prefix, Long.valueOf(1));
+            return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+        } catch (Exception e) {
+            LOG.warn("Could not create virtual thread factory {}, using platform threads: {}", prefix, e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * @return an executor that runs each task on a new virtual thread, or null
+     *         if they are not supported
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String prefix) {
+        ThreadFactory factory = newThreadFactory(prefix);
+        if (factory == null) {
+            return null;
+        }
+        try {
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, factory);
+        } catch (Exception e) {
+            LOG.warn("Could not create virtual thread executor {}, using platform threads: {}", prefix, e.toString());
+            return null;
+        }
+    }
+}
@@ -18,18 +18,29 @@ package org.apache.activemq.transport;
 
 import java.io.IOException;
 import java.io.InterruptedIOException;
-import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import org.apache.activemq.command.Response;
+import org.apache.activemq.thread.TimingWheel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public class FutureResponse {
     private static final Logger LOG = LoggerFactory.getLogger(FutureResponse.class);
+    private static final AtomicReferenceFieldUpdater<FutureResponse, Response> RESULT =
+        AtomicReferenceFieldUpdater.newUpdater(FutureResponse.class, Response.class, "result");
+    // the result of a request that the ResponseCorrelator timed out
+    private static final Response TIMED_OUT = new Response();
 
     private final ResponseCallback responseCallback;
-    private final ArrayBlockingQueue<Response> responseSlot = new ArrayBlockingQueue<Response>(1);
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile Response result;
+
+    // set by the ResponseCorrelator
+    long requestTime;
+    volatile TimingWheel.Timeout timeout;
 
     public FutureResponse(ResponseCallback responseCallback) {
         this.responseCallback = responseCallback;
@@ -37,7 +48,7 @@ public class FutureResponse {
 
     public Response getResult() throws IOException {
         try {
-            return responseSlot.take();
+            done.await();
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             if (LOG.isDebugEnabled()) {
@@ -45,25 +56,49 @@ public class FutureResponse {
             }
             throw new InterruptedIOException("Interrupted.");
         }
+        return result();
     }
 
     public Response getResult(int timeout) throws IOException {
         try {
-            Response result = responseSlot.poll(timeout, TimeUnit.MILLISECONDS);
-            if (result == null && timeout > 0) {
-                throw new RequestTimedOutIOException();
+            if (!done.await(timeout, TimeUnit.MILLISECONDS)) {
+                if (timeout > 0) {
+                    throw new RequestTimedOutIOException();
+                }
+                return null;
             }
-            return result;
+            return result();
         } catch (InterruptedException e) {
             throw new InterruptedIOException("Interrupted.");
         }
     }
 
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
     public void set(Response result) {
-        if (responseSlot.offer(result)) {
+        if (RESULT.compareAndSet(this, null, result)) {
+            done.countDown();
             if (responseCallback != null) {
                 responseCallback.onCompletion(this);
             }
         }
     }
+
+    /**
+     * Completes the request as timed out, getResult then throws a
+     * {@link RequestTimedOutIOException}.
+     */
+    void timedOut() {
+        set(TIMED_OUT);
+    }
+
+    private Response result() throws IOException {
+        Response response = result;
+        if (response == TIMED_OUT) {
+            throw new RequestTimedOutIOException();
+        }
+        return response;
+    }
 }
@@ -17,15 +17,17 @@
 package org.apache.activemq.transport;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.activemq.command.Command;
 import org.apache.activemq.command.ExceptionResponse;
 import org.apache.activemq.command.Response;
+import org.apache.activemq.thread.TimingWheel;
 import org.apache.activemq.util.IntSequenceGenerator;
+import org.apache.activemq.util.LatencyHistogram;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -33,16 +35,22 @@ import org.slf4j.LoggerFactory;
  * Adds the incrementing sequence number to commands along with performing the
  * correlation of responses to requests to create a blocking request-response
  * semantics.
- * 
- * 
+ *
+ * Pending requests are kept in a concurrent map keyed by command id, so that
+ * many threads can make requests on one connection without contending on a
+ * lock. Request timeouts are run by a timing wheel shared by all connections,
+ * which also removes the timed out requests.
  */
 public class ResponseCorrelator extends TransportFilter {
 
     private static final Logger LOG = LoggerFactory.getLogger(ResponseCorrelator.class);
-    private final Map<Integer, FutureResponse> requestMap = new HashMap<Integer, FutureResponse>();
+    private static final TimingWheel TIMEOUTS = new TimingWheel("ActiveMQ Request Timeouts", 10, TimeUnit.MILLISECONDS, 512);
+    private final ConcurrentHashMap<Integer, FutureResponse> requestMap = new ConcurrentHashMap<Integer, FutureResponse>();
     private IntSequenceGenerator sequenceGenerator;
     private final boolean debug = LOG.isDebugEnabled();
-    private IOException error;
+    private final AtomicReference<IOException> error = new AtomicReference<IOException>();
+    private final LatencyHistogram responseLatency = new LatencyHistogram();
+    private final AtomicLong timedOutRequests = new AtomicLong();
 
     public ResponseCorrelator(Transport next) {
         this(next, new IntSequenceGenerator());
@@ -61,24 +69,55 @@ public class ResponseCorrelator extends TransportFilter {
     }
 
     public FutureResponse asyncRequest(Object o, ResponseCallback responseCallback) throws IOException {
+        return asyncRequest(o, responseCallback, 0);
+    }
+
+    /**
+     * Sends a request whose response, or failure, is given to the callback.
+     *
+     * @param timeout
+     *            the milliseconds after which the request fails with a
+     *            {@link RequestTimedOutIOException}, 0 to wait for ever
+     */
+    public FutureResponse asyncRequest(Object o, ResponseCallback responseCallback, int timeout) throws IOException {
         Command command = (Command) o;
         command.setCommandId(sequenceGenerator.getNextSequenceId());
         command.setResponseRequired(true);
-        FutureResponse future = new FutureResponse(responseCallback);
-        IOException priorError = null;
-        synchronized (requestMap) {
-            priorError = this.error;
-            if (priorError == null) {
-                requestMap.put(new Integer(command.getCommandId()), future);
+        final FutureResponse future = new FutureResponse(responseCallback);
+        final Integer commandId = Integer.valueOf(command.getCommandId());
+        future.requestTime = System.nanoTime();
+        requestMap.put(commandId, future);
+
+        // checked after adding the request so that dispose either sees the
+        // request or the request sees the error
+        IOException priorError = this.error.get();
+        if (priorError != null) {
+            if (requestMap.remove(commandId, future)) {
+                future.set(new ExceptionResponse(priorError));
             }
+            throw priorError;
         }
 
-        if (priorError != null) {
-            future.set(new ExceptionResponse(priorError));
-            throw priorError;
+        if (timeout > 0) {
+            future.timeout = TIMEOUTS.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (requestMap.remove(commandId, future)) {
+                        timedOutRequests.incrementAndGet();
+                        future.timedOut();
+                    }
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
         }
 
-        next.oneway(command);
+        try {
+            next.oneway(command);
+        } catch (IOException e) {
+            if (requestMap.remove(commandId, future)) {
+                cancelTimeout(future);
+            }
+            throw e;
+        }
         return future;
     }
 
@@ -88,8 +127,8 @@ public class ResponseCorrelator extends TransportFilter {
     }
 
     public Object request(Object command, int timeout) throws IOException {
-        FutureResponse response = asyncRequest(command, null);
-        return response.getResult(timeout);
+        FutureResponse response = asyncRequest(command, null, timeout);
+        return response.getResult();
     }
 
     public void onCommand(Object o) {
@@ -101,11 +140,10 @@ public class ResponseCorrelator extends TransportFilter {
         }
         if (command.isResponse()) {
             Response response = (Response)command;
-            FutureResponse future = null;
-            synchronized (requestMap) {
-                future = requestMap.remove(Integer.valueOf(response.getCorrelationId()));
-            }
+            FutureResponse future = requestMap.remove(Integer.valueOf(response.getCorrelationId()));
             if (future != null) {
+                responseLatency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - future.requestTime));
+                cancelTimeout(future);
                 future.set(response);
             } else {
                 if (debug) {
@@ -125,7 +163,7 @@ public class ResponseCorrelator extends TransportFilter {
         dispose(error);
         super.onException(error);
     }
-    
+
     @Override
     public void stop() throws Exception {
         dispose(new IOException("Stopped."));
@@ -133,19 +171,21 @@ public class ResponseCorrelator extends TransportFilter {
     }
 
     private void dispose(IOException error) {
-        ArrayList<FutureResponse> requests=null; 
-        synchronized(requestMap) {
-            if( this.error==null) {
-                this.error = error;
-                requests = new ArrayList<FutureResponse>(requestMap.values());
-                requestMap.clear();
+        if (this.error.compareAndSet(null, error)) {
+            for (Integer commandId : requestMap.keySet()) {
+                FutureResponse fr = requestMap.remove(commandId);
+                if (fr != null) {
+                    cancelTimeout(fr);
+                    fr.set(new ExceptionResponse(error));
+                }
             }
         }
-        if( requests!=null ) {
-            for (Iterator<FutureResponse> iter = requests.iterator(); iter.hasNext();) {
-                FutureResponse fr = iter.next();
-                fr.set(new ExceptionResponse(error));
-            }
+    }
+
+    private void cancelTimeout(FutureResponse future) {
+        TimingWheel.Timeout timeout = future.timeout;
+        if (timeout != null) {
+            timeout.cancel();
         }
     }
 
@@ -153,6 +193,42 @@ public class ResponseCorrelator extends TransportFilter {
         return sequenceGenerator;
     }
 
+    /**
+     * @return the number of requests waiting for a response
+     */
+    public int getOutstandingRequestCount() {
+        return requestMap.size();
+    }
+
+    /**
+     * @return the number of requests that timed out before their response
+     */
+    public long getTimedOutRequestCount() {
+        return timedOutRequests.get();
+    }
+
+    /**
+     * @return the number of responses received
+     */
+    public long getResponseCount() {
+        return responseLatency.getCount();
+    }
+
+    /**
+     * @param percentile
+     *            between 0 and 100
+     * @return the time from sending a request to receiving its response, in
+     *         microseconds, below which that percentage of responses came
+     */
+    public long getResponseLatencyPercentile(double percentile) {
+        return responseLatency.getPercentile(percentile);
+    }
+
+    public void resetStatistics() {
+        responseLatency.reset();
+        timedOutRequests.set(0);
+    }
+
     public String toString() {
         return next.toString();
     }
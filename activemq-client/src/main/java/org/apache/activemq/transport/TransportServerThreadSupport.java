@@ -19,6 +19,7 @@ package org.apache.activemq.transport;
 import java.net.URI;
 
 import org.apache.activemq.ThreadPriorities;
+import org.apache.activemq.thread.VirtualThreads;
 import org.apache.activemq.util.ServiceStopper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,6 +38,7 @@ public abstract class TransportServerThreadSupport extends TransportServerSuppor
     private Thread runner;
     // should be a multiple of 128k
     private long stackSize;
+    private boolean useVirtualThreads = VirtualThreads.isEnabledByDefault();
 
     public TransportServerThreadSupport() {
     }
@@ -70,12 +72,24 @@ public abstract class TransportServerThreadSupport extends TransportServerSuppor
 
     protected void doStart() throws Exception {
         LOG.info("Listening for connections at: " + getConnectURI());
-        runner = new Thread(null, this, "ActiveMQ Transport Server: " + toString(), stackSize);
-        runner.setDaemon(daemon);
-        runner.setPriority(ThreadPriorities.BROKER_MANAGEMENT);
+        runner = createThread("ActiveMQ Transport Server: " + toString(), this, daemon, ThreadPriorities.BROKER_MANAGEMENT);
         runner.start();
     }
 
+    /**
+     * Creates an unstarted thread for the server, a virtual thread when
+     * useVirtualThreads is set and the JVM supports them.
+     */
+    protected Thread createThread(String name, Runnable runnable, boolean daemon, int priority) {
+        Thread thread = useVirtualThreads ? VirtualThreads.newThread(name, runnable) : null;
+        if (thread == null) {
+            thread = new Thread(null, runnable, name, stackSize);
+            thread.setDaemon(daemon);
+            thread.setPriority(priority);
+        }
+        return thread;
+    }
+
     protected void doStop(ServiceStopper stopper) throws Exception {
         if (runner != null && joinOnStop) {
             runner.join();
@@ -96,4 +110,16 @@ public abstract class TransportServerThreadSupport extends TransportServerSuppor
     public void setStackSize(long stackSize) {
         this.stackSize = stackSize;
     }
+
+    public boolean isUseVirtualThreads() {
+        return this.useVirtualThreads;
+    }
+
+    /**
+     * Sets whether the server threads are virtual threads, when the JVM
+     * supports them
+     */
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+    }
 }
@@ -16,6 +16,8 @@
  */
 package org.apache.activemq.transport;
 
+import org.apache.activemq.thread.VirtualThreads;
+
 /**
  * A useful base class for a transport implementation which has a background
  * reading thread.
@@ -28,6 +30,7 @@ public abstract class TransportThreadSupport extends TransportSupport implements
     private Thread runner;
     // should be a multiple of 128k
     private long stackSize;
+    private boolean useVirtualThreads = VirtualThreads.isEnabledByDefault();
 
     public boolean isDaemon() {
         return daemon;
@@ -38,8 +41,12 @@ public abstract class TransportThreadSupport extends TransportSupport implements
     }
 
     protected void doStart() throws Exception {
-        runner = new Thread(null, this, "ActiveMQ Transport: " + toString(), stackSize);
-        runner.setDaemon(daemon);
+        String name = "ActiveMQ Transport: " + toString();
+        runner = useVirtualThreads ? VirtualThreads.newThread(name, this) : null;
+        if (runner == null) {
+            runner = new Thread(null, this, name, stackSize);
+            runner.setDaemon(daemon);
+        }
         runner.start();
     }
 
@@ -56,4 +63,16 @@ public abstract class TransportThreadSupport extends TransportSupport implements
     public void setStackSize(long stackSize) {
         this.stackSize = stackSize;
     }
+
+    public boolean isUseVirtualThreads() {
+        return this.useVirtualThreads;
+    }
+
+    /**
+     * @param useVirtualThreads read on a virtual thread when the JVM supports
+     *            them, in which case daemon and stackSize are ignored
+     */
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+    }
 }
@@ -0,0 +1,175 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.nio;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of byte buffers shared by the nio transports, so that a connection
+ * only holds a buffer while a read or a write is in progress rather than for
+ * its whole life.
+ *
+ * Buffers come in power of two size classes from 4k to 256k. Larger requests
+ * get a buffer of the exact size that is not pooled. The pool keeps at most
+ * org.apache.activemq.transport.nio.BUFFER_POOL_SIZE bytes of idle buffers,
+ * 64mb by default.
+ */
+public final class NIOBufferPool {
+
+    public static final String BUFFER_POOL_SIZE = "org.apache.activemq.transport.nio.BUFFER_POOL_SIZE";
+
+    private static final int MIN_SIZE_SHIFT = 12;
+    private static final int MAX_SIZE_SHIFT = 18;
+    private static final NIOBufferPool INSTANCE = new NIOBufferPool(Long.getLong(BUFFER_POOL_SIZE, 64L * 1024 * 1024));
+
+    private final ConcurrentLinkedQueue<ByteBuffer>[] directBuffers;
+    private final ConcurrentLinkedQueue<ByteBuffer>[] heapBuffers;
+    private final long maxPooledBytes;
+    private final AtomicLong pooledBytes = new AtomicLong();
+    private final AtomicInteger pooledCount = new AtomicInteger();
+    private final AtomicInteger lentCount = new AtomicInteger();
+    private final AtomicLong acquireCount = new AtomicLong();
+    private final AtomicLong allocateCount = new AtomicLong();
+
+    @SuppressWarnings("unchecked")
+    NIOBufferPool(long maxPooledBytes) {
+        this.maxPooledBytes = maxPooledBytes;
+        int classes = MAX_SIZE_SHIFT - MIN_SIZE_SHIFT + 1;
+        directBuffers = new ConcurrentLinkedQueue[classes];
+        heapBuffers = new ConcurrentLinkedQueue[classes];
+        for (int i = 0; i < classes; i++) {
+            directBuffers[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+            heapBuffers[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+        }
+    }
+
+    public static NIOBufferPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return a cleared direct buffer with a capacity of at least size, to be
+     *         given back with {@link #release(ByteBuffer)}
+     */
+    public ByteBuffer acquire(int size) {
+        return acquire(size, true);
+    }
+
+    /**
+     * @return a cleared heap buffer with a capacity of at least size, for
+     *         readers that need the backing array
+     */
+    public ByteBuffer acquireHeap(int size) {
+        return acquire(size, false);
+    }
+
+    /**
+     * Gives a buffer back to the pool. The buffer must not be used afterwards.
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+        lentCount.decrementAndGet();
+        int sizeClass = sizeClass(buffer.capacity());
+        if (sizeClass < 0 || buffer.capacity() != 1 << (sizeClass + MIN_SIZE_SHIFT)) {
+            return;
+        }
+        if (pooledBytes.addAndGet(buffer.capacity()) > maxPooledBytes) {
+            pooledBytes.addAndGet(-buffer.capacity());
+            return;
+        }
+        buffer.clear();
+        pooledCount.incrementAndGet();
+        (buffer.isDirect() ? directBuffers : heapBuffers)[sizeClass].offer(buffer);
+    }
+
+    private ByteBuffer acquire(int size, boolean direct) {
+        acquireCount.incrementAndGet();
+        lentCount.incrementAndGet();
+        int sizeClass = sizeClass(size);
+        if (sizeClass < 0) {
+            allocateCount.incrementAndGet();
+            return direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        }
+        ByteBuffer buffer = (direct ? directBuffers : heapBuffers)[sizeClass].poll();
+        if (buffer != null) {
+            pooledCount.decrementAndGet();
+            pooledBytes.addAndGet(-buffer.capacity());
+            buffer.clear();
+            return buffer;
+        }
+        allocateCount.incrementAndGet();
+        int capacity = 1 << (sizeClass + MIN_SIZE_SHIFT);
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * @return the index of the smallest size class that holds size, or -1 if
+     *         it is larger than the largest class
+     */
+    private static int sizeClass(int size) {
+        int shift = MIN_SIZE_SHIFT;
+        while (shift <= MAX_SIZE_SHIFT && (1 << shift) < size) {
+            shift++;
+        }
+        return shift > MAX_SIZE_SHIFT ? -1 : shift - MIN_SIZE_SHIFT;
+    }
+
+    /**
+     * @return the number of buffers lent out and not yet released
+     */
+    public int getLentCount() {
+        return lentCount.get();
+    }
+
+    /**
+     * @return the number of idle buffers held by the pool
+     */
+    public int getPooledCount() {
+        return pooledCount.get();
+    }
+
+    /**
+     * @return the bytes of the idle buffers held by the pool
+     */
+    public long getPooledBytes() {
+        return pooledBytes.get();
+    }
+
+    public long getMaxPooledBytes() {
+        return maxPooledBytes;
+    }
+
+    /**
+     * @return the number of buffers lent since startup
+     */
+    public long getAcquireCount() {
+        return acquireCount.get();
+    }
+
+    /**
+     * @return the number of buffers allocated because the pool had none of
+     *         the requested size
+     */
+    public long getAllocateCount() {
+        return allocateCount.get();
+    }
+}
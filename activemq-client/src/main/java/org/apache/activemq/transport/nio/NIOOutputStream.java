@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.WritableByteChannel;
 
 import javax.net.ssl.SSLEngine;
@@ -29,16 +30,18 @@ import org.apache.activemq.transport.tcp.TimeStampStream;
 
 /**
  * An optimized buffered outputstream for Tcp
+ *
+ * The buffer is taken from the {@link NIOBufferPool} on the first write and
+ * given back on flush, so an idle connection holds no buffer.
  */
 public class NIOOutputStream extends OutputStream implements TimeStampStream {
 
     private static final int BUFFER_SIZE = 8192;
 
     private final WritableByteChannel out;
-    private final byte[] buffer;
-    private final ByteBuffer byteBuffer;
+    private final int bufferSize;
+    private ByteBuffer buffer;
 
-    private int count;
     private boolean closed;
     private volatile long writeTimestamp = -1;//concurrent reads of this value
 
@@ -66,8 +69,7 @@ public class NIOOutputStream extends OutputStream implements TimeStampStream {
         if (size <= 0) {
             throw new IllegalArgumentException("Buffer size <= 0");
         }
-        buffer = new byte[size];
-        byteBuffer = ByteBuffer.wrap(buffer);
+        bufferSize = size;
     }
 
     /**
@@ -82,7 +84,7 @@ public class NIOOutputStream extends OutputStream implements TimeStampStream {
         if (availableBufferToWrite() < 1) {
             flush();
         }
-        buffer[count++] = (byte)b;
+        borrowBuffer().put((byte)b);
     }
 
     /**
@@ -99,9 +101,8 @@ public class NIOOutputStream extends OutputStream implements TimeStampStream {
         if (availableBufferToWrite() < len) {
             flush();
         }
-        if (buffer.length >= len) {
-            System.arraycopy(b, off, buffer, count, len);
-            count += len;
+        if (bufferSize >= len) {
+            borrowBuffer().put(b, off, len);
         } else {
             write(ByteBuffer.wrap(b, off, len));
         }
@@ -116,11 +117,17 @@ public class NIOOutputStream extends OutputStream implements TimeStampStream {
      */
     @Override
     public void flush() throws IOException {
-        if (count > 0 && out != null) {
-            byteBuffer.position(0);
-            byteBuffer.limit(count);
-            write(byteBuffer);
-            count = 0;
+        ByteBuffer data = buffer;
+        if (data != null) {
+            buffer = null;
+            try {
+                if (data.position() > 0 && out != null) {
+                    data.flip();
+                    write(data);
+                }
+            } finally {
+                NIOBufferPool.getInstance().release(data);
+            }
         }
     }
 
@@ -132,6 +139,10 @@ public class NIOOutputStream extends OutputStream implements TimeStampStream {
     @Override
     public void close() throws IOException {
         super.close();
+        if (buffer != null) {
+            NIOBufferPool.getInstance().release(buffer);
+            buffer = null;
+        }
         if (engine != null) {
             engine.closeOutbound();
         }
@@ -153,15 +164,27 @@ public class NIOOutputStream extends OutputStream implements TimeStampStream {
      * @return the amount free space in the buffer
      */
     private int availableBufferToWrite() {
-        return buffer.length - count;
+        return buffer != null ? buffer.remaining() : bufferSize;
+    }
+
+    private ByteBuffer borrowBuffer() {
+        if (buffer == null) {
+            buffer = NIOBufferPool.getInstance().acquire(bufferSize);
+            buffer.limit(bufferSize);
+        }
+        return buffer;
     }
 
     protected void write(ByteBuffer data) throws IOException {
         ByteBuffer plain;
         if (engine != null) {
-            plain = ByteBuffer.allocate(engine.getSession().getPacketBufferSize());
-            plain.clear();
-            engine.wrap(data, plain);
+            plain = NIOBufferPool.getInstance().acquire(engine.getSession().getPacketBufferSize());
+            try {
+                engine.wrap(data, plain);
+            } catch (IOException e) {
+                NIOBufferPool.getInstance().release(plain);
+                throw e;
+            }
             plain.flip();
         }  else {
             plain = data;
@@ -210,9 +233,60 @@ public class NIOOutputStream extends OutputStream implements TimeStampStream {
             }
         } finally {
             writeTimestamp = -1;
+            if (engine != null) {
+                NIOBufferPool.getInstance().release(plain);
+            }
         }
     }
 
+    /**
+     * Writes the buffered data and then the given buffers, gathering the
+     * buffers into as few channel writes as the channel accepts.
+     *
+     * @param data the buffers to write
+     * @throws IOException
+     */
+    public void write(ByteBuffer[] data) throws IOException {
+        checkClosed();
+        flush();
+        if (engine != null || !(out instanceof GatheringByteChannel)) {
+            for (ByteBuffer buffer : data) {
+                write(buffer);
+            }
+            return;
+        }
+
+        GatheringByteChannel channel = (GatheringByteChannel) out;
+        long remaining = 0;
+        for (ByteBuffer buffer : data) {
+            remaining += buffer.remaining();
+        }
+        long lastRemaining = remaining - 1;
+        long delay = 1;
+        try {
+            writeTimestamp = System.currentTimeMillis();
+            while (remaining > 0) {
+                // back off as in write(ByteBuffer) when nothing was written
+                if (remaining == lastRemaining) {
+                    try {
+                        Thread.sleep(delay);
+                        delay *= 2;
+                        if (delay > 1000) {
+                            delay = 1000;
+                        }
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException();
+                    }
+                } else {
+                    delay = 1;
+                }
+                lastRemaining = remaining;
+                remaining -= channel.write(data);
+            }
+        } finally {
+            writeTimestamp = -1;
+        }
+    }
 
     /* (non-Javadoc)
      * @see org.apache.activemq.transport.tcp.TimeStampStream#isWriting()
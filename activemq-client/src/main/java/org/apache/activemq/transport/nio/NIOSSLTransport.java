@@ -116,9 +116,6 @@ public class NIOSSLTransport extends NIOTransport {
 
             sslSession = sslEngine.getSession();
 
-            inputBuffer = ByteBuffer.allocate(sslSession.getPacketBufferSize());
-            inputBuffer.clear();
-
             outputStream = new NIOOutputStream(channel);
             outputStream.setEngine(sslEngine);
             this.dataOut = new DataOutputStream(outputStream);
@@ -168,12 +165,13 @@ public class NIOSSLTransport extends NIOTransport {
 
     @Override
     protected void serviceRead() {
+        ByteBuffer plain = null;
         try {
             if (handshakeInProgress) {
                 doHandshake();
             }
 
-            ByteBuffer plain = ByteBuffer.allocate(sslSession.getApplicationBufferSize());
+            plain = NIOBufferPool.getInstance().acquire(sslSession.getApplicationBufferSize());
             plain.position(plain.limit());
 
             while (true) {
@@ -203,6 +201,8 @@ public class NIOSSLTransport extends NIOTransport {
             onException(e);
         } catch (Throwable e) {
             onException(IOExceptionSupport.create(e));
+        } finally {
+            NIOBufferPool.getInstance().release(plain);
         }
     }
 
@@ -289,6 +289,22 @@ public class NIOSSLTransport extends NIOTransport {
     }
 
     protected int secureRead(ByteBuffer plain) throws Exception {
+        // the network buffer is only kept between reads while it holds part
+        // of a record
+        if (inputBuffer == null) {
+            inputBuffer = NIOBufferPool.getInstance().acquire(sslSession.getPacketBufferSize());
+        }
+        try {
+            return doSecureRead(plain);
+        } finally {
+            if (inputBuffer != null && inputBuffer.position() == 0) {
+                NIOBufferPool.getInstance().release(inputBuffer);
+                inputBuffer = null;
+            }
+        }
+    }
+
+    private int doSecureRead(ByteBuffer plain) throws Exception {
 
         if (!(inputBuffer.position() != 0 && inputBuffer.hasRemaining()) || status == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
             int bytesRead = channel.read(inputBuffer);
@@ -339,7 +355,12 @@ public class NIOSSLTransport extends NIOTransport {
         while (true) {
             switch (sslEngine.getHandshakeStatus()) {
             case NEED_UNWRAP:
-                secureRead(ByteBuffer.allocate(sslSession.getApplicationBufferSize()));
+                ByteBuffer plain = NIOBufferPool.getInstance().acquire(sslSession.getApplicationBufferSize());
+                try {
+                    secureRead(plain);
+                } finally {
+                    NIOBufferPool.getInstance().release(plain);
+                }
                 break;
             case NEED_TASK:
                 Runnable task;
@@ -358,6 +379,14 @@ public class NIOSSLTransport extends NIOTransport {
         }
     }
 
+    /**
+     * The handshake writes to the output stream from the selector thread.
+     */
+    @Override
+    protected boolean isWriteCoalescingSupported() {
+        return false;
+    }
+
     @Override
     protected void doStart() throws Exception {
         taskRunnerFactory = new TaskRunnerFactory("ActiveMQ NIOSSLTransport Task");
@@ -50,6 +50,7 @@ public class NIOTransport extends TcpTransport {
     protected ByteBuffer inputBuffer;
     protected ByteBuffer currentBuffer;
     protected int nextFrameSize;
+    private final ByteBuffer frameSizeBuffer = ByteBuffer.allocate(4);
 
     public NIOTransport(WireFormat wireFormat, SocketFactory socketFactory, URI remoteLocation, URI localLocation) throws UnknownHostException, IOException {
         super(wireFormat, socketFactory, remoteLocation, localLocation);
@@ -78,22 +79,21 @@ public class NIOTransport extends TcpTransport {
             }
         });
 
-        // Send the data via the channel
-        // inputBuffer = ByteBuffer.allocateDirect(8*1024);
-        inputBuffer = ByteBuffer.allocate(8 * 1024);
-        currentBuffer = inputBuffer;
+        // read buffers are borrowed from the pool while reading
+        currentBuffer = null;
         nextFrameSize = -1;
-        currentBuffer.limit(4);
         NIOOutputStream outPutStream = new NIOOutputStream(channel, 16 * 1024);
         this.dataOut = new DataOutputStream(outPutStream);
         this.buffOut = outPutStream;
     }
 
     protected void serviceRead() {
+        ByteBuffer readBuffer = NIOBufferPool.getInstance().acquire(ioBufferSize);
         try {
             while (true) {
 
-                int readSize = channel.read(currentBuffer);
+                readBuffer.clear();
+                int readSize = channel.read(readBuffer);
                 if (readSize == -1) {
                     onException(new EOFException());
                     selection.close();
@@ -103,57 +103,99 @@ public class NIOTransport extends TcpTransport {
                     break;
                 }
 
-                if (currentBuffer.hasRemaining()) {
-                    continue;
-                }
-
-                // Are we trying to figure out the size of the next frame?
-                if (nextFrameSize == -1) {
-                    assert inputBuffer == currentBuffer;
-
-                    // If the frame is too big to fit in our direct byte buffer,
-                    // Then allocate a non direct byte buffer of the right size
-                    // for it.
-                    inputBuffer.flip();
-                    nextFrameSize = inputBuffer.getInt() + 4;
-
-                    if (wireFormat instanceof OpenWireFormat) {
-                        long maxFrameSize = ((OpenWireFormat)wireFormat).getMaxFrameSize();
-                        if (nextFrameSize > maxFrameSize) {
-                            throw new IOException("Frame size of " + (nextFrameSize / (1024 * 1024)) + " MB larger than max allowed " + (maxFrameSize / (1024 * 1024)) + " MB");
-                        }
-                    }
+                readBuffer.flip();
+                processBuffer(readBuffer);
+            }
 
-                    if (nextFrameSize > inputBuffer.capacity()) {
-                        currentBuffer = ByteBuffer.allocate(nextFrameSize);
-                        currentBuffer.putInt(nextFrameSize);
-                    } else {
-                        inputBuffer.limit(nextFrameSize);
-                    }
+        } catch (IOException e) {
+            onException(e);
+        } catch (Throwable e) {
+            onException(IOExceptionSupport.create(e));
+        } finally {
+            NIOBufferPool.getInstance().release(readBuffer);
+        }
+    }
 
+    /**
+     * Consumes the frames in a read buffer. The frames that are whole in the
+     * buffer are unmarshalled in place, the part of a frame that continues in
+     * the next read is copied to a buffer of the frame size.
+     */
+    protected void processBuffer(ByteBuffer readBuffer) throws IOException {
+        while (readBuffer.hasRemaining()) {
+
+            // Are we trying to figure out the size of the next frame?
+            if (nextFrameSize == -1) {
+                int frameStart = readBuffer.position();
+                if (frameSizeBuffer.position() == 0 && readBuffer.remaining() >= 4) {
+                    nextFrameSize = readBuffer.getInt() + 4;
                 } else {
-                    currentBuffer.flip();
+                    // the size is split over two reads
+                    while (frameSizeBuffer.hasRemaining() && readBuffer.hasRemaining()) {
+                        frameSizeBuffer.put(readBuffer.get());
+                    }
+                    if (frameSizeBuffer.hasRemaining()) {
+                        return;
+                    }
+                    frameSizeBuffer.flip();
+                    nextFrameSize = frameSizeBuffer.getInt() + 4;
+                    frameSizeBuffer.clear();
+                    frameStart = -1;
+                }
 
-                    Object command = wireFormat.unmarshal(new DataInputStream(new NIOInputStream(currentBuffer)));
-                    doConsume((Command)command);
+                if (wireFormat instanceof OpenWireFormat) {
+                    long maxFrameSize = ((OpenWireFormat)wireFormat).getMaxFrameSize();
+                    if (nextFrameSize > maxFrameSize) {
+                        throw new IOException("Frame size of " + (nextFrameSize / (1024 * 1024)) + " MB larger than max allowed " + (maxFrameSize / (1024 * 1024)) + " MB");
+                    }
+                }
 
+                if (frameStart >= 0 && readBuffer.remaining() >= nextFrameSize - 4) {
+                    ByteBuffer frame = readBuffer.duplicate();
+                    frame.position(frameStart);
+                    frame.limit(frameStart + nextFrameSize);
+                    readBuffer.position(frameStart + nextFrameSize);
                     nextFrameSize = -1;
-                    inputBuffer.clear();
-                    inputBuffer.limit(4);
-                    currentBuffer = inputBuffer;
+                    consumeFrame(frame);
+                    continue;
                 }
 
+                currentBuffer = ByteBuffer.allocate(nextFrameSize);
+                currentBuffer.putInt(nextFrameSize - 4);
             }
 
-        } catch (IOException e) {
-            onException(e);
-        } catch (Throwable e) {
-            onException(IOExceptionSupport.create(e));
+            int length = Math.min(currentBuffer.remaining(), readBuffer.remaining());
+            ByteBuffer part = readBuffer.duplicate();
+            part.limit(part.position() + length);
+            currentBuffer.put(part);
+            readBuffer.position(readBuffer.position() + length);
+
+            if (!currentBuffer.hasRemaining()) {
+                ByteBuffer frame = currentBuffer;
+                frame.flip();
+                currentBuffer = null;
+                nextFrameSize = -1;
+                consumeFrame(frame);
+            }
         }
     }
 
+    private void consumeFrame(ByteBuffer frame) throws IOException {
+        Object command = wireFormat.unmarshal(new DataInputStream(new NIOInputStream(frame)));
+        doConsume((Command)command);
+    }
+
+    /**
+     * Writes a coalesced batch with a gathering write on the channel.
+     */
+    @Override
+    protected void writeFrames(ByteBuffer[] frames) throws IOException {
+        ((NIOOutputStream) buffOut).write(frames);
+    }
+
     protected void doStart() throws Exception {
         connect();
+        startCoalescingWriter();
         selection.setInterestOps(SelectionKey.OP_READ);
         selection.enable();
     }
@@ -0,0 +1,196 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.tcp;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.activemq.thread.VirtualThreads;
+import org.apache.activemq.transport.TransportDisposedIOException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes the frames marshalled by a {@link TcpTransport} from a single
+ * thread, so that the frames queued while a write is in progress, or within
+ * the linger time, go out together in one write.
+ *
+ * A frame is queued, not written, when oneway returns, so a failed write is
+ * reported to the transport listener rather than to the sender. The queue is
+ * bounded and senders block while it is full.
+ */
+public class CoalescingWriter implements Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CoalescingWriter.class);
+
+    private final TcpTransport transport;
+    private final long lingerNanos;
+    private final int maxBatchSize;
+    private final int maxQueuedSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition batchFull = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final ArrayDeque<ByteBuffer> queue = new ArrayDeque<ByteBuffer>();
+    private int queuedSize;
+    private boolean stopping;
+    private IOException failure;
+    private Thread thread;
+
+    /**
+     * @param lingerMicros
+     *            how long the first queued frame may wait for more frames
+     *            when the batch is not full, 0 to write what is queued at once
+     * @param maxBatchSize
+     *            the most bytes written in one write, unless a single frame
+     *            is larger
+     */
+    public CoalescingWriter(TcpTransport transport, long lingerMicros, int maxBatchSize) {
+        this.transport = transport;
+        this.lingerNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(0, lingerMicros));
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxQueuedSize = this.maxBatchSize * 16;
+    }
+
+    public void start(String name, boolean useVirtualThreads) {
+        thread = useVirtualThreads ? VirtualThreads.newThread(name, this) : null;
+        if (thread == null) {
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+        }
+        thread.start();
+    }
+
+    /**
+     * Stops taking frames and waits for the queued frames to be written.
+     */
+    public void stop(long timeout) throws InterruptedException {
+        lock.lock();
+        try {
+            stopping = true;
+            notEmpty.signalAll();
+            batchFull.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (thread != null && thread != Thread.currentThread()) {
+            thread.join(timeout);
+        }
+    }
+
+    /**
+     * Queues a marshalled frame, waiting while the queue is full.
+     */
+    public void enqueue(ByteBuffer frame) throws IOException {
+        lock.lock();
+        try {
+            while (failure == null && !stopping && queuedSize >= maxQueuedSize) {
+                notFull.await();
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            if (stopping) {
+                throw new TransportDisposedIOException("Transport " + transport + " is stopping");
+            }
+            queue.add(frame);
+            queuedSize += frame.remaining();
+            notEmpty.signal();
+            if (queuedSize >= maxBatchSize) {
+                batchFull.signal();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            ByteBuffer[] batch;
+            while ((batch = takeBatch()) != null) {
+                transport.flushFrames(batch);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            fail(e);
+            transport.onException(e);
+        } catch (Throwable e) {
+            IOException ioe = new IOException("Unexpected error writing frames: " + e);
+            ioe.initCause(e);
+            fail(ioe);
+            transport.onException(ioe);
+        }
+        LOG.trace("Coalescing writer for {} stopped", transport);
+    }
+
+    /**
+     * @return the next frames to write, or null once stopped and drained
+     */
+    private ByteBuffer[] takeBatch() throws InterruptedException {
+        lock.lock();
+        try {
+            while (queue.isEmpty()) {
+                if (stopping) {
+                    return null;
+                }
+                notEmpty.await();
+            }
+            long remaining = lingerNanos;
+            while (remaining > 0 && queuedSize < maxBatchSize && !stopping) {
+                remaining = batchFull.awaitNanos(remaining);
+            }
+            List<ByteBuffer> batch = new ArrayList<ByteBuffer>();
+            int size = 0;
+            while (!queue.isEmpty() && (batch.isEmpty() || size + queue.peek().remaining() <= maxBatchSize)) {
+                ByteBuffer frame = queue.poll();
+                size += frame.remaining();
+                batch.add(frame);
+            }
+            queuedSize -= size;
+            notFull.signalAll();
+            return batch.toArray(new ByteBuffer[batch.size()]);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void fail(IOException e) {
+        lock.lock();
+        try {
+            failure = e;
+            queue.clear();
+            queuedSize = 0;
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -21,6 +21,7 @@ import org.apache.activemq.TransportLoggerSupport;
 import org.apache.activemq.thread.TaskRunnerFactory;
 import org.apache.activemq.transport.Transport;
 import org.apache.activemq.transport.TransportThreadSupport;
+import org.apache.activemq.util.DataByteArrayOutputStream;
 import org.apache.activemq.util.InetAddressUtil;
 import org.apache.activemq.util.IntrospectionSupport;
 import org.apache.activemq.util.ServiceStopper;
@@ -34,10 +35,12 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.net.*;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -121,6 +124,17 @@ public class TcpTransport extends TransportThreadSupport implements Transport, S
     protected SocketFactory socketFactory;
     protected final AtomicReference<CountDownLatch> stoppedLatch = new AtomicReference<CountDownLatch>();
     protected volatile int receiveCounter;
+    /**
+     * writeCoalescing=true -> commands are queued by oneway and written by a
+     * writer thread, which combines the commands queued while it writes, or
+     * within writeCoalescingLinger microseconds, into one write.
+     */
+    protected boolean writeCoalescing = false;
+    protected long writeCoalescingLinger = 0;
+    protected int writeCoalescingMaxBatchSize = 64 * 1024;
+    protected CoalescingWriter coalescingWriter;
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong flushedFrameCount = new AtomicLong();
 
     private Map<String, Object> socketOptions;
     private int soLinger = Integer.MIN_VALUE;
@@ -172,10 +186,59 @@ public class TcpTransport extends TransportThreadSupport implements Transport, S
      */
     public void oneway(Object command) throws IOException {
         checkStarted();
-        wireFormat.marshal(command, dataOut);
+        CoalescingWriter writer = coalescingWriter;
+        if (writer != null) {
+            DataByteArrayOutputStream frame = new DataByteArrayOutputStream(256);
+            wireFormat.marshal(command, frame);
+            writer.enqueue(ByteBuffer.wrap(frame.getData(), 0, frame.size()));
+        } else {
+            wireFormat.marshal(command, dataOut);
+            dataOut.flush();
+            flushCount.incrementAndGet();
+            flushedFrameCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Writes the frames of a coalesced batch and flushes them once.
+     */
+    protected void writeFrames(ByteBuffer[] frames) throws IOException {
+        for (ByteBuffer frame : frames) {
+            dataOut.write(frame.array(), frame.arrayOffset() + frame.position(), frame.remaining());
+        }
         dataOut.flush();
     }
 
+    void flushFrames(ByteBuffer[] frames) throws IOException {
+        writeFrames(frames);
+        flushCount.incrementAndGet();
+        flushedFrameCount.addAndGet(frames.length);
+    }
+
+    /**
+     * @return false if this transport writes outside of oneway and so
+     *         cannot hand its writes to a {@link CoalescingWriter}
+     */
+    protected boolean isWriteCoalescingSupported() {
+        return true;
+    }
+
+    protected void startCoalescingWriter() {
+        if (writeCoalescing && isWriteCoalescingSupported()) {
+            CoalescingWriter writer = new CoalescingWriter(this, writeCoalescingLinger, writeCoalescingMaxBatchSize);
+            writer.start("ActiveMQ Transport Writer: " + toString(), isUseVirtualThreads());
+            coalescingWriter = writer;
+        }
+    }
+
+    protected void stopCoalescingWriter() throws InterruptedException {
+        CoalescingWriter writer = coalescingWriter;
+        if (writer != null) {
+            // let the queued frames, such as a ShutdownInfo, go out first
+            writer.stop(1000);
+        }
+    }
+
     /**
      * @return pretty print of 'this'
      */
@@ -462,6 +525,7 @@ public class TcpTransport extends TransportThreadSupport implements Transport, S
     @Override
     protected void doStart() throws Exception {
         connect();
+        startCoalescingWriter();
         stoppedLatch.set(new CountDownLatch(1));
         super.doStart();
     }
@@ -524,6 +588,7 @@ public class TcpTransport extends TransportThreadSupport implements Transport, S
         if (LOG.isDebugEnabled()) {
             LOG.debug("Stopping transport " + this);
         }
+        stopCoalescingWriter();
 
         // Closing the streams flush the sockets before closing.. if the socket
         // is hung.. then this hangs the close.
@@ -654,6 +719,69 @@ public class TcpTransport extends TransportThreadSupport implements Transport, S
         return receiveCounter;
     }
 
+    public boolean isWriteCoalescing() {
+        return writeCoalescing;
+    }
+
+    /**
+     * Sets whether commands are written by a writer thread that combines the
+     * commands sent by concurrent sessions into fewer writes. oneway then
+     * returns once the command is queued.
+     */
+    public void setWriteCoalescing(boolean writeCoalescing) {
+        this.writeCoalescing = writeCoalescing;
+    }
+
+    public long getWriteCoalescingLinger() {
+        return writeCoalescingLinger;
+    }
+
+    /**
+     * Sets how many microseconds the writer waits for more commands before
+     * writing a batch smaller than writeCoalescingMaxBatchSize, 0 by default
+     */
+    public void setWriteCoalescingLinger(long writeCoalescingLinger) {
+        this.writeCoalescingLinger = writeCoalescingLinger;
+    }
+
+    public int getWriteCoalescingMaxBatchSize() {
+        return writeCoalescingMaxBatchSize;
+    }
+
+    /**
+     * Sets the most bytes the writer combines into one write, 64k by default
+     */
+    public void setWriteCoalescingMaxBatchSize(int writeCoalescingMaxBatchSize) {
+        this.writeCoalescingMaxBatchSize = writeCoalescingMaxBatchSize;
+    }
+
+    /**
+     * @return the number of writes flushed to the socket
+     */
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    /**
+     * @return the number of commands flushed to the socket
+     */
+    public long getFlushedFrameCount() {
+        return flushedFrameCount.get();
+    }
+
+    /**
+     * @return the mean number of commands per write
+     */
+    public double getAverageFlushBatchSize() {
+        long flushes = flushCount.get();
+        return flushes == 0 ? 0 : (double) flushedFrameCount.get() / flushes;
+    }
+
+    public void resetFlushStatistics() {
+        flushCount.set(0);
+        flushedFrameCount.set(0);
+    }
+
     /**
      * @param sock The socket on which to set the Traffic Class.
      * @return Whether or not the Traffic Class was set on the given socket.
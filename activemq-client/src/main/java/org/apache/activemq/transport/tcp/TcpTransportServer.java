@@ -386,9 +386,7 @@ public class TcpTransportServer extends TransportServerThreadSupport implements
                     }
                 }
             };
-            socketHandlerThread = new Thread(null, run, "ActiveMQ Transport Server Thread Handler: " + toString(), getStackSize());
-            socketHandlerThread.setDaemon(true);
-            socketHandlerThread.setPriority(ThreadPriorities.BROKER_MANAGEMENT - 1);
+            socketHandlerThread = createThread("ActiveMQ Transport Server Thread Handler: " + toString(), run, true, ThreadPriorities.BROKER_MANAGEMENT - 1);
             socketHandlerThread.start();
         }
         super.doStart();
@@ -427,6 +425,7 @@ public class TcpTransportServer extends TransportServerThreadSupport implements
                 options.put("logWriterName", logWriterName);
                 options.put("dynamicManagement", Boolean.valueOf(dynamicManagement));
                 options.put("startLogging", Boolean.valueOf(startLogging));
+                options.put("useVirtualThreads", Boolean.valueOf(isUseVirtualThreads()));
                 options.putAll(transportOptions);
 
                 WireFormat format = wireFormatFactory.createWireFormat();
@@ -17,18 +17,24 @@
 package org.apache.activemq.usage;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Used to keep track of how much of something is being used so that a
  * productive working set usage can be controlled. Main use case is manage
  * memory usage.
  *
+ * The usage is updated atomically, the usage lock is only taken when an update
+ * moves the usage across a percent boundary, to update the percent usage and
+ * notify listeners and waiters, so concurrent enqueues and dequeues on a
+ * destination and its parents do not serialize on it.
+ *
  * @org.apache.xbean.XBean
  *
  */
 public class MemoryUsage extends Usage<MemoryUsage> {
 
-    private long usage;
+    private final AtomicLong usage = new AtomicLong();
 
     public MemoryUsage() {
         this(null, null);
@@ -65,26 +71,18 @@ public class MemoryUsage extends Usage<MemoryUsage> {
         if (parent != null) {
             parent.waitForSpace();
         }
-        usageLock.readLock().lock();
-        try {
-            if (percentUsage >= 100 && isStarted()) {
-                usageLock.readLock().unlock();
-                usageLock.writeLock().lock();
-                try {
-                    while (percentUsage >= 100 && isStarted()) {
-                        waitForSpaceCondition.await();
-                    }
-                    usageLock.readLock().lock();
-                } finally {
-                    usageLock.writeLock().unlock();
+        if (percentUsage >= 100) {
+            usageLock.writeLock().lock();
+            try {
+                while (percentUsage >= 100 && isStarted()) {
+                    waitForSpaceCondition.await();
                 }
+                if (percentUsage >= 100 && !isStarted()) {
+                    throw new InterruptedException("waitForSpace stopped during wait.");
+                }
+            } finally {
+                usageLock.writeLock().unlock();
             }
-
-            if (percentUsage >= 100 && !isStarted()) {
-                throw new InterruptedException("waitForSpace stopped during wait.");
-            }
-        } finally {
-            usageLock.readLock().unlock();
         }
     }
 
@@ -100,25 +98,17 @@ public class MemoryUsage extends Usage<MemoryUsage> {
                 return false;
             }
         }
-        usageLock.readLock().lock();
-        try {
-            if (percentUsage >= 100) {
-                usageLock.readLock().unlock();
-                usageLock.writeLock().lock();
-                try {
-                    while (percentUsage >= 100 ) {
-                        waitForSpaceCondition.await(timeout, TimeUnit.MILLISECONDS);
-                    }
-                    usageLock.readLock().lock();
-                } finally {
-                    usageLock.writeLock().unlock();
+        if (percentUsage >= 100) {
+            usageLock.writeLock().lock();
+            try {
+                while (percentUsage >= 100 ) {
+                    waitForSpaceCondition.await(timeout, TimeUnit.MILLISECONDS);
                 }
+            } finally {
+                usageLock.writeLock().unlock();
             }
-
-            return percentUsage < 100;
-        } finally {
-            usageLock.readLock().unlock();
         }
+        return percentUsage < 100;
     }
 
     @Override
@@ -126,12 +116,7 @@ public class MemoryUsage extends Usage<MemoryUsage> {
         if (parent != null && parent.isFull()) {
             return true;
         }
-        usageLock.readLock().lock();
-        try {
-            return percentUsage >= 100;
-        } finally {
-            usageLock.readLock().unlock();
-        }
+        return percentUsage >= 100;
     }
 
     /**
@@ -156,13 +141,8 @@ public class MemoryUsage extends Usage<MemoryUsage> {
             return;
         }
 
-        usageLock.writeLock().lock();
-        try {
-            usage += value;
-            setPercentUsage(caclPercentUsage());
-        } finally {
-            usageLock.writeLock().unlock();
-        }
+        usage.addAndGet(value);
+        updatePercentUsage();
 
         if (parent != null) {
             parent.increaseUsage(value);
@@ -179,31 +159,43 @@ public class MemoryUsage extends Usage<MemoryUsage> {
             return;
         }
 
-        usageLock.writeLock().lock();
-        try {
-            usage -= value;
-            setPercentUsage(caclPercentUsage());
-        } finally {
-            usageLock.writeLock().unlock();
-        }
+        usage.addAndGet(-value);
+        updatePercentUsage();
 
         if (parent != null) {
             parent.decreaseUsage(value);
         }
     }
 
+    /**
+     * Takes the usage lock to update the percent usage only when it no longer
+     * matches the usage. Rechecks after updating it, as another thread may have
+     * changed the usage after it was read under the lock but compared it to the
+     * percent usage before it was updated.
+     */
+    private void updatePercentUsage() {
+        while (percentUsage != caclPercentUsage()) {
+            usageLock.writeLock().lock();
+            try {
+                setPercentUsage(caclPercentUsage());
+            } finally {
+                usageLock.writeLock().unlock();
+            }
+        }
+    }
+
     @Override
     protected long retrieveUsage() {
-        return usage;
+        return usage.get();
     }
 
     @Override
     public long getUsage() {
-        return usage;
+        return usage.get();
     }
 
     public void setUsage(long usage) {
-        this.usage = usage;
+        this.usage.set(usage);
     }
 
     public void setPercentOfJvmHeap(int percentOfJvmHeap) {
@@ -42,7 +42,7 @@ public abstract class Usage<T extends Usage> implements Service {
 
     protected final ReentrantReadWriteLock usageLock = new ReentrantReadWriteLock();
     protected final Condition waitForSpaceCondition = usageLock.writeLock().newCondition();
-    protected int percentUsage;
+    protected volatile int percentUsage;
     protected T parent;
     protected String name;
 
@@ -212,12 +212,7 @@ public abstract class Usage<T extends Usage> implements Service {
     }
 
     public int getPercentUsage() {
-        usageLock.readLock().lock();
-        try {
-            return percentUsage;
-        } finally {
-            usageLock.readLock().unlock();
-        }
+        return percentUsage;
     }
 
     public int getPercentUsageMinDelta() {
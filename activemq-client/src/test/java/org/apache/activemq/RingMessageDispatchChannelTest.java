@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.MessageDispatch;
+
+public class RingMessageDispatchChannelTest extends TestCase {
+
+    public void testOrderAcrossOverflow() throws Exception {
+        RingMessageDispatchChannel channel = new RingMessageDispatchChannel(16);
+        channel.start();
+        for (int i = 0; i < 40; i++) {
+            channel.enqueue(dispatch(i, 4));
+        }
+        assertEquals(40, channel.size());
+        for (int i = 0; i < 30; i++) {
+            assertEquals(i, seq(channel.dequeueNoWait()));
+        }
+        for (int i = 40; i < 50; i++) {
+            channel.enqueue(dispatch(i, 4));
+        }
+        for (int i = 30; i < 50; i++) {
+            assertEquals(i, seq(channel.peek()));
+            assertEquals(i, seq(channel.dequeue(0)));
+        }
+        assertTrue(channel.isEmpty());
+        assertNull(channel.dequeueNoWait());
+    }
+
+    public void testEnqueueFirstAndRemoveAll() throws Exception {
+        RingMessageDispatchChannel channel = new RingMessageDispatchChannel(16);
+        for (int i = 1; i < 20; i++) {
+            channel.enqueue(dispatch(i, 4));
+        }
+        channel.enqueueFirst(dispatch(0, 4));
+        assertNull("not running", channel.dequeueNoWait());
+        channel.start();
+        assertEquals(0, seq(channel.dequeueNoWait()));
+        channel.enqueueFirst(dispatch(0, 4));
+        List<MessageDispatch> all = channel.removeAll();
+        assertEquals(20, all.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, seq(all.get(i)));
+        }
+        assertEquals(0, channel.size());
+    }
+
+    public void testPriority() throws Exception {
+        RingMessageDispatchChannel channel = new PriorityRingMessageDispatchChannel(16);
+        channel.start();
+        channel.enqueue(dispatch(0, 4));
+        channel.enqueue(dispatch(1, 9));
+        channel.enqueue(dispatch(2, 0));
+        channel.enqueue(dispatch(3, 9));
+        channel.enqueueFirst(dispatch(4, 4));
+        assertEquals(1, seq(channel.dequeueNoWait()));
+        assertEquals(3, seq(channel.dequeueNoWait()));
+        assertEquals(4, seq(channel.dequeueNoWait()));
+        assertEquals(0, seq(channel.dequeueNoWait()));
+        assertEquals(2, seq(channel.dequeueNoWait()));
+        assertTrue(channel.isEmpty());
+    }
+
+    public void testBlockingDequeue() throws Exception {
+        final RingMessageDispatchChannel channel = new RingMessageDispatchChannel();
+        channel.start();
+        long start = System.currentTimeMillis();
+        assertNull(channel.dequeue(100));
+        assertTrue(System.currentTimeMillis() - start >= 90);
+
+        final AtomicReference<Object> result = new AtomicReference<Object>();
+        Thread receiver = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    result.set(channel.dequeue(-1));
+                    result.set(channel.dequeue(-1));
+                } catch (InterruptedException e) {
+                    result.set(e);
+                }
+            }
+        };
+        receiver.start();
+        Thread.sleep(50);
+        channel.enqueue(dispatch(0, 4));
+        Thread.sleep(50);
+        channel.close();
+        receiver.join(5000);
+        assertFalse(receiver.isAlive());
+        assertNull("woken by close", result.get());
+    }
+
+    public void testSingleProducerSingleConsumer() throws Exception {
+        final RingMessageDispatchChannel channel = new RingMessageDispatchChannel(64);
+        final int count = 200000;
+        channel.start();
+        final AtomicReference<String> failure = new AtomicReference<String>();
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < count; i++) {
+                        MessageDispatch md = channel.dequeue(5000);
+                        if (md == null || seq(md) != i) {
+                            failure.set("expected " + i + " got " + md);
+                            return;
+                        }
+                    }
+                } catch (Exception e) {
+                    failure.set(e.toString());
+                }
+            }
+        };
+        consumer.start();
+        for (int i = 0; i < count; i++) {
+            channel.enqueue(dispatch(i, 4));
+        }
+        consumer.join(60000);
+        assertNull(failure.get());
+        assertTrue(channel.isEmpty());
+    }
+
+    private static MessageDispatch dispatch(int seq, int priority) {
+        ActiveMQTextMessage message = new ActiveMQTextMessage();
+        message.setPriority((byte) priority);
+        message.setCorrelationId(Integer.toString(seq));
+        MessageDispatch md = new MessageDispatch();
+        md.setMessage(message);
+        return md;
+    }
+
+    private static int seq(MessageDispatch md) {
+        return Integer.parseInt(md.getMessage().getCorrelationId());
+    }
+}
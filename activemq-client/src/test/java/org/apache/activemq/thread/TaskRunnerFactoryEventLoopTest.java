@@ -0,0 +1,109 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.thread;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class TaskRunnerFactoryEventLoopTest extends TestCase {
+
+    private TaskRunnerFactory factory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        factory = new TaskRunnerFactory("EventLoopTest");
+        factory.setEventLoopThreads(4);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        factory.shutdownNow();
+        super.tearDown();
+    }
+
+    public void testTaskRunnerStaysOnOneThread() throws Exception {
+        final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+        final CountDownLatch latch = new CountDownLatch(100);
+        TaskRunner runner = factory.createTaskRunner(new Task() {
+            @Override
+            public boolean iterate() {
+                threads.add(Thread.currentThread().getName());
+                latch.countDown();
+                return false;
+            }
+        }, "Queue:TEST");
+
+        for (int i = 0; i < 100; i++) {
+            runner.wakeup();
+            Thread.sleep(1);
+        }
+        // every wakeup that found the task idle ran it
+        latch.await(1, TimeUnit.SECONDS);
+        assertEquals("ran on " + threads, 1, threads.size());
+        assertTrue(threads.iterator().next().startsWith("EventLoopTest EventLoop-"));
+        runner.shutdown();
+    }
+
+    public void testTaskRunnersShareEventLoops() throws Exception {
+        final Set<String> threads = Collections.synchronizedSet(new HashSet<String>());
+        final AtomicInteger iterations = new AtomicInteger();
+        int runners = 40;
+        final CountDownLatch latch = new CountDownLatch(runners);
+        for (int i = 0; i < runners; i++) {
+            TaskRunner runner = factory.createTaskRunner(new Task() {
+                int remaining = 5;
+                @Override
+                public boolean iterate() {
+                    threads.add(Thread.currentThread().getName());
+                    iterations.incrementAndGet();
+                    if (--remaining == 0) {
+                        latch.countDown();
+                        return false;
+                    }
+                    return true;
+                }
+            }, "Queue:TEST." + i);
+            runner.wakeup();
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(runners * 5, iterations.get());
+        assertTrue("at most one thread per event loop " + threads, threads.size() <= 4);
+        assertEquals(4, factory.getEventLoopQueueDepths().length);
+    }
+
+    public void testExecuteUsesThreadPool() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final String[] thread = new String[1];
+        factory.execute(new Runnable() {
+            @Override
+            public void run() {
+                thread[0] = Thread.currentThread().getName();
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        assertFalse(thread[0].contains("EventLoop"));
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.thread;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+public class TimingWheelTest extends TestCase {
+
+    private final TimingWheel wheel = new TimingWheel("TimingWheelTest", 5, TimeUnit.MILLISECONDS, 16);
+
+    public void testExpires() throws Exception {
+        final CountDownLatch fired = new CountDownLatch(1);
+        long start = System.nanoTime();
+        TimingWheel.Timeout timeout = wheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                fired.countDown();
+            }
+        }, 50, TimeUnit.MILLISECONDS);
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 45);
+        assertTrue(timeout.isExpired());
+        assertFalse(timeout.cancel());
+    }
+
+    public void testExpiresAfterMoreThanOneRound() throws Exception {
+        final CountDownLatch fired = new CountDownLatch(1);
+        long start = System.nanoTime();
+        // 16 ticks of 5ms go round in 80ms
+        wheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                fired.countDown();
+            }
+        }, 200, TimeUnit.MILLISECONDS);
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 195);
+    }
+
+    public void testCancelled() throws Exception {
+        final AtomicInteger fired = new AtomicInteger();
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                fired.incrementAndGet();
+            }
+        };
+        for (int i = 0; i < 1000; i++) {
+            TimingWheel.Timeout timeout = wheel.schedule(task, 20, TimeUnit.MILLISECONDS);
+            if (i % 2 == 0) {
+                assertTrue(timeout.cancel());
+                assertTrue(timeout.isCancelled());
+            }
+        }
+        long deadline = System.currentTimeMillis() + 5000;
+        while (wheel.getScheduledCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, wheel.getScheduledCount());
+        assertEquals(500, fired.get());
+    }
+
+    public void testRestartsAfterIdle() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            final CountDownLatch fired = new CountDownLatch(1);
+            wheel.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    fired.countDown();
+                }
+            }, 10, TimeUnit.MILLISECONDS);
+            assertTrue(fired.await(5, TimeUnit.SECONDS));
+            Thread.sleep(50);
+        }
+    }
+
+    public void testThreadExitsWhenIdle() throws Exception {
+        wheel.setIdleTimeout(100, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 2; i++) {
+            final CountDownLatch fired = new CountDownLatch(1);
+            final AtomicReference<ClassLoader> loader = new AtomicReference<ClassLoader>(getClass().getClassLoader());
+            wheel.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    loader.set(Thread.currentThread().getContextClassLoader());
+                    fired.countDown();
+                }
+            }, 10, TimeUnit.MILLISECONDS);
+            assertTrue(fired.await(5, TimeUnit.SECONDS));
+            assertNull(loader.get());
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (wheel.isThreadRunning() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertFalse(wheel.isThreadRunning());
+        }
+    }
+}
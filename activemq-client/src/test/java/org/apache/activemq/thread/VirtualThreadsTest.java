@@ -0,0 +1,72 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.thread;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class VirtualThreadsTest extends TestCase {
+
+    public void testCreatesThreadWhenSupported() throws Exception {
+        final CountDownLatch latch = new CountDownLatch(1);
+        Thread thread = VirtualThreads.newThread("VirtualThreadsTest", new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+        if (!VirtualThreads.isSupported()) {
+            assertNull(thread);
+            assertNull(VirtualThreads.newThreadPerTaskExecutor("VirtualThreadsTest"));
+            return;
+        }
+        assertEquals("VirtualThreadsTest", thread.getName());
+        assertTrue(thread.isDaemon());
+        thread.start();
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+    }
+
+    public void testPooledTaskRunnerFallsBack() throws Exception {
+        doTestTaskRunner(false);
+    }
+
+    public void testDedicatedTaskRunnerFallsBack() throws Exception {
+        doTestTaskRunner(true);
+    }
+
+    private void doTestTaskRunner(boolean dedicated) throws Exception {
+        TaskRunnerFactory factory = new TaskRunnerFactory("VirtualThreadsTest", Thread.NORM_PRIORITY, true, 1000, dedicated);
+        factory.setUseVirtualThreads(true);
+        try {
+            final CountDownLatch latch = new CountDownLatch(1);
+            TaskRunner runner = factory.createTaskRunner(new Task() {
+                @Override
+                public boolean iterate() {
+                    latch.countDown();
+                    return false;
+                }
+            }, "VirtualThreadsTest Task");
+            runner.wakeup();
+            assertTrue(latch.await(1, TimeUnit.SECONDS));
+            runner.shutdown();
+        } finally {
+            factory.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+import junit.framework.TestCase;
+
+public class NIOBufferPoolTest extends TestCase {
+
+    public void testSizeClasses() throws Exception {
+        NIOBufferPool pool = new NIOBufferPool(1024 * 1024);
+        ByteBuffer small = pool.acquire(100);
+        assertTrue(small.isDirect());
+        assertEquals(4 * 1024, small.capacity());
+        ByteBuffer packet = pool.acquire(16709);
+        assertEquals(32 * 1024, packet.capacity());
+        ByteBuffer heap = pool.acquireHeap(8 * 1024);
+        assertFalse(heap.isDirect());
+        assertEquals(8 * 1024, heap.capacity());
+        ByteBuffer large = pool.acquire(300 * 1024);
+        assertEquals(300 * 1024, large.capacity());
+        assertEquals(4, pool.getLentCount());
+
+        pool.release(small);
+        pool.release(packet);
+        pool.release(heap);
+        pool.release(large);
+        assertEquals(0, pool.getLentCount());
+        assertEquals(3, pool.getPooledCount());
+        assertEquals(44 * 1024, pool.getPooledBytes());
+
+        // reused, cleared, and of the right kind
+        small.put((byte) 1);
+        ByteBuffer again = pool.acquire(4 * 1024);
+        assertSame(small, again);
+        assertEquals(0, again.position());
+        assertSame(heap, pool.acquireHeap(4 * 1024 + 1));
+        assertEquals(4, pool.getAllocateCount());
+        assertEquals(6, pool.getAcquireCount());
+    }
+
+    public void testPoolIsBounded() throws Exception {
+        NIOBufferPool pool = new NIOBufferPool(8 * 1024);
+        ByteBuffer first = pool.acquire(4 * 1024);
+        ByteBuffer second = pool.acquire(4 * 1024);
+        ByteBuffer third = pool.acquire(4 * 1024);
+        pool.release(first);
+        pool.release(second);
+        pool.release(third);
+        assertEquals(2, pool.getPooledCount());
+        assertEquals(8 * 1024, pool.getPooledBytes());
+        assertEquals(0, pool.getLentCount());
+    }
+
+    public void testOutputStreamOnlyHoldsBufferUntilFlush() throws Exception {
+        final ByteBuffer written = ByteBuffer.allocate(64 * 1024);
+        WritableByteChannel channel = new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer src) throws IOException {
+                int count = src.remaining();
+                written.put(src);
+                return count;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() throws IOException {
+            }
+        };
+        NIOBufferPool pool = NIOBufferPool.getInstance();
+        int lent = pool.getLentCount();
+        NIOOutputStream out = new NIOOutputStream(channel, 1024);
+        out.write(new byte[] {1, 2, 3});
+        assertEquals(lent + 1, pool.getLentCount());
+        out.write(new byte[2000], 0, 2000);
+        out.write(4);
+        out.flush();
+        assertEquals(lent, pool.getLentCount());
+        assertEquals(2004, written.position());
+        assertEquals(4, written.get(2003));
+        out.close();
+    }
+}
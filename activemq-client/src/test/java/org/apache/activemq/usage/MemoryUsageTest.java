@@ -25,6 +25,7 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -67,6 +68,45 @@ public class MemoryUsageTest {
         assertEquals("new thread created with listener", activeThreadCount + 1, Thread.activeCount());        
     }
 
+    @Test
+    public void testListenerNotifiedOnPercentChangesOnly() throws Exception {
+        MemoryUsage parent = new MemoryUsage();
+        parent.setExecutor(executor);
+        parent.setLimit(2000);
+        underTest = new MemoryUsage(parent, "child");
+        underTest.setExecutor(executor);
+        underTest.setLimit(1000);
+        parent.start();
+        underTest.start();
+
+        final AtomicInteger events = new AtomicInteger();
+        final AtomicInteger parentEvents = new AtomicInteger();
+        underTest.addUsageListener(new UsageListener() {
+            public void onUsageChanged(Usage usage, int oldPercentUsage, int newPercentUsage) {
+                assertEquals(oldPercentUsage + 1, newPercentUsage);
+                events.incrementAndGet();
+            }
+        });
+        parent.addUsageListener(new UsageListener() {
+            public void onUsageChanged(Usage usage, int oldPercentUsage, int newPercentUsage) {
+                parentEvents.incrementAndGet();
+            }
+        });
+
+        for (int i = 0; i < 1000; i++) {
+            underTest.increaseUsage(1);
+        }
+        assertEquals(100, underTest.getPercentUsage());
+        assertEquals(50, parent.getPercentUsage());
+        assertTrue(underTest.isFull());
+
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        assertEquals("one event per percent", 100, events.get());
+        assertEquals("one event per parent percent", 50, parentEvents.get());
+        parent.stop();
+    }
+
     @Test
     public void testPercentOfJvmHeap() throws Exception {
         underTest.setPercentOfJvmHeap(50);
@@ -0,0 +1,233 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.activemq.store.kahadb.disk.journal.DataFile;
+import org.apache.activemq.store.kahadb.disk.journal.Journal;
+import org.apache.activemq.store.kahadb.disk.journal.Location;
+import org.apache.activemq.util.ByteSequence;
+import org.apache.activemq.util.RecoverableRandomAccessFile;
+
+/**
+ * Reads the journal records to replay on recovery, from a start location to the
+ * end of the journal, in journal order.
+ *
+ * Data files are read and their records decoded by a pool of threads, a few
+ * files ahead of the caller, so that the single threaded index replay does not
+ * wait on disk reads and unmarshalling. The files read ahead are bounded in
+ * bytes as well as by the number of threads, and a decoded record does not
+ * keep the bytes of its data file. Records are walked the same way
+ * Journal.getNextLocation() does: only user records are returned and a record
+ * of type 0 ends the journal.
+ */
+class JournalRecoveryReader {
+
+    static final class Record {
+        final Location location;
+        final JournalCommand<?> command;
+
+        Record(Location location, JournalCommand<?> command) {
+            this.location = location;
+            this.command = command;
+        }
+    }
+
+    private static final class FileRecords {
+        final List<Record> records = new ArrayList<Record>();
+        boolean endOfJournal;
+    }
+
+    private static final class ReadAhead {
+        final Future<FileRecords> records;
+        final long length;
+
+        ReadAhead(Future<FileRecords> records, long length) {
+            this.records = records;
+            this.length = length;
+        }
+    }
+
+    private final ExecutorService executor;
+    private final List<DataFile> files;
+    private final LinkedList<ReadAhead> pending = new LinkedList<ReadAhead>();
+    private final int threads;
+    private final long maxReadAheadBytes;
+    private long readAheadBytes;
+    private int nextFile;
+    private Location start;
+    private List<Record> current;
+    private int currentIndex;
+    private boolean endOfJournal;
+    private int filesRead;
+
+    /**
+     * @param maxReadAheadBytes
+     *            the most bytes of data files read ahead of the caller, a file
+     *            is always read ahead when none is
+     */
+    JournalRecoveryReader(Journal journal, Location start, int threads, long maxReadAheadBytes) throws IOException {
+        this.start = start;
+        this.threads = threads;
+        this.maxReadAheadBytes = maxReadAheadBytes;
+        this.files = new ArrayList<DataFile>();
+        for (DataFile dataFile : journal.getFileMap().values()) {
+            if (dataFile.getDataFileId() >= start.getDataFileId()) {
+                files.add(dataFile);
+            }
+        }
+        final AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "KahaDB Recovery Reader:" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        readAhead();
+    }
+
+    /**
+     * @return the next record to replay or null once the end of the journal is reached
+     */
+    Record next() throws IOException {
+        while (current == null || currentIndex == current.size()) {
+            current = null;
+            if (endOfJournal || pending.isEmpty()) {
+                return null;
+            }
+            ReadAhead readAhead = pending.removeFirst();
+            readAheadBytes -= readAhead.length;
+            FileRecords fileRecords = take(readAhead.records);
+            filesRead++;
+            endOfJournal = fileRecords.endOfJournal;
+            current = fileRecords.records;
+            currentIndex = 0;
+            if (!endOfJournal) {
+                readAhead();
+            }
+        }
+        // released as they are replayed rather than with the whole file
+        Record record = current.get(currentIndex);
+        current.set(currentIndex++, null);
+        return record;
+    }
+
+    int getFilesRead() {
+        return filesRead;
+    }
+
+    int getFileCount() {
+        return files.size();
+    }
+
+    void close() {
+        executor.shutdownNow();
+        pending.clear();
+        current = null;
+    }
+
+    // keeps a file ahead of every reader thread, within the read ahead bytes
+    private void readAhead() {
+        while (nextFile < files.size() && pending.size() <= threads) {
+            final DataFile dataFile = files.get(nextFile);
+            long length = dataFile.getLength();
+            if (!pending.isEmpty() && readAheadBytes + length > maxReadAheadBytes) {
+                return;
+            }
+            nextFile++;
+            final int offset = start != null ? start.getOffset() : 0;
+            start = null;
+            readAheadBytes += length;
+            pending.add(new ReadAhead(executor.submit(new Callable<FileRecords>() {
+                @Override
+                public FileRecords call() throws Exception {
+                    return read(dataFile, offset);
+                }
+            }), length));
+        }
+    }
+
+    private FileRecords take(Future<FileRecords> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Interrupted reading the journal for recovery");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            IOException ioe = new IOException("Failed to read the journal for recovery: " + cause);
+            ioe.initCause(cause);
+            throw ioe;
+        }
+    }
+
+    private static FileRecords read(DataFile dataFile, int offset) throws IOException {
+        int length = dataFile.getLength();
+        byte[] data = new byte[length];
+        RecoverableRandomAccessFile file = dataFile.openRandomAccessFile();
+        try {
+            file.seek(0);
+            file.readFully(data);
+        } finally {
+            dataFile.closeRandomAccessFile(file);
+        }
+
+        FileRecords result = new FileRecords();
+        while (offset < length) {
+            if (offset + Journal.RECORD_HEAD_SPACE > length) {
+                throw new IOException("Invalid location: " + dataFile.getDataFileId() + ":" + offset);
+            }
+            int size = ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16)
+                    | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+            byte type = data[offset + 4];
+            if (type == 0) {
+                result.endOfJournal = true;
+                break;
+            }
+            if (size < Journal.RECORD_HEAD_SPACE || offset + size > length) {
+                throw new IOException("Invalid location: " + dataFile.getDataFileId() + ":" + offset + ", size: " + size);
+            }
+            if (type == Journal.USER_RECORD_TYPE) {
+                Location location = new Location(dataFile.getDataFileId(), offset);
+                location.setSize(size);
+                location.setType(type);
+                // copied so that the decoded command does not hold on to the whole file
+                ByteSequence record = new ByteSequence(Arrays.copyOfRange(data, offset + Journal.RECORD_HEAD_SPACE, offset + size));
+                result.records.add(new Record(location, MessageDatabase.decode(record, location)));
+            }
+            offset += size;
+        }
+        return result;
+    }
+}
@@ -212,8 +212,7 @@ public class KahaDBPersistenceAdapter extends LockableServiceSupport implements
      */
     @Override
     public void doStart() throws Exception {
-        this.letter.start();
-
+        // registered ahead of the store start so recovery progress can be followed
         if (brokerService != null && brokerService.isUseJmx()) {
             PersistenceAdapterView view = new PersistenceAdapterView(this);
             view.setInflightTransactionViewCallable(new Callable<String>() {
@@ -228,9 +227,26 @@ public class KahaDBPersistenceAdapter extends LockableServiceSupport implements
                     return letter.getJournal().getFileMap().keySet().toString();
                 }
             });
+            view.setStatisticsViewCallable(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return letter.getIndexStatistics() + ", " + letter.getIndexCacheStatistics()
+                            + ", " + letter.getRecoveryProgress();
+                }
+            });
             AnnotatedMBean.registerMBean(brokerService.getManagementContext(), view,
                     createPersistenceAdapterName(brokerService.getBrokerObjectName().toString(), toString()));
         }
+
+        try {
+            this.letter.start();
+        } catch (Exception e) {
+            if (brokerService != null && brokerService.isUseJmx()) {
+                brokerService.getManagementContext().unregisterMBean(
+                        createPersistenceAdapterName(brokerService.getBrokerObjectName().toString(), toString()));
+            }
+            throw e;
+        }
     }
 
     /**
@@ -445,6 +461,21 @@ public class KahaDBPersistenceAdapter extends LockableServiceSupport implements
         this.letter.setIndexCacheSize(indexCacheSize);
     }
 
+    public long getIndexCacheMaxBytes() {
+        return this.letter.getIndexCacheMaxBytes();
+    }
+
+    /**
+     * Bounds the index page cache by the bytes of the cached pages instead of
+     * indexCacheSize, using a segmented cache that concurrent index reads seldom
+     * contend on. 0, the default, keeps the page count bounded cache.
+     * When set using Xbean, values of the form "20 Mb", "1024kb", and "1g" can be used
+     * @org.apache.xbean.Property propertyEditor="org.apache.activemq.util.MemoryPropertyEditor"
+     */
+    public void setIndexCacheMaxBytes(long indexCacheMaxBytes) {
+        this.letter.setIndexCacheMaxBytes(indexCacheMaxBytes);
+    }
+
     /**
      * Get the ignoreMissingJournalfiles
      *
@@ -510,6 +541,36 @@ public class KahaDBPersistenceAdapter extends LockableServiceSupport implements
         letter.setConcurrentStoreAndDispatchQueues(concurrentStoreAndDispatch);
     }
 
+    public boolean isReuseMarshalledMessages() {
+        return letter.isReuseMarshalledMessages();
+    }
+
+    /**
+     * When true, messages loaded from the store keep their stored OpenWire form
+     * and are dispatched from it, without marshalling them again, to
+     * connections that negotiated the store OpenWire version (see
+     * BrokerService.storeOpenWireVersion) with tight encoding and value caching
+     * disabled.
+     */
+    public void setReuseMarshalledMessages(boolean reuseMarshalledMessages) {
+        letter.setReuseMarshalledMessages(reuseMarshalledMessages);
+    }
+
+    public boolean isPageInReadAhead() {
+        return letter.isPageInReadAhead();
+    }
+
+    /**
+     * When true, a queue store that pages in a full batch of messages reads
+     * the next batch from the journal in the background while the current
+     * one is dispatched, so consumers of a deep backlog do not wait for the
+     * journal on every page in. Batch reads are done in journal order with
+     * the records of a data file read together either way.
+     */
+    public void setPageInReadAhead(boolean pageInReadAhead) {
+        letter.setPageInReadAhead(pageInReadAhead);
+    }
+
     public boolean isConcurrentStoreAndDispatchTopics() {
         return letter.isConcurrentStoreAndDispatchTopics();
     }
@@ -607,6 +668,46 @@ public class KahaDBPersistenceAdapter extends LockableServiceSupport implements
         return letter.isEnableIndexPageCaching();
     }
 
+    public void setEnableIndexGroupCommit(boolean enable) {
+        letter.setEnableIndexGroupCommit(enable);
+    }
+
+    public boolean isEnableIndexGroupCommit() {
+        return letter.isEnableIndexGroupCommit();
+    }
+
+    public void setRecoveryThreads(int recoveryThreads) {
+        letter.setRecoveryThreads(recoveryThreads);
+    }
+
+    public int getRecoveryThreads() {
+        return letter.getRecoveryThreads();
+    }
+
+    public void setRecoveryReadAheadSize(long recoveryReadAheadSize) {
+        letter.setRecoveryReadAheadSize(recoveryReadAheadSize);
+    }
+
+    public long getRecoveryReadAheadSize() {
+        return letter.getRecoveryReadAheadSize();
+    }
+
+    public void setEnableJournalMappedReads(boolean enable) {
+        letter.setEnableJournalMappedReads(enable);
+    }
+
+    public boolean isEnableJournalMappedReads() {
+        return letter.isEnableJournalMappedReads();
+    }
+
+    public void setJournalMaxMappedFiles(int journalMaxMappedFiles) {
+        letter.setJournalMaxMappedFiles(journalMaxMappedFiles);
+    }
+
+    public int getJournalMaxMappedFiles() {
+        return letter.getJournalMaxMappedFiles();
+    }
+
     public KahaDBStore getStore() {
         return letter;
     }
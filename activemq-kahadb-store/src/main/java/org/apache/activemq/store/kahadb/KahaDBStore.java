@@ -20,6 +20,7 @@ import java.io.DataInputStream;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -29,16 +30,21 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.activemq.broker.ConnectionContext;
 import org.apache.activemq.broker.region.Destination;
@@ -87,6 +93,7 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter {
 
     protected ExecutorService queueExecutor;
     protected ExecutorService topicExecutor;
+    protected ExecutorService readAheadExecutor;
     protected final List<Map<AsyncJobKey, StoreTask>> asyncQueueMaps = new LinkedList<Map<AsyncJobKey, StoreTask>>();
     protected final List<Map<AsyncJobKey, StoreTask>> asyncTopicMaps = new LinkedList<Map<AsyncJobKey, StoreTask>>();
     final WireFormat wireFormat = new OpenWireFormat();
@@ -96,6 +103,8 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter {
     Semaphore globalQueueSemaphore;
     Semaphore globalTopicSemaphore;
     private boolean concurrentStoreAndDispatchQueues = true;
+    private boolean reuseMarshalledMessages = false;
+    private boolean pageInReadAhead = false;
     // when true, message order may be compromised when cache is exhausted if store is out
     // or order w.r.t cache
     private boolean concurrentStoreAndDispatchTopics = false;
@@ -147,6 +156,36 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter {
         this.concurrentStoreAndDispatchQueues = concurrentStoreAndDispatch;
     }
 
+    public boolean isReuseMarshalledMessages() {
+        return this.reuseMarshalledMessages;
+    }
+
+    /**
+     * @param reuseMarshalledMessages
+     *            when true, loaded messages keep the marshalled form they were
+     *            stored in, so it can be dispatched as is to connections using
+     *            the store OpenWire version without tight encoding or value
+     *            caching, at the cost of holding the stored bytes in memory
+     *            with the message
+     */
+    public void setReuseMarshalledMessages(boolean reuseMarshalledMessages) {
+        this.reuseMarshalledMessages = reuseMarshalledMessages;
+    }
+
+    public boolean isPageInReadAhead() {
+        return this.pageInReadAhead;
+    }
+
+    /**
+     * @param pageInReadAhead
+     *            when true, a queue store that returned a full batch of
+     *            messages loads the next batch in the background, so that it
+     *            is ready when the cursor pages in again
+     */
+    public void setPageInReadAhead(boolean pageInReadAhead) {
+        this.pageInReadAhead = pageInReadAhead;
+    }
+
     /**
      * @return the concurrentStoreAndDispatch
      */
@@ -225,6 +264,16 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter {
                     return thread;
                 }
             });
+        if (isPageInReadAhead()) {
+            this.readAheadExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "KahaDB Page In Read Ahead");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
     }
 
     @Override
@@ -272,6 +321,10 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter {
             ThreadPoolUtils.shutdownNow(topicExecutor);
             topicExecutor = null;
         }
+        if (this.readAheadExecutor != null) {
+            ThreadPoolUtils.shutdownNow(readAheadExecutor);
+            readAheadExecutor = null;
+        }
         LOG.info("Stopped KahaDB");
         super.doStop(stopper);
     }
@@ -387,11 +440,52 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter {
         this.forceRecoverIndex = forceRecoverIndex;
     }
 
+    /**
+     * A batch of messages loaded in the background, counted against the
+     * destination memory usage from when it is loaded until it is taken or
+     * dropped.
+     */
+    static final class ReadAhead {
+        private final MemoryUsage usage;
+        volatile Future<Map<Location, Message>> future;
+        private long size;
+        private boolean released;
+
+        ReadAhead(MemoryUsage usage) {
+            this.usage = usage;
+        }
+
+        synchronized boolean account(long size) {
+            if (released) {
+                return false;
+            }
+            this.size = size;
+            if (usage != null) {
+                usage.increaseUsage(size);
+            }
+            return true;
+        }
+
+        synchronized void release() {
+            if (!released) {
+                released = true;
+                future.cancel(false);
+                if (usage != null && size > 0) {
+                    usage.decreaseUsage(size);
+                }
+                size = 0;
+            }
+        }
+    }
+
     public class KahaDBMessageStore extends AbstractMessageStore {
         protected final Map<AsyncJobKey, StoreTask> asyncTaskMap = new HashMap<AsyncJobKey, StoreTask>();
         protected KahaDestination dest;
         private final int maxAsyncJobs;
         private final Semaphore localDestinationSemaphore;
+        // the next batch loaded in the background
+        private final AtomicReference<ReadAhead> readAhead = new AtomicReference<ReadAhead>();
+        private MemoryUsage memoryUsage;
 
         double doneTasks, canceledTasks = 0;
 
@@ -582,27 +676,22 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter {
 
         @Override
         public void recoverNextMessages(final int maxReturned, final MessageRecoveryListener listener) throws Exception {
+            // wait for the read ahead before taking the index lock, the read ahead does not need it
+            final Map<Location, Message> loaded = takeReadAhead();
             indexLock.writeLock().lock();
             try {
                 pageFile.tx().execute(new Transaction.Closure<Exception>() {
                     @Override
                     public void execute(Transaction tx) throws Exception {
                         StoredDestination sd = getStoredDestination(dest, tx);
-                        Entry<Long, MessageKeys> entry = null;
-                        int counter = 0;
-                        for (Iterator<Entry<Long, MessageKeys>> iterator = sd.orderIndex.iterator(tx); iterator.hasNext(); ) {
-                            entry = iterator.next();
-                            if (ackedAndPrepared.contains(entry.getValue().messageId)) {
-                                continue;
-                            }
-                            Message msg = loadMessage(entry.getValue().location);
+                        List<Location> locations = nextLocations(sd, tx, maxReturned);
+                        for (Message msg : loadMessages(locations, loaded)) {
                             listener.recoverMessage(msg);
-                            counter++;
-                            if (counter >= maxReturned) {
-                                break;
-                            }
                         }
                         sd.orderIndex.stoppedIterating();
+                        if (readAheadExecutor != null && locations.size() == maxReturned) {
+                            startReadAhead(sd, tx, maxReturned);
+                        }
                     }
                 });
             }finally {
@@ -610,8 +699,87 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter {
             }
         }
 
+        private List<Location> nextLocations(StoredDestination sd, Transaction tx, int maxReturned) throws IOException {
+            List<Location> locations = new ArrayList<Location>(maxReturned);
+            for (Iterator<Entry<Long, MessageKeys>> iterator = sd.orderIndex.iterator(tx); locations.size() < maxReturned && iterator.hasNext(); ) {
+                Entry<Long, MessageKeys> entry = iterator.next();
+                if (ackedAndPrepared.contains(entry.getValue().messageId)) {
+                    continue;
+                }
+                locations.add(entry.getValue().location);
+            }
+            return locations;
+        }
+
+        private void startReadAhead(StoredDestination sd, Transaction tx, int maxReturned) throws IOException {
+            final List<Location> locations = nextLocations(sd, tx, maxReturned);
+            sd.orderIndex.abandonedIterating();
+            if (locations.isEmpty() || (memoryUsage != null && memoryUsage.isFull())) {
+                return;
+            }
+            final ReadAhead next = new ReadAhead(memoryUsage);
+            try {
+                next.future = readAheadExecutor.submit(new Callable<Map<Location, Message>>() {
+                    @Override
+                    public Map<Location, Message> call() throws Exception {
+                        Map<Location, Message> loaded = new HashMap<Location, Message>();
+                        List<Message> messages = loadMessages(locations, Collections.<Location, Message>emptyMap());
+                        long size = 0;
+                        for (int i = 0; i < locations.size(); i++) {
+                            loaded.put(locations.get(i), messages.get(i));
+                            size += messages.get(i).getSize();
+                        }
+                        if (!next.account(size)) {
+                            return Collections.emptyMap();
+                        }
+                        return loaded;
+                    }
+                });
+            } catch (RejectedExecutionException stopping) {
+                return;
+            }
+            ReadAhead previous = readAhead.getAndSet(next);
+            if (previous != null) {
+                previous.release();
+            }
+        }
+
+        private Map<Location, Message> takeReadAhead() {
+            ReadAhead ahead = readAhead.getAndSet(null);
+            if (ahead == null) {
+                return Collections.emptyMap();
+            }
+            try {
+                // not started yet, as the executor is busy with other destinations
+                if (!ahead.future.cancel(false)) {
+                    return ahead.future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // the messages may have been removed since, read them again
+                LOG.debug("Read ahead of {} failed", destination, e.getCause());
+            } finally {
+                // the cursor accounts for the messages once they are recovered
+                ahead.release();
+            }
+            return Collections.emptyMap();
+        }
+
+        /**
+         * Drops a pending read ahead, the batch position it was started from is no
+         * longer valid or the store is going away.
+         */
+        private void cancelReadAhead() {
+            ReadAhead ahead = readAhead.getAndSet(null);
+            if (ahead != null) {
+                ahead.release();
+            }
+        }
+
         @Override
         public void resetBatching() {
+            cancelReadAhead();
             if (pageFile.isLoaded()) {
                 indexLock.writeLock().lock();
                 try {
@@ -633,6 +801,7 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter {
 
         @Override
         public void setBatch(MessageId identity) throws IOException {
+            cancelReadAhead();
             try {
                 final String key = identity.toProducerKey();
                 lockAsyncJobQueue();
@@ -663,6 +832,12 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter {
 
         @Override
         public void setMemoryUsage(MemoryUsage memoryUsage) {
+            this.memoryUsage = memoryUsage;
+        }
+        @Override
+        public void dispose(ConnectionContext context) {
+            cancelReadAhead();
+            super.dispose(context);
         }
         @Override
         public void start() throws Exception {
@@ -670,6 +845,7 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter {
         }
         @Override
         public void stop() throws Exception {
+            cancelReadAhead();
             super.stop();
         }
 
@@ -1099,8 +1275,39 @@ public class KahaDBStore extends MessageDatabase implements PersistenceAdapter {
      * @throws IOException
      */
     Message loadMessage(Location location) throws IOException {
-        KahaAddMessageCommand addMessage = (KahaAddMessageCommand) load(location);
+        return toMessage((KahaAddMessageCommand) load(location));
+    }
+
+    /**
+     * Loads a batch of messages with the journal reads in location order,
+     * taking those that are in the given map from it.
+     *
+     * @return the messages in the order of the locations
+     */
+    List<Message> loadMessages(List<Location> locations, Map<Location, Message> loaded) throws IOException {
+        List<Location> missing = new ArrayList<Location>(locations.size());
+        for (Location location : locations) {
+            if (!loaded.containsKey(location)) {
+                missing.add(location);
+            }
+        }
+        List<JournalCommand<?>> commands = missing.isEmpty() ? Collections.<JournalCommand<?>>emptyList() : load(missing);
+        List<Message> messages = new ArrayList<Message>(locations.size());
+        int next = 0;
+        for (Location location : locations) {
+            Message msg = loaded.get(location);
+            messages.add(msg != null ? msg : toMessage((KahaAddMessageCommand) commands.get(next++)));
+        }
+        return messages;
+    }
+
+    private Message toMessage(KahaAddMessageCommand addMessage) throws IOException {
         Message msg = (Message) wireFormat.unmarshal(new DataInputStream(addMessage.getMessage().newInput()));
+        if (reuseMarshalledMessages) {
+            Buffer marshalled = addMessage.getMessage();
+            msg.setCachedMarshalledForm(wireFormat,
+                    new org.apache.activemq.util.ByteSequence(marshalled.getData(), marshalled.getOffset(), marshalled.getLength()));
+        }
         return msg;
     }
 
@@ -45,6 +45,7 @@ import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -54,6 +55,7 @@ import org.apache.activemq.broker.BrokerService;
 import org.apache.activemq.broker.BrokerServiceAware;
 import org.apache.activemq.command.MessageAck;
 import org.apache.activemq.command.TransactionId;
+import org.apache.activemq.management.TimeStatisticImpl;
 import org.apache.activemq.openwire.OpenWireFormat;
 import org.apache.activemq.protobuf.Buffer;
 import org.apache.activemq.store.kahadb.data.KahaAckMessageFileMapCommand;
@@ -88,6 +90,7 @@ import org.apache.activemq.store.kahadb.disk.util.VariableMarshaller;
 import org.apache.activemq.util.ByteSequence;
 import org.apache.activemq.util.DataByteArrayInputStream;
 import org.apache.activemq.util.DataByteArrayOutputStream;
+import org.apache.activemq.util.IOExceptionSupport;
 import org.apache.activemq.util.IOHelper;
 import org.apache.activemq.util.ServiceStopper;
 import org.apache.activemq.util.ServiceSupport;
@@ -239,6 +242,7 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
     protected AtomicBoolean opened = new AtomicBoolean();
     private boolean ignoreMissingJournalfiles = false;
     private int indexCacheSize = 10000;
+    private long indexCacheMaxBytes = 0;
     private boolean checkForCorruptJournalFiles = false;
     private boolean checksumJournalFiles = true;
     protected boolean forceRecoverIndex = false;
@@ -250,6 +254,19 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
     private boolean enableIndexDiskSyncs = true;
     private boolean enableIndexRecoveryFile = true;
     private boolean enableIndexPageCaching = true;
+    private boolean enableIndexGroupCommit = false;
+    private boolean enableJournalMappedReads = false;
+    private int journalMaxMappedFiles = Journal.DEFAULT_MAX_MAPPED_FILES;
+    private int recoveryThreads = 1;
+    // 0 reads two data files of the journal's configured length ahead
+    private long recoveryReadAheadSize = 0;
+    private volatile boolean recovering;
+    private volatile long recoveredOperations;
+    private volatile long recoveryTime;
+    // only set while recovering
+    private volatile JournalRecoveryReader recoveryReader;
+    private volatile int recoveryFilesRead;
+    private volatile int recoveryFileCount;
     ReentrantReadWriteLock checkpointLock = new ReentrantReadWriteLock();
 
     public MessageDatabase() {
@@ -587,20 +604,49 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
 
             if (recoveryPosition != null) {
                 int redoCounter = 0;
+                recovering = true;
+                recoveredOperations = 0;
                 LOG.info("Recovering from the journal ...");
-                while (recoveryPosition != null) {
-                    JournalCommand<?> message = load(recoveryPosition);
-                    metadata.lastUpdate = recoveryPosition;
-                    process(message, recoveryPosition, lastIndoubtPosition);
-                    redoCounter++;
-                    recoveryPosition = journal.getNextLocation(recoveryPosition);
-                     if (LOG.isInfoEnabled() && redoCounter % 100000 == 0) {
-                         LOG.info("@" + recoveryPosition +  ", "  + redoCounter + " entries recovered ..");
-                     }
+                try {
+                    if (recoveryThreads > 1) {
+                        long readAheadSize = recoveryReadAheadSize > 0 ? recoveryReadAheadSize : 2L * journal.getMaxFileLength();
+                        JournalRecoveryReader reader = new JournalRecoveryReader(journal, recoveryPosition, recoveryThreads, readAheadSize);
+                        recoveryReader = reader;
+                        try {
+                            JournalRecoveryReader.Record record;
+                            while ((record = reader.next()) != null) {
+                                metadata.lastUpdate = record.location;
+                                process(record.command, record.location, lastIndoubtPosition);
+                                recoveredOperations = ++redoCounter;
+                                if (LOG.isInfoEnabled() && redoCounter % 100000 == 0) {
+                                    LOG.info("@" + record.location + ", " + redoCounter + " entries recovered, "
+                                            + reader.getFilesRead() + " of " + reader.getFileCount() + " data files read ..");
+                                }
+                            }
+                        } finally {
+                            recoveryFilesRead = reader.getFilesRead();
+                            recoveryFileCount = reader.getFileCount();
+                            recoveryReader = null;
+                            reader.close();
+                        }
+                    } else {
+                        while (recoveryPosition != null) {
+                            JournalCommand<?> message = load(recoveryPosition);
+                            metadata.lastUpdate = recoveryPosition;
+                            process(message, recoveryPosition, lastIndoubtPosition);
+                            recoveredOperations = ++redoCounter;
+                            recoveryPosition = journal.getNextLocation(recoveryPosition);
+                             if (LOG.isInfoEnabled() && redoCounter % 100000 == 0) {
+                                 LOG.info("@" + recoveryPosition +  ", "  + redoCounter + " entries recovered ..");
+                             }
+                        }
+                    }
+                } finally {
+                    recovering = false;
                 }
+                recoveryTime = System.currentTimeMillis() - start;
                 if (LOG.isInfoEnabled()) {
-                    long end = System.currentTimeMillis();
-                    LOG.info("Recovery replayed " + redoCounter + " operations from the journal in " + ((end - start) / 1000.0f) + " seconds.");
+                    LOG.info("Recovery replayed " + redoCounter + " operations from the journal in " + (recoveryTime / 1000.0f) + " seconds.");
                 }
             }
 
@@ -957,7 +1003,11 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                 long start = System.currentTimeMillis();
                 location = onJournalStoreComplete == null ? journal.write(sequence, sync) :  journal.write(sequence, onJournalStoreComplete) ;
                 long start2 = System.currentTimeMillis();
-                process(data, location, before, after);
+                if (enableIndexGroupCommit && isGroupCommitCandidate(data)) {
+                    processGrouped(data, location);
+                } else {
+                    process(data, location, before, after);
+                }
 
                 long end = System.currentTimeMillis();
                 if( LOG_SLOW_ACCESS_TIME>0 && end-start > LOG_SLOW_ACCESS_TIME) {
@@ -1000,6 +1050,31 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
                 LOG.info("Slow KahaDB access: Journal read took: "+(end-start)+" ms");
             }
         }
+        return decode(data, location);
+    }
+
+    /**
+     * Loads a batch of commands, reading the journal in location order.
+     *
+     * @return the commands in the order of the locations
+     */
+    public List<JournalCommand<?>> load(List<Location> locations) throws IOException {
+        long start = System.currentTimeMillis();
+        List<ByteSequence> data = journal.read(locations);
+        long end = System.currentTimeMillis();
+        if( LOG_SLOW_ACCESS_TIME>0 && end-start > LOG_SLOW_ACCESS_TIME) {
+            if (LOG.isInfoEnabled()) {
+                LOG.info("Slow KahaDB access: Journal read of " + locations.size() + " records took: "+(end-start)+" ms");
+            }
+        }
+        List<JournalCommand<?>> rc = new ArrayList<JournalCommand<?>>(data.size());
+        for (int i = 0; i < data.size(); i++) {
+            rc.add(decode(data.get(i), locations.get(i)));
+        }
+        return rc;
+    }
+
+    static JournalCommand<?> decode(ByteSequence data, Location location) throws IOException {
         DataByteArrayInputStream is = new DataByteArrayInputStream(data);
         byte readByte = is.readByte();
         KahaEntryType type = KahaEntryType.valueOf(readByte);
@@ -1171,6 +1246,126 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         }
     }
 
+    /**
+     * Non transactional adds and acks only touch the index of their destination
+     * so they can be applied together with any other such updates whose journal
+     * writes completed at the same time.
+     */
+    private boolean isGroupCommitCandidate(JournalCommand<?> data) {
+        if (data instanceof KahaAddMessageCommand) {
+            return !((KahaAddMessageCommand) data).hasTransactionInfo();
+        }
+        if (data instanceof KahaRemoveMessageCommand) {
+            return !((KahaRemoveMessageCommand) data).hasTransactionInfo();
+        }
+        return false;
+    }
+
+    /**
+     * Queues the index update and applies it, along with any other updates that
+     * are pending, under a single index lock acquisition and page file
+     * transaction. The first thread to get the lock applies the whole group, the
+     * others find their update done once they get the lock.
+     */
+    protected void processGrouped(JournalCommand<?> data, Location location) throws IOException {
+        IndexUpdate update = new IndexUpdate(data, location);
+        pendingIndexUpdates.add(update);
+        this.indexLock.writeLock().lock();
+        try {
+            if (!update.applied) {
+                applyPendingIndexUpdates();
+            }
+        } finally {
+            this.indexLock.writeLock().unlock();
+        }
+        if (update.failure != null) {
+            throw update.failure;
+        }
+    }
+
+    private void applyPendingIndexUpdates() {
+        long start = System.nanoTime();
+        final List<IndexUpdate> batch = new ArrayList<IndexUpdate>();
+        IndexUpdate pending;
+        while ((pending = pendingIndexUpdates.poll()) != null) {
+            batch.add(pending);
+        }
+        // apply in journal order, as recovery would
+        Collections.sort(batch);
+
+        try {
+            try {
+                applyIndexUpdates(batch);
+            } catch (Throwable e) {
+                if (batch.size() == 1) {
+                    batch.get(0).failure = IOExceptionSupport.create(e);
+                } else {
+                    // the group was rolled back, so that only the bad update fails apply them one at a time
+                    LOG.warn("Failed to apply " + batch.size() + " grouped index updates, applying them one at a time", e);
+                    for (IndexUpdate update : batch) {
+                        try {
+                            applyIndexUpdates(Collections.singletonList(update));
+                        } catch (Throwable e1) {
+                            update.failure = IOExceptionSupport.create(e1);
+                        }
+                    }
+                }
+            }
+        } finally {
+            // the waiting threads only check their own update, none may be left unmarked
+            for (IndexUpdate update : batch) {
+                if (!update.indexed && update.failure == null) {
+                    update.failure = new IOException("Index update at " + update.location + " was not applied");
+                }
+                update.applied = true;
+            }
+            indexUpdateBatchSize.addTime(batch.size());
+            indexLockHoldTime.addTime((System.nanoTime() - start) / 1000);
+        }
+    }
+
+    private void applyIndexUpdates(final List<IndexUpdate> updates) throws IOException {
+        pageFile.tx().execute(new Transaction.Closure<IOException>() {
+            @Override
+            public void execute(Transaction tx) throws IOException {
+                for (IndexUpdate update : updates) {
+                    update.apply(tx);
+                }
+            }
+        });
+        for (IndexUpdate update : updates) {
+            update.indexed = true;
+        }
+    }
+
+    private final class IndexUpdate implements Comparable<IndexUpdate> {
+        private final JournalCommand<?> command;
+        private final Location location;
+        // guarded by the index write lock
+        private boolean applied;
+        // set once the transaction holding the update committed
+        private boolean indexed;
+        private IOException failure;
+
+        IndexUpdate(JournalCommand<?> command, Location location) {
+            this.command = command;
+            this.location = location;
+        }
+
+        void apply(Transaction tx) throws IOException {
+            if (command instanceof KahaAddMessageCommand) {
+                upadateIndex(tx, (KahaAddMessageCommand) command, location);
+            } else {
+                updateIndex(tx, (KahaRemoveMessageCommand) command, location);
+            }
+        }
+
+        @Override
+        public int compareTo(IndexUpdate other) {
+            return location.compareTo(other.location);
+        }
+    }
+
     protected void processLocation(final Location location) {
         this.indexLock.writeLock().lock();
         try {
@@ -1266,6 +1461,9 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
     // /////////////////////////////////////////////////////////////////
 
     protected final ReentrantReadWriteLock indexLock = new ReentrantReadWriteLock();
+    private final ConcurrentLinkedQueue<IndexUpdate> pendingIndexUpdates = new ConcurrentLinkedQueue<IndexUpdate>();
+    private final TimeStatisticImpl indexUpdateBatchSize = new TimeStatisticImpl("indexUpdateBatchSize", "updates", "Index updates applied per index transaction");
+    private final TimeStatisticImpl indexLockHoldTime = new TimeStatisticImpl("indexLockHoldTime", "micros", "Time the index write lock was held per group commit");
     private final HashSet<Integer> journalFilesBeingReplicated = new HashSet<Integer>();
 
     void upadateIndex(Transaction tx, KahaAddMessageCommand command, Location location) throws IOException {
@@ -2390,6 +2588,7 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         index.setEnableWriteThread(isEnableIndexWriteAsync());
         index.setWriteBatchSize(getIndexWriteBatchSize());
         index.setPageCacheSize(indexCacheSize);
+        index.setPageCacheMaxBytes(indexCacheMaxBytes);
         index.setUseLFRUEviction(isUseIndexLFRUEviction());
         index.setLFUEvictionFactor(getIndexLFUEvictionFactor());
         index.setEnableDiskSyncs(isEnableIndexDiskSyncs());
@@ -2408,6 +2607,8 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         manager.setArchiveDataLogs(isArchiveDataLogs());
         manager.setSizeAccumulator(journalSize);
         manager.setEnableAsyncDiskSync(isEnableJournalDiskSyncs());
+        manager.setMappedReads(isEnableJournalMappedReads());
+        manager.setMaxMappedFiles(getJournalMaxMappedFiles());
         if (getDirectoryArchive() != null) {
             IOHelper.mkdirs(getDirectoryArchive());
             manager.setDirectoryArchive(getDirectoryArchive());
@@ -2541,6 +2742,14 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         this.indexCacheSize = indexCacheSize;
     }
 
+    public long getIndexCacheMaxBytes() {
+        return indexCacheMaxBytes;
+    }
+
+    public void setIndexCacheMaxBytes(long indexCacheMaxBytes) {
+        this.indexCacheMaxBytes = indexCacheMaxBytes;
+    }
+
     public boolean isCheckForCorruptJournalFiles() {
         return checkForCorruptJournalFiles;
     }
@@ -2646,6 +2855,118 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
         return enableIndexPageCaching;
     }
 
+    public boolean isEnableIndexGroupCommit() {
+        return enableIndexGroupCommit;
+    }
+
+    /**
+     * When enabled, non transactional message adds and acks that are stored
+     * concurrently have their index updates applied together under one index
+     * lock acquisition and one page file transaction.
+     */
+    public void setEnableIndexGroupCommit(boolean enableIndexGroupCommit) {
+        this.enableIndexGroupCommit = enableIndexGroupCommit;
+    }
+
+    public boolean isEnableJournalMappedReads() {
+        return enableJournalMappedReads;
+    }
+
+    /**
+     * When enabled, messages are read back from journal files that are no
+     * longer appended to through memory mappings instead of a seek and read.
+     */
+    public void setEnableJournalMappedReads(boolean enableJournalMappedReads) {
+        this.enableJournalMappedReads = enableJournalMappedReads;
+    }
+
+    public int getJournalMaxMappedFiles() {
+        return journalMaxMappedFiles;
+    }
+
+    /**
+     * @param journalMaxMappedFiles the maximum number of journal files mapped at a time
+     */
+    public void setJournalMaxMappedFiles(int journalMaxMappedFiles) {
+        this.journalMaxMappedFiles = journalMaxMappedFiles;
+    }
+
+    public int getRecoveryThreads() {
+        return recoveryThreads;
+    }
+
+    /**
+     * @param recoveryThreads the number of threads reading and decoding journal
+     *        data files ahead of the index replay on recovery, 1 replays from a
+     *        single thread.
+     */
+    public void setRecoveryThreads(int recoveryThreads) {
+        this.recoveryThreads = recoveryThreads;
+    }
+
+    public long getRecoveryReadAheadSize() {
+        return recoveryReadAheadSize;
+    }
+
+    /**
+     * @param recoveryReadAheadSize the most bytes of journal data files read
+     *        ahead of the index replay when recovering with more than one thread,
+     *        one file is always read ahead. 0, the default, reads ahead twice the
+     *        journal's maxFileLength.
+     */
+    public void setRecoveryReadAheadSize(long recoveryReadAheadSize) {
+        this.recoveryReadAheadSize = recoveryReadAheadSize;
+    }
+
+    public String getRecoveryProgress() {
+        StringBuilder progress = new StringBuilder(recovering ? "recovering: " : "last recovery: ");
+        progress.append(recoveredOperations).append(" operations replayed");
+        JournalRecoveryReader reader = recoveryReader;
+        if (reader != null) {
+            progress.append(", ").append(reader.getFilesRead()).append(" of ").append(reader.getFileCount()).append(" data files read");
+        } else if (recoveryFileCount > 0) {
+            progress.append(", ").append(recoveryFilesRead).append(" of ").append(recoveryFileCount).append(" data files read");
+        }
+        if (!recovering) {
+            progress.append(" in ").append(recoveryTime).append(" ms");
+        }
+        return progress.toString();
+    }
+
+    public TimeStatisticImpl getIndexUpdateBatchSize() {
+        return indexUpdateBatchSize;
+    }
+
+    public TimeStatisticImpl getIndexLockHoldTime() {
+        return indexLockHoldTime;
+    }
+
+    public String getIndexStatistics() {
+        return indexUpdateBatchSize + ", " + indexLockHoldTime;
+    }
+
+    public String getIndexCacheStatistics() {
+        PageFile index = pageFile;
+        if (index == null) {
+            return "page cache: not loaded";
+        }
+        StringBuilder statistics = new StringBuilder("page cache: ");
+        statistics.append("hits: ").append(index.getPageCacheHits());
+        statistics.append(", misses: ").append(index.getPageCacheMisses());
+        statistics.append(", evictions: ").append(index.getPageCacheEvictions());
+        statistics.append(", pages: ").append(index.getPageCacheCount());
+        if (index.getPageCacheMaxBytes() > 0) {
+            statistics.append(", bytes: ").append(index.getPageCacheBytes());
+            statistics.append("/").append(index.getPageCacheMaxBytes());
+        }
+        return statistics.toString();
+    }
+
+    public void resetIndexStatistics() {
+        indexUpdateBatchSize.reset();
+        indexLockHoldTime.reset();
+    }
+
     // /////////////////////////////////////////////////////////////////
     // Internal conversion methods.
     // /////////////////////////////////////////////////////////////////
@@ -2868,6 +3189,16 @@ public abstract class MessageDatabase extends ServiceSupport implements BrokerSe
             lastLowKey = null;
         }
 
+        /**
+         * Forgets the keys returned by an iterator that looked ahead of the
+         * cursor, so the cursor does not move.
+         */
+        void abandonedIterating() {
+            lastDefaultKey = null;
+            lastHighKey = null;
+            lastLowKey = null;
+        }
+
         void getDeleteList(Transaction tx, ArrayList<Entry<Long, MessageKeys>> deletes, Long sequenceId)
                 throws IOException {
             if (defaultPriorityIndex.containsKey(tx, sequenceId)) {
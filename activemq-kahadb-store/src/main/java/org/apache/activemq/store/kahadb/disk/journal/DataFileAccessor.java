@@ -94,6 +94,59 @@ final class DataFileAccessor {
         }
     }
     
+    /**
+     * Reads the records at the given locations, which must be sorted by
+     * offset, with a single file read for each run of records that fits in a
+     * buffer of the given size.
+     *
+     * @return the records in the order of the locations
+     */
+    public ByteSequence[] readRecords(Location[] locations, int readSize) throws IOException {
+        ByteSequence[] records = new ByteSequence[locations.length];
+        byte[] buffer = new byte[readSize];
+        long bufferOffset = -1;
+        int bufferLength = 0;
+        for (int i = 0; i < locations.length; i++) {
+            Location location = locations[i];
+            if (!location.isValid()) {
+                throw new IOException("Invalid location: " + location);
+            }
+
+            Journal.WriteCommand asyncWrite = (Journal.WriteCommand)inflightWrites.get(new Journal.WriteKey(location));
+            if (asyncWrite != null) {
+                records[i] = asyncWrite.data;
+                continue;
+            }
+
+            long offset = location.getOffset();
+            ByteSequence record = bufferOffset < 0 ? null : sliceRecord(location, buffer, (int) (offset - bufferOffset), bufferLength);
+            if (record == null) {
+                bufferOffset = offset;
+                bufferLength = Math.max(0, read(offset, buffer));
+                record = sliceRecord(location, buffer, 0, bufferLength);
+            }
+            // larger than the buffer or not all on disk yet
+            records[i] = record != null ? record : readRecord(location);
+        }
+        return records;
+    }
+
+    private ByteSequence sliceRecord(Location location, byte[] buffer, int position, int length) {
+        if (position < 0 || position + Journal.RECORD_HEAD_SPACE > length) {
+            return null;
+        }
+        int size = ((buffer[position] & 0xFF) << 24) | ((buffer[position + 1] & 0xFF) << 16)
+                | ((buffer[position + 2] & 0xFF) << 8) | (buffer[position + 3] & 0xFF);
+        if (size < Journal.RECORD_HEAD_SPACE || position + size > length) {
+            return null;
+        }
+        location.setSize(size);
+        location.setType(buffer[position + 4]);
+        byte[] data = new byte[size - Journal.RECORD_HEAD_SPACE];
+        System.arraycopy(buffer, position + Journal.RECORD_HEAD_SPACE, data, 0, data.length);
+        return new ByteSequence(data, 0, data.length);
+    }
+
     public void readFully(long offset, byte data[]) throws IOException {
        file.seek(offset);
        file.readFully(data);
@@ -21,6 +21,7 @@ import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -56,6 +57,7 @@ public class Journal {
     public static final boolean callerBufferAppender = Boolean.parseBoolean(System.getProperty(CALLER_BUFFER_APPENDER, "false"));
 
     private static final int MAX_BATCH_SIZE = 32*1024*1024;
+    private static final int COALESCED_READ_SIZE = 64*1024;
 
     // ITEM_HEAD_SPACE = length + type+ reserved space + SOR
     public static final int RECORD_HEAD_SPACE = 4 + 1;
@@ -89,6 +91,7 @@ public class Journal {
     public static final int DEFAULT_CLEANUP_INTERVAL = 1000 * 30;
     public static final int PREFERED_DIFF = 1024 * 512;
     public static final int DEFAULT_MAX_WRITE_BATCH_SIZE = 1024 * 1024 * 4;
+    public static final int DEFAULT_MAX_MAPPED_FILES = 16;
 
     private static final Logger LOG = LoggerFactory.getLogger(Journal.class);
 
@@ -106,6 +109,9 @@ public class Journal {
 
     protected FileAppender appender;
     protected DataFileAccessorPool accessorPool;
+    protected MappedDataFileAccessorPool mappedAccessorPool;
+    protected boolean mappedReads;
+    protected int maxMappedFiles = DEFAULT_MAX_MAPPED_FILES;
 
     protected Map<Integer, DataFile> fileMap = new HashMap<Integer, DataFile>();
     protected Map<File, DataFile> fileByFileMap = new LinkedHashMap<File, DataFile>();
@@ -128,6 +134,9 @@ public class Journal {
 
         long start = System.currentTimeMillis();
         accessorPool = new DataFileAccessorPool(this);
+        if (mappedReads) {
+            mappedAccessorPool = new MappedDataFileAccessorPool(this, maxMappedFiles);
+        }
         started = true;
         preferedFileLength = Math.max(PREFERED_DIFF, getMaxFileLength() - PREFERED_DIFF);
 
@@ -377,6 +386,10 @@ public class Journal {
             this.timer.cancel();
         }
         accessorPool.close();
+        if (mappedAccessorPool != null) {
+            mappedAccessorPool.close();
+            mappedAccessorPool = null;
+        }
         appender.close();
         fileMap.clear();
         fileByFileMap.clear();
@@ -396,6 +409,9 @@ public class Journal {
         // Close all open file handles...
         appender.close();
         accessorPool.close();
+        if (mappedAccessorPool != null) {
+            mappedAccessorPool.close();
+        }
 
         boolean result = true;
         for (Iterator<DataFile> i = fileMap.values().iterator(); i.hasNext();) {
@@ -410,6 +426,9 @@ public class Journal {
 
         // reopen open file handles...
         accessorPool = new DataFileAccessorPool(this);
+        if (mappedReads) {
+            mappedAccessorPool = new MappedDataFileAccessorPool(this, maxMappedFiles);
+        }
         appender = new DataFileAppender(this);
         return result;
     }
@@ -429,6 +448,9 @@ public class Journal {
 
     private synchronized void forceRemoveDataFile(DataFile dataFile) throws IOException {
         accessorPool.disposeDataFileAccessors(dataFile);
+        if (mappedAccessorPool != null) {
+            mappedAccessorPool.disposeDataFile(dataFile);
+        }
         fileByFileMap.remove(dataFile.getFile());
         fileMap.remove(dataFile.getDataFileId());
         totalLength.addAndGet(-dataFile.getLength());
@@ -598,6 +620,10 @@ public class Journal {
 
     public synchronized ByteSequence read(Location location) throws IOException, IllegalStateException {
         DataFile dataFile = getDataFile(location);
+        // only sealed files are mapped, the current one is still growing
+        if (mappedAccessorPool != null && dataFile != dataFiles.getTail()) {
+            return mappedAccessorPool.readRecord(dataFile, location);
+        }
         DataFileAccessor reader = accessorPool.openDataFileAccessor(dataFile);
         ByteSequence rc = null;
         try {
@@ -608,6 +634,54 @@ public class Journal {
         return rc;
     }
 
+    /**
+     * Reads the records at a batch of locations. The locations are read in
+     * journal order and the records of a data file that lie close together
+     * are read with a single file read.
+     *
+     * @return the records in the order of the locations
+     */
+    public List<ByteSequence> read(List<Location> locations) throws IOException, IllegalStateException {
+        Location[] sorted = locations.toArray(new Location[locations.size()]);
+        Arrays.sort(sorted);
+        Map<Location, ByteSequence> records = new HashMap<Location, ByteSequence>(sorted.length);
+        int start = 0;
+        while (start < sorted.length) {
+            int end = start + 1;
+            while (end < sorted.length && sorted[end].getDataFileId() == sorted[start].getDataFileId()) {
+                end++;
+            }
+            Location[] group = Arrays.copyOfRange(sorted, start, end);
+            ByteSequence[] data = readRecords(group);
+            for (int i = 0; i < group.length; i++) {
+                records.put(group[i], data[i]);
+            }
+            start = end;
+        }
+        List<ByteSequence> rc = new ArrayList<ByteSequence>(locations.size());
+        for (Location location : locations) {
+            rc.add(records.get(location));
+        }
+        return rc;
+    }
+
+    private synchronized ByteSequence[] readRecords(Location[] locations) throws IOException {
+        DataFile dataFile = getDataFile(locations[0]);
+        if (locations.length == 1 || (mappedAccessorPool != null && dataFile != dataFiles.getTail())) {
+            ByteSequence[] rc = new ByteSequence[locations.length];
+            for (int i = 0; i < locations.length; i++) {
+                rc[i] = read(locations[i]);
+            }
+            return rc;
+        }
+        DataFileAccessor reader = accessorPool.openDataFileAccessor(dataFile);
+        try {
+            return reader.readRecords(locations, COALESCED_READ_SIZE);
+        } finally {
+            accessorPool.closeDataFileAccessor(reader);
+        }
+    }
+
     public Location write(ByteSequence data, boolean sync) throws IOException, IllegalStateException {
         Location loc = appender.storeItem(data, Location.USER_TYPE, sync);
         return loc;
@@ -760,6 +834,27 @@ public class Journal {
         return enableAsyncDiskSync;
     }
 
+    public boolean isMappedReads() {
+        return mappedReads;
+    }
+
+    /**
+     * When enabled, records of data files that are no longer appended to are
+     * read through memory mappings rather than a seek and read per record.
+     * Takes effect on start.
+     */
+    public void setMappedReads(boolean mappedReads) {
+        this.mappedReads = mappedReads;
+    }
+
+    public int getMaxMappedFiles() {
+        return maxMappedFiles;
+    }
+
+    public void setMaxMappedFiles(int maxMappedFiles) {
+        this.maxMappedFiles = maxMappedFiles;
+    }
+
     public static class WriteCommand extends LinkedNode<WriteCommand> {
         public final Location location;
         public final ByteSequence data;
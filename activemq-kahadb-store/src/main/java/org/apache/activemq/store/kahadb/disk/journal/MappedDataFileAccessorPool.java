@@ -0,0 +1,192 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.disk.journal;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.activemq.util.ByteSequence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads records of sealed data files, the ones the journal no longer appends
+ * to, through read only memory mappings instead of a seek and read on a pooled
+ * RandomAccessFile.
+ *
+ * At most maxMappedFiles files are mapped at a time, the least recently read
+ * mapping is unmapped when another file needs to be mapped. Mappings are
+ * unmapped as soon as they are dropped, rather than once they are garbage
+ * collected, so that a removed data file does not keep its disk space and can
+ * be deleted on Windows. Records are copied out of a mapping under the lock
+ * of the pool and no mapping is handed out, so a reader can never fault on
+ * one unmapped under it.
+ */
+public class MappedDataFileAccessorPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MappedDataFileAccessorPool.class);
+
+    // Unsafe.invokeCleaner since Java 9, the cleaner of the buffer before
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field field = unsafeClass.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+        } catch (Throwable e) {
+            invokeCleaner = null;
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final Map<Journal.WriteKey, Journal.WriteCommand> inflightWrites;
+    private final Map<Integer, MappedByteBuffer> mappings;
+    private boolean closed;
+
+    public MappedDataFileAccessorPool(Journal journal, final int maxMappedFiles) {
+        this.inflightWrites = journal.getInflightWrites();
+        this.mappings = new LinkedHashMap<Integer, MappedByteBuffer>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, MappedByteBuffer> eldest) {
+                // never the mapping just added, it is about to be read
+                if (size() > Math.max(1, maxMappedFiles)) {
+                    unmap(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public synchronized ByteSequence readRecord(DataFile dataFile, Location location) throws IOException {
+        if (!location.isValid()) {
+            throw new IOException("Invalid location: " + location);
+        }
+
+        Journal.WriteCommand asyncWrite = inflightWrites.get(new Journal.WriteKey(location));
+        if (asyncWrite != null) {
+            return asyncWrite.data;
+        }
+
+        try {
+            int offset = location.getOffset();
+            ByteBuffer buffer;
+            if (location.getSize() == Location.NOT_SET) {
+                buffer = map(dataFile, offset + Journal.RECORD_HEAD_SPACE).duplicate();
+                location.setSize(buffer.getInt(offset));
+                location.setType(buffer.get(offset + 4));
+            }
+            buffer = map(dataFile, offset + location.getSize()).duplicate();
+
+            byte[] data = new byte[location.getSize() - Journal.RECORD_HEAD_SPACE];
+            buffer.position(offset + Journal.RECORD_HEAD_SPACE);
+            buffer.get(data);
+            return new ByteSequence(data, 0, data.length);
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid location: " + location + ", : " + e);
+        }
+    }
+
+    public synchronized void disposeDataFile(DataFile dataFile) {
+        MappedByteBuffer buffer = mappings.remove(dataFile.getDataFileId());
+        if (buffer != null) {
+            unmap(buffer);
+        }
+    }
+
+    public synchronized int getMappedFileCount() {
+        return mappings.size();
+    }
+
+    public synchronized void close() {
+        closed = true;
+        for (MappedByteBuffer buffer : mappings.values()) {
+            unmap(buffer);
+        }
+        mappings.clear();
+    }
+
+    /**
+     * Returns the mapping of the data file, remapping it if it was mapped before
+     * the bytes up to requiredLength were written out.
+     */
+    private MappedByteBuffer map(DataFile dataFile, int requiredLength) throws IOException {
+        if (closed) {
+            throw new IOException("Closed.");
+        }
+
+        MappedByteBuffer buffer = mappings.get(dataFile.getDataFileId());
+        if (buffer == null || buffer.capacity() < requiredLength) {
+            if (buffer != null) {
+                // dropped first, so that a failed remap cannot leave it in the pool
+                mappings.remove(dataFile.getDataFileId());
+                unmap(buffer);
+            }
+            RandomAccessFile file = new RandomAccessFile(dataFile.getFile(), "r");
+            try {
+                FileChannel channel = file.getChannel();
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } finally {
+                file.close();
+            }
+            mappings.put(dataFile.getDataFileId(), buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Unmaps the buffer right away, it must not be used afterwards.
+     *
+     * @return false if the JVM offers no way to do so, the mapping is then
+     *         released once it is garbage collected
+     */
+    static boolean unmap(MappedByteBuffer buffer) {
+        try {
+            if (INVOKE_CLEANER != null) {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } else {
+                Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+                cleanerMethod.setAccessible(true);
+                Object cleaner = cleanerMethod.invoke(buffer);
+                if (cleaner == null) {
+                    return false;
+                }
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+            return true;
+        } catch (Throwable e) {
+            LOG.debug("Unable to unmap, leaving it to the garbage collector", e);
+            return false;
+        }
+    }
+}
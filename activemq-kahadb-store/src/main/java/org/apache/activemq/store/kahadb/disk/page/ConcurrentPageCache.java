@@ -0,0 +1,181 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.disk.page;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A read page cache bounded by the size of the cached objects rather than by
+ * the number of pages.
+ *
+ * The cache is split in segments, each an access ordered LRU with its own lock
+ * and its share of the byte budget, so concurrent index reads of different
+ * pages seldom contend. The hit, miss and eviction counts are kept per segment
+ * under its lock for the same reason.
+ *
+ * A page is weighed when it is cached by the bytes its object marshals to, the
+ * size of its whole page chain. Pages without an object, such as free pages and
+ * the overflow pages of a chain, weigh their header. The object read back from
+ * the marshalled bytes usually takes a few times as much heap, so the budget is
+ * a bound on marshalled bytes, not on heap.
+ */
+class ConcurrentPageCache {
+
+    private static final int SEGMENT_COUNT = 16;
+
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+    ConcurrentPageCache(long maxBytes, int pageSize) {
+        long segmentBytes = Math.max(pageSize, maxBytes / SEGMENT_COUNT);
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(segmentBytes);
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    Page get(long pageId) {
+        Segment segment = segmentFor(pageId);
+        synchronized (segment) {
+            CachedPage cached = segment.get(pageId);
+            if (cached == null) {
+                segment.misses++;
+                return null;
+            }
+            segment.hits++;
+            return cached.page;
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    void put(long pageId, Page page) {
+        CachedPage cached = new CachedPage(page, weigh(page));
+        Segment segment = segmentFor(pageId);
+        synchronized (segment) {
+            CachedPage previous = segment.put(pageId, cached);
+            if (previous != null) {
+                segment.bytes -= previous.weight;
+            }
+            segment.bytes += cached.weight;
+            Iterator<CachedPage> eldest = segment.values().iterator();
+            while (segment.bytes > segment.maxBytes && segment.size() > 1) {
+                segment.bytes -= eldest.next().weight;
+                eldest.remove();
+                segment.evictions++;
+            }
+        }
+    }
+
+    void remove(long pageId) {
+        Segment segment = segmentFor(pageId);
+        synchronized (segment) {
+            CachedPage removed = segment.remove(pageId);
+            if (removed != null) {
+                segment.bytes -= removed.weight;
+            }
+        }
+    }
+
+    int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    long getBytes() {
+        long bytes = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                bytes += segment.bytes;
+            }
+        }
+        return bytes;
+    }
+
+    long getHits() {
+        long hits = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                hits += segment.hits;
+            }
+        }
+        return hits;
+    }
+
+    long getMisses() {
+        long misses = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                misses += segment.misses;
+            }
+        }
+        return misses;
+    }
+
+    long getEvictions() {
+        long evictions = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                evictions += segment.evictions;
+            }
+        }
+        return evictions;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private int weigh(Page page) {
+        if (page.get() == null) {
+            return Page.PAGE_HEADER_SIZE;
+        }
+        return Math.max(Page.PAGE_HEADER_SIZE, page.payloadSize);
+    }
+
+    private Segment segmentFor(long pageId) {
+        int hash = (int) (pageId ^ (pageId >>> 32)) * 0x9E3779B9;
+        return segments[hash >>> 28];
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static final class CachedPage {
+        final Page page;
+        final int weight;
+
+        CachedPage(Page page, int weight) {
+            this.page = page;
+            this.weight = weight;
+        }
+    }
+
+    private static final class Segment extends LinkedHashMap<Long, CachedPage> {
+        private static final long serialVersionUID = 1L;
+
+        final long maxBytes;
+        long bytes;
+        long hits;
+        long misses;
+        long evictions;
+
+        Segment(long maxBytes) {
+            super(16, 0.75f, true);
+            this.maxBytes = maxBytes;
+        }
+    }
+}
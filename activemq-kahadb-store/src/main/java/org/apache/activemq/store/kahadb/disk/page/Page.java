@@ -42,6 +42,8 @@ public class Page<T> {
     // Points to the next page in the chunk stream
     long next;
     T data;
+    // the bytes data marshals to, as last read or written, not persisted
+    int payloadSize;
 
     public Page() {
     }
@@ -56,6 +58,7 @@ public class Page<T> {
         this.type = other.type;
         this.next = other.next;
         this.data = other.data;
+        this.payloadSize = other.payloadSize;
         return this;
     }
 
@@ -67,6 +70,7 @@ public class Page<T> {
         this.type = Page.PAGE_FREE_TYPE;
         this.txId = txId;
         this.data = null;
+        this.payloadSize = 0;
         this.next = 0;
     }
 
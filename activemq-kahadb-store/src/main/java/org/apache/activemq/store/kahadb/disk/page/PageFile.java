@@ -108,6 +108,12 @@ public class PageFile {
     private boolean enablePageCaching = true;
     // How many pages will we keep in the cache?
     private int pageCacheSize = DEFAULT_PAGE_CACHE_SIZE;
+    // When set, bounds the read page cache by bytes instead of page count.
+    private long pageCacheMaxBytes = 0;
+    private ConcurrentPageCache concurrentPageCache;
+    private final AtomicLong pageCacheHits = new AtomicLong();
+    private final AtomicLong pageCacheMisses = new AtomicLong();
+    private final AtomicLong pageCacheEvictions = new AtomicLong();
 
     // Should first log the page write to the recovery buffer? Avoids partial
     // page write failures..
@@ -363,10 +369,19 @@ public class PageFile {
         if (loaded.compareAndSet(false, true)) {
 
             if (enablePageCaching) {
-                if (isUseLFRUEviction()) {
+                if (pageCacheMaxBytes > 0) {
+                    concurrentPageCache = new ConcurrentPageCache(pageCacheMaxBytes, pageSize);
+                } else if (isUseLFRUEviction()) {
                     pageCache = Collections.synchronizedMap(new LFUCache<Long, Page>(pageCacheSize, getLFUEvictionFactor()));
                 } else {
-                    pageCache = Collections.synchronizedMap(new LRUCache<Long, Page>(pageCacheSize, pageCacheSize, 0.75f, true));
+                    pageCache = Collections.synchronizedMap(new LRUCache<Long, Page>(pageCacheSize, pageCacheSize, 0.75f, true) {
+                        private static final long serialVersionUID = 1L;
+
+                        @Override
+                        protected void onCacheEviction(Map.Entry<Long, Page> eldest) {
+                            pageCacheEvictions.incrementAndGet();
+                        }
+                    });
                 }
             }
 
@@ -470,6 +485,7 @@ public class PageFile {
                 if (pageCache != null) {
                     pageCache = null;
                 }
+                concurrentPageCache = null;
                 synchronized (writes) {
                     writes.clear();
                 }
@@ -725,6 +741,58 @@ public class PageFile {
         this.pageCacheSize = pageCacheSize;
     }
 
+    /**
+     * @return the maximum bytes of pages kept in the read page cache, 0 when it is bounded by page count.
+     */
+    public long getPageCacheMaxBytes() {
+        return pageCacheMaxBytes;
+    }
+
+    /**
+     * @param pageCacheMaxBytes Bounds the read page cache by the marshalled size of the cached objects rather than by
+     *                          pageCacheSize and uses a segmented cache that concurrent readers seldom contend on.
+     *                          The objects themselves take more heap than their marshalled size.
+     */
+    public void setPageCacheMaxBytes(long pageCacheMaxBytes) {
+        assertNotLoaded();
+        this.pageCacheMaxBytes = pageCacheMaxBytes;
+    }
+
+    public long getPageCacheHits() {
+        ConcurrentPageCache cache = concurrentPageCache;
+        return pageCacheHits.get() + (cache != null ? cache.getHits() : 0);
+    }
+
+    public long getPageCacheMisses() {
+        ConcurrentPageCache cache = concurrentPageCache;
+        return pageCacheMisses.get() + (cache != null ? cache.getMisses() : 0);
+    }
+
+    public long getPageCacheEvictions() {
+        ConcurrentPageCache cache = concurrentPageCache;
+        return pageCacheEvictions.get() + (cache != null ? cache.getEvictions() : 0);
+    }
+
+    /**
+     * @return the number of pages held in the read page cache.
+     */
+    public int getPageCacheCount() {
+        ConcurrentPageCache cache = concurrentPageCache;
+        if (cache != null) {
+            return cache.size();
+        }
+        Map<Long, Page> map = pageCache;
+        return map != null ? map.size() : 0;
+    }
+
+    /**
+     * @return the bytes of pages held in the read page cache when it is bounded by bytes, otherwise 0.
+     */
+    public long getPageCacheBytes() {
+        ConcurrentPageCache cache = concurrentPageCache;
+        return cache != null ? cache.getBytes() : 0;
+    }
+
     public boolean isEnabledWriteThread() {
         return enabledWriteThread;
     }
@@ -967,20 +1035,38 @@ public class PageFile {
 
         Page<T> result = null;
         if (enablePageCaching) {
-            result = pageCache.get(pageId);
+            if (concurrentPageCache != null) {
+                // counts under its segment locks
+                result = concurrentPageCache.get(pageId);
+            } else {
+                result = pageCache.get(pageId);
+                if (result != null) {
+                    pageCacheHits.incrementAndGet();
+                } else {
+                    pageCacheMisses.incrementAndGet();
+                }
+            }
         }
         return result;
     }
 
     void addToCache(Page page) {
         if (enablePageCaching) {
-            pageCache.put(page.getPageId(), page);
+            if (concurrentPageCache != null) {
+                concurrentPageCache.put(page.getPageId(), page);
+            } else {
+                pageCache.put(page.getPageId(), page);
+            }
         }
     }
 
     void removeFromCache(long pageId) {
         if (enablePageCaching) {
-            pageCache.remove(pageId);
+            if (concurrentPageCache != null) {
+                concurrentPageCache.remove(pageId);
+            } else {
+                pageCache.remove(pageId);
+            }
         }
     }
 
@@ -278,6 +278,8 @@ public class Transaction implements Iterable<Page> {
         // marshalled.
         DataByteArrayOutputStream out = new DataByteArrayOutputStream(pageFile.getPageSize() * 2) {
             Page current = copy;
+            // the data bytes of the pages written out before current
+            int written;
 
             @SuppressWarnings("unchecked")
             @Override
@@ -310,6 +312,7 @@ public class Transaction implements Iterable<Page> {
                             byte[] data = new byte[pageSize];
                             System.arraycopy(buf, 0, data, 0, pageSize);
                             Transaction.this.write(current, data);
+                            written += pageSize - Page.PAGE_HEADER_SIZE;
 
                             // make the new link visible
                             pageFile.addToCache(current);
@@ -342,6 +345,12 @@ public class Transaction implements Iterable<Page> {
 
                 current.makePageEnd(pos, getWriteTransactionId());
 
+                // weigh the first page, which holds the data, by the size of the whole chain
+                copy.payloadSize = written + pos - Page.PAGE_HEADER_SIZE;
+                if (current != copy) {
+                    pageFile.addToCache(copy);
+                }
+
                 // make visible as end page
                 pageFile.addToCache(current);
 
@@ -444,6 +453,7 @@ public class Transaction implements Iterable<Page> {
         return new InputStream() {
 
             private ByteSequence chunk = new ByteSequence(new byte[pageFile.getPageSize()]);
+            private int payloadSize;
             private Page page = readPage(p);
             private int pageCount = 1;
 
@@ -469,10 +479,17 @@ public class Transaction implements Iterable<Page> {
                 if (page.getType() == Page.PAGE_FREE_TYPE) {
                     throw new EOFException("Chunk stream does not exist, page: " + page.getPageId() + " is marked free");
                 }
+                payloadSize += chunk.getLength() - Page.PAGE_HEADER_SIZE;
 
                 return page;
             }
 
+            @Override
+            public void close() {
+                // the bytes of the chain, to weigh the page in the cache
+                p.payloadSize = payloadSize;
+            }
+
             public int read() throws IOException {
                 if (!atEOF()) {
                     return chunk.data[chunk.offset++] & 0xff;
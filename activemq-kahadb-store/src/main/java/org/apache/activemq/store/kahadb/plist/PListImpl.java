@@ -19,7 +19,9 @@ package org.apache.activemq.store.kahadb.plist;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
@@ -108,6 +110,74 @@ public class PListImpl extends ListIndex<String, Location> implements PList {
         return new Locator(id);
     }
 
+    @Override
+    public List<Object> addLast(final List<PListEntry> entries) throws IOException {
+        // the payloads are appended to the journal back to back, the index is
+        // then updated in a single transaction
+        final List<Location> locations = new ArrayList<Location>(entries.size());
+        for (PListEntry entry : entries) {
+            locations.add(this.store.write(entry.getByteSequence(), false));
+        }
+        List<Object> result = new ArrayList<Object>(entries.size());
+        synchronized (indexLock) {
+            this.store.getPageFile().tx().execute(new Transaction.Closure<IOException>() {
+                public void execute(Transaction tx) throws IOException {
+                    for (int i = 0; i < entries.size(); i++) {
+                        add(tx, entries.get(i).getId(), locations.get(i));
+                    }
+                }
+            });
+        }
+        for (PListEntry entry : entries) {
+            result.add(new Locator(entry.getId()));
+        }
+        return result;
+    }
+
+    @Override
+    public List<Object> addFirst(final List<PListEntry> entries) throws IOException {
+        final List<Location> locations = new ArrayList<Location>(entries.size());
+        for (PListEntry entry : entries) {
+            locations.add(this.store.write(entry.getByteSequence(), false));
+        }
+        List<Object> result = new ArrayList<Object>(entries.size());
+        synchronized (indexLock) {
+            this.store.getPageFile().tx().execute(new Transaction.Closure<IOException>() {
+                public void execute(Transaction tx) throws IOException {
+                    // the last entry goes in first, so the first ends up at the head
+                    for (int i = entries.size() - 1; i >= 0; i--) {
+                        addFirst(tx, entries.get(i).getId(), locations.get(i));
+                    }
+                }
+            });
+        }
+        for (PListEntry entry : entries) {
+            result.add(new Locator(entry.getId()));
+        }
+        return result;
+    }
+
+    @Override
+    public List<PListEntry> removeFirst(final int max) throws IOException {
+        final List<PListEntry> result = new ArrayList<PListEntry>();
+        synchronized (indexLock) {
+            this.store.getPageFile().tx().execute(new Transaction.Closure<IOException>() {
+                public void execute(Transaction tx) throws IOException {
+                    Iterator<Map.Entry<String, Location>> iterator = iterator(tx);
+                    while (result.size() < max && iterator.hasNext()) {
+                        Map.Entry<String, Location> entry = iterator.next();
+                        // read while the entry still references its data file, which
+                        // the store may remove once the index lock is released
+                        ByteSequence bs = store.getPayload(entry.getValue());
+                        result.add(new PListEntry(entry.getKey(), bs, new Locator(entry.getKey())));
+                        iterator.remove();
+                    }
+                }
+            });
+        }
+        return result;
+    }
+
     @Override
     public Object addFirst(final String id, final ByteSequence bs) throws IOException {
         final Location location = this.store.write(bs, false);
@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.disk.journal;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import org.apache.activemq.util.ByteSequence;
+import org.apache.activemq.util.IOHelper;
+
+public class BatchJournalReadTest extends TestCase {
+
+    private static final int RECORD_COUNT = 500;
+
+    Journal dataManager;
+    File dir;
+
+    @Override
+    public void setUp() throws Exception {
+        dir = new File("target/tests/BatchJournalReadTest");
+        dir.mkdirs();
+        dataManager = new Journal();
+        dataManager.setDirectory(dir);
+        dataManager.setMaxFileLength(1024 * 1024);
+        dataManager.start();
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        dataManager.close();
+        IOHelper.delete(dir);
+    }
+
+    public void testReadInAnyOrder() throws Exception {
+        List<Location> locations = new ArrayList<Location>();
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            locations.add(dataManager.write(record(i), true));
+        }
+        assertTrue("records span several files", dataManager.getFileMap().size() > 2);
+
+        // as the index stores them, without a size
+        List<Location> unsized = new ArrayList<Location>();
+        List<Integer> order = new ArrayList<Integer>();
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, new Random(7));
+        for (int i : order) {
+            unsized.add(new Location(locations.get(i).getDataFileId(), locations.get(i).getOffset()));
+        }
+
+        List<ByteSequence> records = dataManager.read(unsized);
+        assertEquals(RECORD_COUNT, records.size());
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            int index = order.get(i);
+            assertRecord(index, records.get(i));
+            assertEquals(locations.get(index).getSize(), unsized.get(i).getSize());
+        }
+    }
+
+    public void testReadRecordsNotYetWritten() throws Exception {
+        List<Location> locations = new ArrayList<Location>();
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            locations.add(dataManager.write(record(i), false));
+        }
+        List<ByteSequence> records = dataManager.read(locations);
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            assertRecord(i, records.get(i));
+        }
+    }
+
+    private ByteSequence record(int i) {
+        // every tenth record is larger than a coalesced read
+        byte[] data = new byte[i % 10 == 0 ? 100 * 1024 : 100 + i];
+        for (int j = 0; j < data.length; j++) {
+            data[j] = (byte) (i + j);
+        }
+        return new ByteSequence(data);
+    }
+
+    private void assertRecord(int i, ByteSequence sequence) {
+        ByteSequence expected = record(i);
+        assertEquals(expected.getLength(), sequence.getLength());
+        for (int j = 0; j < expected.getLength(); j++) {
+            assertEquals(expected.getData()[j], sequence.getData()[sequence.getOffset() + j]);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb.disk.journal;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+import org.apache.activemq.util.ByteSequence;
+import org.apache.activemq.util.IOHelper;
+
+public class MappedJournalReadTest extends TestCase {
+
+    private static final int RECORD_COUNT = 1000;
+
+    Journal dataManager;
+    File dir;
+
+    @Override
+    public void setUp() throws Exception {
+        dir = new File("target/tests/MappedJournalReadTest");
+        dir.mkdirs();
+        dataManager = new Journal();
+        dataManager.setDirectory(dir);
+        dataManager.setMaxFileLength(64 * 1024);
+        dataManager.setMappedReads(true);
+        dataManager.setMaxMappedFiles(2);
+        dataManager.start();
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        dataManager.close();
+        IOHelper.delete(dir);
+    }
+
+    public void testReadSealedAndCurrentFiles() throws Exception {
+        List<Location> locations = new ArrayList<Location>();
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            locations.add(dataManager.write(record(i), true));
+        }
+        assertTrue("records span several files", dataManager.getFileMap().size() > 3);
+
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            assertRecord(i, dataManager.read(locations.get(i)));
+        }
+        assertEquals(2, dataManager.mappedAccessorPool.getMappedFileCount());
+
+        // locations without a size are resolved from the mapping
+        Location location = locations.get(0);
+        Location unsized = new Location(location.getDataFileId(), location.getOffset());
+        assertRecord(0, dataManager.read(unsized));
+        assertEquals(location.getSize(), unsized.getSize());
+        assertEquals(location.getType(), unsized.getType());
+    }
+
+    public void testRemovedFilesAreReleased() throws Exception {
+        List<Location> locations = new ArrayList<Location>();
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            locations.add(dataManager.write(record(i), true));
+        }
+        dataManager.read(locations.get(0));
+        assertEquals(1, dataManager.mappedAccessorPool.getMappedFileCount());
+        File file = dataManager.getFileMap().get(locations.get(0).getDataFileId()).getFile();
+
+        Set<Integer> files = new HashSet<Integer>();
+        files.add(locations.get(0).getDataFileId());
+        dataManager.removeDataFiles(files);
+        assertEquals(0, dataManager.mappedAccessorPool.getMappedFileCount());
+        // only possible on Windows once the mapping is gone
+        assertFalse("data file deleted", file.exists());
+
+        Location last = locations.get(RECORD_COUNT - 1);
+        assertRecord(RECORD_COUNT - 1, dataManager.read(last));
+    }
+
+    public void testDataFileDeletedAfterUnmap() throws Exception {
+        List<Location> locations = new ArrayList<Location>();
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            locations.add(dataManager.write(record(i), true));
+        }
+        DataFile dataFile = dataManager.getFileMap().get(locations.get(0).getDataFileId());
+        File copy = new File(dir, "copy.log");
+        IOHelper.copyFile(dataFile.getFile(), copy);
+
+        RandomAccessFile file = new RandomAccessFile(copy, "r");
+        MappedByteBuffer buffer;
+        try {
+            buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        } finally {
+            file.close();
+        }
+        assertEquals(dataFile.getFile().length(), buffer.capacity());
+        assertTrue("unmapped", MappedDataFileAccessorPool.unmap(buffer));
+        assertTrue("deleted", copy.delete());
+    }
+
+    private ByteSequence record(int i) {
+        byte[] data = new byte[512];
+        for (int j = 0; j < data.length; j++) {
+            data[j] = (byte) (i + j);
+        }
+        return new ByteSequence(data);
+    }
+
+    private void assertRecord(int i, ByteSequence sequence) {
+        ByteSequence expected = record(i);
+        assertEquals(expected.getLength(), sequence.getLength());
+        for (int j = 0; j < expected.getLength(); j++) {
+            assertEquals(expected.getData()[j], sequence.getData()[sequence.getOffset() + j]);
+        }
+    }
+}
@@ -199,4 +199,80 @@ public class PageFileTest extends TestCase {
         }
         assertEquals(expected, actual);
     }
+
+    public void testByteBoundedPageCache() throws IOException {
+
+        PageFile pf = new PageFile(new File("target/test-data"), getName());
+        pf.delete();
+        pf.setPageCacheMaxBytes(16 * pf.getPageSize());
+        pf.load();
+
+        StringBuilder filler = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            filler.append('x');
+        }
+
+        // Insert more data than the cache can hold.
+        Transaction tx = pf.tx();
+        long[] pageIds = new long[200];
+        for (int i = 0; i < pageIds.length; i++) {
+            Page<String> page = tx.allocate();
+            page.set(i + ":" + filler);
+            tx.store(page, StringMarshaller.INSTANCE, false);
+            tx.commit();
+            pageIds[i] = page.getPageId();
+        }
+        pf.flush();
+
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < pageIds.length; i++) {
+                Page<String> page = tx.load(pageIds[i], StringMarshaller.INSTANCE);
+                assertEquals(i + ":" + filler, page.get());
+            }
+        }
+
+        assertTrue(pf.getPageCacheBytes() <= pf.getPageCacheMaxBytes());
+        assertTrue(pf.getPageCacheCount() < pageIds.length);
+        assertTrue(pf.getPageCacheEvictions() > 0);
+        assertTrue(pf.getPageCacheMisses() > 0);
+
+        // a page read again right away is served by the cache
+        long hits = pf.getPageCacheHits();
+        tx.load(pageIds[0], StringMarshaller.INSTANCE);
+        tx.load(pageIds[0], StringMarshaller.INSTANCE);
+        assertTrue(pf.getPageCacheHits() > hits);
+
+        pf.unload();
+    }
+
+    public void testPageCacheWeighsWholeChain() throws IOException {
+
+        PageFile pf = new PageFile(new File("target/test-data"), getName());
+        pf.delete();
+        pf.setPageCacheMaxBytes(64 * pf.getPageSize());
+        pf.load();
+
+        StringBuilder filler = new StringBuilder();
+        for (int i = 0; i < 5 * pf.getPageSize(); i++) {
+            filler.append('x');
+        }
+
+        // An object that overflows into several pages.
+        Transaction tx = pf.tx();
+        Page<String> page = tx.allocate();
+        page.set(filler.toString());
+        tx.store(page, StringMarshaller.INSTANCE, true);
+        tx.commit();
+        assertTrue(pf.getPageCacheBytes() >= filler.length());
+
+        pf.unload();
+        pf.load();
+
+        tx = pf.tx();
+        page = tx.load(page.getPageId(), StringMarshaller.INSTANCE);
+        assertEquals(filler.toString(), page.get());
+        assertTrue(pf.getPageCacheBytes() >= filler.length());
+
+        pf.unload();
+    }
 }
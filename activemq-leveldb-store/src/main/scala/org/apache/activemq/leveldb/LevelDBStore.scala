@@ -937,6 +937,42 @@ class LevelDBStore extends LockableServiceSupport with BrokerServiceAware with P
       new java.lang.Long(pos)
     }
 
+    def addLast(entries: java.util.List[PListEntry]): java.util.List[AnyRef] = {
+      val rc = new java.util.ArrayList[AnyRef](entries.size())
+      var i = 0
+      while (i < entries.size()) {
+        val entry = entries.get(i)
+        rc.add(addLast(entry.getId, entry.getByteSequence))
+        i += 1
+      }
+      rc
+    }
+
+    def addFirst(entries: java.util.List[PListEntry]): java.util.List[AnyRef] = {
+      val rc = new java.util.ArrayList[AnyRef](entries.size())
+      var i = entries.size() - 1
+      while (i >= 0) {
+        val entry = entries.get(i)
+        rc.add(0, addFirst(entry.getId, entry.getByteSequence))
+        i -= 1
+      }
+      rc
+    }
+
+    def removeFirst(max: Int): java.util.List[PListEntry] = {
+      val rc = new java.util.ArrayList[PListEntry]()
+      val i = iterator()
+      try {
+        while (rc.size() < max && i.hasNext) {
+          rc.add(i.next())
+          i.remove()
+        }
+      } finally {
+        i.release()
+      }
+      rc
+    }
+
     def add(pos:Long, id: String, bs: ByteSequence) = {
       check_running
       val encoded_key = encodeLongLong(key, pos)
@@ -43,7 +43,7 @@ public class MQTTNIOSSLTransport extends NIOSSLTransport {
     protected void initializeStreams() throws IOException {
         codec = new MQTTCodec(this);
         super.initializeStreams();
-        if (inputBuffer.position() != 0 && inputBuffer.hasRemaining()) {
+        if (inputBuffer != null && inputBuffer.position() != 0 && inputBuffer.hasRemaining()) {
             serviceRead();
         }
     }
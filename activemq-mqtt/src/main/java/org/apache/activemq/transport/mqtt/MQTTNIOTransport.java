@@ -28,6 +28,7 @@ import java.nio.channels.SocketChannel;
 
 import javax.net.SocketFactory;
 
+import org.apache.activemq.transport.nio.NIOBufferPool;
 import org.apache.activemq.transport.nio.NIOOutputStream;
 import org.apache.activemq.transport.nio.SelectorManager;
 import org.apache.activemq.transport.nio.SelectorSelection;
@@ -45,7 +46,6 @@ public class MQTTNIOTransport extends TcpTransport {
     private SocketChannel channel;
     private SelectorSelection selection;
 
-    private ByteBuffer inputBuffer;
     MQTTCodec codec;
 
     public MQTTNIOTransport(WireFormat wireFormat, SocketFactory socketFactory, URI remoteLocation, URI localLocation) throws UnknownHostException, IOException {
@@ -76,7 +76,6 @@ public class MQTTNIOTransport extends TcpTransport {
             }
         });
 
-        inputBuffer = ByteBuffer.allocate(8 * 1024);
         NIOOutputStream outPutStream = new NIOOutputStream(channel, 8 * 1024);
         this.dataOut = new DataOutputStream(outPutStream);
         this.buffOut = outPutStream;
@@ -84,6 +83,8 @@ public class MQTTNIOTransport extends TcpTransport {
     }
 
     private void serviceRead() {
+        // the codec keeps partial frames, so the read buffer is only borrowed
+        ByteBuffer inputBuffer = NIOBufferPool.getInstance().acquireHeap(8 * 1024);
         try {
 
             while (isStarted()) {
@@ -113,11 +114,14 @@ public class MQTTNIOTransport extends TcpTransport {
             onException(e);
         } catch (Throwable e) {
             onException(IOExceptionSupport.create(e));
+        } finally {
+            NIOBufferPool.getInstance().release(inputBuffer);
         }
     }
 
     protected void doStart() throws Exception {
         connect();
+        startCoalescingWriter();
         selection.setInterestOps(SelectionKey.OP_READ);
         selection.enable();
     }
@@ -47,7 +47,7 @@ public class StompNIOSSLTransport extends NIOSSLTransport {
     protected void initializeStreams() throws IOException {
         codec = new StompCodec(this);
         super.initializeStreams();
-        if (inputBuffer.position() != 0 && inputBuffer.hasRemaining()) {
+        if (inputBuffer != null && inputBuffer.position() != 0 && inputBuffer.hasRemaining()) {
             serviceRead();
         }
     }
@@ -30,6 +30,7 @@ import java.nio.channels.SocketChannel;
 import javax.net.SocketFactory;
 
 import org.apache.activemq.transport.Transport;
+import org.apache.activemq.transport.nio.NIOBufferPool;
 import org.apache.activemq.transport.nio.NIOOutputStream;
 import org.apache.activemq.transport.nio.SelectorManager;
 import org.apache.activemq.transport.nio.SelectorSelection;
@@ -48,7 +49,6 @@ public class StompNIOTransport extends TcpTransport {
     private SocketChannel channel;
     private SelectorSelection selection;
 
-    private ByteBuffer inputBuffer;
     StompCodec codec;
 
     public StompNIOTransport(WireFormat wireFormat, SocketFactory socketFactory, URI remoteLocation, URI localLocation) throws UnknownHostException, IOException {
@@ -78,7 +78,6 @@ public class StompNIOTransport extends TcpTransport {
             }
         });
 
-        inputBuffer = ByteBuffer.allocate(8 * 1024);
         NIOOutputStream outPutStream = new NIOOutputStream(channel, 8 * 1024);
         this.dataOut = new DataOutputStream(outPutStream);
         this.buffOut = outPutStream;
@@ -86,6 +85,8 @@ public class StompNIOTransport extends TcpTransport {
     }
 
     private void serviceRead() {
+        // the codec keeps partial frames, so the read buffer is only borrowed
+        ByteBuffer inputBuffer = NIOBufferPool.getInstance().acquireHeap(8 * 1024);
         try {
 
            while (true) {
@@ -117,11 +118,14 @@ public class StompNIOTransport extends TcpTransport {
             onException(e);
         } catch (Throwable e) {
             onException(IOExceptionSupport.create(e));
+        } finally {
+            NIOBufferPool.getInstance().release(inputBuffer);
         }
     }
 
     protected void doStart() throws Exception {
         connect();
+        startCoalescingWriter();
         selection.setInterestOps(SelectionKey.OP_READ);
         selection.enable();
     }
@@ -0,0 +1,181 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.DeliveryMode;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+import javax.jms.TransactionRolledBackException;
+
+import org.apache.activemq.broker.BrokerPlugin;
+import org.apache.activemq.broker.BrokerPluginSupport;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.ProducerBrokerExchange;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class JmsSendAsyncTest {
+
+    private static final ActiveMQQueue QUEUE = new ActiveMQQueue("SendAsync");
+    private static final ActiveMQQueue REJECTED = new ActiveMQQueue("SendAsync.Rejected");
+
+    private BrokerService broker;
+    private ActiveMQConnection connection;
+
+    @Before
+    public void setUp() throws Exception {
+        broker = new BrokerService();
+        broker.setPersistent(true);
+        broker.setDeleteAllMessagesOnStartup(true);
+        broker.setUseJmx(false);
+        broker.setPlugins(new BrokerPlugin[] {new BrokerPluginSupport() {
+            @Override
+            public void send(ProducerBrokerExchange producerExchange, org.apache.activemq.command.Message messageSend) throws Exception {
+                if (REJECTED.equals(messageSend.getDestination())) {
+                    throw new JMSException("rejected");
+                }
+                super.send(producerExchange, messageSend);
+            }
+        }});
+        broker.addConnector("tcp://localhost:0");
+        broker.start();
+        broker.waitUntilStarted();
+
+        ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(broker.getTransportConnectors().get(0).getPublishableConnectString());
+        factory.setMaxAsyncSendsInFlight(16);
+        connection = (ActiveMQConnection) factory.createConnection();
+        connection.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (connection != null) {
+            connection.close();
+        }
+        broker.stop();
+    }
+
+    @Test
+    public void testCompletionsInSendOrder() throws Exception {
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        ActiveMQMessageProducer producer = (ActiveMQMessageProducer) session.createProducer(null);
+        producer.setDeliveryMode(DeliveryMode.PERSISTENT);
+        final List<Integer> completed = Collections.synchronizedList(new ArrayList<Integer>());
+        List<AsyncSendFuture> futures = new ArrayList<AsyncSendFuture>();
+        int count = 500;
+        for (int i = 0; i < count; i++) {
+            final int seq = i;
+            Message message = session.createTextMessage("message " + i);
+            // every tenth send fails on the broker
+            futures.add(producer.sendAsync(i % 10 == 9 ? REJECTED : QUEUE, message, DeliveryMode.PERSISTENT, 4, 0, new AsyncCallback() {
+                @Override
+                public void onSuccess() {
+                    completed.add(seq);
+                }
+
+                @Override
+                public void onException(JMSException exception) {
+                    completed.add(-seq);
+                }
+            }));
+            assertTrue(producer.getAsyncSendsInFlight() <= 16);
+        }
+        for (int i = 0; i < count; i++) {
+            AsyncSendFuture future = futures.get(i);
+            if (i % 10 == 9) {
+                try {
+                    future.get(10, TimeUnit.SECONDS);
+                    fail("send " + i + " should fail");
+                } catch (ExecutionException expected) {
+                    assertNotNull(future.getException());
+                }
+            } else {
+                assertNotNull(future.get(10, TimeUnit.SECONDS));
+                assertNull(future.getException());
+            }
+        }
+        assertEquals(count, completed.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i % 10 == 9 ? -i : i, completed.get(i).intValue());
+        }
+        assertEquals(0, producer.getAsyncSendsInFlight());
+
+        MessageConsumer consumer = session.createConsumer(QUEUE);
+        for (int i = 0; i < count - count / 10; i++) {
+            assertNotNull(consumer.receive(5000));
+        }
+    }
+
+    @Test
+    public void testTransactedCommit() throws Exception {
+        Session session = connection.createSession(true, Session.SESSION_TRANSACTED);
+        ActiveMQMessageProducer producer = (ActiveMQMessageProducer) session.createProducer(QUEUE);
+        AsyncSendFuture last = null;
+        for (int i = 0; i < 100; i++) {
+            last = producer.sendAsync(session.createTextMessage("message " + i));
+        }
+        session.commit();
+        assertTrue(last.isDone());
+
+        MessageConsumer consumer = session.createConsumer(QUEUE);
+        for (int i = 0; i < 100; i++) {
+            assertNotNull(consumer.receive(5000));
+        }
+        session.commit();
+    }
+
+    @Test
+    public void testFailedSendRollsBackCommit() throws Exception {
+        Session session = connection.createSession(true, Session.SESSION_TRANSACTED);
+        ActiveMQMessageProducer producer = (ActiveMQMessageProducer) session.createProducer(null);
+        producer.sendAsync(QUEUE, session.createTextMessage("first"));
+        AsyncSendFuture rejected = producer.sendAsync(REJECTED, session.createTextMessage("rejected"));
+        producer.sendAsync(QUEUE, session.createTextMessage("second"));
+        try {
+            session.commit();
+            fail("commit should fail");
+        } catch (TransactionRolledBackException expected) {
+            assertSame(rejected.getException(), expected.getLinkedException());
+        }
+
+        MessageConsumer consumer = session.createConsumer(QUEUE);
+        assertNull(consumer.receive(500));
+
+        // the next transaction is not affected
+        producer.sendAsync(QUEUE, session.createTextMessage("third"));
+        session.commit();
+        assertNotNull(consumer.receive(5000));
+        session.commit();
+    }
+}
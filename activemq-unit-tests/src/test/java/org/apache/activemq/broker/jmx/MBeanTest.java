@@ -85,6 +85,16 @@ public class MBeanTest extends EmbeddedBrokerTestSupport {
                      new URI(this.broker.getTransportConnectors().get(0).getPublishableConnectString()).getPort());
     }
 
+    public void testDestinationEventLoopAttributes() throws Exception {
+        ObjectName brokerName = assertRegisteredObjectName(domain + ":type=Broker,brokerName=localhost");
+        BrokerViewMBean broker = (BrokerViewMBean)MBeanServerInvocationHandler.newProxyInstance(mbeanServer, brokerName, BrokerViewMBean.class, true);
+
+        // destinations dispatch on the shared pool unless event loops are configured
+        assertEquals(0, broker.getDestinationEventLoopThreads());
+        assertEquals(0, broker.getDestinationEventLoopQueueDepths().length);
+        assertEquals(0, broker.getDestinationEventLoopCompletedTaskCount());
+    }
+
     public void testMBeans() throws Exception {
         connection = connectionFactory.createConnection();
         useConnection(connection);
@@ -0,0 +1,231 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.policy;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Connection;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.PrefetchSubscription;
+import org.apache.activemq.broker.region.policy.AdaptivePrefetchController;
+import org.apache.activemq.broker.region.policy.AdaptivePrefetchPolicy;
+import org.apache.activemq.broker.region.policy.PolicyEntry;
+import org.apache.activemq.broker.region.policy.PolicyMap;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.util.Wait;
+import org.junit.After;
+import org.junit.Test;
+
+public class AdaptivePrefetchPolicyTest {
+
+    private static final long MILLIS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long MICROS = TimeUnit.MICROSECONDS.toNanos(1);
+
+    private BrokerService broker;
+    private Connection connection;
+
+    @After
+    public void tearDown() throws Exception {
+        if (connection != null) {
+            connection.close();
+        }
+        if (broker != null) {
+            broker.stop();
+        }
+    }
+
+    @Test
+    public void testSlowConsumerWindowShrinks() {
+        AdaptivePrefetchController controller = new AdaptivePrefetchPolicy().createController(1000);
+        SimulatedConsumer consumer = new SimulatedConsumer(controller, 1000, MILLIS / 2);
+
+        // 10 messages a second with a round trip of about 100ms
+        consumer.run(100 * MILLIS, 10000 * MILLIS);
+        assertTrue("window " + consumer.window, consumer.window <= 5);
+        assertEquals(1000, controller.getMaximumPrefetch());
+        assertTrue(controller.getAdjustments() > 0);
+    }
+
+    @Test
+    public void testFastConsumerKeepsEnoughInFlight() {
+        AdaptivePrefetchController controller = new AdaptivePrefetchPolicy().createController(1000);
+        SimulatedConsumer consumer = new SimulatedConsumer(controller, 1000, MILLIS);
+
+        // 100 messages in flight for every millisecond of network delay
+        consumer.run(10 * MICROS, 5000 * MILLIS);
+        assertTrue("window " + consumer.window, consumer.window >= 202 && consumer.window < 1000);
+    }
+
+    @Test
+    public void testWindowGrowsWhenConsumerSpeedsUp() {
+        // the round trip measured while slow is too long for the fast consumer
+        AdaptivePrefetchPolicy policy = new AdaptivePrefetchPolicy();
+        policy.setDrainToMeasureRoundTrip(true);
+        AdaptivePrefetchController controller = policy.createController(1000);
+        SimulatedConsumer consumer = new SimulatedConsumer(controller, 1000, MILLIS);
+
+        // long enough to consume the messages prefetched before the window shrank
+        consumer.run(100 * MILLIS, 120000 * MILLIS);
+        assertTrue("window " + consumer.window, consumer.window <= 5);
+
+        consumer.run(10 * MICROS, 20000 * MILLIS);
+        assertTrue("window " + consumer.window, consumer.window >= 202 && consumer.window < 1000);
+    }
+
+    @Test
+    public void testFastConsumerNotDrainedByDefault() {
+        AdaptivePrefetchController controller = new AdaptivePrefetchPolicy().createController(1000);
+        SimulatedConsumer consumer = new SimulatedConsumer(controller, 1000, MILLIS);
+
+        // long past the round trip expiry
+        consumer.run(10 * MICROS, 30000 * MILLIS);
+        assertTrue("smallest window " + consumer.smallestWindow, consumer.smallestWindow > 1);
+        assertTrue("window " + consumer.window, consumer.window >= 202);
+    }
+
+    @Test
+    public void testWindowKeptWithinBounds() {
+        AdaptivePrefetchPolicy policy = new AdaptivePrefetchPolicy();
+        policy.setMinimumPrefetch(10);
+        AdaptivePrefetchController controller = policy.createController(100);
+        SimulatedConsumer consumer = new SimulatedConsumer(controller, 100, MILLIS);
+
+        consumer.run(100 * MILLIS, 20000 * MILLIS);
+        assertEquals(10, consumer.window);
+
+        consumer.run(10 * MICROS, 20000 * MILLIS);
+        assertEquals(100, consumer.window);
+    }
+
+    @Test
+    public void testPrefetchChangedByConsumerIsNewMaximum() {
+        AdaptivePrefetchController controller = new AdaptivePrefetchPolicy().createController(1000);
+        SimulatedConsumer consumer = new SimulatedConsumer(controller, 1000, MILLIS);
+        consumer.run(10 * MICROS, 5000 * MILLIS);
+
+        consumer.requested = 50;
+        consumer.window = 50;
+        consumer.run(10 * MICROS, 5000 * MILLIS);
+        assertEquals(50, controller.getMaximumPrefetch());
+        assertEquals(50, consumer.window);
+    }
+
+    @Test
+    public void testSlowQueueConsumerPrefetchAdapted() throws Exception {
+        AdaptivePrefetchPolicy adaptivePrefetchPolicy = new AdaptivePrefetchPolicy();
+        adaptivePrefetchPolicy.setAdjustmentPeriod(100);
+        PolicyEntry entry = new PolicyEntry();
+        entry.setAdaptivePrefetchPolicy(adaptivePrefetchPolicy);
+        PolicyMap policyMap = new PolicyMap();
+        policyMap.setDefaultEntry(entry);
+
+        broker = new BrokerService();
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.setAdvisorySupport(false);
+        broker.setDestinationPolicy(policyMap);
+        broker.start();
+        broker.waitUntilStarted();
+
+        ActiveMQQueue queue = new ActiveMQQueue("Test.AdaptivePrefetch");
+        connection = new ActiveMQConnectionFactory(broker.getVmConnectorURI()).createConnection();
+        connection.start();
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        final CountDownLatch received = new CountDownLatch(200);
+        MessageConsumer consumer = session.createConsumer(queue);
+        consumer.setMessageListener(new MessageListener() {
+            @Override
+            public void onMessage(Message message) {
+                try {
+                    TimeUnit.MILLISECONDS.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                received.countDown();
+            }
+        });
+
+        MessageProducer producer = connection.createSession(false, Session.AUTO_ACKNOWLEDGE).createProducer(queue);
+        for (int i = 0; i < 200; i++) {
+            producer.send(session.createTextMessage("message " + i));
+        }
+
+        final PrefetchSubscription subscription = (PrefetchSubscription) broker.getDestination(queue).getConsumers().get(0);
+        assertTrue(Wait.waitFor(new Wait.Condition() {
+            @Override
+            public boolean isSatisified() throws Exception {
+                return subscription.getPrefetchSize() < 100;
+            }
+        }, 5000, 50));
+        assertEquals(1000, subscription.getPrefetchController().getMaximumPrefetch());
+        // the adapted window is not written into the consumer info
+        assertEquals(1000, subscription.getConsumerInfo().getPrefetchSize());
+        assertTrue(received.await(20, TimeUnit.SECONDS));
+    }
+
+    /**
+     * A consumer that handles one message at a time in a fixed time, with a
+     * fixed network delay each way and an unlimited supply of messages.
+     */
+    private static class SimulatedConsumer {
+        private final AdaptivePrefetchController controller;
+        private final long delay;
+        private final LinkedList<Long> acks = new LinkedList<Long>();
+        private long now = 1;
+        private long consumerFree;
+        int requested;
+        int window;
+        int smallestWindow;
+
+        SimulatedConsumer(AdaptivePrefetchController controller, int window, long delay) {
+            this.controller = controller;
+            this.requested = window;
+            this.window = window;
+            this.smallestWindow = window;
+            this.delay = delay;
+        }
+
+        void run(long serviceTime, long duration) {
+            long end = now + duration;
+            while (now < end) {
+                while (acks.size() < window) {
+                    controller.onDispatch(acks.size(), now);
+                    consumerFree = Math.max(now + delay, consumerFree) + serviceTime;
+                    acks.add(consumerFree + delay);
+                }
+                now = acks.removeFirst();
+                int adapted = controller.onAcknowledge(1, requested, acks.size(), now);
+                if (adapted > 0) {
+                    window = adapted;
+                    smallestWindow = Math.min(smallestWindow, window);
+                }
+            }
+        }
+    }
+}
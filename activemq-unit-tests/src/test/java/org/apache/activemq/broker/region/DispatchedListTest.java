@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.MessageId;
+import org.junit.Test;
+
+public class DispatchedListTest {
+
+    private final DispatchedList dispatched = new DispatchedList();
+
+    @Test
+    public void testRemoveKeepsOrder() {
+        List<MessageReference> references = createReferences(10);
+        dispatched.addAll(references);
+
+        assertTrue(dispatched.remove(references.get(5)));
+        assertTrue(dispatched.remove(references.get(0)));
+        assertTrue(dispatched.remove(references.get(9)));
+        assertFalse(dispatched.remove(references.get(5)));
+
+        assertEquals(7, dispatched.size());
+        List<MessageReference> expected = new ArrayList<MessageReference>(references);
+        expected.remove(9);
+        expected.remove(5);
+        expected.remove(0);
+        assertEquals(expected, new ArrayList<MessageReference>(dispatched));
+        assertNull(dispatched.get(references.get(5).getMessageId()));
+        assertSame(references.get(6), dispatched.get(references.get(6).getMessageId()));
+    }
+
+    @Test
+    public void testIteratorFromMessageId() {
+        List<MessageReference> references = createReferences(10);
+        dispatched.addAll(references);
+
+        Iterator<MessageReference> iter = dispatched.iterator(references.get(7).getMessageId());
+        assertSame(references.get(7), iter.next());
+        iter.remove();
+        assertSame(references.get(8), iter.next());
+        assertSame(references.get(9), iter.next());
+        assertFalse(iter.hasNext());
+        assertFalse(dispatched.contains(references.get(7)));
+
+        assertSame(references.get(0), dispatched.iterator((MessageId) null).next());
+        assertNull(dispatched.iterator(new MessageId("ID:unknown-1:1:1:1", 1)));
+    }
+
+    @Test
+    public void testReverse() {
+        List<MessageReference> references = createReferences(50);
+        dispatched.addAll(references);
+
+        Collections.reverse(dispatched);
+        Collections.reverse(references);
+        assertEquals(references, new ArrayList<MessageReference>(dispatched));
+        for (MessageReference reference : references) {
+            assertSame(reference, dispatched.get(reference.getMessageId()));
+        }
+    }
+
+    @Test
+    public void testListIteratorPositions() {
+        List<MessageReference> references = createReferences(5);
+        dispatched.addAll(references);
+
+        ListIterator<MessageReference> iter = dispatched.listIterator(2);
+        assertEquals(2, iter.nextIndex());
+        assertSame(references.get(2), iter.next());
+        assertSame(references.get(2), iter.previous());
+        assertSame(references.get(1), iter.previous());
+        iter.remove();
+        assertEquals(1, iter.nextIndex());
+        assertSame(references.get(2), iter.next());
+        assertEquals(4, dispatched.size());
+    }
+
+    @Test
+    public void testMessageDispatchedTwice() {
+        List<MessageReference> references = createReferences(3);
+        dispatched.addAll(references);
+        MessageReference again = new IndirectMessageReference(references.get(1).getMessage());
+        dispatched.add(again);
+
+        assertTrue(dispatched.remove(references.get(1)));
+        assertSame(again, dispatched.get(again.getMessageId()));
+        assertTrue(dispatched.remove(again));
+        assertEquals(2, dispatched.size());
+    }
+
+    private List<MessageReference> createReferences(int count) {
+        List<MessageReference> references = new ArrayList<MessageReference>();
+        for (int i = 0; i < count; i++) {
+            ActiveMQTextMessage message = new ActiveMQTextMessage();
+            message.setMessageId(new MessageId("ID:test-1:1:1:1", i));
+            references.add(new IndirectMessageReference(message));
+        }
+        return references;
+    }
+}
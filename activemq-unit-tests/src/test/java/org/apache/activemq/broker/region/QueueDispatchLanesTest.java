@@ -0,0 +1,171 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.EmbeddedBrokerTestSupport;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.policy.PolicyEntry;
+import org.apache.activemq.broker.region.policy.PolicyMap;
+
+public class QueueDispatchLanesTest extends EmbeddedBrokerTestSupport {
+
+    private static final int MESSAGE_COUNT = 5000;
+    private static final int CONSUMER_COUNT = 20;
+
+    private Connection connection;
+
+    @Override
+    protected BrokerService createBroker() throws Exception {
+        BrokerService broker = super.createBroker();
+        PolicyEntry entry = new PolicyEntry();
+        entry.setDispatchLanes(4);
+        entry.setQueuePrefetch(10);
+        PolicyMap map = new PolicyMap();
+        map.setDefaultEntry(entry);
+        broker.setDestinationPolicy(map);
+        return broker;
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ((ActiveMQConnectionFactory) connectionFactory).setWatchTopicAdvisories(false);
+        connection = createConnection();
+        connection.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (connection != null) {
+            connection.close();
+        }
+        super.tearDown();
+    }
+
+    public void testLanesConfiguredFromPolicy() throws Exception {
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        session.createConsumer(destination).close();
+        Queue queue = (Queue) broker.getRegionBroker().getDestinationMap().get(destination);
+        assertEquals(4, queue.getDispatchLanes());
+    }
+
+    public void testAllMessagesDeliveredInOrderPerConsumer() throws Exception {
+        final CountDownLatch received = new CountDownLatch(MESSAGE_COUNT);
+        final Set<Integer> seen = Collections.synchronizedSet(new HashSet<Integer>());
+        final AtomicReference<String> failure = new AtomicReference<String>();
+
+        for (int i = 0; i < CONSUMER_COUNT; i++) {
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageConsumer consumer = session.createConsumer(destination);
+            consumer.setMessageListener(new MessageListener() {
+                private int last = -1;
+
+                @Override
+                public void onMessage(Message message) {
+                    try {
+                        int sequence = message.getIntProperty("seq");
+                        if (sequence <= last) {
+                            failure.compareAndSet(null, "out of order: " + sequence + " after " + last);
+                        }
+                        if (!seen.add(sequence)) {
+                            failure.compareAndSet(null, "duplicate: " + sequence);
+                        }
+                        last = sequence;
+                    } catch (JMSException e) {
+                        failure.compareAndSet(null, e.toString());
+                    }
+                    received.countDown();
+                }
+            });
+        }
+
+        sendMessages(null);
+
+        assertTrue("all messages received, remaining: " + received.getCount(), received.await(60, TimeUnit.SECONDS));
+        assertNull(failure.get(), failure.get());
+        assertEquals(MESSAGE_COUNT, seen.size());
+    }
+
+    public void testMessageGroupsStayOnOneConsumer() throws Exception {
+        final CountDownLatch received = new CountDownLatch(MESSAGE_COUNT);
+        final Map<String, String> owners = new HashMap<String, String>();
+        final AtomicReference<String> failure = new AtomicReference<String>();
+
+        for (int i = 0; i < CONSUMER_COUNT; i++) {
+            final String name = "consumer-" + i;
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageConsumer consumer = session.createConsumer(destination);
+            consumer.setMessageListener(new MessageListener() {
+                @Override
+                public void onMessage(Message message) {
+                    try {
+                        String group = message.getStringProperty("JMSXGroupID");
+                        synchronized (owners) {
+                            String owner = owners.get(group);
+                            if (owner == null) {
+                                owners.put(group, name);
+                            } else if (!owner.equals(name)) {
+                                failure.compareAndSet(null, group + " delivered to " + name + " and " + owner);
+                            }
+                        }
+                    } catch (JMSException e) {
+                        failure.compareAndSet(null, e.toString());
+                    }
+                    received.countDown();
+                }
+            });
+        }
+
+        sendMessages("group-");
+
+        assertTrue("all messages received, remaining: " + received.getCount(), received.await(60, TimeUnit.SECONDS));
+        assertNull(failure.get(), failure.get());
+    }
+
+    private void sendMessages(String groupPrefix) throws JMSException {
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageProducer producer = session.createProducer(destination);
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            TextMessage message = session.createTextMessage("message: " + i);
+            message.setIntProperty("seq", i);
+            if (groupPrefix != null) {
+                message.setStringProperty("JMSXGroupID", groupPrefix + (i % 50));
+            }
+            producer.send(message);
+        }
+        session.close();
+    }
+}
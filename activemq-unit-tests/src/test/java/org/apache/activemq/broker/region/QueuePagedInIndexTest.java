@@ -0,0 +1,103 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jms.Connection;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.activemq.EmbeddedBrokerTestSupport;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.policy.PolicyEntry;
+import org.apache.activemq.broker.region.policy.PolicyMap;
+
+public class QueuePagedInIndexTest extends EmbeddedBrokerTestSupport {
+
+    private static final int MESSAGE_COUNT = 20;
+
+    private boolean indexBySequenceId;
+    private Connection connection;
+
+    @Override
+    protected void setUp() throws Exception {
+        // started by each test once the policy is chosen
+    }
+
+    @Override
+    protected BrokerService createBroker() throws Exception {
+        BrokerService broker = super.createBroker();
+        PolicyEntry entry = new PolicyEntry();
+        entry.setPagedInIndexBySequenceId(indexBySequenceId);
+        PolicyMap map = new PolicyMap();
+        map.setDefaultEntry(entry);
+        broker.setDestinationPolicy(map);
+        return broker;
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (connection != null) {
+            connection.close();
+        }
+        super.tearDown();
+    }
+
+    public void testGetPagedInMessageByIdIndexedBySequenceId() throws Exception {
+        indexBySequenceId = true;
+        doTestGetPagedInMessageById();
+    }
+
+    public void testGetPagedInMessageById() throws Exception {
+        indexBySequenceId = false;
+        doTestGetPagedInMessageById();
+    }
+
+    private void doTestGetPagedInMessageById() throws Exception {
+        super.setUp();
+        connection = createConnection();
+        connection.start();
+
+        Session session = connection.createSession(false, Session.CLIENT_ACKNOWLEDGE);
+        MessageProducer producer = session.createProducer(destination);
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            producer.send(session.createTextMessage("message: " + i));
+        }
+
+        // unacknowledged messages stay paged in
+        MessageConsumer consumer = session.createConsumer(destination);
+        List<String> ids = new ArrayList<String>();
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            Message message = consumer.receive(5000);
+            assertNotNull(message);
+            ids.add(message.getJMSMessageID());
+        }
+
+        Queue queue = (Queue) broker.getRegionBroker().getDestinationMap().get(destination);
+        assertEquals(indexBySequenceId, queue.isPagedInIndexBySequenceId());
+        for (String id : ids) {
+            QueueMessageReference reference = queue.getMessage(id);
+            assertNotNull("paged in message found by id " + id, reference);
+            assertEquals(id, reference.getMessageId().toString());
+        }
+        assertNull(queue.getMessage("ID:unknown-1:1:1:1:1"));
+    }
+}
@@ -318,6 +318,16 @@ public class OrderPendingListTest {
             return theList.contains(message);
         }
 
+        @Override
+        public MessageReference get(MessageId messageId) {
+            for (MessageReference messageReference : theList) {
+                if (messageReference.getMessageId().equals(messageId)) {
+                    return messageReference;
+                }
+            }
+            return null;
+        }
+
         @Override
         public Collection<MessageReference> values() {
             return theList;
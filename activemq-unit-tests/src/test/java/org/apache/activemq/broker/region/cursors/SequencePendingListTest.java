@@ -0,0 +1,207 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region.cursors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.activemq.broker.region.MessageReference;
+import org.apache.activemq.broker.region.cursors.OrderPendingListTest.TestMessageReference;
+import org.apache.activemq.command.MessageId;
+import org.junit.Test;
+
+public class SequencePendingListTest {
+
+    @Test
+    public void testOrderOnHeap() throws Exception {
+        doTestOrder(new SequencePendingList(false));
+    }
+
+    @Test
+    public void testOrderOffHeap() throws Exception {
+        doTestOrder(new SequencePendingList(true));
+    }
+
+    @Test
+    public void testRemoveAndLookupOnHeap() throws Exception {
+        doTestRemoveAndLookup(new SequencePendingList(false));
+    }
+
+    @Test
+    public void testRemoveAndLookupOffHeap() throws Exception {
+        doTestRemoveAndLookup(new SequencePendingList(true));
+    }
+
+    @Test
+    public void testUnsequencedAndCollidingMessages() throws Exception {
+        SequencePendingList list = new SequencePendingList();
+
+        TestMessageReference unsequenced = new TestMessageReference(1);
+        TestMessageReference sequenced = createReference(2, 42);
+        TestMessageReference colliding = createReference(3, 42);
+
+        list.addMessageLast(unsequenced);
+        list.addMessageLast(sequenced);
+        list.addMessageLast(colliding);
+
+        assertEquals(3, list.size());
+        assertSame(unsequenced, list.get(unsequenced.getMessageId()));
+        assertSame(sequenced, list.get(sequenced.getMessageId()));
+        assertSame(colliding, list.get(colliding.getMessageId()));
+
+        assertNotNull(list.remove(sequenced));
+        assertFalse(list.contains(sequenced));
+        assertTrue(list.contains(colliding));
+        assertTrue(list.contains(unsequenced));
+        assertEquals(2, list.size());
+    }
+
+    @Test
+    public void testGetByIdWithoutSequence() throws Exception {
+        SequencePendingList list = new SequencePendingList();
+        TestMessageReference unsequenced = new TestMessageReference(1);
+        list.addMessageLast(unsequenced);
+        for (int i = 2; i <= 100; i++) {
+            list.addMessageLast(createReference(i, i * 10));
+        }
+
+        for (MessageReference reference : list) {
+            // as parsed from the String form, without the broker sequence id
+            MessageId parsed = new MessageId(reference.getMessageId().toString());
+            assertEquals(0, parsed.getBrokerSequenceId());
+            assertSame(reference, list.get(parsed));
+        }
+        TestMessageReference absent = new TestMessageReference(101);
+        assertNull(list.get(new MessageId(absent.getMessageId().toString())));
+    }
+
+    @Test
+    public void testReAddReplacesExistingEntry() throws Exception {
+        SequencePendingList list = new SequencePendingList();
+        TestMessageReference first = createReference(1, 1);
+        TestMessageReference second = createReference(2, 2);
+
+        list.addMessageLast(first);
+        list.addMessageLast(second);
+        list.addMessageLast(first);
+
+        assertEquals(2, list.size());
+        Iterator<MessageReference> iterator = list.iterator();
+        assertSame(second, iterator.next());
+        assertSame(first, iterator.next());
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void testIteratorRemoveWhileGrowing() throws Exception {
+        SequencePendingList list = new SequencePendingList(true);
+        List<TestMessageReference> references = new ArrayList<TestMessageReference>();
+        for (int i = 1; i <= 10000; i++) {
+            TestMessageReference reference = createReference(i, i);
+            references.add(reference);
+            list.addMessageLast(reference);
+        }
+        assertEquals(10000, list.size());
+
+        Iterator<MessageReference> iterator = list.iterator();
+        int position = 1;
+        while (iterator.hasNext()) {
+            MessageReference reference = iterator.next();
+            assertEquals(position, reference.getMessageId().getProducerSequenceId());
+            if (position % 2 == 0) {
+                iterator.remove();
+            }
+            position++;
+        }
+
+        assertEquals(5000, list.size());
+        for (TestMessageReference reference : references) {
+            boolean even = reference.getMessageId().getProducerSequenceId() % 2 == 0;
+            assertEquals(!even, list.contains(reference));
+        }
+
+        // freed slots are reused for new entries
+        for (int i = 10001; i <= 15000; i++) {
+            list.addMessageLast(createReference(i, i));
+        }
+        assertEquals(10000, list.size());
+        assertEquals(10000, list.values().size());
+
+        list.clear();
+        assertTrue(list.isEmpty());
+        assertFalse(list.iterator().hasNext());
+    }
+
+    private void doTestOrder(SequencePendingList list) {
+        list.addMessageLast(createReference(3, 30));
+        list.addMessageFirst(createReference(2, 20));
+        list.addMessageLast(new TestMessageReference(4));
+        list.addMessageFirst(createReference(1, 10));
+        list.addMessageLast(createReference(5, 50));
+
+        assertEquals(5, list.size());
+        int expected = 1;
+        for (MessageReference reference : list) {
+            assertEquals(expected++, reference.getMessageId().getProducerSequenceId());
+        }
+        expected = 1;
+        for (MessageReference reference : list.values()) {
+            assertEquals(expected++, reference.getMessageId().getProducerSequenceId());
+        }
+    }
+
+    private void doTestRemoveAndLookup(SequencePendingList list) {
+        TestMessageReference toRemove = createReference(6, 60);
+        assertFalse(list.contains(toRemove));
+        assertFalse(list.contains(null));
+        assertNull(list.remove(null));
+
+        for (int i = 1; i <= 5; i++) {
+            list.addMessageLast(createReference(i, i * 10));
+        }
+        list.addMessageLast(toRemove);
+        assertTrue(list.contains(toRemove));
+        assertSame(toRemove, list.get(toRemove.getMessageId()));
+
+        assertNotNull(list.remove(toRemove));
+        assertNull(list.remove(toRemove));
+        assertFalse(list.contains(toRemove));
+        assertNull(list.get(toRemove.getMessageId()));
+        assertEquals(5, list.size());
+
+        OrderedPendingList copy = new OrderedPendingList();
+        copy.addAll(list);
+        assertEquals(5, copy.size());
+        for (MessageReference reference : list) {
+            assertSame(reference, copy.get(reference.getMessageId()));
+        }
+    }
+
+    private TestMessageReference createReference(int producerSequence, long brokerSequence) {
+        TestMessageReference reference = new TestMessageReference(producerSequence);
+        reference.getMessageId().setBrokerSequenceId(brokerSequence);
+        return reference;
+    }
+}
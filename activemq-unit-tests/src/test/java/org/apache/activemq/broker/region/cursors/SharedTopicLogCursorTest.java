@@ -0,0 +1,204 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.broker.region.cursors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jms.Connection;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.Subscription;
+import org.apache.activemq.broker.region.TopicSubscription;
+import org.apache.activemq.broker.region.policy.PolicyEntry;
+import org.apache.activemq.broker.region.policy.PolicyMap;
+import org.apache.activemq.broker.region.policy.SharedPendingSubscriberMessageStoragePolicy;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.apache.activemq.store.memory.MemoryPersistenceAdapter;
+import org.apache.activemq.util.Wait;
+import org.junit.After;
+import org.junit.Test;
+
+public class SharedTopicLogCursorTest {
+
+    private static final int CONSUMERS = 10;
+
+    private final ActiveMQTopic topic = new ActiveMQTopic("Test.SharedLog");
+    private BrokerService broker;
+    private Connection connection;
+
+    @After
+    public void tearDown() throws Exception {
+        if (connection != null) {
+            connection.close();
+        }
+        if (broker != null) {
+            broker.stop();
+        }
+    }
+
+    @Test
+    public void testPendingMessagesHeldOnce() throws Exception {
+        startBroker(1000, 0);
+        List<MessageConsumer> consumers = createConsumers();
+        sendMessages(100);
+
+        final SharedTopicLog log = waitForPending(99);
+        assertEquals(99, log.size());
+        assertEquals(0, log.getStoredSegmentCount());
+
+        receiveAll(consumers, 100);
+        assertTrue(Wait.waitFor(new Wait.Condition() {
+            @Override
+            public boolean isSatisified() throws Exception {
+                return log.size() == 0;
+            }
+        }));
+    }
+
+    @Test
+    public void testPendingMessagesStoredOnce() throws Exception {
+        startBroker(10, 200 * 1024);
+        List<MessageConsumer> consumers = createConsumers();
+        sendMessages(400);
+
+        SharedTopicLog log = waitForPending(399);
+        assertTrue("segments written to the temp store", log.getStoredSegmentCount() > 0);
+
+        receiveAll(consumers, 400);
+        assertEquals(0, log.size());
+        assertEquals(0, log.getStoredSegmentCount());
+    }
+
+    @Test
+    public void testLogClosedWithLastSubscription() throws Exception {
+        startBroker(1000, 0);
+        List<MessageConsumer> consumers = createConsumers();
+        sendMessages(10);
+        final SharedTopicLog log = waitForPending(9);
+
+        for (MessageConsumer consumer : consumers) {
+            consumer.close();
+        }
+        assertTrue(Wait.waitFor(new Wait.Condition() {
+            @Override
+            public boolean isSatisified() throws Exception {
+                return log.size() == 0;
+            }
+        }));
+
+        MessageConsumer consumer = connection.createSession(false, Session.AUTO_ACKNOWLEDGE).createConsumer(topic);
+        TopicSubscription subscription = (TopicSubscription) broker.getDestination(topic).getConsumers().get(0);
+        assertTrue(((SharedTopicLogCursor) subscription.getMatched()).getLog() != log);
+        consumer.close();
+    }
+
+    private void startBroker(int segmentSize, long memoryLimit) throws Exception {
+        broker = new BrokerService();
+        // the temporary store only exists for a persistent broker
+        broker.setPersistenceAdapter(new MemoryPersistenceAdapter());
+        broker.setDataDirectory("target/activemq-data/SharedTopicLogCursorTest");
+        broker.setDeleteAllMessagesOnStartup(true);
+        broker.setUseJmx(false);
+        broker.setAdvisorySupport(false);
+        SharedPendingSubscriberMessageStoragePolicy pendingPolicy = new SharedPendingSubscriberMessageStoragePolicy();
+        pendingPolicy.setSegmentSize(segmentSize);
+        PolicyEntry entry = new PolicyEntry();
+        entry.setPendingSubscriberPolicy(pendingPolicy);
+        PolicyMap policyMap = new PolicyMap();
+        policyMap.setDefaultEntry(entry);
+        broker.setDestinationPolicy(policyMap);
+        if (memoryLimit > 0) {
+            broker.getSystemUsage().getMemoryUsage().setLimit(memoryLimit);
+        }
+        broker.start();
+        broker.waitUntilStarted();
+
+        ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(broker.getVmConnectorURI());
+        factory.getPrefetchPolicy().setTopicPrefetch(1);
+        connection = factory.createConnection();
+        connection.start();
+    }
+
+    private List<MessageConsumer> createConsumers() throws Exception {
+        List<MessageConsumer> consumers = new ArrayList<MessageConsumer>();
+        for (int i = 0; i < CONSUMERS; i++) {
+            consumers.add(connection.createSession(false, Session.AUTO_ACKNOWLEDGE).createConsumer(topic));
+        }
+        return consumers;
+    }
+
+    private void sendMessages(int count) throws Exception {
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageProducer producer = session.createProducer(topic);
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 1024; i++) {
+            body.append('x');
+        }
+        for (int i = 0; i < count; i++) {
+            producer.send(session.createTextMessage(i + ":" + body));
+        }
+        session.close();
+    }
+
+    private SharedTopicLog waitForPending(final int pending) throws Exception {
+        final List<Subscription> subscriptions = broker.getDestination(topic).getConsumers();
+        assertEquals(CONSUMERS, subscriptions.size());
+        assertTrue(Wait.waitFor(new Wait.Condition() {
+            @Override
+            public boolean isSatisified() throws Exception {
+                for (Subscription subscription : subscriptions) {
+                    if (((TopicSubscription) subscription).matched() != pending) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }));
+        SharedTopicLog log = null;
+        for (Subscription subscription : subscriptions) {
+            SharedTopicLogCursor cursor = (SharedTopicLogCursor) ((TopicSubscription) subscription).getMatched();
+            if (log == null) {
+                log = cursor.getLog();
+            }
+            assertSame(log, cursor.getLog());
+        }
+        return log;
+    }
+
+    private void receiveAll(List<MessageConsumer> consumers, int count) throws Exception {
+        for (MessageConsumer consumer : consumers) {
+            for (int i = 0; i < count; i++) {
+                TextMessage message = (TextMessage) consumer.receive(5000);
+                assertNotNull("message " + i, message);
+                assertTrue(message.getText().startsWith(i + ":"));
+            }
+            assertNull(consumer.receiveNoWait());
+        }
+    }
+}
@@ -22,6 +22,8 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import junit.framework.TestCase;
 
@@ -312,6 +314,72 @@ public class DestinationMapTest extends TestCase {
         assertMapValue("FOO.>", v2);
     }
 
+    public void testCachedLookupsSeeChanges() throws Exception {
+        loadSample2();
+        assertSample2();
+        assertSample2();
+
+        remove("TEST.*", v2);
+        assertMapValue("TEST.FOO", v1, v3, v4);
+        assertMapValue("TEST.D1", v3, v4);
+
+        put("TEST.*", v2);
+        assertSample2();
+
+        map.reset();
+        assertMapValue("TEST.FOO", null);
+    }
+
+    public void testLookupsWithoutMatchCache() throws Exception {
+        map.setMatchCacheSize(0);
+        loadSample2();
+        assertSample2();
+        remove("TEST.*", v2);
+        assertMapValue("TEST.D1", v3, v4);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testLookupsReturnIndependentSets() throws Exception {
+        loadSample2();
+        map.get(createDestination("TEST.FOO")).add(v6);
+        map.get(createDestination("TEST.FOO")).clear();
+        assertMapValue("TEST.FOO", v1, v2, v3, v4);
+    }
+
+    public void testConcurrentLookupsAndUpdates() throws Exception {
+        loadSample2();
+        final AtomicBoolean done = new AtomicBoolean();
+        final List<Throwable> errors = new CopyOnWriteArrayList<Throwable>();
+        Thread[] readers = new Thread[4];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        while (!done.get()) {
+                            Set<?> values = map.get(createDestination("TEST.FOO"));
+                            // v5 comes and goes, the others stay
+                            assertTrue(values.containsAll(Arrays.asList(v1, v2, v3, v4)));
+                        }
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }
+            };
+            readers[i].start();
+        }
+        for (int i = 0; i < 10000; i++) {
+            put("TEST.*", v5);
+            remove("TEST.*", v5);
+        }
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertSample2();
+    }
+
     protected void loadSample2() {
         put("TEST.FOO", v1);
         put("TEST.*", v2);
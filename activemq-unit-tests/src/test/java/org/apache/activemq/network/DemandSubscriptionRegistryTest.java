@@ -0,0 +1,172 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.apache.activemq.command.ConsumerId;
+import org.apache.activemq.command.ConsumerInfo;
+import org.apache.activemq.filter.DestinationFilter;
+import org.junit.Test;
+
+public class DemandSubscriptionRegistryTest {
+
+    // a small mesh, the timing at full scale is in perf.DemandSubscriptionRegistryPerfTest
+    private static final int BROKERS = 4;
+    private static final int CONSUMERS_PER_BROKER = 500;
+    private static final int TOPICS = 100;
+    private static final int LOOKUPS = 200;
+
+    private long consumerIds;
+
+    @Test
+    public void testMatchingWithWildcards() throws Exception {
+        DemandSubscriptionRegistry registry = new DemandSubscriptionRegistry();
+        DemandSubscription exact = createSubscription(new ActiveMQTopic("A.B.C"));
+        DemandSubscription child = createSubscription(new ActiveMQTopic("A.*.C"));
+        DemandSubscription descendant = createSubscription(new ActiveMQTopic("A.>"));
+        DemandSubscription queue = createSubscription(new ActiveMQQueue("A.B.C"));
+        registry.add(exact);
+        registry.add(child);
+        registry.add(descendant);
+        registry.add(queue);
+
+        assertEquals(set(exact, child, descendant), registry.getMatching(new ActiveMQTopic("A.B.C")));
+        assertEquals(set(descendant), registry.getMatching(new ActiveMQTopic("A.B")));
+        assertEquals(set(queue), registry.getMatching(new ActiveMQQueue("A.B.C")));
+        assertEquals(set(exact, child, descendant), registry.getMatching(new ActiveMQTopic("A.B.C,A.D")));
+        assertFalse(registry.hasDemandFor(new ActiveMQTopic("B.C")));
+
+        assertTrue(registry.hasSubscriptionOn(new ActiveMQTopic("A.B.C")));
+        assertTrue(registry.hasSubscriptionOn(new ActiveMQTopic("A.*.C")));
+        assertFalse(registry.hasSubscriptionOn(new ActiveMQTopic("A.B")));
+        assertTrue(registry.hasSubscriptionOn(new ActiveMQTopic(">")));
+
+        registry.remove(descendant);
+        assertEquals(set(exact, child), registry.getMatching(new ActiveMQTopic("A.B.C")));
+        assertFalse(registry.hasDemandFor(new ActiveMQTopic("A.B")));
+        assertEquals(3, registry.size());
+    }
+
+    @Test
+    public void testInterestFollowsSubscriptions() throws Exception {
+        DemandSubscriptionRegistry registry = new DemandSubscriptionRegistry();
+        ActiveMQTopic topic = new ActiveMQTopic("Interest");
+        DemandSubscription first = createSubscription(topic);
+        DemandSubscription second = createSubscription(topic);
+        registry.add(first);
+        registry.add(second);
+
+        // a conduit consumer served by both subscriptions
+        ConsumerId shared = new ConsumerId("remote:1:1:" + ++consumerIds);
+        first.add(shared);
+        second.add(shared);
+        registry.addInterest(shared, first);
+        registry.addInterest(shared, second);
+
+        registry.remove(first);
+        assertEquals(set(second), registry.removeInterest(shared));
+        assertTrue(registry.removeInterest(shared).isEmpty());
+        assertTrue(registry.hasSubscriptionOn(topic));
+
+        registry.remove(second);
+        assertFalse(registry.hasSubscriptionOn(topic));
+        assertTrue(registry.removeInterest(second.getRemoteInfo().getConsumerId()).isEmpty());
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    public void testMeshLookupsMatchScan() throws Exception {
+        Random random = new Random(42);
+        List<DemandSubscriptionRegistry> bridges = new ArrayList<DemandSubscriptionRegistry>();
+        List<DemandSubscription> all = new ArrayList<DemandSubscription>();
+        for (int broker = 0; broker < BROKERS; broker++) {
+            DemandSubscriptionRegistry registry = new DemandSubscriptionRegistry();
+            for (int i = 0; i < CONSUMERS_PER_BROKER; i++) {
+                ActiveMQDestination destination;
+                if (i % 100 == 0) {
+                    destination = new ActiveMQTopic("Mesh.Region" + random.nextInt(10) + ".>");
+                } else if (i % 100 == 1) {
+                    destination = new ActiveMQTopic("Mesh.*.Topic" + random.nextInt(TOPICS));
+                } else {
+                    destination = topic(random);
+                }
+                DemandSubscription sub = createSubscription(destination);
+                registry.add(sub);
+                all.add(sub);
+            }
+            bridges.add(registry);
+        }
+
+        ActiveMQDestination[] lookups = new ActiveMQDestination[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            lookups[i] = topic(random);
+        }
+
+        // the index agrees with a filter scan of every subscription
+        for (int i = 0; i < LOOKUPS; i++) {
+            Set<DemandSubscription> expected = new HashSet<DemandSubscription>();
+            Set<DemandSubscription> actual = new HashSet<DemandSubscription>();
+            for (DemandSubscriptionRegistry registry : bridges) {
+                actual.addAll(registry.getMatching(lookups[i]));
+            }
+            for (DemandSubscription sub : all) {
+                if (DestinationFilter.parseFilter(sub.getLocalInfo().getDestination()).matches(lookups[i])) {
+                    expected.add(sub);
+                }
+            }
+            assertEquals(lookups[i].toString(), expected, actual);
+        }
+
+        for (int i = 0; i < all.size(); i++) {
+            bridges.get(i / CONSUMERS_PER_BROKER).remove(all.get(i));
+        }
+        for (DemandSubscriptionRegistry registry : bridges) {
+            assertEquals(0, registry.size());
+            assertFalse(registry.hasDemandFor(lookups[0]));
+        }
+    }
+
+    private ActiveMQTopic topic(Random random) {
+        return new ActiveMQTopic("Mesh.Region" + random.nextInt(10) + ".Topic" + random.nextInt(TOPICS));
+    }
+
+    private DemandSubscription createSubscription(ActiveMQDestination destination) {
+        ConsumerInfo info = new ConsumerInfo(new ConsumerId("remote:1:1:" + ++consumerIds));
+        info.setDestination(destination);
+        return new DemandSubscription(info);
+    }
+
+    private static Set<DemandSubscription> set(DemandSubscription... subs) {
+        Set<DemandSubscription> rc = new HashSet<DemandSubscription>();
+        for (DemandSubscription sub : subs) {
+            rc.add(sub);
+        }
+        return rc;
+    }
+}
@@ -0,0 +1,168 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.Connection;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.advisory.AdvisorySupport;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.command.ActiveMQMessage;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.apache.activemq.command.ConsumerInfo;
+import org.apache.activemq.util.Wait;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NetworkAdvisoryCoalesceTest {
+
+    private static final long COALESCE_PERIOD = 1000;
+
+    private final ActiveMQTopic topic = new ActiveMQTopic("Advisory.Coalesce");
+    private BrokerService localBroker;
+    private BrokerService remoteBroker;
+    private NetworkConnector networkConnector;
+    private Connection localConnection;
+    private Connection remoteConnection;
+
+    @Before
+    public void setUp() throws Exception {
+        remoteBroker = createBroker("remote");
+        remoteBroker.addConnector("tcp://localhost:0");
+        remoteBroker.start();
+        remoteBroker.waitUntilStarted();
+
+        String remoteUri = remoteBroker.getTransportConnectors().get(0).getPublishableConnectString();
+        localBroker = createBroker("local");
+        networkConnector = localBroker.addNetworkConnector(new URI("static:(" + remoteUri + ")"));
+        networkConnector.setAdvisoryCoalescePeriod(COALESCE_PERIOD);
+        localBroker.start();
+        localBroker.waitUntilStarted();
+
+        assertTrue("bridge started", Wait.waitFor(new Wait.Condition() {
+            @Override
+            public boolean isSatisified() throws Exception {
+                return !networkConnector.activeBridges().isEmpty();
+            }
+        }));
+
+        localConnection = new ActiveMQConnectionFactory(localBroker.getVmConnectorURI()).createConnection();
+        localConnection.start();
+        remoteConnection = new ActiveMQConnectionFactory(remoteBroker.getVmConnectorURI()).createConnection();
+        remoteConnection.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (localConnection != null) {
+            localConnection.close();
+        }
+        if (remoteConnection != null) {
+            remoteConnection.close();
+        }
+        if (localBroker != null) {
+            localBroker.stop();
+        }
+        if (remoteBroker != null) {
+            remoteBroker.stop();
+        }
+    }
+
+    @Test
+    public void testConsumersLeavingWithinPeriodAreNotSubscribed() throws Exception {
+        final AtomicInteger subscriptions = new AtomicInteger();
+        Session advisorySession = localConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        advisorySession.createConsumer(AdvisorySupport.getConsumerAdvisoryTopic(topic)).setMessageListener(new MessageListener() {
+            @Override
+            public void onMessage(Message message) {
+                if (((ActiveMQMessage) message).getDataStructure() instanceof ConsumerInfo) {
+                    subscriptions.incrementAndGet();
+                }
+            }
+        });
+
+        Session remoteSession = remoteConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        for (int i = 0; i < 10; i++) {
+            remoteSession.createConsumer(topic).close();
+        }
+        MessageConsumer consumer = remoteSession.createConsumer(topic);
+        waitForBridgeConsumers(1);
+        // give any late advisory the chance to show up
+        Thread.sleep(COALESCE_PERIOD);
+        assertEquals("one bridge subscription", 1, subscriptions.get());
+
+        Session localSession = localConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        localSession.createProducer(topic).send(localSession.createTextMessage("forwarded"));
+        TextMessage message = (TextMessage) consumer.receive(5000);
+        assertNotNull(message);
+        assertEquals("forwarded", message.getText());
+
+        consumer.close();
+        waitForBridgeConsumers(0);
+    }
+
+    @Test
+    public void testAdvisoriesAppliedInOrder() throws Exception {
+        Session remoteSession = remoteConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageConsumer first = remoteSession.createConsumer(topic);
+        waitForBridgeConsumers(1);
+
+        // the remove of the applied consumer and the add of the next one are buffered together
+        first.close();
+        MessageConsumer second = remoteSession.createConsumer(topic);
+        Thread.sleep(COALESCE_PERIOD * 2);
+        waitForBridgeConsumers(1);
+
+        Session localSession = localConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        localSession.createProducer(topic).send(localSession.createTextMessage("after"));
+        TextMessage message = (TextMessage) second.receive(5000);
+        assertNotNull(message);
+        assertEquals("after", message.getText());
+    }
+
+    private void waitForBridgeConsumers(final int count) throws Exception {
+        assertTrue("bridge consumers " + count, Wait.waitFor(new Wait.Condition() {
+            @Override
+            public boolean isSatisified() throws Exception {
+                Destination localTopic = localBroker.getDestination(topic);
+                return localTopic != null && localTopic.getConsumers().size() == count;
+            }
+        }));
+    }
+
+    private BrokerService createBroker(String name) throws Exception {
+        BrokerService broker = new BrokerService();
+        broker.setBrokerName(name);
+        broker.setUseJmx(false);
+        broker.setPersistent(false);
+        return broker;
+    }
+}
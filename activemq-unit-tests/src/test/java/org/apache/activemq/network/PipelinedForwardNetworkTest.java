@@ -0,0 +1,150 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.util.Wait;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PipelinedForwardNetworkTest {
+
+    private static final int MESSAGE_COUNT = 1000;
+
+    private final ActiveMQQueue queue = new ActiveMQQueue("Pipelined.Forward");
+    private BrokerService localBroker;
+    private BrokerService remoteBroker;
+    private NetworkConnector networkConnector;
+    private Connection localConnection;
+    private Connection remoteConnection;
+
+    @Before
+    public void setUp() throws Exception {
+        remoteBroker = createBroker("remote");
+        remoteBroker.addConnector("tcp://localhost:0");
+        remoteBroker.start();
+        remoteBroker.waitUntilStarted();
+        remoteConnection = new ActiveMQConnectionFactory(remoteBroker.getVmConnectorURI()).createConnection();
+        remoteConnection.start();
+    }
+
+    private void startLocalBroker(boolean alwaysSyncSend) throws Exception {
+        String remoteUri = remoteBroker.getTransportConnectors().get(0).getPublishableConnectString();
+        localBroker = createBroker("local");
+        networkConnector = localBroker.addNetworkConnector(new URI("static:(" + remoteUri + ")"));
+        networkConnector.setForwardWindowSize(10);
+        networkConnector.setForwardAckBatchSize(16);
+        networkConnector.setPrefetchSize(50);
+        // non persistent messages are then acked on send, between the batches
+        networkConnector.setAlwaysSyncSend(alwaysSyncSend);
+        localBroker.start();
+        localBroker.waitUntilStarted();
+
+        localConnection = new ActiveMQConnectionFactory(localBroker.getVmConnectorURI()).createConnection();
+        localConnection.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (localConnection != null) {
+            localConnection.close();
+        }
+        remoteConnection.close();
+        if (localBroker != null) {
+            localBroker.stop();
+        }
+        remoteBroker.stop();
+    }
+
+    @Test
+    public void testPersistentForwardsAckedInBatches() throws Exception {
+        doTestForward(false);
+    }
+
+    @Test
+    public void testMixedDeliveryModes() throws Exception {
+        doTestForward(true);
+    }
+
+    private void doTestForward(boolean mixed) throws Exception {
+        startLocalBroker(!mixed);
+        MessageConsumer consumer = remoteConnection.createSession(false, Session.AUTO_ACKNOWLEDGE).createConsumer(queue);
+        waitForBridgeConsumer();
+
+        Session session = localConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageProducer producer = session.createProducer(queue);
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            producer.setDeliveryMode(mixed && i % 3 == 0 ? DeliveryMode.NON_PERSISTENT : DeliveryMode.PERSISTENT);
+            producer.send(session.createTextMessage("message:" + i));
+        }
+
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            TextMessage message = (TextMessage) consumer.receive(5000);
+            assertNotNull("message " + i, message);
+            assertEquals("message:" + i, message.getText());
+        }
+
+        final Destination localQueue = localBroker.getDestination(queue);
+        assertTrue("all forwards acked locally", Wait.waitFor(new Wait.Condition() {
+            @Override
+            public boolean isSatisified() throws Exception {
+                return localQueue.getDestinationStatistics().getMessages().getCount() == 0
+                    && localQueue.getDestinationStatistics().getInflight().getCount() == 0;
+            }
+        }));
+
+        NetworkBridge bridge = networkConnector.activeBridges().iterator().next();
+        assertEquals(0, bridge.getForwardsInFlight());
+        assertEquals(MESSAGE_COUNT, bridge.getDequeueCounter());
+        assertTrue(bridge.getAverageForwardRoundTripTime() > 0);
+    }
+
+    private void waitForBridgeConsumer() throws Exception {
+        assertTrue("bridge consumer", Wait.waitFor(new Wait.Condition() {
+            @Override
+            public boolean isSatisified() throws Exception {
+                Destination localQueue = localBroker.getDestination(queue);
+                return localQueue != null && localQueue.getConsumers().size() == 1;
+            }
+        }));
+    }
+
+    private BrokerService createBroker(String name) throws Exception {
+        BrokerService broker = new BrokerService();
+        broker.setBrokerName(name);
+        broker.setUseJmx(false);
+        broker.setPersistent(false);
+        return broker;
+    }
+}
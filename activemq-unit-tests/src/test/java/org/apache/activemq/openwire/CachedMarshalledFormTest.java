@@ -0,0 +1,140 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.openwire;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.ConsumerId;
+import org.apache.activemq.command.Message;
+import org.apache.activemq.command.MessageDispatch;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.command.ProducerId;
+import org.apache.activemq.filter.MessageEvaluationContext;
+import org.apache.activemq.selector.SelectorParser;
+import org.apache.activemq.util.ByteSequence;
+
+public class CachedMarshalledFormTest extends TestCase {
+
+    private final ActiveMQQueue queue = new ActiveMQQueue("TEST");
+    private final OpenWireFormat storeFormat = new OpenWireFormat(10);
+
+    public void testDispatchWritesSameBytesAsFullMarshal() throws Exception {
+        ByteSequence stored = copy(storeFormat.marshal(createMessage(1, "hello")));
+
+        Message cached = (Message) storeFormat.unmarshal(stored);
+        cached.setCachedMarshalledForm(storeFormat, stored);
+        Message plain = (Message) storeFormat.unmarshal(stored);
+        for (Message message : new Message[] {cached, plain}) {
+            message.setBrokerOutTime(1234L);
+            message.setJMSXGroupFirstForConsumer(true);
+        }
+
+        OpenWireFormat wireFormat = new OpenWireFormat(10);
+        byte[] fromCache = copy(wireFormat.marshal(dispatch(cached))).getData();
+        byte[] fromFields = copy(wireFormat.marshal(dispatch(plain))).getData();
+        assertTrue(Arrays.equals(fromFields, fromCache));
+
+        MessageDispatch received = (MessageDispatch) wireFormat.unmarshal(new ByteSequence(fromCache));
+        ActiveMQTextMessage message = (ActiveMQTextMessage) received.getMessage();
+        assertEquals("hello", message.getText());
+        assertEquals("value", message.getStringProperty("key"));
+        assertEquals(1234L, message.getBrokerOutTime());
+        assertTrue(message.isJMSXGroupFirstForConsumer());
+    }
+
+    public void testCachedFormIsUsedUntilMessageChanges() throws Exception {
+        ByteSequence stored = copy(storeFormat.marshal(createMessage(1, "stored")));
+        Message message = (Message) storeFormat.unmarshal(copy(storeFormat.marshal(createMessage(1, "changed"))));
+
+        // a form that differs from the fields shows which one got written
+        message.setCachedMarshalledForm(storeFormat, stored);
+        OpenWireFormat wireFormat = new OpenWireFormat(10);
+        assertEquals("stored", textOf(wireFormat, message));
+
+        message.incrementRedeliveryCounter();
+        assertNull(message.getCachedMarshalledForm());
+        assertEquals("changed", textOf(wireFormat, message));
+    }
+
+    public void testSelectorEvaluationKeepsCachedForm() throws Exception {
+        ByteSequence stored = copy(storeFormat.marshal(createMessage(1, "stored")));
+        Message message = (Message) storeFormat.unmarshal(copy(storeFormat.marshal(createMessage(1, "changed"))));
+        message.setCachedMarshalledForm(storeFormat, stored);
+
+        MessageEvaluationContext context = new MessageEvaluationContext();
+        context.setMessageReference(message);
+        assertTrue(SelectorParser.parse("key = 'value'").matches(context));
+        assertEquals("changed", ((ActiveMQTextMessage) message).getText());
+        assertNotNull(message.getCachedMarshalledForm());
+        assertEquals("stored", textOf(new OpenWireFormat(10), message));
+
+        message.setProperty("key", "other");
+        assertNull(message.getCachedMarshalledForm());
+    }
+
+    public void testIncompatibleWireFormatsMarshalFields() throws Exception {
+        ByteSequence stored = copy(storeFormat.marshal(createMessage(1, "stored")));
+        Message message = (Message) storeFormat.unmarshal(copy(storeFormat.marshal(createMessage(1, "changed"))));
+        message.setCachedMarshalledForm(storeFormat, stored);
+
+        OpenWireFormat tight = new OpenWireFormat(10);
+        tight.setTightEncodingEnabled(true);
+        assertEquals("changed", textOf(tight, message));
+
+        OpenWireFormat cache = new OpenWireFormat(10);
+        cache.setCacheEnabled(true);
+        assertEquals("changed", textOf(cache, message));
+
+        OpenWireFormat otherVersion = new OpenWireFormat(9);
+        assertEquals("changed", textOf(otherVersion, message));
+    }
+
+    private String textOf(OpenWireFormat wireFormat, Message message) throws Exception {
+        ByteSequence marshalled = copy(wireFormat.marshal(dispatch(message)));
+        MessageDispatch received = (MessageDispatch) wireFormat.unmarshal(marshalled);
+        return ((ActiveMQTextMessage) received.getMessage()).getText();
+    }
+
+    private ActiveMQTextMessage createMessage(long sequence, String text) throws Exception {
+        ActiveMQTextMessage message = new ActiveMQTextMessage();
+        message.setMessageId(new MessageId(new ProducerId("producer:1:1"), sequence));
+        message.setDestination(queue);
+        message.setPersistent(true);
+        message.setText(text);
+        message.setStringProperty("key", "value");
+        message.setBrokerInTime(1000L);
+        return message;
+    }
+
+    private MessageDispatch dispatch(Message message) {
+        MessageDispatch md = new MessageDispatch();
+        md.setConsumerId(new ConsumerId("consumer:1:1:1"));
+        md.setDestination(queue);
+        md.setMessage(message);
+        return md;
+    }
+
+    private ByteSequence copy(ByteSequence sequence) {
+        byte[] data = new byte[sequence.getLength()];
+        System.arraycopy(sequence.getData(), sequence.getOffset(), data, 0, data.length);
+        return new ByteSequence(data);
+    }
+}
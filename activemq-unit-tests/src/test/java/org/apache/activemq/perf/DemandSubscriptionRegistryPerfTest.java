@@ -0,0 +1,114 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.perf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.apache.activemq.command.ConsumerId;
+import org.apache.activemq.command.ConsumerInfo;
+import org.apache.activemq.filter.DestinationFilter;
+import org.apache.activemq.network.DemandSubscription;
+import org.apache.activemq.network.DemandSubscriptionRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares the demand subscription lookups of the bridges of a large full
+ * mesh through DemandSubscriptionRegistry with a filter scan of every
+ * subscription.
+ */
+public class DemandSubscriptionRegistryPerfTest extends TestCase {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DemandSubscriptionRegistryPerfTest.class);
+
+    // a full mesh of 20 brokers with 100k consumers seen by one of them
+    protected int brokers = 20;
+    protected int consumersPerBroker = 5000;
+    protected int topics = 1000;
+    protected int lookupCount = 20000;
+
+    private long consumerIds;
+
+    public void testMeshScaleLookups() throws Exception {
+        Random random = new Random(42);
+        List<DemandSubscriptionRegistry> bridges = new ArrayList<DemandSubscriptionRegistry>();
+        List<DemandSubscription> all = new ArrayList<DemandSubscription>();
+        for (int broker = 0; broker < brokers; broker++) {
+            DemandSubscriptionRegistry registry = new DemandSubscriptionRegistry();
+            for (int i = 0; i < consumersPerBroker; i++) {
+                ActiveMQDestination destination;
+                if (i % 100 == 0) {
+                    destination = new ActiveMQTopic("Mesh.Region" + random.nextInt(10) + ".>");
+                } else if (i % 100 == 1) {
+                    destination = new ActiveMQTopic("Mesh.*.Topic" + random.nextInt(topics));
+                } else {
+                    destination = topic(random);
+                }
+                DemandSubscription sub = createSubscription(destination);
+                registry.add(sub);
+                all.add(sub);
+            }
+            bridges.add(registry);
+        }
+
+        ActiveMQDestination[] lookups = new ActiveMQDestination[lookupCount];
+        for (int i = 0; i < lookupCount; i++) {
+            lookups[i] = topic(random);
+        }
+
+        long start = System.nanoTime();
+        long matches = 0;
+        for (ActiveMQDestination lookup : lookups) {
+            for (DemandSubscriptionRegistry registry : bridges) {
+                matches += registry.getMatching(lookup).size();
+            }
+        }
+        long indexed = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int scanned = lookupCount / 100;
+        for (int i = 0; i < scanned; i++) {
+            for (DemandSubscription sub : all) {
+                if (DestinationFilter.parseFilter(sub.getLocalInfo().getDestination()).matches(lookups[i])) {
+                    matches++;
+                }
+            }
+        }
+        long scan = (System.nanoTime() - start) * (lookupCount / scanned);
+
+        LOG.info("{} lookups over {} subscriptions: indexed {} ms, scan (extrapolated) {} ms, {} matches", new Object[]{
+                lookupCount, all.size(), TimeUnit.NANOSECONDS.toMillis(indexed), TimeUnit.NANOSECONDS.toMillis(scan), matches
+        });
+    }
+
+    private ActiveMQTopic topic(Random random) {
+        return new ActiveMQTopic("Mesh.Region" + random.nextInt(10) + ".Topic" + random.nextInt(topics));
+    }
+
+    private DemandSubscription createSubscription(ActiveMQDestination destination) {
+        ConsumerInfo info = new ConsumerInfo(new ConsumerId("remote:1:1:" + ++consumerIds));
+        info.setDestination(destination);
+        return new DemandSubscription(info);
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.perf;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import junit.framework.TestCase;
+
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.filter.DestinationMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the throughput of DestinationMap lookups on a map shaped like a
+ * broker's policy or authorization map: a few wildcard entries over a large
+ * number of concrete destinations, looked up by several threads with and
+ * without the match cache and while destinations come and go.
+ */
+public class DestinationMapLookupTest extends TestCase {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DestinationMapLookupTest.class);
+
+    protected int destinationCount = 50000;
+    protected int lookupsPerThread = 500000;
+    protected int[] threadCounts = {1, 2, 4, 8};
+    protected int hotDestinations = 200;
+
+    private DestinationMap map;
+    private ActiveMQDestination[] destinations;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        map = new DestinationMap();
+        map.put(new ActiveMQQueue(">"), "default");
+        map.put(new ActiveMQQueue("ORG.>"), "org");
+        map.put(new ActiveMQQueue("ORG.*.APP.>"), "app");
+        map.put(new ActiveMQQueue("ORG.DEPT1.>"), "dept1");
+        map.put(new ActiveMQQueue("*.*.*.QUEUE.*"), "queues");
+        destinations = new ActiveMQDestination[destinationCount];
+        for (int i = 0; i < destinationCount; i++) {
+            destinations[i] = new ActiveMQQueue("ORG.DEPT" + (i % 10) + ".APP.QUEUE." + i);
+            map.put(destinations[i], "destination-" + i);
+        }
+    }
+
+    public void testLookups() throws Exception {
+        StringBuilder report = new StringBuilder("\nlookups/s per thread count, cached/uncached");
+        for (int threads : threadCounts) {
+            map.setMatchCacheSize(DestinationMap.DEFAULT_MATCH_CACHE_SIZE);
+            long cached = run(threads, false);
+            map.setMatchCacheSize(0);
+            long uncached = run(threads, false);
+            report.append("\n").append(threads).append(": ").append(cached).append("/").append(uncached);
+        }
+        LOG.info(report.toString());
+    }
+
+    public void testLookupsWithDestinationChurn() throws Exception {
+        StringBuilder report = new StringBuilder("\nlookups/s with a concurrent writer per thread count, cached/uncached");
+        for (int threads : threadCounts) {
+            map.setMatchCacheSize(DestinationMap.DEFAULT_MATCH_CACHE_SIZE);
+            long cached = run(threads, true);
+            map.setMatchCacheSize(0);
+            long uncached = run(threads, true);
+            report.append("\n").append(threads).append(": ").append(cached).append("/").append(uncached);
+        }
+        LOG.info(report.toString());
+    }
+
+    private long run(int threads, boolean churn) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final int offset = t;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        // most lookups hit a small set of busy destinations
+                        for (int i = 0; i < lookupsPerThread; i++) {
+                            int index = i % 10 == 0 ? (i * 31 + offset) % destinationCount : (i + offset) % hotDestinations;
+                            if (map.get(destinations[index]).size() < 5) {
+                                throw new IllegalStateException("Unexpected values for " + destinations[index]);
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        final AtomicBoolean stopped = new AtomicBoolean();
+        Thread writer = null;
+        if (churn) {
+            writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    ActiveMQDestination temporary = new ActiveMQQueue("ORG.TEMP.>");
+                    while (!stopped.get()) {
+                        map.put(temporary, "temporary");
+                        map.remove(temporary, "temporary");
+                        try {
+                            Thread.sleep(1);
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                }
+            });
+            writer.start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        assertTrue(done.await(5, TimeUnit.MINUTES));
+        long elapsed = System.nanoTime() - begin;
+        stopped.set(true);
+        if (writer != null) {
+            writer.join();
+        }
+        return (long) lookupsPerThread * threads * 1000000000L / elapsed;
+    }
+}
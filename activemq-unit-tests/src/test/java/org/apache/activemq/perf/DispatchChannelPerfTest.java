@@ -0,0 +1,167 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.perf;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import junit.framework.TestCase;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares the throughput and the latency of receive() and of a
+ * MessageListener with the default dispatch channels and with the ring
+ * dispatch channels, over a vm connection so that the channel hand off is a
+ * large part of the cost.
+ */
+public class DispatchChannelPerfTest extends TestCase {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DispatchChannelPerfTest.class);
+    private static final String LATENCY = "sent";
+
+    protected int messageCount = 200000;
+    protected int warmupCount = 20000;
+
+    private BrokerService broker;
+
+    @Override
+    protected void setUp() throws Exception {
+        broker = new BrokerService();
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.setAdvisorySupport(false);
+        broker.start();
+        broker.waitUntilStarted();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        broker.stop();
+    }
+
+    public void testDispatchChannels() throws Exception {
+        StringBuilder report = new StringBuilder("\nmessages per second, latency in microseconds p50/p99/p99.9");
+        for (boolean listener : new boolean[] {false, true}) {
+            for (boolean ring : new boolean[] {false, true}) {
+                run(listener, ring, warmupCount);
+                long[] latencies = new long[messageCount];
+                long rate = run(listener, ring, latencies);
+                report.append("\n").append(listener ? "listener" : "receive ");
+                report.append(ring ? " ring: " : " fifo: ").append(rate).append(" msg/s, ");
+                appendPercentiles(report, latencies);
+            }
+        }
+        LOG.info(report.toString());
+    }
+
+    private long run(boolean listener, boolean ring, int count) throws Exception {
+        return run(listener, ring, new long[count]);
+    }
+
+    private long run(boolean listener, boolean ring, final long[] latencies) throws Exception {
+        ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(broker.getVmConnectorURI());
+        factory.setUseRingDispatchChannel(ring);
+        factory.setAlwaysSessionAsync(true);
+        factory.setMessagePrioritySupported(false);
+        factory.getPrefetchPolicy().setQueuePrefetch(1000);
+        Connection connection = factory.createConnection();
+        try {
+            connection.start();
+            ActiveMQQueue queue = new ActiveMQQueue("TEST.DISPATCH.CHANNEL");
+            Session consumerSession = connection.createSession(false, Session.DUPS_OK_ACKNOWLEDGE);
+            MessageConsumer consumer = consumerSession.createConsumer(queue);
+            final CountDownLatch received = new CountDownLatch(latencies.length);
+            if (listener) {
+                consumer.setMessageListener(new MessageListener() {
+                    private int index;
+
+                    @Override
+                    public void onMessage(Message message) {
+                        record(message, latencies, index++);
+                        received.countDown();
+                    }
+                });
+            }
+
+            final Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            final MessageProducer producer = session.createProducer(queue);
+            producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+            Thread sender = new Thread("Sender") {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < latencies.length; i++) {
+                            Message message = session.createMessage();
+                            message.setLongProperty(LATENCY, System.nanoTime());
+                            producer.send(message);
+                        }
+                    } catch (JMSException e) {
+                        LOG.error("send failed", e);
+                    }
+                }
+            };
+
+            long start = System.nanoTime();
+            sender.start();
+            if (!listener) {
+                for (int i = 0; i < latencies.length; i++) {
+                    Message m = consumer.receive(10000);
+                    assertNotNull(m);
+                    record(m, latencies, i);
+                    received.countDown();
+                }
+            }
+            assertTrue(received.await(5, TimeUnit.MINUTES));
+            long elapsed = System.nanoTime() - start;
+            sender.join();
+            return latencies.length * TimeUnit.SECONDS.toNanos(1) / Math.max(1, elapsed);
+        } finally {
+            connection.close();
+        }
+    }
+
+    private static void record(Message message, long[] latencies, int index) {
+        try {
+            latencies[index] = (System.nanoTime() - message.getLongProperty(LATENCY)) / 1000;
+        } catch (JMSException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void appendPercentiles(StringBuilder report, long[] latencies) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        report.append(sorted[sorted.length / 2]).append("/");
+        report.append(sorted[(int) (sorted.length * 0.99)]).append("/");
+        report.append(sorted[Math.min(sorted.length - 1, (int) (sorted.length * 0.999))]);
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.perf;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jms.Connection;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import junit.framework.TestCase;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.ActiveMQSession;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.DispatchedList;
+import org.apache.activemq.broker.region.IndirectMessageReference;
+import org.apache.activemq.broker.region.MessageReference;
+import org.apache.activemq.broker.region.policy.PolicyEntry;
+import org.apache.activemq.broker.region.policy.PolicyMap;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.MessageId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures acknowledgements against a large prefetch, individual acks that
+ * arrive out of dispatch order and cumulative client acks, end to end and on
+ * the dispatched list alone compared with the ArrayList it replaced.
+ */
+public class DispatchedAckTest extends TestCase {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DispatchedAckTest.class);
+
+    protected int prefetch = 20000;
+    protected int messageCount = 40000;
+    protected int batchSize = 500;
+
+    public void testIndividualAcks() throws Exception {
+        long rate = consume(ActiveMQSession.INDIVIDUAL_ACKNOWLEDGE);
+        LOG.info("individual acks, out of order in batches of " + batchSize + ", prefetch " + prefetch + ": " + rate + " msgs/s");
+    }
+
+    public void testCumulativeAcks() throws Exception {
+        long rate = consume(Session.CLIENT_ACKNOWLEDGE);
+        LOG.info("cumulative acks every " + batchSize + " messages, prefetch " + prefetch + ": " + rate + " msgs/s");
+    }
+
+    public void testDispatchedListOperations() throws Exception {
+        List<MessageReference> references = new ArrayList<MessageReference>(prefetch);
+        for (int i = 0; i < prefetch; i++) {
+            ActiveMQTextMessage message = new ActiveMQTextMessage();
+            message.setMessageId(new MessageId("ID:test-1:1:1:1", i));
+            references.add(new IndirectMessageReference(message));
+        }
+        for (int run = 0; run < 3; run++) {
+            long arrayList = removeOutOfOrder(new ArrayList<MessageReference>(), references);
+            long dispatchedList = removeOutOfOrder(new DispatchedList(), references);
+            LOG.info("remove " + prefetch + " dispatched messages out of order, ArrayList " + arrayList + " ms, DispatchedList " + dispatchedList + " ms");
+        }
+    }
+
+    private long removeOutOfOrder(List<MessageReference> dispatched, List<MessageReference> references) {
+        long begin = System.nanoTime();
+        dispatched.addAll(references);
+        // newest of each batch first, as a consumer acking a batch in reverse
+        for (int start = 0; start < references.size(); start += batchSize) {
+            int end = Math.min(references.size(), start + batchSize);
+            for (int i = end - 1; i >= start; i--) {
+                assertTrue(dispatched.remove(references.get(i)));
+            }
+        }
+        assertTrue(dispatched.isEmpty());
+        return (System.nanoTime() - begin) / 1000000;
+    }
+
+    private long consume(int ackMode) throws Exception {
+        BrokerService broker = new BrokerService();
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.setAdvisorySupport(false);
+        // page in enough to fill the prefetch while earlier messages are unacked
+        PolicyEntry policy = new PolicyEntry();
+        policy.setMaxPageSize(prefetch);
+        PolicyMap policyMap = new PolicyMap();
+        policyMap.setDefaultEntry(policy);
+        broker.setDestinationPolicy(policyMap);
+        broker.start();
+        broker.waitUntilStarted();
+
+        ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(broker.getVmConnectorURI());
+        factory.getPrefetchPolicy().setQueuePrefetch(prefetch);
+        Connection connection = factory.createConnection();
+        try {
+            connection.start();
+            ActiveMQQueue queue = new ActiveMQQueue("TEST.ACKS");
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageProducer producer = session.createProducer(queue);
+            for (int i = 0; i < messageCount; i++) {
+                producer.send(session.createTextMessage("message " + i));
+            }
+
+            Session consumerSession = connection.createSession(false, ackMode);
+            MessageConsumer consumer = consumerSession.createConsumer(queue);
+            List<Message> batch = new ArrayList<Message>(batchSize);
+            long begin = System.nanoTime();
+            for (int i = 0; i < messageCount; i++) {
+                Message message = consumer.receive(10000);
+                assertNotNull("message " + i, message);
+                batch.add(message);
+                if (batch.size() == batchSize) {
+                    acknowledge(batch, ackMode);
+                }
+            }
+            acknowledge(batch, ackMode);
+            long elapsed = System.nanoTime() - begin;
+            return messageCount * 1000000000L / elapsed;
+        } finally {
+            connection.close();
+            broker.stop();
+        }
+    }
+
+    private void acknowledge(List<Message> batch, int ackMode) throws Exception {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (ackMode == ActiveMQSession.INDIVIDUAL_ACKNOWLEDGE) {
+            for (int i = batch.size() - 1; i >= 0; i--) {
+                batch.get(i).acknowledge();
+            }
+        } else {
+            batch.get(batch.size() - 1).acknowledge();
+        }
+        batch.clear();
+    }
+}
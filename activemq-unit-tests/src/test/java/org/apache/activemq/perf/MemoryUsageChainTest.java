@@ -0,0 +1,162 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.perf;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.apache.activemq.usage.MemoryUsage;
+import org.apache.activemq.usage.Usage;
+import org.apache.activemq.usage.UsageListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the throughput of message sized increase/decrease pairs on
+ * MemoryUsage chains shaped like the broker's: a system usage, its broker
+ * child and per destination children, with threads enqueueing to the same
+ * destination or each to their own.
+ */
+public class MemoryUsageChainTest extends TestCase {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MemoryUsageChainTest.class);
+
+    protected int operationsPerThread = 2000000;
+    protected int[] threadCounts = {1, 2, 4, 8, 16};
+    protected int messageSize = 1024;
+
+    private ThreadPoolExecutor executor;
+    private MemoryUsage systemUsage;
+    private MemoryUsage brokerUsage;
+    private final AtomicInteger events = new AtomicInteger();
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        executor = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "Usage Async Task");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        systemUsage = new MemoryUsage("system");
+        systemUsage.setExecutor(executor);
+        systemUsage.setLimit(256L * 1024 * 1024);
+        systemUsage.addUsageListener(new UsageListener() {
+            @Override
+            public void onUsageChanged(Usage usage, int oldPercentUsage, int newPercentUsage) {
+                events.incrementAndGet();
+            }
+        });
+        brokerUsage = new MemoryUsage(systemUsage, "broker");
+        brokerUsage.setExecutor(executor);
+        systemUsage.start();
+        brokerUsage.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        brokerUsage.stop();
+        systemUsage.stop();
+        executor.shutdownNow();
+        super.tearDown();
+    }
+
+    public void testSharedDestination() throws Exception {
+        StringBuilder report = new StringBuilder("\nshared destination usage, ops/s per thread count");
+        for (int threads : threadCounts) {
+            MemoryUsage destination = createDestinationUsage("shared");
+            MemoryUsage[] usages = new MemoryUsage[threads];
+            for (int i = 0; i < threads; i++) {
+                usages[i] = destination;
+            }
+            report.append("\n").append(threads).append(": ").append(run(usages));
+            destination.stop();
+        }
+        report.append("\nsystem usage listener events: ").append(events.get());
+        LOG.info(report.toString());
+    }
+
+    public void testDestinationPerThread() throws Exception {
+        StringBuilder report = new StringBuilder("\ndestination usage per thread, ops/s per thread count");
+        for (int threads : threadCounts) {
+            MemoryUsage[] usages = new MemoryUsage[threads];
+            for (int i = 0; i < threads; i++) {
+                usages[i] = createDestinationUsage("destination-" + i);
+            }
+            report.append("\n").append(threads).append(": ").append(run(usages));
+            for (MemoryUsage usage : usages) {
+                usage.stop();
+            }
+        }
+        report.append("\nsystem usage listener events: ").append(events.get());
+        LOG.info(report.toString());
+    }
+
+    private MemoryUsage createDestinationUsage(String name) {
+        MemoryUsage usage = new MemoryUsage(brokerUsage, name);
+        usage.setExecutor(executor);
+        usage.setLimit(16L * 1024 * 1024);
+        usage.start();
+        return usage;
+    }
+
+    private long run(final MemoryUsage[] usages) throws Exception {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(usages.length);
+        for (final MemoryUsage usage : usages) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        // keep a backlog so the usage moves across percent boundaries
+                        for (int i = 0; i < operationsPerThread; i++) {
+                            usage.increaseUsage(messageSize);
+                            if (i % 1000 >= 500) {
+                                usage.decreaseUsage(messageSize);
+                                usage.decreaseUsage(messageSize);
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        assertTrue(done.await(5, TimeUnit.MINUTES));
+        long elapsed = System.nanoTime() - begin;
+
+        for (MemoryUsage usage : usages) {
+            assertEquals(0, usage.getUsage());
+        }
+        assertEquals(0, systemUsage.getUsage());
+        return (long) operationsPerThread * usages.length * 1000000000L / elapsed;
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.perf;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.activemq.broker.region.IndirectMessageReference;
+import org.apache.activemq.broker.region.MessageReference;
+import org.apache.activemq.broker.region.QueueMessageReference;
+import org.apache.activemq.broker.region.cursors.OrderedPendingList;
+import org.apache.activemq.broker.region.cursors.PendingList;
+import org.apache.activemq.broker.region.cursors.SequencePendingList;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.command.ProducerId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reports the heap retained by the structures used to index paged in queue
+ * messages, and their lookup cost, for a large number of in flight references.
+ */
+public class PagedInIndexMemoryTest extends TestCase {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PagedInIndexMemoryTest.class);
+
+    protected int messageCount = 1000000;
+
+    private QueueMessageReference[] references;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ProducerId producerId = new ProducerId("ID:perf-producer-1:1:1");
+        references = new QueueMessageReference[messageCount];
+        for (int i = 0; i < messageCount; i++) {
+            ActiveMQTextMessage message = new ActiveMQTextMessage();
+            MessageId messageId = new MessageId(producerId, i + 1);
+            messageId.setBrokerSequenceId(i + 1);
+            message.setMessageId(messageId);
+            references[i] = new IndirectMessageReference(message);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        references = null;
+        super.tearDown();
+    }
+
+    public void testHeapUsage() throws Exception {
+        long mapBytes = measureMap();
+        long orderedBytes = measure(new OrderedPendingList());
+        long sequenceBytes = measure(new SequencePendingList(false));
+        long offHeapBytes = measure(new SequencePendingList(true));
+
+        LOG.info("\nindexed references: " + messageCount
+                + "\nLinkedHashMap<MessageId, QueueMessageReference>: " + mapBytes + " bytes, " + mapBytes / messageCount + " per message"
+                + "\nOrderedPendingList: " + orderedBytes + " bytes, " + orderedBytes / messageCount + " per message"
+                + "\nSequencePendingList: " + sequenceBytes + " bytes, " + sequenceBytes / messageCount + " per message"
+                + "\nSequencePendingList off heap: " + offHeapBytes + " heap bytes, " + offHeapBytes / messageCount + " per message");
+    }
+
+    public void testLookupAndRemove() throws Exception {
+        Map<MessageId, QueueMessageReference> map = new LinkedHashMap<MessageId, QueueMessageReference>();
+        for (QueueMessageReference reference : references) {
+            map.put(reference.getMessageId(), reference);
+        }
+        long start = System.nanoTime();
+        for (QueueMessageReference reference : references) {
+            assertNotNull(map.remove(reference.getMessageId()));
+        }
+        long mapNanos = System.nanoTime() - start;
+
+        long orderedNanos = timeRemoval(new OrderedPendingList());
+        long sequenceNanos = timeRemoval(new SequencePendingList(false));
+        long offHeapNanos = timeRemoval(new SequencePendingList(true));
+
+        LOG.info("\nremove by id, ns per message"
+                + "\nLinkedHashMap: " + mapNanos / messageCount
+                + "\nOrderedPendingList: " + orderedNanos / messageCount
+                + "\nSequencePendingList: " + sequenceNanos / messageCount
+                + "\nSequencePendingList off heap: " + offHeapNanos / messageCount);
+    }
+
+    private long measureMap() {
+        long before = usedHeap();
+        Map<MessageId, QueueMessageReference> map = new LinkedHashMap<MessageId, QueueMessageReference>();
+        for (QueueMessageReference reference : references) {
+            map.put(reference.getMessageId(), reference);
+        }
+        long used = usedHeap() - before;
+        assertEquals(messageCount, map.size());
+        return used;
+    }
+
+    private long measure(PendingList list) {
+        long before = usedHeap();
+        for (QueueMessageReference reference : references) {
+            list.addMessageLast(reference);
+        }
+        long used = usedHeap() - before;
+        assertEquals(messageCount, list.size());
+        return used;
+    }
+
+    private long timeRemoval(PendingList list) {
+        for (QueueMessageReference reference : references) {
+            list.addMessageLast(reference);
+        }
+        long start = System.nanoTime();
+        for (MessageReference reference : references) {
+            assertNotNull(list.get(reference.getMessageId()));
+            list.remove(reference);
+        }
+        long elapsed = System.nanoTime() - start;
+        assertTrue(list.isEmpty());
+        return elapsed;
+    }
+
+    private long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.perf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.BytesMessage;
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import junit.framework.TestCase;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.policy.PolicyEntry;
+import org.apache.activemq.broker.region.policy.PolicyMap;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares queue dispatch throughput, in messages per second, as the number of
+ * consumers grows for the default single threaded dispatch and for dispatch lanes.
+ */
+public class QueueDispatchScalingTest extends TestCase {
+
+    private static final Logger LOG = LoggerFactory.getLogger(QueueDispatchScalingTest.class);
+
+    protected int messageCount = 100000;
+    protected int payloadSize = 1024;
+    protected int[] consumerCounts = new int[] {1, 10, 50, 200};
+    protected int lanes = Runtime.getRuntime().availableProcessors();
+
+    private BrokerService broker;
+    private String connectUri;
+
+    public void testDispatchRateByConsumerCount() throws Exception {
+        StringBuilder report = new StringBuilder("\nconsumers\tdoDispatch msg/s\tlanes(" + lanes + ") msg/s\n");
+        for (int consumers : consumerCounts) {
+            long serial = measure(0, consumers);
+            long parallel = measure(lanes, consumers);
+            report.append(consumers).append("\t\t").append(serial).append("\t\t\t").append(parallel).append("\n");
+        }
+        LOG.info(report.toString());
+    }
+
+    protected long measure(int dispatchLanes, int consumers) throws Exception {
+        startBroker(dispatchLanes);
+        try {
+            ActiveMQQueue queue = new ActiveMQQueue("Dispatch.Scaling." + dispatchLanes + "." + consumers);
+            ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(connectUri);
+            factory.setWatchTopicAdvisories(false);
+
+            Connection producerConnection = factory.createConnection();
+            producerConnection.start();
+            Session session = producerConnection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageProducer producer = session.createProducer(queue);
+            producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+            BytesMessage message = session.createBytesMessage();
+            message.writeBytes(new byte[payloadSize]);
+            for (int i = 0; i < messageCount; i++) {
+                producer.send(message);
+            }
+            producerConnection.close();
+
+            final CountDownLatch done = new CountDownLatch(messageCount);
+            List<Connection> connections = new ArrayList<Connection>();
+            for (int i = 0; i < consumers; i++) {
+                Connection connection = factory.createConnection();
+                connections.add(connection);
+                MessageConsumer consumer = connection.createSession(false, Session.AUTO_ACKNOWLEDGE).createConsumer(queue);
+                consumer.setMessageListener(new MessageListener() {
+                    @Override
+                    public void onMessage(Message message) {
+                        done.countDown();
+                    }
+                });
+            }
+
+            long start = System.nanoTime();
+            for (Connection connection : connections) {
+                connection.start();
+            }
+            assertTrue("queue drained", done.await(5, TimeUnit.MINUTES));
+            long elapsed = System.nanoTime() - start;
+            for (Connection connection : connections) {
+                connection.close();
+            }
+            long rate = messageCount * TimeUnit.SECONDS.toNanos(1) / elapsed;
+            LOG.info("lanes: " + dispatchLanes + ", consumers: " + consumers + ", rate: " + rate + " msg/s");
+            return rate;
+        } finally {
+            broker.stop();
+            broker.waitUntilStopped();
+        }
+    }
+
+    private void startBroker(int dispatchLanes) throws Exception {
+        broker = new BrokerService();
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.setAdvisorySupport(false);
+        broker.getSystemUsage().getMemoryUsage().setLimit(512 * 1024 * 1024);
+        PolicyEntry entry = new PolicyEntry();
+        entry.setProducerFlowControl(false);
+        entry.setDispatchLanes(dispatchLanes);
+        PolicyMap policyMap = new PolicyMap();
+        policyMap.setDefaultEntry(entry);
+        broker.setDestinationPolicy(policyMap);
+        connectUri = broker.addConnector("tcp://localhost:0").getPublishableConnectString();
+        broker.start();
+        broker.waitUntilStarted();
+    }
+}
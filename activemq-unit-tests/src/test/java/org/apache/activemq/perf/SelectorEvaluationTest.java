@@ -0,0 +1,107 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.perf;
+
+import junit.framework.TestCase;
+
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.apache.activemq.filter.BooleanExpression;
+import org.apache.activemq.filter.ExpressionCompiler;
+import org.apache.activemq.filter.MessageEvaluationContext;
+import org.apache.activemq.selector.SelectorParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures how many messages per second typical subscription selectors
+ * evaluate against, parsed and compiled.
+ */
+public class SelectorEvaluationTest extends TestCase {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SelectorEvaluationTest.class);
+
+    protected int evaluations = 2000000;
+    protected int rounds = 3;
+    protected String[] selectors = {
+        "region = 'EMEA'",
+        "price > 100",
+        "price >= 100.5 AND quantity < 1000",
+        "region = 'EMEA' AND symbol LIKE 'AB%' AND price BETWEEN 10 AND 200",
+        "region = 'APAC' OR region = 'AMER' OR (urgent = TRUE AND JMSPriority > 4)",
+        "symbol IN ('ABC', 'ABD', 'XYZ', 'QRS', 'TUV') AND NOT (quantity > 500)",
+        "account IS NOT NULL AND account NOT LIKE '%TEST%'"
+    };
+
+    private ActiveMQTextMessage[] messages;
+    private int matched;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        String[] regions = {"EMEA", "APAC", "AMER"};
+        String[] symbols = {"ABC", "ABD", "XYZ", "EFG"};
+        messages = new ActiveMQTextMessage[64];
+        for (int i = 0; i < messages.length; i++) {
+            ActiveMQTextMessage message = new ActiveMQTextMessage();
+            message.setJMSDestination(new ActiveMQTopic("PRICES"));
+            message.setJMSPriority(i % 10);
+            message.setStringProperty("region", regions[i % regions.length]);
+            message.setStringProperty("symbol", symbols[i % symbols.length]);
+            message.setDoubleProperty("price", i * 3.25);
+            message.setIntProperty("quantity", i * 50);
+            message.setBooleanProperty("urgent", i % 2 == 0);
+            if (i % 4 != 0) {
+                message.setStringProperty("account", i % 3 == 0 ? "TEST-" + i : "ACC-" + i);
+            }
+            messages[i] = message;
+        }
+    }
+
+    public void testSelectorEvaluation() throws Exception {
+        StringBuilder report = new StringBuilder("\nevaluations/s per selector, parsed/compiled");
+        for (String text : selectors) {
+            BooleanExpression parsed = SelectorParser.parse(text);
+            BooleanExpression compiled = ExpressionCompiler.compile(parsed);
+            long parsedRate = 0;
+            long compiledRate = 0;
+            for (int round = 0; round < rounds; round++) {
+                parsedRate = Math.max(parsedRate, run(parsed));
+                int parsedMatches = matched;
+                compiledRate = Math.max(compiledRate, run(compiled));
+                assertEquals(text, parsedMatches, matched);
+            }
+            report.append("\n").append(text).append(": ").append(parsedRate).append("/").append(compiledRate);
+        }
+        LOG.info(report.toString());
+    }
+
+    private long run(BooleanExpression selector) throws Exception {
+        MessageEvaluationContext context = new MessageEvaluationContext();
+        matched = 0;
+        long begin = System.nanoTime();
+        for (int i = 0; i < evaluations; i++) {
+            context.setMessageReference(messages[i % messages.length]);
+            if (selector.matches(context)) {
+                matched++;
+            }
+        }
+        long elapsed = System.nanoTime() - begin;
+        context.clear();
+        return evaluations * 1000000000L / elapsed;
+    }
+}
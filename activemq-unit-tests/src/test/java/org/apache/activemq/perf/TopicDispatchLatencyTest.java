@@ -0,0 +1,128 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.perf;
+
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Connection;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import junit.framework.TestCase;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.policy.DispatchPolicy;
+import org.apache.activemq.broker.region.policy.ParallelDispatchPolicy;
+import org.apache.activemq.broker.region.policy.PolicyEntry;
+import org.apache.activemq.broker.region.policy.PolicyMap;
+import org.apache.activemq.broker.region.policy.SimpleDispatchPolicy;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measures the latency of synchronous sends to a topic, which includes the
+ * dispatch to every subscription, for a growing number of subscriptions with
+ * the simple and the parallel dispatch policy.
+ */
+public class TopicDispatchLatencyTest extends TestCase {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TopicDispatchLatencyTest.class);
+
+    protected int[] subscriptionCounts = {10, 100, 1000};
+    // the number of messages sent times the number of subscriptions
+    protected int deliveries = 200000;
+    protected int partitions = 4;
+
+    public void testDispatchLatency() throws Exception {
+        StringBuilder report = new StringBuilder("\nsend latency in microseconds per subscription count, p50/p99/p99.9 simple | parallel");
+        for (int subscriptions : subscriptionCounts) {
+            ParallelDispatchPolicy parallel = new ParallelDispatchPolicy();
+            parallel.setPartitions(partitions);
+            long[] simpleLatencies = run(new SimpleDispatchPolicy(), subscriptions);
+            long[] parallelLatencies = run(parallel, subscriptions);
+            report.append("\n").append(subscriptions).append(": ");
+            appendPercentiles(report, simpleLatencies);
+            report.append(" | ");
+            appendPercentiles(report, parallelLatencies);
+        }
+        LOG.info(report.toString());
+    }
+
+    private long[] run(DispatchPolicy dispatchPolicy, int subscriptions) throws Exception {
+        BrokerService broker = new BrokerService();
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.setAdvisorySupport(false);
+        PolicyEntry policy = new PolicyEntry();
+        policy.setDispatchPolicy(dispatchPolicy);
+        PolicyMap policyMap = new PolicyMap();
+        policyMap.setDefaultEntry(policy);
+        broker.setDestinationPolicy(policyMap);
+        broker.start();
+        broker.waitUntilStarted();
+
+        int messages = Math.max(100, deliveries / subscriptions);
+        ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(broker.getVmConnectorURI());
+        factory.setAlwaysSyncSend(true);
+        Connection connection = factory.createConnection();
+        try {
+            connection.start();
+            ActiveMQTopic topic = new ActiveMQTopic("TEST.LATENCY");
+            final CountDownLatch received = new CountDownLatch(messages * subscriptions);
+            Session consumerSession = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            for (int i = 0; i < subscriptions; i++) {
+                MessageConsumer consumer = consumerSession.createConsumer(topic);
+                consumer.setMessageListener(new MessageListener() {
+                    @Override
+                    public void onMessage(Message message) {
+                        received.countDown();
+                    }
+                });
+            }
+
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageProducer producer = session.createProducer(topic);
+            long[] latencies = new long[messages];
+            for (int i = 0; i < messages; i++) {
+                Message message = session.createTextMessage("message " + i);
+                long begin = System.nanoTime();
+                producer.send(message);
+                latencies[i] = (System.nanoTime() - begin) / 1000;
+            }
+            assertTrue(received.await(5, TimeUnit.MINUTES));
+            return latencies;
+        } finally {
+            connection.close();
+            broker.stop();
+        }
+    }
+
+    private void appendPercentiles(StringBuilder report, long[] latencies) {
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        report.append(sorted[sorted.length / 2]).append("/");
+        report.append(sorted[(int) (sorted.length * 0.99)]).append("/");
+        report.append(sorted[Math.min(sorted.length - 1, (int) (sorted.length * 0.999))]);
+    }
+}
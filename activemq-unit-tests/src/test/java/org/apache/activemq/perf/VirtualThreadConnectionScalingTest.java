@@ -0,0 +1,182 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.perf;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import junit.framework.TestCase;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.command.ActiveMQTopic;
+import org.apache.activemq.thread.VirtualThreads;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares the resident memory of the process and the fan out latency of a
+ * topic message as the number of tcp connections grows, for platform threads
+ * and for virtual threads. Broker and clients share the process, so the
+ * resident memory covers the threads of both sides.
+ *
+ * The connection counts can be set with -DconnectionCounts=10000,50000, and
+ * need an open file limit of twice the largest count.
+ */
+public class VirtualThreadConnectionScalingTest extends TestCase {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadConnectionScalingTest.class);
+
+    protected int[] connectionCounts = parseCounts(System.getProperty("connectionCounts", "10000,50000"));
+    protected int latencySamples = 20;
+
+    private BrokerService broker;
+    private String connectUri;
+
+    @Override
+    protected void tearDown() throws Exception {
+        System.clearProperty(VirtualThreads.USE_VIRTUAL_THREADS);
+        super.tearDown();
+    }
+
+    public void testConnectionScaling() throws Exception {
+        if (!VirtualThreads.isSupported()) {
+            LOG.info("Virtual threads are not supported by this JVM, skipping");
+            return;
+        }
+        StringBuilder report = new StringBuilder("\nconnections\tthreads\t\tidle RSS MB\tactive RSS MB\tfan out ms\n");
+        for (int connections : connectionCounts) {
+            for (boolean virtual : new boolean[] {false, true}) {
+                long[] result = measure(connections, virtual);
+                report.append(connections).append("\t\t").append(virtual ? "virtual" : "platform").append("\t")
+                    .append(result[0]).append("\t\t").append(result[1]).append("\t\t").append(result[2]).append("\n");
+            }
+        }
+        LOG.info(report.toString());
+    }
+
+    /**
+     * @return the idle and active resident memory in MB and the mean fan out
+     *         latency in ms
+     */
+    protected long[] measure(int count, boolean virtual) throws Exception {
+        System.setProperty(VirtualThreads.USE_VIRTUAL_THREADS, Boolean.toString(virtual));
+        startBroker();
+        List<Connection> connections = new ArrayList<Connection>(count);
+        try {
+            ActiveMQConnectionFactory factory = new ActiveMQConnectionFactory(connectUri);
+            factory.setWatchTopicAdvisories(false);
+            for (int i = 0; i < count; i++) {
+                Connection connection = factory.createConnection();
+                connection.start();
+                connections.add(connection);
+            }
+            long idleRss = residentMegabytes();
+
+            ActiveMQTopic topic = new ActiveMQTopic("Connection.Scaling");
+            final CountDownLatch[] received = new CountDownLatch[1];
+            for (Connection connection : connections) {
+                MessageConsumer consumer = connection.createSession(false, Session.AUTO_ACKNOWLEDGE).createConsumer(topic);
+                consumer.setMessageListener(new MessageListener() {
+                    @Override
+                    public void onMessage(Message message) {
+                        received[0].countDown();
+                    }
+                });
+            }
+            Session session = connections.get(0).createSession(false, Session.AUTO_ACKNOWLEDGE);
+            MessageProducer producer = session.createProducer(topic);
+            producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+
+            long total = 0;
+            for (int i = 0; i < latencySamples; i++) {
+                received[0] = new CountDownLatch(count);
+                long start = System.nanoTime();
+                producer.send(session.createTextMessage("sample:" + i));
+                assertTrue("fan out to all connections", received[0].await(5, TimeUnit.MINUTES));
+                total += System.nanoTime() - start;
+            }
+            long activeRss = residentMegabytes();
+            long latency = TimeUnit.NANOSECONDS.toMillis(total / latencySamples);
+            LOG.info("connections: " + count + ", virtual: " + virtual + ", idle RSS: " + idleRss + " MB, active RSS: "
+                + activeRss + " MB, fan out: " + latency + " ms");
+            return new long[] {idleRss, activeRss, latency};
+        } finally {
+            for (Connection connection : connections) {
+                try {
+                    connection.close();
+                } catch (Exception ignored) {
+                }
+            }
+            broker.stop();
+            broker.waitUntilStopped();
+        }
+    }
+
+    private void startBroker() throws Exception {
+        broker = new BrokerService();
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        broker.setAdvisorySupport(false);
+        connectUri = broker.addConnector("tcp://localhost:0?maximumConnections=1000000").getPublishableConnectString();
+        broker.start();
+        broker.waitUntilStarted();
+    }
+
+    private static long residentMegabytes() throws Exception {
+        System.gc();
+        File status = new File("/proc/self/status");
+        if (status.exists()) {
+            BufferedReader reader = new BufferedReader(new FileReader(status));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith("VmRSS:")) {
+                        return Long.parseLong(line.replaceAll("[^0-9]", "")) / 1024;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        }
+        // no procfs, use the heap as an approximation
+        Runtime runtime = Runtime.getRuntime();
+        return (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+    }
+
+    private static int[] parseCounts(String counts) {
+        String[] values = counts.split(",");
+        int[] rc = new int[values.length];
+        for (int i = 0; i < values.length; i++) {
+            rc[i] = Integer.parseInt(values[i].trim());
+        }
+        return rc;
+    }
+}
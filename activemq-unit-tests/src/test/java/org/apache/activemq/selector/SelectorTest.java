@@ -26,6 +26,7 @@ import org.apache.activemq.command.ActiveMQMessage;
 import org.apache.activemq.command.ActiveMQTextMessage;
 import org.apache.activemq.command.ActiveMQTopic;
 import org.apache.activemq.filter.BooleanExpression;
+import org.apache.activemq.filter.ExpressionCompiler;
 import org.apache.activemq.filter.MessageEvaluationContext;
 
 /**
@@ -347,6 +348,60 @@ public class SelectorTest extends TestCase {
         assertSelector(message, "REGEX('connection1111', REPLACE(JMSMessageID,':',''))", true);
     }
 
+    public void testCompiledSelectorsEvaluateLikeParsedOnes() throws Exception {
+        Message message = createMessage();
+        message.setFloatProperty("fractionProp", 122.5f);
+        message.setDoubleProperty("nanProp", Double.NaN);
+        message.setLongProperty("bigProp", 5000000000L);
+        MessageEvaluationContext context = new MessageEvaluationContext();
+        context.setMessageReference((org.apache.activemq.command.Message)message);
+
+        String[] properties = {"byteProp", "shortProp", "intProp", "longProp", "floatProp", "doubleProp", "fractionProp",
+                               "nanProp", "bigProp", "name", "trueProp", "dummy", "JMSPriority", "JMSType"};
+        String[] operators = {"=", "<>", ">", ">=", "<", "<="};
+        String[] numbers = {"123", "122", "124", "123.0", "122.5", "-1", "5000000000", "4999999999.5"};
+        String[] others = {"'James'", "'123'", "TRUE", "FALSE"};
+        for (String property : properties) {
+            for (String operator : operators) {
+                for (String number : numbers) {
+                    assertCompiledEvaluation(context, property + " " + operator + " " + number);
+                }
+                if (operator.equals("=") || operator.equals("<>")) {
+                    for (String other : others) {
+                        assertCompiledEvaluation(context, property + " " + operator + " " + other);
+                    }
+                }
+            }
+            assertCompiledEvaluation(context, property + " IS NULL");
+            assertCompiledEvaluation(context, property + " IS NOT NULL");
+            for (String pattern : new String[] {"Jam%", "%mes", "%am%", "James", "%", "", "J%s", "J_mes"}) {
+                assertCompiledEvaluation(context, property + " LIKE '" + pattern + "'");
+                assertCompiledEvaluation(context, property + " NOT LIKE '" + pattern + "'");
+            }
+        }
+        BooleanExpression selector = SelectorParser.parse("intProp > 100 AND name LIKE 'J%'");
+        assertNotSame(selector, ExpressionCompiler.compile(selector));
+        assertEquals(selector.toString(), ExpressionCompiler.compile(selector).toString());
+
+        for (String a : new String[] {"trueProp", "falseProp", "dummy = 1"}) {
+            for (String b : new String[] {"trueProp", "falseProp", "dummy = 1"}) {
+                for (String c : new String[] {"trueProp", "falseProp", "dummy = 1"}) {
+                    assertCompiledEvaluation(context, a + " AND " + b + " AND " + c);
+                    assertCompiledEvaluation(context, a + " OR " + b + " OR " + c);
+                    assertCompiledEvaluation(context, "NOT (" + a + " AND " + b + ") OR " + c);
+                    assertCompiledEvaluation(context, a + " AND (" + b + " OR NOT " + c + ")");
+                }
+            }
+        }
+    }
+
+    protected void assertCompiledEvaluation(MessageEvaluationContext context, String text) throws JMSException {
+        BooleanExpression selector = SelectorParser.parse(text);
+        BooleanExpression compiled = ExpressionCompiler.compile(selector);
+        assertEquals("Compiled selector for: " + text, selector.evaluate(context), compiled.evaluate(context));
+        assertEquals("Compiled selector for: " + text, selector.matches(context), compiled.matches(context));
+    }
+
     protected Message createMessage() throws JMSException {
         Message message = createMessage("FOO.BAR");
         message.setJMSType("selector-test");
@@ -387,6 +442,7 @@ public class SelectorTest extends TestCase {
         context.setMessageReference((org.apache.activemq.command.Message)message);
         boolean value = selector.matches(context);
         assertEquals("Selector for: " + text, expected, value);
+        assertEquals("Compiled selector for: " + text, expected, ExpressionCompiler.compile(selector).matches(context));
     }
 
     protected Message createMessage(String subject) throws JMSException {
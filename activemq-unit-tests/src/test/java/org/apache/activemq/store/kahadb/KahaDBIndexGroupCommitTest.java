@@ -0,0 +1,143 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.activemq.command.ActiveMQDestination;
+import org.apache.activemq.command.ActiveMQMessage;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.Message;
+import org.apache.activemq.command.MessageAck;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.command.ProducerId;
+import org.apache.activemq.store.MessageStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class KahaDBIndexGroupCommitTest {
+
+    private static final int MESSAGE_COUNT = 2000;
+    private static final int THREAD_COUNT = 20;
+
+    private final File directory = new File("target/activemq-data/kahadb-group-commit");
+    private final ActiveMQDestination destination = new ActiveMQQueue("Test.GroupCommit");
+    private final ProducerId producerId = new ProducerId("1.1.1");
+    private final Vector<Throwable> exceptions = new Vector<Throwable>();
+    private KahaDBStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        store = createStore(true);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (store != null) {
+            store.stop();
+        }
+    }
+
+    @Test
+    public void testConcurrentAddAndRemove() throws Exception {
+        final MessageStore messageStore = store.createQueueMessageStore((ActiveMQQueue) destination);
+        messageStore.start();
+
+        runConcurrently(new Task() {
+            @Override
+            public void run(int id) throws Exception {
+                Message message = new ActiveMQMessage();
+                message.setDestination(destination);
+                message.setMessageId(new MessageId(producerId, id));
+                messageStore.addMessage(null, message);
+            }
+        });
+        assertEquals(MESSAGE_COUNT, messageStore.getMessageCount());
+
+        runConcurrently(new Task() {
+            @Override
+            public void run(int id) throws Exception {
+                if (id % 2 == 0) {
+                    MessageAck ack = new MessageAck();
+                    ack.setDestination(destination);
+                    ack.setLastMessageId(new MessageId(producerId, id));
+                    messageStore.removeMessage(null, ack);
+                }
+            }
+        });
+        assertEquals(MESSAGE_COUNT / 2, messageStore.getMessageCount());
+
+        long batches = store.getIndexUpdateBatchSize().getCount();
+        long updates = store.getIndexUpdateBatchSize().getTotalTime();
+        assertEquals(MESSAGE_COUNT + MESSAGE_COUNT / 2, updates);
+        assertTrue("updates grouped: " + store.getIndexStatistics(), batches > 0 && batches <= updates);
+        assertEquals(batches, store.getIndexLockHoldTime().getCount());
+
+        store.stop();
+        store = createStore(false);
+        MessageStore recovered = store.createQueueMessageStore((ActiveMQQueue) destination);
+        assertEquals(MESSAGE_COUNT / 2, recovered.getMessageCount());
+    }
+
+    @Test
+    public void testDisabledByDefault() throws Exception {
+        KahaDBStore defaultStore = new KahaDBStore();
+        assertTrue(!defaultStore.isEnableIndexGroupCommit());
+    }
+
+    private KahaDBStore createStore(boolean deleteAllMessages) throws Exception {
+        KahaDBStore kahaDBStore = new KahaDBStore();
+        kahaDBStore.setDirectory(directory);
+        kahaDBStore.setDeleteAllMessages(deleteAllMessages);
+        kahaDBStore.setConcurrentStoreAndDispatchQueues(false);
+        kahaDBStore.setEnableIndexGroupCommit(true);
+        kahaDBStore.start();
+        return kahaDBStore;
+    }
+
+    private void runConcurrently(final Task task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        for (int i = 1; i <= MESSAGE_COUNT; i++) {
+            final int id = i;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run(id);
+                    } catch (Throwable e) {
+                        exceptions.add(e);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+        assertTrue("no exceptions " + exceptions, exceptions.isEmpty());
+    }
+
+    private interface Task {
+        void run(int id) throws Exception;
+    }
+}
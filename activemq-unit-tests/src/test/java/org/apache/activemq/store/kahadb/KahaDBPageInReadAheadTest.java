@@ -0,0 +1,161 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import javax.jms.Connection;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.region.Destination;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.util.Wait;
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class KahaDBPageInReadAheadTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(KahaDBPageInReadAheadTest.class);
+    private static final int MESSAGE_COUNT = 5000;
+
+    private final ActiveMQQueue queue = new ActiveMQQueue("Test.ReadAhead");
+    private BrokerService broker;
+    private Connection connection;
+
+    @After
+    public void tearDown() throws Exception {
+        if (connection != null) {
+            connection.close();
+        }
+        if (broker != null) {
+            broker.stop();
+        }
+    }
+
+    @Test
+    public void testStoredBacklogConsumedInOrder() throws Exception {
+        startBroker(true);
+        produce(0, MESSAGE_COUNT);
+        connection.close();
+
+        // restart so that every message is paged in from the store
+        broker.stop();
+        startBroker(false);
+
+        long begin = System.currentTimeMillis();
+        consume(0, MESSAGE_COUNT);
+        LOG.info("consumed " + MESSAGE_COUNT + " stored messages in " + (System.currentTimeMillis() - begin) + " ms");
+        assertNull(createConsumer().receive(500));
+    }
+
+    @Test
+    public void testMessagesSentWhileConsuming() throws Exception {
+        startBroker(true);
+        produce(0, MESSAGE_COUNT / 2);
+        MessageConsumer consumer = createConsumer();
+        for (int i = 0; i < MESSAGE_COUNT / 4; i++) {
+            assertMessage(i, consumer.receive(5000));
+        }
+        produce(MESSAGE_COUNT / 2, MESSAGE_COUNT);
+        for (int i = MESSAGE_COUNT / 4; i < MESSAGE_COUNT; i++) {
+            assertMessage(i, consumer.receive(5000));
+        }
+        assertNull(consumer.receive(500));
+    }
+
+    @Test
+    public void testReadAheadReleasedFromMemoryUsage() throws Exception {
+        startBroker(true);
+        produce(0, MESSAGE_COUNT);
+        connection.close();
+        broker.stop();
+        startBroker(false);
+
+        // stop half way so that a read ahead is pending, closing the consumer resets the batch
+        MessageConsumer consumer = createConsumer();
+        for (int i = 0; i < MESSAGE_COUNT / 2; i++) {
+            assertMessage(i, consumer.receive(5000));
+        }
+        consumer.close();
+        consume(MESSAGE_COUNT / 2, MESSAGE_COUNT);
+
+        final Destination destination = broker.getDestination(queue);
+        assertTrue("memory usage released", Wait.waitFor(new Wait.Condition() {
+            @Override
+            public boolean isSatisified() throws Exception {
+                return destination.getMemoryUsage().getUsage() == 0;
+            }
+        }));
+    }
+
+    private void produce(int from, int to) throws Exception {
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageProducer producer = session.createProducer(queue);
+        for (int i = from; i < to; i++) {
+            producer.send(session.createTextMessage("message:" + i));
+        }
+        session.close();
+    }
+
+    private void consume(int from, int to) throws Exception {
+        MessageConsumer consumer = createConsumer();
+        for (int i = from; i < to; i++) {
+            assertMessage(i, consumer.receive(5000));
+        }
+        consumer.close();
+    }
+
+    private MessageConsumer createConsumer() throws Exception {
+        return connection.createSession(false, Session.AUTO_ACKNOWLEDGE).createConsumer(queue);
+    }
+
+    private void assertMessage(int i, javax.jms.Message message) throws Exception {
+        assertNotNull("message " + i, message);
+        assertEquals("message:" + i, ((TextMessage) message).getText());
+    }
+
+    private void startBroker(boolean deleteAllMessages) throws Exception {
+        broker = new BrokerService();
+        broker.setUseJmx(false);
+        broker.setAdvisorySupport(false);
+        broker.setDeleteAllMessagesOnStartup(deleteAllMessages);
+        // small enough that the cursor has to page in from the store
+        broker.getSystemUsage().getMemoryUsage().setLimit(1024 * 1024);
+        KahaDBPersistenceAdapter adapter = new KahaDBPersistenceAdapter();
+        adapter.setDirectory(new File("target/activemq-data/kahadb-read-ahead"));
+        adapter.setJournalMaxFileLength(256 * 1024);
+        adapter.setPageInReadAhead(true);
+        broker.setPersistenceAdapter(adapter);
+        broker.start();
+        broker.waitUntilStarted();
+
+        connection = new ActiveMQConnectionFactory(broker.getVmConnectorURI()).createConnection();
+        connection.start();
+    }
+}
@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.apache.activemq.command.ActiveMQMessage;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.command.Message;
+import org.apache.activemq.command.MessageAck;
+import org.apache.activemq.command.MessageId;
+import org.apache.activemq.command.ProducerId;
+import org.apache.activemq.store.MessageStore;
+import org.apache.activemq.util.ByteSequence;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class KahaDBParallelRecoveryTest {
+
+    private static final int MESSAGE_COUNT = 3000;
+    private static final int QUEUE_COUNT = 3;
+
+    private final File directory = new File("target/activemq-data/kahadb-parallel-recovery");
+    private final ProducerId producerId = new ProducerId("1.1.1");
+    private KahaDBStore store;
+
+    @Before
+    public void setUp() throws Exception {
+        store = createStore(true, 1);
+        for (int q = 0; q < QUEUE_COUNT; q++) {
+            ActiveMQQueue queue = new ActiveMQQueue("Test.Recovery." + q);
+            MessageStore messageStore = store.createQueueMessageStore(queue);
+            for (int i = 1; i <= MESSAGE_COUNT; i++) {
+                Message message = new ActiveMQMessage();
+                message.setDestination(queue);
+                message.setMessageId(new MessageId(producerId, q * MESSAGE_COUNT + i));
+                message.setContent(new ByteSequence(new byte[256]));
+                messageStore.addMessage(null, message);
+            }
+            for (int i = 1; i <= MESSAGE_COUNT; i += 3) {
+                MessageAck ack = new MessageAck();
+                ack.setDestination(queue);
+                ack.setLastMessageId(new MessageId(producerId, q * MESSAGE_COUNT + i));
+                messageStore.removeMessage(null, ack);
+            }
+        }
+        store.stop();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (store != null) {
+            store.stop();
+        }
+    }
+
+    @Test
+    public void testRebuildIndexWithParallelReaders() throws Exception {
+        assertTrue(new File(directory, "db.data").delete());
+
+        store = createStore(false, 4);
+        assertTrue(store.getJournal().getFileMap().size() > 4);
+        assertRecovered();
+        assertTrue(store.getRecoveryProgress(), store.getRecoveryProgress().startsWith("last recovery: "));
+    }
+
+    @Test
+    public void testReadAheadBoundedInBytes() throws Exception {
+        assertTrue(new File(directory, "db.data").delete());
+
+        // less than a data file, so only one is read ahead at a time
+        store = createStore(false, 4, 1024);
+        assertRecovered();
+        assertTrue(store.getRecoveryProgress(), store.getRecoveryProgress().contains(" data files read"));
+    }
+
+    @Test
+    public void testSameResultAsSequentialRecovery() throws Exception {
+        assertTrue(new File(directory, "db.data").delete());
+        store = createStore(false, 1);
+        assertRecovered();
+        store.stop();
+
+        assertTrue(new File(directory, "db.data").delete());
+        store = createStore(false, 3);
+        assertRecovered();
+    }
+
+    private void assertRecovered() throws Exception {
+        int expected = MESSAGE_COUNT - (MESSAGE_COUNT + 2) / 3;
+        for (int q = 0; q < QUEUE_COUNT; q++) {
+            MessageStore messageStore = store.createQueueMessageStore(new ActiveMQQueue("Test.Recovery." + q));
+            assertEquals(expected, messageStore.getMessageCount());
+        }
+    }
+
+    private KahaDBStore createStore(boolean deleteAllMessages, int recoveryThreads) throws Exception {
+        // the default read ahead, two data files of the configured length
+        return createStore(deleteAllMessages, recoveryThreads, 0);
+    }
+
+    private KahaDBStore createStore(boolean deleteAllMessages, int recoveryThreads, long readAheadSize) throws Exception {
+        KahaDBStore kahaDBStore = new KahaDBStore();
+        kahaDBStore.setDirectory(directory);
+        kahaDBStore.setDeleteAllMessages(deleteAllMessages);
+        kahaDBStore.setJournalMaxFileLength(256 * 1024);
+        kahaDBStore.setCheckpointInterval(Long.MAX_VALUE);
+        kahaDBStore.setRecoveryThreads(recoveryThreads);
+        kahaDBStore.setRecoveryReadAheadSize(readAheadSize);
+        kahaDBStore.start();
+        return kahaDBStore;
+    }
+}
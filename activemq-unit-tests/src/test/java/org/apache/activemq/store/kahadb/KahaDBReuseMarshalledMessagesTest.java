@@ -0,0 +1,115 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.store.kahadb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import javax.jms.Connection;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.junit.After;
+import org.junit.Test;
+
+public class KahaDBReuseMarshalledMessagesTest {
+
+    private static final int MESSAGE_COUNT = 20;
+
+    private final ActiveMQQueue queue = new ActiveMQQueue("Test.ReuseMarshalled");
+    private BrokerService broker;
+
+    @After
+    public void tearDown() throws Exception {
+        if (broker != null) {
+            broker.stop();
+        }
+    }
+
+    @Test
+    public void testStoredMessagesDispatchedToLooseConsumer() throws Exception {
+        startBroker(true);
+        Connection connection = createConnection(broker.getTransportConnectors().get(0).getPublishableConnectString());
+        Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        MessageProducer producer = session.createProducer(queue);
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            TextMessage message = session.createTextMessage("message:" + i);
+            message.setIntProperty("index", i);
+            producer.send(message);
+        }
+        connection.close();
+
+        // restart so the messages get loaded from the store
+        broker.stop();
+        startBroker(false);
+
+        String uri = broker.getTransportConnectors().get(0).getPublishableConnectString()
+                + "?wireFormat.tightEncodingEnabled=false&wireFormat.cacheEnabled=false";
+        connection = createConnection(uri);
+        session = connection.createSession(true, Session.SESSION_TRANSACTED);
+        MessageConsumer consumer = session.createConsumer(queue);
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            TextMessage message = (TextMessage) consumer.receive(5000);
+            assertNotNull(message);
+            assertEquals("message:" + i, message.getText());
+            assertEquals(i, message.getIntProperty("index"));
+            assertFalse(message.getJMSRedelivered());
+        }
+        session.rollback();
+
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            TextMessage message = (TextMessage) consumer.receive(5000);
+            assertNotNull(message);
+            assertEquals("message:" + i, message.getText());
+            assertTrue(message.getJMSRedelivered());
+        }
+        session.commit();
+        assertNull(consumer.receive(500));
+        connection.close();
+    }
+
+    private Connection createConnection(String uri) throws Exception {
+        Connection connection = new ActiveMQConnectionFactory(uri).createConnection();
+        connection.start();
+        return connection;
+    }
+
+    private void startBroker(boolean deleteAllMessages) throws Exception {
+        broker = new BrokerService();
+        broker.setUseJmx(false);
+        broker.setAdvisorySupport(false);
+        broker.setStoreOpenWireVersion(10);
+        broker.setDeleteAllMessagesOnStartup(deleteAllMessages);
+        KahaDBPersistenceAdapter adapter = new KahaDBPersistenceAdapter();
+        adapter.setDirectory(new File("target/activemq-data/kahadb-reuse-marshalled"));
+        adapter.setReuseMarshalledMessages(true);
+        broker.setPersistenceAdapter(adapter);
+        broker.addConnector("tcp://localhost:0");
+        broker.start();
+        broker.waitUntilStarted();
+    }
+}
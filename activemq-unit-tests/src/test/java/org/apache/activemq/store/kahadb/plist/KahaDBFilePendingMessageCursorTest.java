@@ -29,6 +29,7 @@ import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * @author <a href="http://hiramchirino.com">Hiram Chirino</a>
@@ -93,5 +94,66 @@ public class KahaDBFilePendingMessageCursorTest extends FilePendingMessageCursor
         assertEquals("expected page usage", initialPageCount -1, pageFile.getPageCount() - pageFile.getFreePageCount() );
     }
 
+    @Test
+    public void testOrderKeptWhenPagingInFromDisk() throws Exception {
+        brokerService = new BrokerService();
+        brokerService.setUseJmx(false);
+        SystemUsage usage = brokerService.getSystemUsage();
+        usage.getMemoryUsage().setLimit(1024*150);
+        String body = new String(new byte[1024]);
+        Destination destination = new Queue(brokerService, new ActiveMQQueue("Q"), null, new DestinationStatistics(), null);
+
+        underTest = new FilePendingMessageCursor(brokerService.getBroker(), "test", false);
+        underTest.setSystemUsage(usage);
+        underTest.setMaxBatchSize(50);
+
+        int sent = 0;
+        for (; sent < 500; sent++) {
+            underTest.addMessageLast(new IndirectMessageReference(createMessage(sent, body, usage, destination)));
+        }
+        assertFalse("messages spilled to disk", underTest.getDiskList().isEmpty());
+
+        long expected = 0;
+        int pass = 0;
+        while (expected < 1000) {
+            // passes alternately end within and beyond the batch paged in
+            int passSize = pass++ % 2 == 0 ? 80 : 30;
+            underTest.reset();
+            int taken = 0;
+            MessageReference redelivered = null;
+            while (underTest.hasNext() && redelivered == null) {
+                MessageReference ref = underTest.next();
+                underTest.remove();
+                assertEquals("id is correct", expected, ref.getMessageId().getProducerSequenceId());
+                if (++taken == passSize) {
+                    // the last one taken in a pass is put back
+                    redelivered = ref;
+                } else {
+                    expected++;
+                }
+                ref.decrementReferenceCount();
+            }
+            underTest.release();
+            if (redelivered != null) {
+                // goes back ahead of the messages paged in and those on disk
+                underTest.addMessageFirst(redelivered);
+            }
+            for (int i = 0; i < 50 && sent < 1000; i++, sent++) {
+                underTest.addMessageLast(new IndirectMessageReference(createMessage(sent, body, usage, destination)));
+            }
+        }
+        assertTrue(underTest.isEmpty());
+        underTest.destroy();
+    }
+
+    private ActiveMQMessage createMessage(int sequence, String body, SystemUsage usage, Destination destination) throws Exception {
+        ActiveMQMessage mqMessage = new ActiveMQMessage();
+        mqMessage.setStringProperty("body", body);
+        mqMessage.setMessageId(new MessageId("1:2:3:" + sequence));
+        mqMessage.setMemoryUsage(usage.getMemoryUsage());
+        mqMessage.setRegionDestination(destination);
+        return mqMessage;
+    }
+
 
 }
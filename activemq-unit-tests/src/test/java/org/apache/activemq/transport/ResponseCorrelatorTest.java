@@ -0,0 +1,114 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.apache.activemq.command.Command;
+import org.apache.activemq.command.ConnectionInfo;
+import org.apache.activemq.command.ExceptionResponse;
+import org.apache.activemq.command.Response;
+import org.apache.activemq.command.ShutdownInfo;
+
+public class ResponseCorrelatorTest extends TestCase {
+
+    private ResponseCorrelator correlator;
+
+    @Override
+    protected void setUp() throws Exception {
+        // answers every request but a shutdown straight away from the writing thread
+        correlator = new ResponseCorrelator(new StubTransport() {
+            @Override
+            public void oneway(Object command) throws IOException {
+                Command request = (Command) command;
+                if (request.isResponseRequired() && !(request instanceof ShutdownInfo)) {
+                    Response response = new Response();
+                    response.setCorrelationId(request.getCommandId());
+                    getTransportListener().onCommand(response);
+                }
+            }
+        });
+        correlator.setTransportListener(new DefaultTransportListener());
+        correlator.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        correlator.stop();
+    }
+
+    public void testConcurrentRequests() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Object>> results = new ArrayList<Future<Object>>();
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    for (int j = 0; j < 1000; j++) {
+                        assertNotNull(correlator.request(new ConnectionInfo(), 5000));
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<Object> result : results) {
+            result.get(30, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+        assertEquals(0, correlator.getOutstandingRequestCount());
+        assertEquals(8000, correlator.getResponseCount());
+        assertTrue(correlator.getResponseLatencyPercentile(50) <= correlator.getResponseLatencyPercentile(99.9));
+        correlator.resetStatistics();
+        assertEquals(0, correlator.getResponseCount());
+    }
+
+    public void testTimedOutRequestIsRemoved() throws Exception {
+        long start = System.currentTimeMillis();
+        try {
+            // never answered by the stub
+            correlator.request(new ShutdownInfo(), 100);
+            fail("request should time out");
+        } catch (RequestTimedOutIOException expected) {
+        }
+        assertTrue(System.currentTimeMillis() - start >= 90);
+        assertEquals(0, correlator.getOutstandingRequestCount());
+        assertEquals(1, correlator.getTimedOutRequestCount());
+    }
+
+    public void testPendingRequestsFailOnException() throws Exception {
+        FutureResponse future = correlator.asyncRequest(new ShutdownInfo(), null);
+        assertEquals(1, correlator.getOutstandingRequestCount());
+        correlator.onException(new IOException("failed"));
+        assertTrue(future.getResult() instanceof ExceptionResponse);
+        assertEquals(0, correlator.getOutstandingRequestCount());
+        try {
+            correlator.request(new ShutdownInfo(), 100);
+            fail("request should fail after the exception");
+        } catch (IOException expected) {
+            assertEquals("failed", expected.getMessage());
+        }
+    }
+}
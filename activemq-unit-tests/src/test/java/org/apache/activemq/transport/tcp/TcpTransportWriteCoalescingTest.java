@@ -0,0 +1,142 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.activemq.transport.tcp;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+
+import org.apache.activemq.ActiveMQConnection;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.broker.BrokerService;
+import org.apache.activemq.broker.TransportConnection;
+import org.apache.activemq.broker.jmx.ConnectionView;
+import org.apache.activemq.command.ActiveMQQueue;
+import org.apache.activemq.transport.nio.NIOTransport;
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class TcpTransportWriteCoalescingTest {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TcpTransportWriteCoalescingTest.class);
+    private static final int PRODUCERS = 8;
+    private static final int MESSAGE_COUNT = 500;
+
+    private BrokerService broker;
+    private Connection connection;
+
+    @After
+    public void tearDown() throws Exception {
+        if (connection != null) {
+            connection.close();
+        }
+        if (broker != null) {
+            broker.stop();
+        }
+    }
+
+    @Test
+    public void testTcpWriteCoalescing() throws Exception {
+        doTestConcurrentProducers("tcp");
+    }
+
+    @Test
+    public void testNioWriteCoalescing() throws Exception {
+        TcpTransport transport = doTestConcurrentProducers("nio");
+        assertTrue(transport instanceof NIOTransport);
+    }
+
+    private TcpTransport doTestConcurrentProducers(String scheme) throws Exception {
+        broker = new BrokerService();
+        broker.setPersistent(false);
+        broker.setUseJmx(false);
+        String uri = broker.addConnector(scheme + "://localhost:0?transport.writeCoalescing=true").getPublishableConnectString();
+        broker.start();
+        broker.waitUntilStarted();
+
+        connection = new ActiveMQConnectionFactory(uri + "?writeCoalescing=true&writeCoalescingLinger=500").createConnection();
+        connection.start();
+        TcpTransport transport = ((ActiveMQConnection) connection).getTransport().narrow(TcpTransport.class);
+        assertNotNull(transport);
+        assertTrue(transport.isWriteCoalescing());
+        transport.resetFlushStatistics();
+
+        final CountDownLatch done = new CountDownLatch(PRODUCERS);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        List<MessageConsumer> consumers = new ArrayList<MessageConsumer>();
+        for (int p = 0; p < PRODUCERS; p++) {
+            final ActiveMQQueue queue = new ActiveMQQueue("Coalescing." + p);
+            consumers.add(connection.createSession(false, Session.AUTO_ACKNOWLEDGE).createConsumer(queue));
+            final Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            new Thread("Producer " + p) {
+                @Override
+                public void run() {
+                    try {
+                        MessageProducer producer = session.createProducer(queue);
+                        producer.setDeliveryMode(DeliveryMode.NON_PERSISTENT);
+                        for (int i = 0; i < MESSAGE_COUNT; i++) {
+                            Message message = session.createTextMessage("message");
+                            message.setIntProperty("seq", i);
+                            producer.send(message);
+                        }
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }.start();
+        }
+        assertTrue("producers done", done.await(60, TimeUnit.SECONDS));
+        assertEquals(null, failure.get());
+
+        for (MessageConsumer consumer : consumers) {
+            for (int i = 0; i < MESSAGE_COUNT; i++) {
+                Message message = consumer.receive(5000);
+                assertNotNull("message " + i, message);
+                assertEquals(i, message.getIntProperty("seq"));
+            }
+        }
+
+        LOG.info("{} client: {} commands in {} writes, {} per write", new Object[]{
+                scheme, transport.getFlushedFrameCount(), transport.getFlushCount(), transport.getAverageFlushBatchSize()
+        });
+        assertTrue(transport.getFlushedFrameCount() >= PRODUCERS * MESSAGE_COUNT);
+        assertTrue("sends were coalesced", transport.getAverageFlushBatchSize() > 1);
+
+        TransportConnection brokerConnection = broker.getTransportConnectors().get(0).getConnections().get(0);
+        ConnectionView view = new ConnectionView(brokerConnection);
+        assertTrue(view.getFlushCount() > 0);
+        assertTrue(view.getAverageFlushBatchSize() >= 1);
+        return transport;
+    }
+}